@@ -40,6 +40,8 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .authorizeHttpRequests(auth -> auth
+                // Dispatch asíncrono (respuestas en streaming): la petición original ya fue autorizada
+                .dispatcherTypeMatchers(jakarta.servlet.DispatcherType.ASYNC).permitAll()
                 // Permitir endpoints de autenticación (múltiples rutas por compatibilidad)
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/v1/auth/**").permitAll()
@@ -55,6 +57,8 @@ public class SecurityConfig {
                 .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/v1/institutions/**").permitAll()
                 // Campus - Permitir acceso público a GET (el controller verifica permisos según parámetros)
                 .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/v1/institutions/campuses/**").permitAll()
+                // Agregados anonimizados (k-anónimos) para dashboards públicos
+                .requestMatchers(org.springframework.http.HttpMethod.GET, "/api/v1/reports/aggregates").permitAll()
                 // Todas las demás requieren autenticación
                 .anyRequest().authenticated()
             )
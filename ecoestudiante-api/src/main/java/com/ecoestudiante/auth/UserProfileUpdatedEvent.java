@@ -0,0 +1,21 @@
+package com.ecoestudiante.auth;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.util.UUID;
+
+/**
+ * Evento publicado al actualizar un usuario existente (username, institución, etc.).
+ * Permite invalidar cachés que dependen de datos del perfil.
+ */
+@Getter
+public class UserProfileUpdatedEvent extends ApplicationEvent {
+
+    private final UUID userId;
+
+    public UserProfileUpdatedEvent(Object source, UUID userId) {
+        super(source);
+        this.userId = userId;
+    }
+}
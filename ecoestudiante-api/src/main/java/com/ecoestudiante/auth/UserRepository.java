@@ -1,5 +1,6 @@
 package com.ecoestudiante.auth;
 
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
@@ -12,9 +13,11 @@ import java.util.UUID;
 public class UserRepository {
 
     private final JdbcTemplate jdbc;
+    private final ApplicationEventPublisher eventPublisher;
 
-    public UserRepository(JdbcTemplate jdbc) {
+    public UserRepository(JdbcTemplate jdbc, ApplicationEventPublisher eventPublisher) {
         this.jdbc = jdbc;
+        this.eventPublisher = eventPublisher;
     }
 
     public Optional<AppUser> findByUsername(String username) {
@@ -216,6 +219,7 @@ public class UserRepository {
                 user.getCampusId(),
                 user.getId()
             );
+            eventPublisher.publishEvent(new UserProfileUpdatedEvent(this, user.getId()));
             return findByUsername(user.getUsername()).orElseThrow();
         }
     }
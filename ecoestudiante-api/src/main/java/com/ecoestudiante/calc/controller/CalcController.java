@@ -3,6 +3,7 @@ package com.ecoestudiante.calc.controller;
 import com.ecoestudiante.auth.UserContext;
 import com.ecoestudiante.auth.UserContextResolver;
 import com.ecoestudiante.calc.dto.CalcDtos;
+import com.ecoestudiante.calc.service.CalcExportService;
 import com.ecoestudiante.calc.service.CalcService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -15,8 +16,15 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.util.UUID;
 
 /**
  * Controlador REST para el Servicio de Cálculo CO₂e.
@@ -25,6 +33,7 @@ import org.springframework.web.bind.annotation.*;
  * - Cálculos de electricidad
  * - Cálculos de transporte
  * - Historial de cálculos
+ * - Exportación del historial (CSV / NDJSON en streaming)
  * - Factores de emisión aplicados
  * 
  * Ruta base: /api/v1/calc
@@ -37,10 +46,12 @@ public class CalcController {
 
   private static final Logger logger = LoggerFactory.getLogger(CalcController.class);
   private final CalcService svc;
+  private final CalcExportService exportService;
   private final UserContextResolver userContextResolver;
 
-  public CalcController(CalcService svc, UserContextResolver userContextResolver) {
+  public CalcController(CalcService svc, CalcExportService exportService, UserContextResolver userContextResolver) {
     this.svc = svc;
+    this.exportService = exportService;
     this.userContextResolver = userContextResolver;
   }
 
@@ -237,13 +248,54 @@ public class CalcController {
     return svc.computeWaste(normalized);
   }
 
+  @PostMapping(
+      path = "/batch",
+      consumes = MediaType.APPLICATION_JSON_VALUE,
+      produces = MediaType.APPLICATION_JSON_VALUE
+  )
+  @Operation(
+      summary = "Calcula un lote mixto de electricidad, transporte y residuos en una sola transacción",
+      description = """
+          Pensado para cargas masivas (p.ej. importación semestral de datos de un estudiante).
+          Cada item indica su tipo (electricity, transport, waste) y trae su propia idempotencyKey.
+          Devuelve un resultado por item: CREATED, IDEMPOTENT (ya existía) o ERROR (sin abortar el resto).
+          El XP de todos los cálculos nuevos se otorga en una única transacción.
+          """
+  )
+  @SecurityRequirement(name = "bearerAuth")
+  @ApiResponses({
+      @ApiResponse(
+          responseCode = "200",
+          description = "Lote procesado",
+          content = @Content(
+              mediaType = "application/json",
+              schema = @Schema(implementation = CalcDtos.BatchResult.class)
+          )
+      ),
+      @ApiResponse(responseCode = "400", description = "Solicitud inválida / validación fallida"),
+      @ApiResponse(responseCode = "401", description = "No autenticado"),
+      @ApiResponse(responseCode = "500", description = "Error interno")
+  })
+  public CalcDtos.BatchResult batch(
+      @Valid @RequestBody CalcDtos.BatchInput in,
+      HttpServletRequest request
+  ) {
+    UserContext context = userContextResolver.resolve(request);
+    String userId = context.normalizedUserIdAsString();
+
+    logger.debug("Procesando lote de cálculos - usuario: {}, items: {}", userId, in.items().size());
+    return svc.computeBatch(userId, in.items());
+  }
+
   @GetMapping(
       path = "/history",
       produces = MediaType.APPLICATION_JSON_VALUE
   )
   @Operation(
       summary = "Obtener historial de cálculos",
-      description = "Retorna el historial de cálculos del usuario autenticado con paginación y filtros opcionales"
+      description = "Retorna el historial de cálculos del usuario autenticado con filtros opcionales. "
+          + "Para recorrer páginas se usa el cursor nextCursor de la respuesta anterior (tiempo constante por página); "
+          + "page solo se mantiene por compatibilidad con clientes que aún paginan por offset"
   )
   @SecurityRequirement(name = "bearerAuth")
   @ApiResponses({
@@ -267,6 +319,8 @@ public class CalcController {
       @RequestParam(value = "emissionMin", required = false) Double emissionMin,
       @RequestParam(value = "emissionMax", required = false) Double emissionMax,
       @RequestParam(value = "subcategories", required = false) java.util.List<String> subcategories,
+      @RequestParam(value = "cursor", required = false) String cursor,
+      @RequestParam(value = "includeTotal", required = false) Boolean includeTotal,
       HttpServletRequest request
   ) {
     UserContext context = userContextResolver.resolve(request);
@@ -292,10 +346,87 @@ public class CalcController {
       }
     }
 
-    logger.info("Obteniendo historial - usuario: {}, categoría: {}, página: {}, filtros: [dateFrom={}, dateTo={}, emissionMin={}, emissionMax={}, subcategories={}]",
-        userId, category, page, parsedDateFrom, parsedDateTo, emissionMin, emissionMax, subcategories);
+    // Por defecto el total solo se calcula en la primera página; al seguir el cursor no hace falta
+    boolean withTotal = includeTotal != null ? includeTotal : (cursor == null || cursor.isBlank());
+
+    logger.info("Obteniendo historial - usuario: {}, categoría: {}, página: {}, cursor: {}, filtros: [dateFrom={}, dateTo={}, emissionMin={}, emissionMax={}, subcategories={}]",
+        userId, category, page, cursor, parsedDateFrom, parsedDateTo, emissionMin, emissionMax, subcategories);
 
-    return svc.getHistory(userId, category, page, pageSize, parsedDateFrom, parsedDateTo, emissionMin, emissionMax, subcategories);
+    return svc.getHistory(userId, category, page, pageSize, parsedDateFrom, parsedDateTo, emissionMin, emissionMax,
+        subcategories, cursor, withTotal);
+  }
+
+  @GetMapping(path = "/export")
+  @Operation(
+      summary = "Exportar historial de cálculos",
+      description = "Descarga el historial completo del usuario autenticado en CSV o NDJSON. "
+          + "La respuesta se genera en streaming desde un cursor de base de datos"
+  )
+  @SecurityRequirement(name = "bearerAuth")
+  @ApiResponses({
+      @ApiResponse(responseCode = "200", description = "Archivo de exportación"),
+      @ApiResponse(responseCode = "400", description = "Formato o fechas inválidos"),
+      @ApiResponse(responseCode = "401", description = "No autenticado")
+  })
+  public ResponseEntity<StreamingResponseBody> exportHistory(
+      @RequestParam(value = "format", defaultValue = "csv") String format,
+      @RequestParam(value = "category", required = false) String category,
+      @RequestParam(value = "dateFrom", required = false) String dateFrom,
+      @RequestParam(value = "dateTo", required = false) String dateTo,
+      HttpServletRequest request
+  ) {
+    UserContext context = userContextResolver.resolve(request);
+    UUID userId = context.normalizedUserId();
+    CalcExportService.Format exportFormat = CalcExportService.Format.parse(format);
+    LocalDate from = parseExportDate(dateFrom);
+    LocalDate to = parseExportDate(dateTo);
+
+    logger.info("Exportando historial - usuario: {}, formato: {}, categoría: {}", userId, exportFormat, category);
+    return exportResponse("huella-" + LocalDate.now(), exportFormat,
+        out -> exportService.exportUser(userId, exportFormat, category, from, to, out));
+  }
+
+  @GetMapping(path = "/export/institution/{institutionId}")
+  @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN', 'PROFESOR')")
+  @Operation(
+      summary = "Exportar historial de una institución",
+      description = "Descarga en streaming (CSV o NDJSON) los cálculos de todos los estudiantes de la institución"
+  )
+  @SecurityRequirement(name = "bearerAuth")
+  public ResponseEntity<StreamingResponseBody> exportInstitutionHistory(
+      @PathVariable UUID institutionId,
+      @RequestParam(value = "format", defaultValue = "csv") String format,
+      @RequestParam(value = "category", required = false) String category,
+      @RequestParam(value = "dateFrom", required = false) String dateFrom,
+      @RequestParam(value = "dateTo", required = false) String dateTo
+  ) {
+    CalcExportService.Format exportFormat = CalcExportService.Format.parse(format);
+    LocalDate from = parseExportDate(dateFrom);
+    LocalDate to = parseExportDate(dateTo);
+
+    logger.info("Exportando historial de institución: {}, formato: {}, categoría: {}", institutionId, exportFormat, category);
+    return exportResponse("huella-institucion-" + LocalDate.now(), exportFormat,
+        out -> exportService.exportInstitution(institutionId, exportFormat, category, from, to, out));
+  }
+
+  private ResponseEntity<StreamingResponseBody> exportResponse(
+      String baseName, CalcExportService.Format format, StreamingResponseBody body) {
+    return ResponseEntity.ok()
+        .header(HttpHeaders.CONTENT_DISPOSITION,
+            "attachment; filename=\"" + baseName + "." + format.extension() + "\"")
+        .contentType(MediaType.parseMediaType(format.contentType() + ";charset=UTF-8"))
+        .body(body);
+  }
+
+  private static LocalDate parseExportDate(String value) {
+    if (value == null || value.isBlank()) {
+      return null;
+    }
+    try {
+      return LocalDate.parse(value);
+    } catch (java.time.format.DateTimeParseException e) {
+      throw new IllegalArgumentException("Fecha inválida (se espera yyyy-MM-dd): " + value);
+    }
   }
 }
 
@@ -2,8 +2,10 @@ package com.ecoestudiante.calc.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import java.time.LocalDateTime;
 import java.util.Map;
 
@@ -81,12 +83,16 @@ public final class CalcDtos {
   public record CalcHistoryResponse(
       @Schema(description = "Lista de cálculos")
       java.util.List<CalcHistoryItem> items,
-      @Schema(description = "Total de registros")
-      long total,
+      @Schema(description = "Total de registros (null si no se solicitó con includeTotal)")
+      Long total,
       @Schema(description = "Página actual")
       int page,
       @Schema(description = "Tamaño de página")
-      int pageSize
+      int pageSize,
+      @Schema(description = "Cursor para pedir la página siguiente (null si no hay más)")
+      String nextCursor,
+      @Schema(description = "Indica si existen más registros después de esta página")
+      boolean hasMore
   ) {}
 
   public record TransportInput(
@@ -190,4 +196,62 @@ public final class CalcDtos {
       return new WasteInput(wasteItems, disposalMethod, country, period, header, userId);
     }
   }
+
+  /**
+   * Entrada de un lote: exactamente uno de electricity/transport/waste según {@code type}.
+   */
+  public record BatchItem(
+      @Schema(description = "Tipo de cálculo", example = "electricity",
+              allowableValues = {"electricity", "transport", "waste"})
+      @NotBlank
+      @Pattern(regexp = "^(electricity|transport|waste)$",
+               message = "type debe ser: electricity, transport, waste")
+      String type,
+
+      @Schema(description = "Datos de electricidad (si type=electricity)")
+      @jakarta.validation.Valid
+      ElectricityInput electricity,
+
+      @Schema(description = "Datos de transporte (si type=transport)")
+      @jakarta.validation.Valid
+      TransportInput transport,
+
+      @Schema(description = "Datos de residuos (si type=waste)")
+      @jakarta.validation.Valid
+      WasteInput waste
+  ) {}
+
+  public record BatchInput(
+      @Schema(description = "Lista de cálculos a procesar en una sola transacción")
+      @NotEmpty
+      @Size(max = 500, message = "El lote admite como máximo 500 cálculos")
+      @jakarta.validation.Valid
+      java.util.List<BatchItem> items
+  ) {}
+
+  public record BatchItemResult(
+      @Schema(description = "Posición del item en el lote (0-based)")
+      int index,
+      @Schema(description = "Tipo de cálculo")
+      String type,
+      @Schema(description = "Estado: CREATED, IDEMPOTENT o ERROR")
+      String status,
+      @Schema(description = "Resultado del cálculo (null si ERROR)")
+      CalcResult result,
+      @Schema(description = "Mensaje de error (solo si ERROR)")
+      String error
+  ) {}
+
+  public record BatchResult(
+      @Schema(description = "Resultados por item, en el mismo orden de entrada")
+      java.util.List<BatchItemResult> items,
+      @Schema(description = "Cálculos nuevos persistidos")
+      int created,
+      @Schema(description = "Cálculos ya existentes (idempotentes)")
+      int idempotent,
+      @Schema(description = "Items con error")
+      int failed,
+      @Schema(description = "Total kgCO2e de los cálculos nuevos")
+      double totalKgCO2e
+  ) {}
 }
@@ -0,0 +1,232 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.common.jdbc.StreamingQuery;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * Exportación en streaming del historial de cálculos (CSV o NDJSON).
+ *
+ * Las filas se leen con un cursor de servidor ({@link StreamingQuery}) y se escriben
+ * una a una al OutputStream de la respuesta. input_json se copia como texto, sin
+ * deserializarlo, así que la memoria no depende del número de filas.
+ */
+@Service
+public class CalcExportService {
+  private static final Logger logger = LoggerFactory.getLogger(CalcExportService.class);
+
+  private static final JsonFactory jsonFactory = new JsonFactory();
+  private static final String CSV_HEADER =
+      "calc_id,user_id,created_at,category,subcategory,kg_co2e,factor_hash,input_json\n";
+
+  public enum Format {
+    CSV("text/csv", "csv"),
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String contentType;
+    private final String extension;
+
+    Format(String contentType, String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+
+    public String contentType() {
+      return contentType;
+    }
+
+    public String extension() {
+      return extension;
+    }
+
+    public static Format parse(String value) {
+      if (value == null || value.isBlank()) {
+        return CSV;
+      }
+      try {
+        return Format.valueOf(value.trim().toUpperCase(Locale.ROOT));
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Formato de exportación no soportado: " + value + " (csv, ndjson)");
+      }
+    }
+  }
+
+  private final StreamingQuery streamingQuery;
+
+  public CalcExportService(
+      DataSource dataSource,
+      PlatformTransactionManager transactionManager,
+      @Value("${app.calc.export.fetch-size:1000}") int fetchSize) {
+    this.streamingQuery = new StreamingQuery(dataSource, transactionManager, fetchSize);
+  }
+
+  /**
+   * Exporta el historial de un usuario.
+   *
+   * @return filas escritas
+   */
+  public long exportUser(UUID userId, Format format, String category, LocalDate dateFrom, LocalDate dateTo,
+                         OutputStream out) {
+    return export("c.user_id = ?::uuid", userId, format, category, dateFrom, dateTo, out);
+  }
+
+  /**
+   * Exporta el historial de todos los usuarios de una institución.
+   *
+   * @return filas escritas
+   */
+  public long exportInstitution(UUID institutionId, Format format, String category, LocalDate dateFrom,
+                                LocalDate dateTo, OutputStream out) {
+    return export("c.user_id IN (SELECT u.id FROM app_user u WHERE u.institution_id = ?::uuid)",
+        institutionId, format, category, dateFrom, dateTo, out);
+  }
+
+  private long export(String scopeCondition, UUID scopeId, Format format, String category,
+                      LocalDate dateFrom, LocalDate dateTo, OutputStream out) {
+    StringBuilder sql = new StringBuilder("""
+        SELECT c.id::text AS id, c.user_id::text AS user_id, c.created_at, c.category,
+               c.subcategory_label, c.result_kg_co2e, c.factor_hash, c.input_json::text AS input_json
+        FROM calculation c
+        WHERE\s""").append(scopeCondition);
+    List<Object> params = new ArrayList<>();
+    params.add(scopeId);
+
+    if (category != null && !category.isBlank()) {
+      sql.append(" AND c.category = ?");
+      params.add(category);
+    }
+    if (dateFrom != null) {
+      sql.append(" AND c.created_at >= ?::timestamp");
+      params.add(dateFrom.atStartOfDay());
+    }
+    if (dateTo != null) {
+      sql.append(" AND c.created_at < ?::timestamp");
+      params.add(dateTo.plusDays(1).atStartOfDay());
+    }
+    sql.append(" ORDER BY c.created_at DESC, c.id DESC");
+
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+    long rows;
+
+    try {
+      RowWriter rowWriter = format == Format.NDJSON ? new NdjsonRowWriter(writer) : new CsvRowWriter(writer);
+      rowWriter.start();
+      // Cliente desconectado: la IOException aborta la consulta y libera el cursor
+      rows = streamingQuery.forEach(sql.toString(), params.toArray(), rowWriter::write);
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    logger.info("Exportación de historial completada - formato: {}, filas: {}", format, rows);
+    return rows;
+  }
+
+  private interface RowWriter {
+    default void start() throws IOException {}
+
+    void write(ResultSet rs) throws SQLException, IOException;
+  }
+
+  private static final class CsvRowWriter implements RowWriter {
+    private final Writer writer;
+
+    CsvRowWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void start() throws IOException {
+      writer.write(CSV_HEADER);
+    }
+
+    @Override
+    public void write(ResultSet rs) throws SQLException, IOException {
+      writer.write(rs.getString("id"));
+      writer.write(',');
+      writer.write(rs.getString("user_id"));
+      writer.write(',');
+      writer.write(rs.getTimestamp("created_at").toLocalDateTime().toString());
+      writer.write(',');
+      writeQuoted(rs.getString("category"));
+      writer.write(',');
+      writeQuoted(rs.getString("subcategory_label"));
+      writer.write(',');
+      writer.write(rs.getBigDecimal("result_kg_co2e").toPlainString());
+      writer.write(',');
+      writeQuoted(rs.getString("factor_hash"));
+      writer.write(',');
+      writeQuoted(rs.getString("input_json"));
+      writer.write('\n');
+    }
+
+    private void writeQuoted(String value) throws IOException {
+      if (value == null) {
+        return;
+      }
+      writer.write('"');
+      for (int i = 0; i < value.length(); i++) {
+        char ch = value.charAt(i);
+        if (ch == '"') {
+          writer.write('"');
+        }
+        writer.write(ch);
+      }
+      writer.write('"');
+    }
+  }
+
+  private static final class NdjsonRowWriter implements RowWriter {
+    private final Writer writer;
+    private final JsonGenerator json;
+
+    NdjsonRowWriter(Writer writer) throws IOException {
+      this.writer = writer;
+      this.json = jsonFactory.createGenerator(writer);
+      this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      // flush() vuelca al Writer con buffer, sin forzar el envío por cada fila
+      this.json.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+      // Una línea por objeto: sin el separador por defecto entre valores raíz
+      this.json.setRootValueSeparator(null);
+    }
+
+    @Override
+    public void write(ResultSet rs) throws SQLException, IOException {
+      json.writeStartObject();
+      json.writeStringField("calcId", rs.getString("id"));
+      json.writeStringField("userId", rs.getString("user_id"));
+      json.writeStringField("createdAt", rs.getTimestamp("created_at").toLocalDateTime().toString());
+      json.writeStringField("category", rs.getString("category"));
+      json.writeStringField("subcategory", rs.getString("subcategory_label"));
+      json.writeFieldName("kgCO2e");
+      json.writeNumber(rs.getBigDecimal("result_kg_co2e"));
+      json.writeStringField("factorHash", rs.getString("factor_hash"));
+      json.writeFieldName("input");
+      json.writeRawValue(rs.getString("input_json"));
+      json.writeEndObject();
+      json.flush();
+      writer.write('\n');
+    }
+  }
+}
@@ -0,0 +1,186 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.calc.dto.CalcDtos;
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Almacén de idempotencia de cálculos.
+ *
+ * La fuente de verdad es la columna calculation.idempotency_key con índice único
+ * (user_id, category, idempotency_key). Delante hay una caché en memoria de corta
+ * duración con los resultados recientes, para responder reintentos de clientes
+ * móviles sin ir a la base de datos.
+ *
+ * Los resultados nuevos solo se cachean después del commit, así un rollback nunca
+ * deja en caché un cálculo que no existe.
+ */
+@Component
+public class CalcIdempotencyStore {
+  private static final Logger logger = LoggerFactory.getLogger(CalcIdempotencyStore.class);
+
+  private record Key(UUID userId, String category, String idempotencyKey) {}
+
+  private record Entry(CalcDtos.CalcResult result, long expiresAt) {}
+
+  private final JdbcTemplate jdbc;
+  private final long ttlMillis;
+  private final Map<Key, Entry> recent;
+
+  public CalcIdempotencyStore(
+      JdbcTemplate jdbc,
+      @Value("${app.calc.idempotency.cache-ttl-seconds:600}") long ttlSeconds,
+      @Value("${app.calc.idempotency.cache-max-entries:10000}") int maxEntries) {
+    this.jdbc = jdbc;
+    this.ttlMillis = ttlSeconds * 1000;
+    this.recent = BoundedLruMap.create(maxEntries);
+  }
+
+  /**
+   * Busca un cálculo previo con la misma clave: primero en caché, luego por índice.
+   *
+   * @return el resultado existente o null si la clave es nueva
+   */
+  public CalcDtos.CalcResult find(UUID userId, String category, String idempotencyKey) {
+    if (idempotencyKey == null || idempotencyKey.isBlank()) {
+      return null;
+    }
+    Key key = new Key(userId, category, idempotencyKey);
+    CalcDtos.CalcResult cached = getCached(key);
+    if (cached != null) {
+      logger.debug("Idempotencia resuelta desde caché - userId: {}, category: {}", userId, category);
+      return cached;
+    }
+
+    CalcDtos.CalcResult found = jdbc.query("""
+        select id::text, result_kg_co2e, factor_hash
+        from calculation
+        where user_id = ?::uuid
+          and category = ?
+          and idempotency_key = ?
+        """,
+        ps -> {
+          ps.setObject(1, userId);
+          ps.setString(2, category);
+          ps.setString(3, idempotencyKey);
+        },
+        rs -> rs.next()
+            ? new CalcDtos.CalcResult(rs.getString(1), rs.getBigDecimal(2).doubleValue(), rs.getString(3))
+            : null
+    );
+    if (found != null) {
+      put(key, found);
+    }
+    return found;
+  }
+
+  /**
+   * Busca en una sola consulta todas las claves de un lote.
+   *
+   * @param keys pares (categoría, clave) del lote
+   * @return mapa {@link #keyOf(String, String)} -> resultado existente
+   */
+  public Map<String, CalcDtos.CalcResult> findAll(UUID userId, Collection<Map.Entry<String, String>> keys) {
+    Map<String, CalcDtos.CalcResult> found = new HashMap<>();
+    Set<String> pending = new HashSet<>();
+    for (Map.Entry<String, String> k : keys) {
+      CalcDtos.CalcResult cached = getCached(new Key(userId, k.getKey(), k.getValue()));
+      if (cached != null) {
+        found.put(keyOf(k.getKey(), k.getValue()), cached);
+      } else {
+        pending.add(k.getValue());
+      }
+    }
+    if (pending.isEmpty()) {
+      return found;
+    }
+
+    jdbc.query("""
+        select id::text, category, idempotency_key, result_kg_co2e, factor_hash
+        from calculation
+        where user_id = ?::uuid
+          and idempotency_key = any(?)
+        """,
+        ps -> {
+          ps.setObject(1, userId);
+          ps.setArray(2, ps.getConnection().createArrayOf("text", pending.toArray()));
+        },
+        rs -> {
+          CalcDtos.CalcResult result = new CalcDtos.CalcResult(
+              rs.getString(1), rs.getBigDecimal(4).doubleValue(), rs.getString(5));
+          found.putIfAbsent(keyOf(rs.getString(2), rs.getString(3)), result);
+          put(new Key(userId, rs.getString(2), rs.getString(3)), result);
+        }
+    );
+    return found;
+  }
+
+  /**
+   * Registra un resultado nuevo en caché una vez confirmada la transacción actual.
+   */
+  public void rememberAfterCommit(UUID userId, String category, String idempotencyKey, CalcDtos.CalcResult result) {
+    if (idempotencyKey == null || idempotencyKey.isBlank()) {
+      return;
+    }
+    Key key = new Key(userId, category, idempotencyKey);
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          put(key, result);
+        }
+      });
+    } else {
+      put(key, result);
+    }
+  }
+
+  /**
+   * Clave compuesta (categoría, clave de idempotencia) usada en los mapas de lote.
+   */
+  public static String keyOf(String category, String idempotencyKey) {
+    return category + '\u0000' + idempotencyKey;
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void evictExpired() {
+    long now = System.currentTimeMillis();
+    int before = recent.size();
+    recent.values().removeIf(e -> e.expiresAt() <= now);
+    int removed = before - recent.size();
+    if (removed > 0) {
+      logger.debug("Caché de idempotencia: {} entradas expiradas eliminadas", removed);
+    }
+  }
+
+  private CalcDtos.CalcResult getCached(Key key) {
+    Entry entry = recent.get(key);
+    if (entry == null) {
+      return null;
+    }
+    if (entry.expiresAt() <= System.currentTimeMillis()) {
+      recent.remove(key, entry);
+      return null;
+    }
+    return entry.result();
+  }
+
+  private void put(Key key, CalcDtos.CalcResult result) {
+    // Caché llena: se descarta la clave usada hace más tiempo; la BD sigue siendo la fuente de verdad
+    recent.put(key, new Entry(result, System.currentTimeMillis() + ttlMillis));
+  }
+}
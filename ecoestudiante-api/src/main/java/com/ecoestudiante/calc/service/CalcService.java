@@ -8,6 +8,7 @@ public interface CalcService {
   CalcDtos.CalcResult computeElectricity(CalcDtos.ElectricityInput in);
   CalcDtos.CalcResult computeTransport(CalcDtos.TransportInput in);
   CalcDtos.CalcResult computeWaste(CalcDtos.WasteInput in);
+  CalcDtos.BatchResult computeBatch(String userId, List<CalcDtos.BatchItem> items);
 
   CalcDtos.CalcHistoryResponse getHistory(
       String userId,
@@ -18,6 +19,8 @@ public interface CalcService {
       LocalDate dateTo,
       Double emissionMin,
       Double emissionMax,
-      List<String> subcategories
+      List<String> subcategories,
+      String cursor,
+      boolean includeTotal
   );
 }
@@ -2,39 +2,56 @@ package com.ecoestudiante.calc.service;
 
 import com.ecoestudiante.auth.TokenUtil;
 import com.ecoestudiante.calc.dto.CalcDtos;
-import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
-import com.ecoestudiante.gamification.service.GamificationService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationEventPublisher;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.YearMonth;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.function.Supplier;
 import java.util.ArrayList;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class CalcServiceImpl implements CalcService {
   private static final Logger logger = LoggerFactory.getLogger(CalcServiceImpl.class);
+  /** XP otorgado por cada cálculo nuevo */
+  private static final int XP_PER_CALCULATION = 10;
+  /** Tamaño de cada lote JDBC en inserciones masivas */
+  private static final int JDBC_BATCH_SIZE = 100;
+  /**
+   * Auditoría y outbox en una sola sentencia (CTE de escritura): un solo viaje a la BD.
+   */
+  private static final String AUDIT_AND_OUTBOX_SQL = """
+      with audit as (
+        insert into calculation_audit (id, calculation_id, factor_snapshot)
+        values (?::uuid, ?::uuid, cast(? as jsonb))
+      )
+      insert into calculation_outbox (calculation_id, user_id, xp_amount)
+      values (?::uuid, ?::uuid, ?)
+      """;
   private final JdbcTemplate jdbc;
   private final TokenUtil tokenUtil;
-  private final GamificationService gamificationService;
-  private final ApplicationEventPublisher eventPublisher;
-
-  public CalcServiceImpl(JdbcTemplate jdbc, TokenUtil tokenUtil, GamificationService gamificationService, ApplicationEventPublisher eventPublisher) {
+  private final EmissionFactorEngine factorEngine;
+  private final CalcIdempotencyStore idempotencyStore;
+  private final StatsSummaryCache summaryCache;
+  private final ObjectMapper objectMapper;
+
+  public CalcServiceImpl(JdbcTemplate jdbc, TokenUtil tokenUtil, EmissionFactorEngine factorEngine,
+                         CalcIdempotencyStore idempotencyStore, StatsSummaryCache summaryCache,
+                         ObjectMapper objectMapper) {
     this.jdbc = jdbc;
     this.tokenUtil = tokenUtil;
-    this.gamificationService = gamificationService;
-    this.eventPublisher = eventPublisher;
+    this.factorEngine = factorEngine;
+    this.idempotencyStore = idempotencyStore;
+    this.summaryCache = summaryCache;
+    this.objectMapper = objectMapper;
   }
 
   /**
@@ -74,63 +91,288 @@ public class CalcServiceImpl implements CalcService {
     logger.debug("Iniciando cálculo de electricidad - userId: {}, kwh: {}, country: {}, period: {}",
         in.userId(), in.kwh(), in.country(), in.period());
 
+    // Selección de factor por país/periodo con fallback nacional
+    return computeSingle(in.userId(), "electricidad", in.idempotencyKey(), () -> prepareElectricity(in, null));
+  }
+
+  @Override
+  @Transactional
+  public CalcDtos.CalcResult computeTransport(CalcDtos.TransportInput in) {
+    // Subcategoría + factor + emisiones ajustadas por ocupación
+    return computeSingle(in.userId(), "transporte", in.idempotencyKey(), () -> prepareTransport(in, null));
+  }
+
+  @Override
+  @Transactional
+  public CalcDtos.CalcResult computeWaste(CalcDtos.WasteInput in) {
+    // Validación de entrada
+    if (in.userId() == null || in.userId().isBlank()) {
+      throw new IllegalArgumentException("userId es requerido para computar residuos");
+    }
+    if (in.idempotencyKey() == null || in.idempotencyKey().isBlank()) {
+      throw new IllegalArgumentException("idempotencyKey es requerido para computar residuos");
+    }
+    if (in.wasteItems() == null || in.wasteItems().isEmpty()) {
+      throw new IllegalArgumentException("wasteItems no puede estar vacío");
+    }
+
+    logger.debug("Iniciando cálculo de residuos - userId: {}, items: {}, disposalMethod: {}, country: {}, period: {}",
+        in.userId(), in.wasteItems().size(), in.disposalMethod(), in.country(), in.period());
+
+    // Calcular emisiones para cada tipo de residuo
+    return computeSingle(in.userId(), "residuos", in.idempotencyKey(), () -> prepareWaste(in, null));
+  }
+
+  /**
+   * Flujo común de un cálculo individual:
+   * idempotencia → preparación (factor + emisiones) → persistencia (cálculo + auditoría + outbox).
+   *
+   * La inserción usa ON CONFLICT DO NOTHING sobre el índice único de idempotencia,
+   * de modo que una carrera con otra petición se resuelve devolviendo el cálculo
+   * ganador sin abortar la transacción.
+   */
+  private CalcDtos.CalcResult computeSingle(
+      String userId, String category, String idempotencyKey, Supplier<PreparedCalc> preparer) {
+    UUID userUuid = tokenUtil.normalizeUserIdToUuid(userId);
+
     // 1) Idempotencia: si ya existe, devolvemos el mismo calcId y resultado
-    var exist = jdbc.query("""
-        select id::text, result_kg_co2e, factor_hash
-        from calculation
-        where user_id = ?::uuid
-          and category = 'electricidad'
-          and input_json->>'idempotencyKey' = ?
-        limit 1
+    CalcDtos.CalcResult existing = idempotencyStore.find(userUuid, category, idempotencyKey);
+    if (existing != null) {
+      logger.debug("Cálculo idempotente encontrado - calcId: {}, category: {}", existing.calcId(), category);
+      return existing;
+    }
+
+    // 2) Factor + emisiones + JSON de entrada
+    PreparedCalc calc = preparer.get();
+
+    // 3) Persistencia del cálculo + snapshot del factor para trazabilidad
+    UUID calcId = UUID.randomUUID();
+    if (!insertCalculation(calcId, userUuid, calc)) {
+      // Carrera: otro proceso insertó primero con (user_id, category, idempotencyKey)
+      CalcDtos.CalcResult winner = idempotencyStore.find(userUuid, category, idempotencyKey);
+      if (winner == null) {
+        throw new IllegalStateException(
+            "Idempotency race detected but existing row not found for userId="
+                + userId + " idem=" + idempotencyKey);
+      }
+      return winner;
+    }
+
+    // XP, racha, misiones y leaderboard se aplican desde el outbox (CalculationOutboxProcessor)
+    CalcDtos.CalcResult result = new CalcDtos.CalcResult(calcId.toString(), calc.kg(), calc.factorHash());
+    idempotencyStore.rememberAfterCommit(userUuid, category, idempotencyKey, result);
+    summaryCache.invalidateAfterCommit(userUuid);
+    return result;
+  }
+
+  /**
+   * Procesa un lote mixto de cálculos en una sola transacción.
+   *
+   * - Resuelve cada factor una sola vez por clave distinta del lote.
+   * - Una sola consulta de idempotencia para todas las claves.
+   * - Inserta calculation, calculation_audit y calculation_outbox con JDBC batch.
+   * - El worker del outbox agrupa por usuario, así el XP del lote se otorga en una sola transacción de XP.
+   *
+   * Los items inválidos o sin factor vigente se reportan como ERROR sin abortar el resto.
+   */
+  @Override
+  @Transactional
+  public CalcDtos.BatchResult computeBatch(String userId, java.util.List<CalcDtos.BatchItem> items) {
+    if (userId == null || userId.isBlank()) {
+      throw new IllegalArgumentException("userId es requerido para computar un lote");
+    }
+    if (items == null || items.isEmpty()) {
+      throw new IllegalArgumentException("El lote no puede estar vacío");
+    }
+
+    UUID userUuid = tokenUtil.normalizeUserIdToUuid(userId);
+    int n = items.size();
+    CalcDtos.BatchItemResult[] results = new CalcDtos.BatchItemResult[n];
+    PreparedCalc[] prepared = new PreparedCalc[n];
+    Map<String, Optional<FactorIndex.ResolvedFactor>> factorMemo = new HashMap<>();
+
+    logger.debug("Iniciando lote de cálculos - userId: {}, items: {}", userId, n);
+
+    // 1) Preparar en memoria: validación, factor (memoizado por clave) y emisiones
+    for (int i = 0; i < n; i++) {
+      CalcDtos.BatchItem item = items.get(i);
+      try {
+        prepared[i] = prepareBatchItem(item, factorMemo);
+      } catch (IllegalArgumentException | IllegalStateException | java.time.DateTimeException e) {
+        logger.warn("Item {} del lote rechazado - tipo: {}, motivo: {}", i, item.type(), e.getMessage());
+        results[i] = new CalcDtos.BatchItemResult(i, item.type(), "ERROR", null, e.getMessage());
+      }
+    }
+
+    // 2) Idempotencia: una sola consulta para todas las claves del lote
+    java.util.List<Map.Entry<String, String>> batchKeys = new ArrayList<>();
+    for (PreparedCalc calc : prepared) {
+      if (calc != null) {
+        batchKeys.add(Map.entry(calc.category(), calc.idempotencyKey()));
+      }
+    }
+    Map<String, CalcDtos.CalcResult> existing = idempotencyStore.findAll(userUuid, batchKeys);
+
+    // 3) Clasificar: idempotentes, nuevos y duplicados dentro del mismo lote
+    java.util.List<Integer> toInsert = new ArrayList<>();
+    Map<String, Integer> firstInBatch = new HashMap<>();
+    Map<Integer, Integer> duplicateOf = new HashMap<>();
+    UUID[] calcIds = new UUID[n];
+
+    for (int i = 0; i < n; i++) {
+      PreparedCalc calc = prepared[i];
+      if (calc == null) {
+        continue;
+      }
+      String key = CalcIdempotencyStore.keyOf(calc.category(), calc.idempotencyKey());
+      CalcDtos.CalcResult prev = existing.get(key);
+      if (prev != null) {
+        results[i] = new CalcDtos.BatchItemResult(i, items.get(i).type(), "IDEMPOTENT", prev, null);
+      } else if (firstInBatch.containsKey(key)) {
+        duplicateOf.put(i, firstInBatch.get(key));
+      } else {
+        firstInBatch.put(key, i);
+        calcIds[i] = UUID.randomUUID();
+        toInsert.add(i);
+      }
+    }
+
+    // 4) Inserción por lotes; ON CONFLICT cubre carreras con otros procesos
+    int[][] counts = jdbc.batchUpdate("""
+        insert into calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash, idempotency_key)
+        values (?::uuid, ?::uuid, ?, cast(? as jsonb), ?, ?, ?)
+        on conflict do nothing
         """,
-        ps -> {
-          ps.setObject(1, tokenUtil.normalizeUserIdToUuid(in.userId()));
-          ps.setString(2, in.idempotencyKey());
-        },
-        rs -> rs.next()
-            ? Map.of(
-                "id", rs.getString(1),
-                "kg", rs.getBigDecimal(2),
-                "hash", rs.getString(3)
-              )
-            : null
+        toInsert,
+        JDBC_BATCH_SIZE,
+        (ps, i) -> {
+          PreparedCalc calc = prepared[i];
+          ps.setObject(1, calcIds[i]);
+          ps.setObject(2, userUuid);
+          ps.setString(3, calc.category());
+          ps.setString(4, calc.inputJson());
+          ps.setDouble(5, calc.kg());
+          ps.setString(6, calc.factorHash());
+          ps.setString(7, calc.idempotencyKey());
+        }
     );
 
-    if (exist != null) {
-      logger.debug("Cálculo idempotente encontrado - calcId: {}", exist.get("id"));
-      double kgPrev = ((BigDecimal) exist.get("kg")).doubleValue();
-      return new CalcDtos.CalcResult((String) exist.get("id"), kgPrev, (String) exist.get("hash"));
+    java.util.List<Integer> inserted = new ArrayList<>(toInsert.size());
+    int pos = 0;
+    for (int[] chunk : counts) {
+      for (int count : chunk) {
+        int i = toInsert.get(pos++);
+        if (count == 0) {
+          // Otro proceso insertó la misma clave entre la consulta y el insert
+          CalcDtos.CalcResult raced = idempotencyStore.find(
+              userUuid, prepared[i].category(), prepared[i].idempotencyKey());
+          results[i] = new CalcDtos.BatchItemResult(i, items.get(i).type(), "IDEMPOTENT", raced, null);
+        } else {
+          inserted.add(i);
+        }
+      }
     }
 
-    // 2) Selección de factor por país/periodo con fallback nacional
+    jdbc.batchUpdate(AUDIT_AND_OUTBOX_SQL, inserted, JDBC_BATCH_SIZE,
+        (ps, i) -> bindAuditAndOutbox(ps, calcIds[i], userUuid, prepared[i]));
+
+    double totalKg = 0.0;
+    for (int i : inserted) {
+      CalcDtos.CalcResult result = new CalcDtos.CalcResult(
+          calcIds[i].toString(), prepared[i].kg(), prepared[i].factorHash());
+      results[i] = new CalcDtos.BatchItemResult(i, items.get(i).type(), "CREATED", result, null);
+      idempotencyStore.rememberAfterCommit(userUuid, prepared[i].category(), prepared[i].idempotencyKey(), result);
+      totalKg += prepared[i].kg();
+    }
+    if (!inserted.isEmpty()) {
+      summaryCache.invalidateAfterCommit(userUuid);
+    }
+    duplicateOf.forEach((i, first) -> results[i] = new CalcDtos.BatchItemResult(
+        i, items.get(i).type(), "IDEMPOTENT", results[first].result(), null));
+
+    int idempotent = 0;
+    int failed = 0;
+    for (CalcDtos.BatchItemResult r : results) {
+      if ("IDEMPOTENT".equals(r.status())) idempotent++;
+      else if ("ERROR".equals(r.status())) failed++;
+    }
+
+    logger.info("Lote de cálculos procesado - userId: {}, nuevos: {}, idempotentes: {}, errores: {}, total: {} kgCO2e",
+        userId, inserted.size(), idempotent, failed, totalKg);
+
+    return new CalcDtos.BatchResult(java.util.List.of(results), inserted.size(), idempotent, failed, totalKg);
+  }
+
+  // =========================================================================
+  // Preparación y persistencia compartidas (individual y lote)
+  // =========================================================================
+
+  /**
+   * Cálculo ya resuelto (factor, emisiones y JSON de entrada), listo para persistir.
+   */
+  private record PreparedCalc(
+      String category,
+      String idempotencyKey,
+      double kg,
+      String factorHash,
+      Map<String, Object> inputMap,
+      String inputJson,
+      String factorSnapshot
+  ) {}
+
+  private PreparedCalc prepareBatchItem(
+      CalcDtos.BatchItem item, Map<String, Optional<FactorIndex.ResolvedFactor>> factorMemo) {
+    if (item == null || item.type() == null) {
+      throw new IllegalArgumentException("type es requerido para cada item del lote");
+    }
+    return switch (item.type()) {
+      case "electricity" -> {
+        var in = requireBatchInput(item.electricity(), item.type());
+        requireIdempotencyKey(in.idempotencyKey());
+        yield prepareElectricity(in, factorMemo);
+      }
+      case "transport" -> {
+        var in = requireBatchInput(item.transport(), item.type());
+        requireIdempotencyKey(in.idempotencyKey());
+        yield prepareTransport(in, factorMemo);
+      }
+      case "waste" -> {
+        var in = requireBatchInput(item.waste(), item.type());
+        requireIdempotencyKey(in.idempotencyKey());
+        if (in.wasteItems() == null || in.wasteItems().isEmpty()) {
+          throw new IllegalArgumentException("wasteItems no puede estar vacío");
+        }
+        if (in.disposalMethod() == null || in.disposalMethod().isBlank()) {
+          in = new CalcDtos.WasteInput(in.wasteItems(), "mixed", in.country(), in.period(),
+              in.idempotencyKey(), in.userId());
+        }
+        yield prepareWaste(in, factorMemo);
+      }
+      default -> throw new IllegalArgumentException("Tipo de cálculo no soportado en lote: " + item.type());
+    };
+  }
+
+  private static <T> T requireBatchInput(T input, String type) {
+    if (input == null) {
+      throw new IllegalArgumentException("Falta el objeto '" + type + "' para el item de tipo " + type);
+    }
+    return input;
+  }
+
+  private static void requireIdempotencyKey(String idempotencyKey) {
+    if (idempotencyKey == null || idempotencyKey.isBlank()) {
+      throw new IllegalArgumentException("idempotencyKey es requerido para cada item del lote");
+    }
+  }
+
+  private PreparedCalc prepareElectricity(
+      CalcDtos.ElectricityInput in, Map<String, Optional<FactorIndex.ResolvedFactor>> factorMemo) {
     // period = YYYY-MM -> usamos día 1 para evaluar vigencia (valid_from/valid_to)
     YearMonth ym = YearMonth.parse(in.period()); // ya validado por DTO
     LocalDate atDate = ym.atDay(1);
 
-    var row = jdbc.query("""
-        select ef.value, fv.hash
-        from emission_factor ef
-        join factor_version fv on fv.id = ef.version_id
-        where ef.category = 'electricidad'
-          and (ef.country = ? or ef.country is null)
-          and fv.valid_from <= ?::date
-          and (fv.valid_to is null or fv.valid_to >= ?::date)
-        order by
-          case when ef.country = ? then 0 else 1 end, -- país exacto primero
-          fv.valid_from desc                           -- luego el más vigente
-        limit 1
-        """,
-        ps -> {
-          ps.setString(1, in.country());  // prioridad por país exacto
-          ps.setObject(2, atDate);        // corte de vigencia
-          ps.setObject(3, atDate);
-          ps.setString(4, in.country());  // para el ORDER BY
-        },
-        rs -> rs.next()
-            ? Map.of("value", rs.getBigDecimal(1),
-                     "hash",  rs.getString(2))
-            : null
-    );
+    // País exacto primero, luego factor nacional; el más vigente (índice en memoria)
+    var row = lookupFactor(factorMemo, "electricidad", null, in.country(), atDate, false);
 
     if (row == null) {
       // No hay factor ni nacional ni específico -> señaliza con 422 (mapea en tu GlobalExceptionHandler)
@@ -138,15 +380,10 @@ public class CalcServiceImpl implements CalcService {
           + " period=" + in.period() + " (ni fallback nacional)");
     }
 
-    double factor = ((BigDecimal) row.get("value")).doubleValue();
-    String factorHash = (String) row.get("hash");
+    double factor = row.value().doubleValue();
+    String factorHash = row.hash();
     double kg = in.kwh() * factor;
 
-    // 3) Persistencia del cálculo + snapshot del factor para trazabilidad
-    UUID calcId = UUID.randomUUID();
-
-    // Construir JSON de entrada con ObjectMapper para manejar correctamente las listas
-    ObjectMapper mapper = new ObjectMapper();
     java.util.Map<String, Object> inputMap = new java.util.HashMap<>();
     inputMap.put("kwh", in.kwh());
     inputMap.put("country", in.country());
@@ -155,131 +392,25 @@ public class CalcServiceImpl implements CalcService {
     inputMap.put("selectedAppliances", in.selectedAppliances() != null ? in.selectedAppliances() : java.util.Collections.emptyList());
     inputMap.put("career", in.career() != null ? in.career() : "");
     inputMap.put("schedule", in.schedule() != null ? in.schedule() : "");
-    
-    String inputJson;
-    try {
-      inputJson = mapper.writeValueAsString(inputMap);
-    } catch (Exception e) {
-      throw new RuntimeException("Error serializando input JSON", e);
-    }
-
-    try {
-      jdbc.update("""
-          insert into calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash)
-          values (?::uuid, ?::uuid, 'electricidad', cast(? as jsonb), ?, ?)
-          """,
-          calcId,
-          tokenUtil.normalizeUserIdToUuid(in.userId()),
-          inputJson,
-          kg,
-          factorHash
-      );
-
-      String factorSnapshot = """
-        {"category":"electricidad","value": %s, "unit":"kgCO2e/kWh", "hash":"%s"}
-        """.formatted(Double.toString(factor), factorHash);
-
-      jdbc.update("""
-          insert into calculation_audit (id, calculation_id, factor_snapshot)
-          values (?::uuid, ?::uuid, cast(? as jsonb))
-          """,
-          UUID.randomUUID(), calcId, factorSnapshot
-      );
-
-      // Otorgar XP por completar cálculo
-      try {
-        gamificationService.awardXP(in.userId(), 10, "CALCULATION");
-        logger.debug("XP otorgado exitosamente para cálculo de electricidad - userId: {}", in.userId());
-      } catch (Exception e) {
-        logger.warn("Error otorgando XP para cálculo de electricidad - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la gamificación
-      }
-
-      // Publicar evento de cálculo completado para actualizar misiones automáticamente
-      try {
-        CalculationCompletedEvent event = new CalculationCompletedEvent(
-                this,
-                tokenUtil.normalizeUserIdToUuid(in.userId()),
-                calcId.toString(),
-                "electricidad",
-                BigDecimal.valueOf(kg),
-                inputMap,
-                LocalDateTime.now()
-        );
-        eventPublisher.publishEvent(event);
-        logger.info("🎯 Evento CalculationCompleted publicado para cálculo de electricidad - userId: {}, category: electricidad", in.userId());
-      } catch (Exception e) {
-        logger.error("❌ Error publicando evento de cálculo completado - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la publicación del evento
-      }
 
-      return new CalcDtos.CalcResult(calcId.toString(), kg, factorHash);
+    String factorSnapshot = """
+      {"category":"electricidad","value": %s, "unit":"kgCO2e/kWh", "hash":"%s"}
+      """.formatted(Double.toString(factor), factorHash);
 
-    } catch (DataIntegrityViolationException dup) {
-      // Carrera: otro proceso insertó primero con (user_id, idempotencyKey)
-      try {
-        var again = jdbc.queryForMap("""
-            select id::text, result_kg_co2e, factor_hash
-            from calculation
-            where user_id = ?::uuid
-              and category = 'electricidad'
-              and input_json->>'idempotencyKey' = ?
-            limit 1
-            """,
-            tokenUtil.normalizeUserIdToUuid(in.userId()), in.idempotencyKey()
-        );
-        double kg2 = ((BigDecimal) again.get("result_kg_co2e")).doubleValue();
-        return new CalcDtos.CalcResult(
-            (String) again.get("id"),
-            kg2,
-            (String) again.get("factor_hash")
-        );
-      } catch (EmptyResultDataAccessException notFound) {
-        throw new IllegalStateException(
-            "Idempotency race detected but existing row not found for userId="
-                + in.userId() + " idem=" + in.idempotencyKey(), dup);
-      }
-    }
+    return new PreparedCalc("electricidad", in.idempotencyKey(), kg, factorHash,
+        inputMap, toJson(inputMap), factorSnapshot);
   }
 
-  @Override
-  @Transactional
-  public CalcDtos.CalcResult computeTransport(CalcDtos.TransportInput in) {
-    // 1) Idempotencia: si ya existe, devolvemos el mismo calcId y resultado
-    var exist = jdbc.query("""
-        select id::text, result_kg_co2e, factor_hash
-        from calculation
-        where user_id = ?::uuid
-          and category = 'transporte'
-          and input_json->>'idempotencyKey' = ?
-        limit 1
-        """,
-        ps -> {
-          ps.setObject(1, tokenUtil.normalizeUserIdToUuid(in.userId()));
-          ps.setString(2, in.idempotencyKey());
-        },
-        rs -> rs.next()
-            ? Map.of(
-                "id", rs.getString(1),
-                "kg", rs.getBigDecimal(2),
-                "hash", rs.getString(3)
-              )
-            : null
-    );
-
-    if (exist != null) {
-      double kgPrev = ((BigDecimal) exist.get("kg")).doubleValue();
-      return new CalcDtos.CalcResult((String) exist.get("id"), kgPrev, (String) exist.get("hash"));
-    }
-
-    // 2) Determinar subcategoría según modo de transporte y tipo de combustible
+  private PreparedCalc prepareTransport(
+      CalcDtos.TransportInput in, Map<String, Optional<FactorIndex.ResolvedFactor>> factorMemo) {
+    // Determinar subcategoría según modo de transporte y tipo de combustible
     String subcategory;
     String transportMode = in.transportMode();
     String fuelType = in.fuelType();
-    
-    logger.debug("Procesando transporte - modo: '{}', fuelType: '{}', periodo: '{}'", 
+
+    logger.debug("Procesando transporte - modo: '{}', fuelType: '{}', periodo: '{}'",
         transportMode, fuelType, in.period());
-    
+
     if ("car".equals(transportMode)) {
       subcategory = "auto_" + mapFuelTypeToSpanish(fuelType);
     } else if ("motorcycle".equals(transportMode)) {
@@ -298,90 +429,46 @@ public class CalcServiceImpl implements CalcService {
       logger.error("Modo de transporte no válido: '{}'", transportMode);
       throw new IllegalStateException("Modo de transporte no válido: " + transportMode);
     }
-    
+
     logger.info("Buscando factor de emisión - subcategoría: '{}', periodo: '{}'", subcategory, in.period());
 
-    // 3) Selección de factor por subcategoría
+    // Selección de factor por subcategoría
     YearMonth ym = YearMonth.parse(in.period());
     LocalDate atDate = ym.atDay(1);
-    
+
     logger.debug("Fecha de vigencia evaluada: {}", atDate);
 
-    var row = jdbc.query("""
-        select ef.value, fv.hash, ef.subcategory, fv.valid_from, fv.valid_to
-        from emission_factor ef
-        join factor_version fv on fv.id = ef.version_id
-        where ef.category = 'transporte'
-          and ef.subcategory = ?
-          and fv.valid_from <= ?::date
-          and (fv.valid_to is null or fv.valid_to >= ?::date)
-        order by fv.valid_from desc
-        limit 1
-        """,
-        ps -> {
-          ps.setString(1, subcategory);
-          ps.setObject(2, atDate);
-          ps.setObject(3, atDate);
-        },
-        rs -> {
-          if (rs.next()) {
-            return Map.of(
-                "value", rs.getBigDecimal(1),
-                "hash", rs.getString(2),
-                "subcategory", rs.getString(3),
-                "valid_from", rs.getObject(4, LocalDate.class),
-                "valid_to", rs.getObject(5, LocalDate.class)
-            );
-          }
-          return null;
-        }
-    );
+    var row = lookupFactor(factorMemo, "transporte", subcategory, null, atDate, true);
 
     if (row == null) {
-      // Intentar buscar qué subcategorías existen para debugging
-      java.util.List<String> availableSubcategories = jdbc.query("""
-          select distinct ef.subcategory
-          from emission_factor ef
-          join factor_version fv on fv.id = ef.version_id
-          where ef.category = 'transporte'
-            and fv.valid_from <= ?::date
-            and (fv.valid_to is null or fv.valid_to >= ?::date)
-          order by ef.subcategory
-          """,
-          (rs, rowNum) -> rs.getString(1),
-          atDate
-      );
-      
-      logger.error("No se encontró factor vigente para transporte - subcategoría buscada: '{}', periodo: '{}', fecha evaluada: '{}'", 
+      // Listar qué subcategorías existen para debugging
+      java.util.List<String> availableSubcategories = factorEngine.availableSubcategories("transporte", atDate);
+
+      logger.error("No se encontró factor vigente para transporte - subcategoría buscada: '{}', periodo: '{}', fecha evaluada: '{}'",
           subcategory, in.period(), atDate);
       logger.error("Subcategorías disponibles en la base de datos: {}", availableSubcategories);
-      
+
       String errorMsg = String.format(
           "No hay factor vigente para transporte: %s periodo=%s. Subcategorías disponibles: %s",
           subcategory, in.period(), availableSubcategories != null ? availableSubcategories : "ninguna");
       throw new IllegalStateException(errorMsg);
     }
-    
-    logger.debug("Factor encontrado - subcategoría: '{}', valor: {}, hash: {}, vigente desde: {}, hasta: {}", 
-        row.get("subcategory"), row.get("value"), row.get("hash"), row.get("valid_from"), row.get("valid_to"));
 
-    double factor = ((BigDecimal) row.get("value")).doubleValue();
-    String factorHash = (String) row.get("hash");
-    
-    // 4) Calcular emisiones base
+    logger.debug("Factor encontrado - subcategoría: '{}', valor: {}, hash: {}, vigente desde: {}, hasta: {}",
+        row.subcategory(), row.value(), row.hash(), row.validFrom(), row.validTo());
+
+    double factor = row.value().doubleValue();
+    String factorHash = row.hash();
+
+    // Calcular emisiones base
     double kgBase = in.distance() * factor;
-    
-    // 5) Ajustar por ocupación (dividir emisiones entre pasajeros)
+
+    // Ajustar por ocupación (dividir emisiones entre pasajeros)
     double kg = kgBase;
     if (in.occupancy() != null && in.occupancy() > 0) {
       kg = kgBase / in.occupancy();
     }
 
-    // 6) Persistencia del cálculo
-    UUID calcId = UUID.randomUUID();
-
-    // Construir JSON de entrada
-    ObjectMapper mapper = new ObjectMapper();
     java.util.Map<String, Object> inputMap = new java.util.HashMap<>();
     inputMap.put("distance", in.distance());
     inputMap.put("transportMode", in.transportMode());
@@ -397,138 +484,16 @@ public class CalcServiceImpl implements CalcService {
     if (in.originAddress() != null) inputMap.put("originAddress", in.originAddress());
     if (in.destinationAddress() != null) inputMap.put("destinationAddress", in.destinationAddress());
 
-    String inputJson;
-    try {
-      inputJson = mapper.writeValueAsString(inputMap);
-    } catch (Exception e) {
-      throw new RuntimeException("Error serializando input JSON", e);
-    }
-
-    try {
-      jdbc.update("""
-          insert into calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash)
-          values (?::uuid, ?::uuid, 'transporte', cast(? as jsonb), ?, ?)
-          """,
-          calcId,
-          tokenUtil.normalizeUserIdToUuid(in.userId()),
-          inputJson,
-          kg,
-          factorHash
-      );
-
-      String factorSnapshot = String.format(
-          "{\"category\":\"transporte\",\"subcategory\":\"%s\",\"value\":%s,\"unit\":\"kgCO2e/km\",\"hash\":\"%s\"}",
-          subcategory, Double.toString(factor), factorHash);
-
-      jdbc.update("""
-          insert into calculation_audit (id, calculation_id, factor_snapshot)
-          values (?::uuid, ?::uuid, cast(? as jsonb))
-          """,
-          UUID.randomUUID(), calcId, factorSnapshot
-      );
-
-      // Otorgar XP por completar cálculo
-      try {
-        gamificationService.awardXP(in.userId(), 10, "CALCULATION");
-        logger.debug("XP otorgado exitosamente para cálculo de transporte - userId: {}", in.userId());
-      } catch (Exception e) {
-        logger.warn("Error otorgando XP para cálculo de transporte - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la gamificación
-      }
-
-      // Publicar evento de cálculo completado para actualizar misiones automáticamente
-      try {
-        CalculationCompletedEvent event = new CalculationCompletedEvent(
-                this,
-                tokenUtil.normalizeUserIdToUuid(in.userId()),
-                calcId.toString(),
-                "transporte",
-                BigDecimal.valueOf(kg),
-                inputMap,
-                LocalDateTime.now()
-        );
-        eventPublisher.publishEvent(event);
-        logger.info("🎯 Evento CalculationCompleted publicado para cálculo de transporte - userId: {}, category: transporte", in.userId());
-      } catch (Exception e) {
-        logger.error("❌ Error publicando evento de cálculo completado - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la publicación del evento
-      }
-
-      return new CalcDtos.CalcResult(calcId.toString(), kg, factorHash);
+    String factorSnapshot = String.format(
+        "{\"category\":\"transporte\",\"subcategory\":\"%s\",\"value\":%s,\"unit\":\"kgCO2e/km\",\"hash\":\"%s\"}",
+        subcategory, Double.toString(factor), factorHash);
 
-    } catch (DataIntegrityViolationException dup) {
-      // Carrera: otro proceso insertó primero
-      try {
-        var again = jdbc.queryForMap("""
-            select id::text, result_kg_co2e, factor_hash
-            from calculation
-            where user_id = ?::uuid
-              and category = 'transporte'
-              and input_json->>'idempotencyKey' = ?
-            limit 1
-            """,
-            tokenUtil.normalizeUserIdToUuid(in.userId()), in.idempotencyKey()
-        );
-        double kg2 = ((BigDecimal) again.get("result_kg_co2e")).doubleValue();
-        return new CalcDtos.CalcResult(
-            (String) again.get("id"),
-            kg2,
-            (String) again.get("factor_hash")
-        );
-      } catch (EmptyResultDataAccessException notFound) {
-        throw new IllegalStateException(
-            "Idempotency race detected but existing row not found for userId="
-                + in.userId() + " idem=" + in.idempotencyKey(), dup);
-      }
-    }
+    return new PreparedCalc("transporte", in.idempotencyKey(), kg, factorHash,
+        inputMap, toJson(inputMap), factorSnapshot);
   }
 
-  @Override
-  @Transactional
-  public CalcDtos.CalcResult computeWaste(CalcDtos.WasteInput in) {
-    // Validación de entrada
-    if (in.userId() == null || in.userId().isBlank()) {
-      throw new IllegalArgumentException("userId es requerido para computar residuos");
-    }
-    if (in.idempotencyKey() == null || in.idempotencyKey().isBlank()) {
-      throw new IllegalArgumentException("idempotencyKey es requerido para computar residuos");
-    }
-    if (in.wasteItems() == null || in.wasteItems().isEmpty()) {
-      throw new IllegalArgumentException("wasteItems no puede estar vacío");
-    }
-
-    logger.debug("Iniciando cálculo de residuos - userId: {}, items: {}, disposalMethod: {}, country: {}, period: {}",
-        in.userId(), in.wasteItems().size(), in.disposalMethod(), in.country(), in.period());
-
-    // 1) Idempotencia: si ya existe, devolvemos el mismo calcId y resultado
-    var exist = jdbc.query("""
-        select id::text, result_kg_co2e, factor_hash
-        from calculation
-        where user_id = ?::uuid
-          and category = 'residuos'
-          and input_json->>'idempotencyKey' = ?
-        limit 1
-        """,
-        ps -> {
-          ps.setObject(1, tokenUtil.normalizeUserIdToUuid(in.userId()));
-          ps.setString(2, in.idempotencyKey());
-        },
-        rs -> rs.next()
-            ? Map.of(
-                "id", rs.getString(1),
-                "kg", rs.getBigDecimal(2),
-                "hash", rs.getString(3)
-              )
-            : null
-    );
-
-    if (exist != null) {
-      logger.debug("Cálculo idempotente encontrado - calcId: {}", exist.get("id"));
-      double kgPrev = ((BigDecimal) exist.get("kg")).doubleValue();
-      return new CalcDtos.CalcResult((String) exist.get("id"), kgPrev, (String) exist.get("hash"));
-    }
-
-    // 2) Calcular emisiones para cada tipo de residuo
+  private PreparedCalc prepareWaste(
+      CalcDtos.WasteInput in, Map<String, Optional<FactorIndex.ResolvedFactor>> factorMemo) {
     YearMonth ym = YearMonth.parse(in.period());
     LocalDate atDate = ym.atDay(1);
 
@@ -544,36 +509,8 @@ public class CalcServiceImpl implements CalcService {
 
       logger.debug("Buscando factor de emisión - subcategoría: '{}', periodo: '{}'", subcategory, in.period());
 
-      // Buscar factor de emisión específico
-      var row = jdbc.query("""
-          select ef.value, fv.hash, ef.subcategory
-          from emission_factor ef
-          join factor_version fv on fv.id = ef.version_id
-          where ef.category = 'residuos'
-            and ef.subcategory = ?
-            and (ef.country = ? or ef.country is null)
-            and fv.valid_from <= ?::date
-            and (fv.valid_to is null or fv.valid_to >= ?::date)
-          order by
-            case when ef.country = ? then 0 else 1 end, -- país exacto primero
-            fv.valid_from desc
-          limit 1
-          """,
-          ps -> {
-            ps.setString(1, subcategory);
-            ps.setString(2, in.country());
-            ps.setObject(3, atDate);
-            ps.setObject(4, atDate);
-            ps.setString(5, in.country());
-          },
-          rs -> rs.next()
-              ? Map.of(
-                  "value", rs.getBigDecimal(1),
-                  "hash", rs.getString(2),
-                  "subcategory", rs.getString(3)
-                )
-              : null
-      );
+      // País exacto primero, luego factor nacional (índice en memoria)
+      var row = lookupFactor(factorMemo, "residuos", subcategory, in.country(), atDate, false);
 
       if (row == null) {
         logger.error("No se encontró factor vigente para residuos - subcategoría: '{}', periodo: '{}'",
@@ -584,8 +521,8 @@ public class CalcServiceImpl implements CalcService {
             " periodo=" + in.period());
       }
 
-      double factor = ((BigDecimal) row.get("value")).doubleValue();
-      String factorHash = (String) row.get("hash");
+      double factor = row.value().doubleValue();
+      String factorHash = row.hash();
       double itemKg = item.weightKg() * factor;
 
       totalKg += itemKg;
@@ -605,16 +542,9 @@ public class CalcServiceImpl implements CalcService {
           item.wasteType(), item.weightKg(), factor, itemKg);
     }
 
-    // 3) Hash combinado de factores
+    // Hash combinado de factores
     String combinedHash = String.join("+", factorHashesUsed);
 
-    logger.info("Cálculo de residuos completado - total emisiones: {} kgCO2e", totalKg);
-
-    // 4) Persistencia del cálculo
-    UUID calcId = UUID.randomUUID();
-
-    // Construir JSON de entrada
-    ObjectMapper mapper = new ObjectMapper();
     java.util.Map<String, Object> inputMap = new java.util.HashMap<>();
 
     // Convertir wasteItems a formato serializable
@@ -633,95 +563,81 @@ public class CalcServiceImpl implements CalcService {
     inputMap.put("idempotencyKey", in.idempotencyKey());
     inputMap.put("breakdown", detailedBreakdown);
 
-    String inputJson;
-    try {
-      inputJson = mapper.writeValueAsString(inputMap);
-    } catch (Exception e) {
-      throw new RuntimeException("Error serializando input JSON", e);
-    }
+    // Snapshot para auditoría
+    String factorSnapshot = String.format(
+        "{\"category\":\"residuos\",\"disposalMethod\":\"%s\",\"breakdown\":%s,\"hash\":\"%s\"}",
+        in.disposalMethod(),
+        toJson(detailedBreakdown),
+        combinedHash
+    );
 
-    try {
-      jdbc.update("""
-          insert into calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash)
-          values (?::uuid, ?::uuid, 'residuos', cast(? as jsonb), ?, ?)
-          """,
-          calcId,
-          tokenUtil.normalizeUserIdToUuid(in.userId()),
-          inputJson,
-          totalKg,
-          combinedHash
-      );
-
-      // Snapshot para auditoría
-      String factorSnapshot = String.format(
-          "{\"category\":\"residuos\",\"disposalMethod\":\"%s\",\"breakdown\":%s,\"hash\":\"%s\"}",
-          in.disposalMethod(),
-          mapper.writeValueAsString(detailedBreakdown),
-          combinedHash
-      );
-
-      jdbc.update("""
-          insert into calculation_audit (id, calculation_id, factor_snapshot)
-          values (?::uuid, ?::uuid, cast(? as jsonb))
-          """,
-          UUID.randomUUID(), calcId, factorSnapshot
-      );
-
-      // Otorgar XP por completar cálculo
-      try {
-        gamificationService.awardXP(in.userId(), 10, "CALCULATION");
-        logger.debug("XP otorgado exitosamente para cálculo de residuos - userId: {}", in.userId());
-      } catch (Exception e) {
-        logger.warn("Error otorgando XP para cálculo de residuos - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la gamificación
-      }
+    return new PreparedCalc("residuos", in.idempotencyKey(), totalKg, combinedHash,
+        inputMap, toJson(inputMap), factorSnapshot);
+  }
 
-      // Publicar evento de cálculo completado para actualizar misiones automáticamente
-      try {
-        CalculationCompletedEvent event = new CalculationCompletedEvent(
-                this,
-                tokenUtil.normalizeUserIdToUuid(in.userId()),
-                calcId.toString(),
-                "residuos",
-                BigDecimal.valueOf(totalKg),
-                inputMap,
-                LocalDateTime.now()
-        );
-        eventPublisher.publishEvent(event);
-        logger.info("🎯 Evento CalculationCompleted publicado para cálculo de residuos - userId: {}, category: residuos", in.userId());
-      } catch (Exception e) {
-        logger.error("❌ Error publicando evento de cálculo completado - userId: {}", in.userId(), e);
-        // No fallar el cálculo si falla la publicación del evento
-      }
+  /**
+   * Busca el factor en el motor en memoria; con memo (lote) cada clave se resuelve una sola vez.
+   */
+  private FactorIndex.ResolvedFactor lookupFactor(
+      Map<String, Optional<FactorIndex.ResolvedFactor>> memo,
+      String category, String subcategory, String country, LocalDate atDate, boolean anyCountry) {
+    if (memo == null) {
+      return resolveFactor(category, subcategory, country, atDate, anyCountry).orElse(null);
+    }
+    String key = category + '|' + subcategory + '|' + (anyCountry ? "*" : country) + '|' + atDate;
+    return memo.computeIfAbsent(key, k -> resolveFactor(category, subcategory, country, atDate, anyCountry))
+        .orElse(null);
+  }
 
-      return new CalcDtos.CalcResult(calcId.toString(), totalKg, combinedHash);
+  private Optional<FactorIndex.ResolvedFactor> resolveFactor(
+      String category, String subcategory, String country, LocalDate atDate, boolean anyCountry) {
+    return anyCountry
+        ? factorEngine.resolveAnyCountry(category, subcategory, atDate)
+        : factorEngine.resolve(category, subcategory, country, atDate);
+  }
 
-    } catch (DataIntegrityViolationException dup) {
-      // Race condition: otro proceso insertó primero
-      try {
-        var again = jdbc.queryForMap("""
-            select id::text, result_kg_co2e, factor_hash
-            from calculation
-            where user_id = ?::uuid
-              and category = 'residuos'
-              and input_json->>'idempotencyKey' = ?
-            limit 1
-            """,
-            tokenUtil.normalizeUserIdToUuid(in.userId()), in.idempotencyKey()
-        );
-        double kg2 = ((BigDecimal) again.get("result_kg_co2e")).doubleValue();
-        return new CalcDtos.CalcResult(
-            (String) again.get("id"),
-            kg2,
-            (String) again.get("factor_hash")
-        );
-      } catch (EmptyResultDataAccessException notFound) {
-        throw new IllegalStateException(
-            "Idempotency race detected but existing row not found for userId="
-                + in.userId() + " idem=" + in.idempotencyKey(), dup);
-      }
+  /**
+   * Inserta el cálculo, su snapshot de auditoría y la fila de outbox de efectos secundarios.
+   *
+   * @return false si la clave de idempotencia ya existía (no se insertó nada)
+   */
+  private boolean insertCalculation(UUID calcId, UUID userUuid, PreparedCalc calc) {
+    int inserted = jdbc.update("""
+        insert into calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash, idempotency_key)
+        values (?::uuid, ?::uuid, ?, cast(? as jsonb), ?, ?, ?)
+        on conflict do nothing
+        """,
+        calcId,
+        userUuid,
+        calc.category(),
+        calc.inputJson(),
+        calc.kg(),
+        calc.factorHash(),
+        calc.idempotencyKey()
+    );
+    if (inserted == 0) {
+      return false;
+    }
+
+    jdbc.update(AUDIT_AND_OUTBOX_SQL, ps -> bindAuditAndOutbox(ps, calcId, userUuid, calc));
+    return true;
+  }
+
+  private static void bindAuditAndOutbox(
+      java.sql.PreparedStatement ps, UUID calcId, UUID userUuid, PreparedCalc calc) throws java.sql.SQLException {
+    ps.setObject(1, UUID.randomUUID());
+    ps.setObject(2, calcId);
+    ps.setString(3, calc.factorSnapshot());
+    ps.setObject(4, calcId);
+    ps.setObject(5, userUuid);
+    ps.setInt(6, XP_PER_CALCULATION);
+  }
+
+  private String toJson(Object value) {
+    try {
+      return objectMapper.writeValueAsString(value);
     } catch (Exception e) {
-      throw new RuntimeException("Error al persistir cálculo de residuos", e);
+      throw new RuntimeException("Error serializando input JSON", e);
     }
   }
 
@@ -740,6 +656,18 @@ public class CalcServiceImpl implements CalcService {
     };
   }
 
+  /**
+   * Historial de cálculos paginado por cursor (keyset) sobre (created_at, id) descendente.
+   *
+   * - Cada página es un rango del índice (user_id, created_at DESC, id DESC): el costo
+   *   no crece con la profundidad, a diferencia de LIMIT/OFFSET.
+   * - El filtro de subcategorías se aplica en SQL sobre la columna generada
+   *   subcategory_label (V25), antes de paginar.
+   * - El snapshot del factor se obtiene con un único DISTINCT ON sobre los ids de la página.
+   * - El COUNT(*) solo se ejecuta si se pide con {@code includeTotal}.
+   *
+   * Sin cursor, {@code page} se resuelve con OFFSET por compatibilidad con clientes antiguos.
+   */
   @Override
   public CalcDtos.CalcHistoryResponse getHistory(
       String userId,
@@ -750,10 +678,12 @@ public class CalcServiceImpl implements CalcService {
       LocalDate dateTo,
       Double emissionMin,
       Double emissionMax,
-      java.util.List<String> subcategories
+      java.util.List<String> subcategories,
+      String cursor,
+      boolean includeTotal
   ) {
     UUID userIdUuid = tokenUtil.normalizeUserIdToUuid(userId);
-    int offset = page * pageSize;
+    HistoryCursor after = (cursor != null && !cursor.isBlank()) ? HistoryCursor.decode(cursor) : null;
 
     // Construir condiciones WHERE dinámicamente
     StringBuilder whereClause = new StringBuilder("WHERE c.user_id = ?::uuid");
@@ -785,53 +715,77 @@ public class CalcServiceImpl implements CalcService {
       params.add(emissionMax);
     }
 
-    // Contar total
-    String countSql = "SELECT COUNT(*) FROM calculation c " + whereClause;
-    Long total = jdbc.queryForObject(countSql, Long.class, params.toArray());
-    
-    // Obtener registros paginados con información del factor de emisión
+    java.util.List<String> labels = subcategories == null ? java.util.List.of() : subcategories.stream()
+        .filter(sub -> sub != null && !sub.isBlank())
+        .distinct()
+        .toList();
+    if (!labels.isEmpty()) {
+      whereClause.append(" AND c.subcategory_label IN (")
+          .append(String.join(", ", java.util.Collections.nCopies(labels.size(), "?")))
+          .append(")");
+      params.addAll(labels);
+    }
+
+    // Total opcional (mismos filtros, sin cursor)
+    Long total = null;
+    if (includeTotal) {
+      total = jdbc.queryForObject("SELECT COUNT(*) FROM calculation c " + whereClause, Long.class, params.toArray());
+    }
+
+    java.util.List<Object> pageParams = new ArrayList<>(params);
+    String pagination;
+    if (after != null) {
+      whereClause.append(" AND (c.created_at, c.id) < (?, ?::uuid)");
+      pageParams.add(java.sql.Timestamp.valueOf(after.createdAt()));
+      pageParams.add(after.id());
+      pagination = "LIMIT ?";
+      pageParams.add(pageSize + 1);
+    } else {
+      pagination = "LIMIT ? OFFSET ?";
+      pageParams.add(pageSize + 1);
+      pageParams.add(Math.max(page, 0) * pageSize);
+    }
+
+    // Se pide un registro extra para saber si hay página siguiente
     String sql = """
-        SELECT
-          c.id::text,
-          c.category,
-          c.input_json,
-          c.result_kg_co2e,
-          c.created_at,
-          (
-            SELECT ca.factor_snapshot
-            FROM calculation_audit ca
-            WHERE ca.calculation_id = c.id
-            ORDER BY ca.created_at DESC
-            LIMIT 1
-          ) as factor_snapshot
-        FROM calculation c
+        WITH page AS (
+          SELECT c.id, c.category, c.subcategory_label, c.input_json, c.result_kg_co2e, c.created_at
+          FROM calculation c
         """ + whereClause + """
 
-        ORDER BY c.created_at DESC
-        LIMIT ? OFFSET ?
+          ORDER BY c.created_at DESC, c.id DESC
+        """ + pagination + """
+
+        ),
+        audit AS (
+          SELECT DISTINCT ON (ca.calculation_id) ca.calculation_id, ca.factor_snapshot
+          FROM calculation_audit ca
+          WHERE ca.calculation_id IN (SELECT id FROM page)
+          ORDER BY ca.calculation_id, ca.created_at DESC
+        )
+        SELECT p.id, p.category, p.subcategory_label, p.input_json, p.result_kg_co2e, p.created_at,
+               a.factor_snapshot
+        FROM page p
+        LEFT JOIN audit a ON a.calculation_id = p.id
+        ORDER BY p.created_at DESC, p.id DESC
         """;
-    
-    // Agregar parámetros de paginación
-    params.add(pageSize);
-    params.add(offset);
 
+    java.util.List<UUID> ids = new ArrayList<>();
     java.util.List<CalcDtos.CalcHistoryItem> items = jdbc.query(sql,
         (rs, rowNum) -> {
           try {
-            ObjectMapper mapper = new ObjectMapper();
-            Map<String, Object> input = mapper.readValue(rs.getString("input_json"),
+            Map<String, Object> input = objectMapper.readValue(rs.getString("input_json"),
                 new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {});
 
-            String cat = rs.getString("category");
-            String subcategory = extractSubcategory(cat, input);
-
             // Extraer información del factor de emisión desde factor_snapshot
             CalcDtos.FactorInfo factorInfo = extractFactorInfo(rs.getString("factor_snapshot"));
 
+            UUID id = rs.getObject("id", UUID.class);
+            ids.add(id);
             return new CalcDtos.CalcHistoryItem(
-              rs.getString("id"),
-              cat,
-              subcategory,
+              id.toString(),
+              rs.getString("category"),
+              rs.getString("subcategory_label"),
               input,
               rs.getBigDecimal("result_kg_co2e").doubleValue(),
               factorInfo,
@@ -841,25 +795,44 @@ public class CalcServiceImpl implements CalcService {
             throw new RuntimeException("Error parsing JSON", e);
           }
         },
-        params.toArray());
-
-    // Filtrar por subcategorías si se especificaron (filtro post-consulta)
-    if (subcategories != null && !subcategories.isEmpty()) {
-      items = items.stream()
-          .filter(item -> item.subcategory() != null && subcategories.contains(item.subcategory()))
-          .collect(java.util.stream.Collectors.toList());
-      // Actualizar el total después del filtro de subcategorías
-      total = (long) items.size();
-    }
-
-    return new CalcDtos.CalcHistoryResponse(
-      items != null ? items : new ArrayList<>(),
-      total != null ? total : 0L,
-      page,
-      pageSize
-    );
+        pageParams.toArray());
+
+    boolean hasMore = items.size() > pageSize;
+    if (hasMore) {
+      items = new ArrayList<>(items.subList(0, pageSize));
+    }
+    String nextCursor = null;
+    if (hasMore && !items.isEmpty()) {
+      CalcDtos.CalcHistoryItem last = items.get(items.size() - 1);
+      nextCursor = new HistoryCursor(last.createdAt(), ids.get(items.size() - 1)).encode();
+    }
+
+    return new CalcDtos.CalcHistoryResponse(items, total, page, pageSize, nextCursor, hasMore);
+  }
+
+  /**
+   * Posición opaca en el historial: (created_at, id) del último elemento entregado,
+   * codificada en Base64 URL-safe.
+   */
+  private record HistoryCursor(java.time.LocalDateTime createdAt, UUID id) {
+
+    String encode() {
+      String raw = createdAt + "|" + id;
+      return java.util.Base64.getUrlEncoder().withoutPadding()
+          .encodeToString(raw.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+    }
+
+    static HistoryCursor decode(String cursor) {
+      try {
+        String raw = new String(java.util.Base64.getUrlDecoder().decode(cursor), java.nio.charset.StandardCharsets.UTF_8);
+        int sep = raw.indexOf('|');
+        return new HistoryCursor(java.time.LocalDateTime.parse(raw.substring(0, sep)), UUID.fromString(raw.substring(sep + 1)));
+      } catch (RuntimeException e) {
+        throw new IllegalArgumentException("Cursor de historial inválido: " + cursor);
+      }
+    }
   }
-  
+
   /**
    * Extrae la información del factor de emisión desde el factor_snapshot JSON
    */
@@ -869,8 +842,7 @@ public class CalcServiceImpl implements CalcService {
     }
     
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      Map<String, Object> snapshot = mapper.readValue(factorSnapshotJson, 
+      Map<String, Object> snapshot = objectMapper.readValue(factorSnapshotJson, 
           new com.fasterxml.jackson.core.type.TypeReference<Map<String, Object>>() {});
       
       Object valueObj = snapshot.get("value");
@@ -892,113 +864,4 @@ public class CalcServiceImpl implements CalcService {
       return new CalcDtos.FactorInfo(null, null, null);
     }
   }
-  
-  /**
-   * Extrae la subcategoría de un registro basándose en la categoría y los datos de entrada
-   */
-  private String extractSubcategory(String category, Map<String, Object> input) {
-    if (category == null || input == null) {
-      return "";
-    }
-    
-    try {
-      if ("transporte".equals(category)) {
-        String transportMode = (String) input.get("transportMode");
-        String fuelType = (String) input.get("fuelType");
-        
-        if (transportMode == null) {
-          return "";
-        }
-        
-        // Mapear modos de transporte a español
-        String modeLabel = switch (transportMode) {
-          case "car" -> "Auto";
-          case "bus" -> "Bus/Transporte Público";
-          case "metro" -> "Metro/Tren";
-          case "bicycle" -> "Bicicleta";
-          case "walking" -> "Caminando";
-          case "plane" -> "Avión";
-          case "motorcycle" -> "Motocicleta";
-          default -> transportMode;
-        };
-        
-        // Si tiene tipo de combustible, agregarlo
-        if (fuelType != null && !fuelType.isBlank()) {
-          String fuelLabel = switch (fuelType.toLowerCase()) {
-            case "gasoline" -> "Gasolina";
-            case "diesel" -> "Diesel";
-            case "electric" -> "Eléctrico";
-            case "hybrid" -> "Híbrido";
-            default -> fuelType;
-          };
-          return modeLabel + " - " + fuelLabel;
-        }
-        
-        return modeLabel;
-        
-      } else if ("electricidad".equals(category)) {
-        // Para electricidad, mostrar los electrodomésticos
-        Object appliancesObj = input.get("selectedAppliances");
-        if (appliancesObj instanceof java.util.List) {
-          @SuppressWarnings("unchecked")
-          java.util.List<String> appliances = (java.util.List<String>) appliancesObj;
-          if (appliances != null && !appliances.isEmpty()) {
-            return String.join(", ", appliances);
-          }
-        }
-        return "Electricidad";
-
-      } else if ("residuos".equals(category)) {
-        // Para residuos, mostrar los tipos de residuos generados
-        Object wasteItemsObj = input.get("wasteItems");
-        if (wasteItemsObj instanceof java.util.List) {
-          @SuppressWarnings("unchecked")
-          java.util.List<Map<String, Object>> wasteItems = (java.util.List<Map<String, Object>>) wasteItemsObj;
-          if (wasteItems != null && !wasteItems.isEmpty()) {
-            // Mapear tipos de residuos a español
-            java.util.List<String> wasteLabels = wasteItems.stream().map(item -> {
-              String wasteType = (String) item.get("wasteType");
-              return switch (wasteType) {
-                case "organic" -> "Orgánico";
-                case "paper" -> "Papel/Cartón";
-                case "plastic" -> "Plástico";
-                case "glass" -> "Vidrio";
-                case "metal" -> "Metal";
-                case "other" -> "Otros";
-                default -> wasteType;
-              };
-            }).collect(java.util.stream.Collectors.toList());
-            return String.join(", ", wasteLabels);
-          }
-        }
-        return "Residuos";
-
-      } else {
-        // Para otras categorías, retornar la categoría misma
-        return category;
-      }
-    } catch (Exception e) {
-      logger.warn("Error extrayendo subcategoría para categoría: {}", category, e);
-      return "";
-    }
-  }
 }
-
-
-// package com.ecoestudiante.calc;
-
-// import org.springframework.stereotype.Service;
-
-// @Service
-// public class CalcServiceImpl implements CalcService {
-
-//     // Implementación simple para compilar y probar
-//     @Override
-//     public CalcDtos.CalcResult computeElectricity(CalcDtos.ElectricityInput in) {
-//         // factor ejemplo (CL): 0.262 kgCO2e/kWh
-//         double factor = 0.262d;
-//         double kwh = in.getKwh() != null ? in.getKwh() : 0d;
-//         double kg = kwh * factor;
-//         return new CalcDtos.CalcResult(kg, factor, "factor país " + in.getCountry() + " " + in.getPeriod());
-//     }
-// }
@@ -0,0 +1,139 @@
+package com.ecoestudiante.calc.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Motor de resolución de factores de emisión en memoria.
+ *
+ * Carga todos los factores versionados (emission_factor + factor_version) en
+ * un {@link FactorIndex} inmutable y resuelve cada cálculo sin ir a la base de
+ * datos. El índice se reemplaza de forma atómica al recargar, así que los
+ * cálculos en curso siempre ven una versión completa y consistente.
+ *
+ * Recarga:
+ *  - al iniciar la aplicación,
+ *  - periódicamente (app.factors.reload-interval-ms),
+ *  - bajo demanda vía {@link #reload()} (endpoint de administración).
+ */
+@Service
+public class EmissionFactorEngine {
+  private static final Logger logger = LoggerFactory.getLogger(EmissionFactorEngine.class);
+
+  private final JdbcTemplate jdbc;
+  private final AtomicReference<FactorIndex> index = new AtomicReference<>(FactorIndex.EMPTY);
+
+  public EmissionFactorEngine(JdbcTemplate jdbc) {
+    this.jdbc = jdbc;
+  }
+
+  @PostConstruct
+  void init() {
+    try {
+      reload();
+    } catch (Exception e) {
+      // No bloquear el arranque: se reintentará en el primer cálculo o en la recarga programada
+      logger.warn("No se pudieron cargar los factores de emisión al iniciar: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Recarga periódica para recoger nuevas versiones de factores.
+   */
+  @Scheduled(
+      fixedDelayString = "${app.factors.reload-interval-ms:300000}",
+      initialDelayString = "${app.factors.reload-interval-ms:300000}")
+  public void scheduledReload() {
+    try {
+      reload();
+    } catch (Exception e) {
+      logger.error("Error en recarga programada de factores de emisión; se mantiene el índice anterior", e);
+    }
+  }
+
+  /**
+   * Lee todos los factores y reemplaza atómicamente el índice vigente.
+   *
+   * @return número de factores cargados
+   */
+  public int reload() {
+    List<FactorIndex.FactorRow> rows = jdbc.query("""
+        select ef.category, ef.subcategory, ef.country, ef.value, ef.unit,
+               fv.hash, fv.valid_from, fv.valid_to
+        from emission_factor ef
+        join factor_version fv on fv.id = ef.version_id
+        """,
+        (rs, rowNum) -> new FactorIndex.FactorRow(
+            rs.getString("category"),
+            rs.getString("subcategory"),
+            rs.getString("country"),
+            rs.getBigDecimal("value"),
+            rs.getString("unit"),
+            rs.getString("hash"),
+            rs.getObject("valid_from", LocalDate.class),
+            rs.getObject("valid_to", LocalDate.class)
+        )
+    );
+
+    FactorIndex fresh = FactorIndex.build(rows);
+    index.set(fresh);
+    logger.info("Factores de emisión cargados en memoria: {}", fresh.size());
+    return fresh.size();
+  }
+
+  /**
+   * Factor con prioridad país exacto → factor sin país, el más reciente vigente en {@code at}.
+   *
+   * @param subcategory subcategoría exacta o null para aceptar cualquiera
+   */
+  public Optional<FactorIndex.ResolvedFactor> resolve(
+      String category, String subcategory, String country, LocalDate at) {
+    return current().resolve(category, subcategory, country, at);
+  }
+
+  /**
+   * Factor más reciente vigente en {@code at} sin considerar el país.
+   */
+  public Optional<FactorIndex.ResolvedFactor> resolveAnyCountry(String category, String subcategory, LocalDate at) {
+    return current().resolveAnyCountry(category, subcategory, at);
+  }
+
+  /**
+   * Subcategorías con factor vigente en {@code at}.
+   */
+  public List<String> availableSubcategories(String category, LocalDate at) {
+    return current().subcategoriesValidAt(category, at);
+  }
+
+  public int size() {
+    return index.get().size();
+  }
+
+  public Instant loadedAt() {
+    return index.get().loadedAt();
+  }
+
+  private FactorIndex current() {
+    FactorIndex idx = index.get();
+    if (idx == FactorIndex.EMPTY) {
+      // Carga perezosa si el arranque falló (p.ej. BD no disponible en ese momento)
+      synchronized (this) {
+        if (index.get() == FactorIndex.EMPTY) {
+          reload();
+        }
+      }
+      idx = index.get();
+    }
+    return idx;
+  }
+}
@@ -0,0 +1,201 @@
+package com.ecoestudiante.calc.service;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeSet;
+
+/**
+ * Índice inmutable de factores de emisión en memoria.
+ *
+ * Agrupa las filas de emission_factor + factor_version por
+ * (categoría, subcategoría, país) y guarda para cada clave sus intervalos
+ * de vigencia ordenados por valid_from descendente. Una vez construido no
+ * se modifica, por lo que puede leerse desde cualquier thread sin locks.
+ *
+ * Además de las claves exactas, se indexan claves comodín para
+ * "cualquier subcategoría" y "cualquier país", replicando los filtros que
+ * antes hacía cada consulta SQL de CalcServiceImpl.
+ */
+public final class FactorIndex {
+
+  /** Comodín: cualquier subcategoría / cualquier país */
+  private static final String ANY = "*";
+  /** Valor NULL en la columna (p.ej. factor genérico sin país) */
+  private static final String NONE = "-";
+
+  static final FactorIndex EMPTY = new FactorIndex(Map.of(), Map.of(), 0, null);
+
+  /**
+   * Fila cruda tal como se lee de emission_factor JOIN factor_version.
+   */
+  record FactorRow(
+      String category,
+      String subcategory,
+      String country,
+      BigDecimal value,
+      String unit,
+      String hash,
+      LocalDate validFrom,
+      LocalDate validTo
+  ) {}
+
+  /**
+   * Factor resuelto para una fecha de vigencia.
+   */
+  public record ResolvedFactor(
+      BigDecimal value,
+      String unit,
+      String hash,
+      String subcategory,
+      String country,
+      LocalDate validFrom,
+      LocalDate validTo
+  ) {
+    boolean isValidAt(LocalDate at) {
+      return !validFrom.isAfter(at) && (validTo == null || !validTo.isBefore(at));
+    }
+  }
+
+  private record Key(String category, String subcategory, String country) {}
+
+  private final Map<Key, ResolvedFactor[]> entries;
+  private final Map<String, ResolvedFactor[]> byCategory;
+  private final int size;
+  private final Instant loadedAt;
+
+  private FactorIndex(
+      Map<Key, ResolvedFactor[]> entries,
+      Map<String, ResolvedFactor[]> byCategory,
+      int size,
+      Instant loadedAt) {
+    this.entries = entries;
+    this.byCategory = byCategory;
+    this.size = size;
+    this.loadedAt = loadedAt;
+  }
+
+  /**
+   * Construye un índice a partir de las filas leídas de la base de datos.
+   */
+  static FactorIndex build(List<FactorRow> rows) {
+    Map<Key, List<ResolvedFactor>> grouped = new HashMap<>();
+    Map<String, List<ResolvedFactor>> categories = new HashMap<>();
+
+    for (FactorRow row : rows) {
+      if (row.category() == null || row.value() == null || row.validFrom() == null) {
+        continue;
+      }
+      String country = row.country() != null && !row.country().isBlank()
+          ? row.country().trim().toUpperCase()
+          : null;
+      ResolvedFactor factor = new ResolvedFactor(
+          row.value(), row.unit(), row.hash(), row.subcategory(), country, row.validFrom(), row.validTo());
+
+      String sub = row.subcategory() != null ? row.subcategory() : NONE;
+      String countryKey = country != null ? country : NONE;
+
+      // Claves exactas y comodines (subcategoría y/o país)
+      add(grouped, new Key(row.category(), sub, countryKey), factor);
+      add(grouped, new Key(row.category(), ANY, countryKey), factor);
+      add(grouped, new Key(row.category(), sub, ANY), factor);
+      add(grouped, new Key(row.category(), ANY, ANY), factor);
+
+      categories.computeIfAbsent(row.category(), k -> new ArrayList<>()).add(factor);
+    }
+
+    Comparator<ResolvedFactor> latestFirst =
+        Comparator.comparing(ResolvedFactor::validFrom).reversed();
+
+    Map<Key, ResolvedFactor[]> frozen = new HashMap<>(grouped.size() * 2);
+    grouped.forEach((key, list) -> {
+      ResolvedFactor[] arr = list.toArray(new ResolvedFactor[0]);
+      Arrays.sort(arr, latestFirst);
+      frozen.put(key, arr);
+    });
+
+    Map<String, ResolvedFactor[]> frozenCategories = new HashMap<>();
+    categories.forEach((category, list) -> frozenCategories.put(category, list.toArray(new ResolvedFactor[0])));
+
+    return new FactorIndex(
+        Collections.unmodifiableMap(frozen),
+        Collections.unmodifiableMap(frozenCategories),
+        rows.size(),
+        Instant.now());
+  }
+
+  private static void add(Map<Key, List<ResolvedFactor>> grouped, Key key, ResolvedFactor factor) {
+    grouped.computeIfAbsent(key, k -> new ArrayList<>()).add(factor);
+  }
+
+  /**
+   * Resuelve un factor: país exacto primero, luego factor sin país (NULL),
+   * y dentro de cada grupo el de valid_from más reciente vigente en {@code at}.
+   *
+   * @param subcategory subcategoría exacta o null para aceptar cualquiera
+   */
+  Optional<ResolvedFactor> resolve(String category, String subcategory, String country, LocalDate at) {
+    String sub = subcategory != null ? subcategory : ANY;
+    if (country != null && !country.isBlank()) {
+      ResolvedFactor exact = firstValid(new Key(category, sub, country.trim().toUpperCase()), at);
+      if (exact != null) {
+        return Optional.of(exact);
+      }
+    }
+    return Optional.ofNullable(firstValid(new Key(category, sub, NONE), at));
+  }
+
+  /**
+   * Resuelve un factor ignorando el país (el más reciente vigente en {@code at}).
+   */
+  Optional<ResolvedFactor> resolveAnyCountry(String category, String subcategory, LocalDate at) {
+    String sub = subcategory != null ? subcategory : ANY;
+    return Optional.ofNullable(firstValid(new Key(category, sub, ANY), at));
+  }
+
+  /**
+   * Subcategorías con algún factor vigente en {@code at} (para mensajes de error).
+   */
+  List<String> subcategoriesValidAt(String category, LocalDate at) {
+    ResolvedFactor[] all = byCategory.get(category);
+    if (all == null) {
+      return List.of();
+    }
+    TreeSet<String> subs = new TreeSet<>();
+    for (ResolvedFactor f : all) {
+      if (f.subcategory() != null && f.isValidAt(at)) {
+        subs.add(f.subcategory());
+      }
+    }
+    return List.copyOf(subs);
+  }
+
+  int size() {
+    return size;
+  }
+
+  Instant loadedAt() {
+    return loadedAt;
+  }
+
+  private ResolvedFactor firstValid(Key key, LocalDate at) {
+    ResolvedFactor[] candidates = entries.get(key);
+    if (candidates == null) {
+      return null;
+    }
+    for (ResolvedFactor f : candidates) {
+      if (f.isValidAt(at)) {
+        return f;
+      }
+    }
+    return null;
+  }
+}
@@ -18,6 +18,11 @@ import java.util.UUID;
  * Proporciona estadísticas derivadas de los cálculos realizados por los usuarios.
  * 
  * Movido desde com.ecoestudiante.stats como parte de la reorganización arquitectónica.
+ *
+ * Las agregaciones se leen de calculation_daily_rollup (usuario, día, categoría,
+ * subcategoría, combustible, carrera, jornada), mantenida por trigger en cada
+ * INSERT/DELETE de calculation. Solo los filtros que dependen de arrays del JSON
+ * de entrada (aparatos de electricidad, tipos de residuo) consultan calculation.
  */
 @Service
 public class StatsService {
@@ -25,10 +30,12 @@ public class StatsService {
     private static final Logger logger = LoggerFactory.getLogger(StatsService.class);
     private final JdbcTemplate jdbc;
     private final TokenUtil tokenUtil;
+    private final StatsSummaryCache summaryCache;
 
-    public StatsService(JdbcTemplate jdbc, TokenUtil tokenUtil) {
+    public StatsService(JdbcTemplate jdbc, TokenUtil tokenUtil, StatsSummaryCache summaryCache) {
         this.jdbc = jdbc;
         this.tokenUtil = tokenUtil;
+        this.summaryCache = summaryCache;
         logger.info("StatsService inicializado correctamente");
     }
 
@@ -39,64 +46,53 @@ public class StatsService {
         return tokenUtil.normalizeUserIdToUuid(userId);
     }
 
+    /**
+     * Resumen del dashboard (total, registros, este mes, mes anterior, promedio
+     * mensual de los últimos 12 meses). Se sirve desde {@link StatsSummaryCache}
+     * mientras la versión de los cálculos del usuario no cambie y, si no, se
+     * calcula en una sola pasada sobre el rollup diario.
+     */
     public StatsDtos.StatsSummary getSummary(String userId) {
         UUID userIdUuid = normalizeUserId(userId);
-        
-        // Total general
-        Double totalKgCO2e = jdbc.queryForObject(
-            "SELECT COALESCE(SUM(result_kg_co2e), 0) FROM calculation WHERE user_id = ?::uuid",
-            Double.class, userIdUuid
-        );
-        
-        // Total de registros
-        Long totalRecords = jdbc.queryForObject(
-            "SELECT COUNT(*) FROM calculation WHERE user_id = ?::uuid",
-            Long.class, userIdUuid
-        );
-        
-        // Este mes
-        Double thisMonth = jdbc.queryForObject("""
-            SELECT COALESCE(SUM(result_kg_co2e), 0)
-            FROM calculation
-            WHERE user_id = ?::uuid
-              AND DATE_TRUNC('month', created_at) = DATE_TRUNC('month', CURRENT_DATE)
-            """,
-            Double.class, userIdUuid
-        );
-        
-        // Mes anterior
-        Double lastMonthKg = jdbc.queryForObject("""
-            SELECT COALESCE(SUM(result_kg_co2e), 0)
-            FROM calculation
+        return summaryCache.getOrLoad(userIdUuid, () -> calculationVersion(userIdUuid), () -> loadSummary(userIdUuid));
+    }
+
+    /**
+     * Versión de los cálculos del usuario (0 si aún no tiene ninguno); cambia con
+     * cada cálculo insertado o eliminado, en cualquier réplica
+     */
+    private long calculationVersion(UUID userIdUuid) {
+        return jdbc.query("SELECT version FROM calculation_user_version WHERE user_id = ?::uuid",
+                rs -> rs.next() ? rs.getLong(1) : 0L, userIdUuid);
+    }
+
+    private StatsDtos.StatsSummary loadSummary(UUID userIdUuid) {
+        return jdbc.queryForObject("""
+            SELECT
+              COALESCE(SUM(kg_co2e), 0) as total,
+              COALESCE(SUM(calc_count), 0) as records,
+              COALESCE(SUM(kg_co2e) FILTER (
+                WHERE DATE_TRUNC('month', day) = DATE_TRUNC('month', CURRENT_DATE)), 0) as this_month,
+              COALESCE(SUM(kg_co2e) FILTER (
+                WHERE DATE_TRUNC('month', day) = DATE_TRUNC('month', CURRENT_DATE - INTERVAL '1 month')), 0) as last_month,
+              COALESCE(
+                SUM(kg_co2e) FILTER (WHERE day >= CURRENT_DATE - INTERVAL '12 months')
+                / NULLIF(COUNT(DISTINCT DATE_TRUNC('month', day))
+                         FILTER (WHERE day >= CURRENT_DATE - INTERVAL '12 months'), 0),
+                0
+              ) as avg_monthly
+            FROM calculation_daily_rollup
             WHERE user_id = ?::uuid
-              AND DATE_TRUNC('month', created_at) = DATE_TRUNC('month', CURRENT_DATE - INTERVAL '1 month')
             """,
-            Double.class, userIdUuid
-        );
-        
-        // Promedio mensual (últimos 12 meses)
-        Double avgMonthly = jdbc.queryForObject("""
-            SELECT COALESCE(
-              AVG(monthly_total),
-              0
-            ) FROM (
-              SELECT SUM(result_kg_co2e) as monthly_total
-              FROM calculation
-              WHERE user_id = ?::uuid
-                AND created_at >= CURRENT_DATE - INTERVAL '12 months'
-              GROUP BY DATE_TRUNC('month', created_at)
-            ) monthly_stats
-            """,
-            Double.class, userIdUuid
-        );
-        
-        return new StatsDtos.StatsSummary(
-            totalKgCO2e != null ? totalKgCO2e : 0.0,
-            totalRecords != null ? totalRecords : 0L,
-            thisMonth != null ? thisMonth : 0.0,
-            lastMonthKg != null ? lastMonthKg : 0.0,
-            avgMonthly != null ? avgMonthly : 0.0,
-            LocalDateTime.now()
+            (rs, rowNum) -> new StatsDtos.StatsSummary(
+                rs.getDouble("total"),
+                rs.getLong("records"),
+                rs.getDouble("this_month"),
+                rs.getDouble("last_month"),
+                rs.getDouble("avg_monthly"),
+                LocalDateTime.now()
+            ),
+            userIdUuid
         );
     }
 
@@ -129,6 +125,14 @@ public class StatsService {
             return getByCategorySimple(userIdUuid);
         }
         
+        // Filtros expresables con las dimensiones del rollup: no se toca calculation
+        java.util.List<Object> rollupParams = new java.util.ArrayList<>();
+        String rollupFilter = buildRollupCategoryFilter(validCategories, rollupParams);
+        if (rollupFilter != null) {
+            rollupParams.add(0, userIdUuid);
+            return categoryStatsFromRollup(" AND " + rollupFilter, rollupParams.toArray());
+        }
+        
         // Construir condiciones WHERE dinámicamente basado en categorías y subcategorías
         StringBuilder categoryFilter = new StringBuilder(" AND (");
         java.util.List<String> categoryConditions = new java.util.ArrayList<>();
@@ -309,44 +313,88 @@ public class StatsService {
      * Método auxiliar para obtener estadísticas sin filtros (más simple y rápido)
      */
     private StatsDtos.StatsByCategoryResponse getByCategorySimple(UUID userIdUuid) {
-        // Total general
-        Double totalKgCO2e = jdbc.queryForObject(
-            "SELECT COALESCE(SUM(result_kg_co2e), 0) FROM calculation WHERE user_id = ?::uuid",
-            Double.class, userIdUuid
+        return categoryStatsFromRollup("", userIdUuid);
+    }
+
+    /**
+     * Estadísticas por categoría desde el rollup diario. El total se deriva de
+     * las filas agrupadas, así que basta una sola consulta.
+     *
+     * @param extraWhere condición adicional (con " AND " inicial) o cadena vacía
+     * @param params user_id seguido de los parámetros de extraWhere
+     */
+    private StatsDtos.StatsByCategoryResponse categoryStatsFromRollup(String extraWhere, Object... params) {
+        String sql = "SELECT category, SUM(kg_co2e) as total, SUM(calc_count) as count " +
+            "FROM calculation_daily_rollup " +
+            "WHERE user_id = ?::uuid" + extraWhere + " " +
+            "GROUP BY category " +
+            "ORDER BY total DESC";
+
+        List<Object[]> rows = jdbc.query(sql,
+            (rs, rowNum) -> new Object[] { rs.getString("category"), rs.getDouble("total"), rs.getLong("count") },
+            params
         );
-        
-        double total = totalKgCO2e != null ? totalKgCO2e : 0.0;
-        
-        // Estadísticas por categoría
-        List<StatsDtos.CategoryStats> categories = jdbc.query("""
-            SELECT 
-              category,
-              SUM(result_kg_co2e) as total,
-              COUNT(*) as count
-            FROM calculation
-            WHERE user_id = ?::uuid
-            GROUP BY category
-            ORDER BY total DESC
-            """,
-            (rs, rowNum) -> {
-                String category = rs.getString("category");
-                double catTotal = rs.getDouble("total");
-                long count = rs.getLong("count");
+
+        double total = rows.stream().mapToDouble(r -> (Double) r[1]).sum();
+        List<StatsDtos.CategoryStats> categories = rows.stream()
+            .map(r -> {
+                double catTotal = (Double) r[1];
                 double percentage = total > 0 ? (catTotal / total) * 100 : 0.0;
-                
-                return new StatsDtos.CategoryStats(
-                    category,
-                    catTotal,
-                    count,
-                    percentage
-                );
-            },
-            userIdUuid
-        );
-        
+                return new StatsDtos.CategoryStats((String) r[0], catTotal, (Long) r[2], percentage);
+            })
+            .collect(java.util.stream.Collectors.toList());
+
         return new StatsDtos.StatsByCategoryResponse(categories, total);
     }
 
+    /**
+     * Traduce los filtros de categoría a condiciones sobre las columnas del rollup:
+     * "transporte", "transporte_bus", "transporte_car_gasoline", etc.
+     *
+     * @return condición entre paréntesis (parámetros agregados a {@code params}), o
+     *         null si algún filtro necesita el JSON completo (aparatos de electricidad,
+     *         tipos de residuo) y hay que consultar calculation
+     */
+    private String buildRollupCategoryFilter(java.util.List<String> validCategories, java.util.List<Object> params) {
+        java.util.List<String> conditions = new java.util.ArrayList<>();
+        java.util.List<Object> conditionParams = new java.util.ArrayList<>();
+
+        for (String cat : validCategories) {
+            if (!cat.contains("_")) {
+                conditions.add("category = ?");
+                conditionParams.add(cat);
+                continue;
+            }
+
+            String[] parts = cat.split("_", 2);
+            String mainCategory = parts[0];
+            String subcategory = parts[1];
+
+            if ("transporte".equals(mainCategory)) {
+                if (subcategory.contains("_")) {
+                    String[] transportParts = subcategory.split("_", 2);
+                    conditions.add("(category = 'transporte' AND subcategory = ? AND fuel_type = ?)");
+                    conditionParams.add(transportParts[0]);
+                    conditionParams.add(transportParts[1]);
+                } else {
+                    conditions.add("(category = 'transporte' AND subcategory = ?)");
+                    conditionParams.add(subcategory);
+                }
+            } else if ("electricidad".equals(mainCategory) || "residuos".equals(mainCategory)) {
+                return null;
+            } else {
+                conditions.add("category = ?");
+                conditionParams.add(mainCategory);
+            }
+        }
+
+        if (conditions.isEmpty()) {
+            return null;
+        }
+        params.addAll(conditionParams);
+        return "(" + String.join(" OR ", conditions) + ")";
+    }
+
     /**
      * Obtiene datos temporales agrupados por mes o día con filtros opcionales.
      * 
@@ -396,40 +444,59 @@ public class StatsService {
             dateTrunc = "month";
         }
         
+        // Fuente: rollup diario salvo que algún filtro de categoría necesite el JSON
+        java.util.List<String> requestedCategories = categories == null ? java.util.List.of() : categories.stream()
+            .filter(cat -> cat != null && !cat.isBlank())
+            .collect(java.util.stream.Collectors.toList());
+        java.util.List<Object> rollupCategoryParams = new java.util.ArrayList<>();
+        String rollupCategoryFilter = requestedCategories.isEmpty()
+            ? null
+            : buildRollupCategoryFilter(requestedCategories, rollupCategoryParams);
+        boolean useRollup = requestedCategories.isEmpty() || rollupCategoryFilter != null;
+        
+        String table = useRollup ? "calculation_daily_rollup" : "calculation";
+        String dateColumn = useRollup ? "day" : "created_at";
+        String kgExpr = useRollup ? "SUM(kg_co2e)" : "SUM(result_kg_co2e)";
+        String countExpr = useRollup ? "SUM(calc_count)" : "COUNT(*)";
+        
         // Construir condiciones WHERE dinámicamente
         StringBuilder whereClause = new StringBuilder("user_id = ?::uuid");
         java.util.List<Object> params = new java.util.ArrayList<>();
         params.add(userIdUuid);
         
         // Filtro por fecha base
-        whereClause.append(" AND created_at >= CURRENT_DATE - INTERVAL '").append(months).append(" months'");
+        whereClause.append(" AND ").append(dateColumn)
+            .append(" >= CURRENT_DATE - INTERVAL '").append(months).append(" months'");
         
         // Filtro por jornada (schedule)
         if (schedule != null && !schedule.isBlank()) {
-            whereClause.append(" AND input_json->>'schedule' = ?");
+            whereClause.append(useRollup ? " AND schedule = ?" : " AND input_json->>'schedule' = ?");
             params.add(schedule);
         }
         
         // Filtro por carrera
         if (career != null && !career.isBlank()) {
-            whereClause.append(" AND input_json->>'career' = ?");
+            whereClause.append(useRollup ? " AND career = ?" : " AND input_json->>'career' = ?");
             params.add(career);
         }
         
         // Filtro por mes del año (1-12)
         if (month != null && month >= 1 && month <= 12) {
-            whereClause.append(" AND EXTRACT(MONTH FROM created_at) = ?");
+            whereClause.append(" AND EXTRACT(MONTH FROM ").append(dateColumn).append(") = ?");
             params.add(month);
         }
         
         // Filtro por día del mes (1-31)
         if (day != null && day >= 1 && day <= 31) {
-            whereClause.append(" AND EXTRACT(DAY FROM created_at) = ?");
+            whereClause.append(" AND EXTRACT(DAY FROM ").append(dateColumn).append(") = ?");
             params.add(day);
         }
         
         // Filtro por categorías (puede ser categoría principal o subcategoría)
-        if (categories != null && !categories.isEmpty()) {
+        if (rollupCategoryFilter != null) {
+            whereClause.append(" AND ").append(rollupCategoryFilter);
+            params.addAll(rollupCategoryParams);
+        } else if (!useRollup) {
             logger.info("=== APLICANDO FILTRO DE CATEGORÍAS EN getTimeSeries ===");
             logger.info("Categorías recibidas: {}", categories);
             
@@ -537,30 +604,18 @@ public class StatsService {
             logger.info("No se proporcionaron categorías, cargando todos los datos (sin filtro de categorías)");
         }
         
-        // Total general con filtros aplicados
-        StringBuilder totalQuery = new StringBuilder(
-            "SELECT COALESCE(SUM(result_kg_co2e), 0) FROM calculation WHERE "
-        );
-        totalQuery.append(whereClause);
-        
-        Double totalKgCO2e = jdbc.queryForObject(
-            totalQuery.toString(),
-            Double.class,
-            params.toArray()
-        );
-        double total = totalKgCO2e != null ? totalKgCO2e : 0.0;
-        
         // Obtener datos temporales con filtros
         String dataQuery = String.format("""
             SELECT 
-              TO_CHAR(DATE_TRUNC('%s', created_at), '%s') as period,
-              SUM(result_kg_co2e) as total,
-              COUNT(*) as count
-            FROM calculation
+              TO_CHAR(DATE_TRUNC('%s', %s), '%s') as period,
+              %s as total,
+              %s as count
+            FROM %s
             WHERE %s
-            GROUP BY DATE_TRUNC('%s', created_at)
+            GROUP BY DATE_TRUNC('%s', %s)
             ORDER BY period ASC
-            """, dateTrunc, dateFormat, whereClause.toString(), dateTrunc);
+            """, dateTrunc, dateColumn, dateFormat, kgExpr, countExpr, table,
+            whereClause.toString(), dateTrunc, dateColumn);
         
         List<StatsDtos.TimeSeriesDataPoint> data = jdbc.query(
             dataQuery,
@@ -579,6 +634,9 @@ public class StatsService {
             params.toArray()
         );
         
+        // El total con filtros es la suma de los periodos (mismo WHERE)
+        double total = data.stream().mapToDouble(StatsDtos.TimeSeriesDataPoint::totalKgCO2e).sum();
+        
         return new StatsDtos.TimeSeriesResponse(data, groupBy, total);
     }
     
@@ -589,11 +647,10 @@ public class StatsService {
         UUID userIdUuid = normalizeUserId(userId);
         
         return jdbc.query("""
-            SELECT DISTINCT input_json->>'career' as career
-            FROM calculation
+            SELECT DISTINCT career
+            FROM calculation_daily_rollup
             WHERE user_id = ?::uuid
-              AND input_json->>'career' IS NOT NULL
-              AND input_json->>'career' != ''
+              AND career != ''
             ORDER BY career ASC
             """,
             (rs, rowNum) -> rs.getString("career"),
@@ -625,7 +682,7 @@ public class StatsService {
             // Obtener categorías principales
             java.util.List<String> mainCategories = jdbc.query("""
                 SELECT DISTINCT category
-                FROM calculation
+                FROM calculation_daily_rollup
                 WHERE user_id = ?::uuid
                 ORDER BY category ASC
                 """,
@@ -679,9 +736,9 @@ public class StatsService {
                         
                         // Obtener subcategorías existentes en los registros del usuario
                         java.util.List<String> userSubcategories = jdbc.query("""
-                            SELECT DISTINCT input_json->>'transportMode' as transport_mode,
-                                   input_json->>'fuelType' as fuel_type
-                            FROM calculation
+                            SELECT DISTINCT NULLIF(subcategory, '') as transport_mode,
+                                   fuel_type
+                            FROM calculation_daily_rollup
                             WHERE user_id = ?::uuid
                               AND category = 'transporte'
                             ORDER BY transport_mode, fuel_type
@@ -0,0 +1,156 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.calc.dto.StatsDtos;
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caché en memoria del resumen de estadísticas por usuario.
+ *
+ * El dashboard pide el resumen en cada navegación; el valor solo cambia cuando el
+ * usuario registra o elimina un cálculo. Cada entrada guarda la versión de los
+ * cálculos del usuario (calculation_user_version, mantenida por trigger) con que
+ * se calculó, y cada lectura la compara con la actual: una consulta por clave
+ * primaria en lugar de la agregación. Así un cálculo registrado en otra réplica
+ * se ve en la siguiente lectura. Esta réplica además invalida tras el commit de
+ * sus propios cálculos. El TTL y el cambio de día (los totales mensuales
+ * dependen de la fecha) acotan cualquier otra desviación.
+ *
+ * Un contador de generación por segmento de usuarios evita que una lectura lenta,
+ * iniciada antes de una invalidación, vuelva a cachear un resumen ya obsoleto.
+ *
+ * Métricas: stats.summary.cache{result=hit|miss}, stats.summary.cache.invalidations
+ * y stats.summary.cache.size.
+ */
+@Component
+public class StatsSummaryCache {
+  private static final Logger logger = LoggerFactory.getLogger(StatsSummaryCache.class);
+
+  private static final int GENERATION_STRIPES = 64;
+
+  private record Entry(StatsDtos.StatsSummary summary, long version, long expiresAt, LocalDate day) {}
+
+  private final long ttlMillis;
+  private final Map<UUID, Entry> entries;
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+  private final Counter hits;
+  private final Counter misses;
+  private final Counter invalidations;
+
+  public StatsSummaryCache(
+      MeterRegistry meterRegistry,
+      @Value("${app.stats.summary-cache.ttl-seconds:300}") long ttlSeconds,
+      @Value("${app.stats.summary-cache.max-entries:10000}") int maxEntries) {
+    this.ttlMillis = ttlSeconds * 1000;
+    this.entries = BoundedLruMap.create(maxEntries);
+    this.hits = Counter.builder("stats.summary.cache")
+        .description("Lecturas del resumen de estadísticas servidas desde caché")
+        .tag("result", "hit")
+        .register(meterRegistry);
+    this.misses = Counter.builder("stats.summary.cache")
+        .description("Lecturas del resumen de estadísticas calculadas en base de datos")
+        .tag("result", "miss")
+        .register(meterRegistry);
+    this.invalidations = Counter.builder("stats.summary.cache.invalidations")
+        .description("Invalidaciones del resumen por cálculos nuevos")
+        .register(meterRegistry);
+    Gauge.builder("stats.summary.cache.size", entries, Map::size)
+        .description("Usuarios con resumen en caché")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Devuelve el resumen en caché si sigue vigente para la versión actual de los
+   * cálculos del usuario; si no, lo calcula con {@code loader} y lo guarda.
+   *
+   * @param version versión actual de los cálculos del usuario; se lee antes que
+   *                el resumen, así que un cálculo concurrente deja la entrada
+   *                con una versión vieja y la siguiente lectura la recalcula
+   */
+  public StatsDtos.StatsSummary getOrLoad(UUID userId, LongSupplier version,
+                                          Supplier<StatsDtos.StatsSummary> loader) {
+    long current = version.getAsLong();
+    Entry entry = entries.get(userId);
+    if (entry != null && entry.version() == current
+        && entry.expiresAt() > System.currentTimeMillis() && entry.day().equals(LocalDate.now())) {
+      hits.increment();
+      return entry.summary();
+    }
+    misses.increment();
+
+    int stripe = stripeOf(userId);
+    long generation = generations.get(stripe);
+    StatsDtos.StatsSummary summary = loader.get();
+
+    // Solo se cachea si no hubo invalidaciones mientras se calculaba
+    if (generations.get(stripe) == generation) {
+      put(userId, summary, current);
+      // Invalidación concurrente entre la comprobación y el put: descartar
+      if (generations.get(stripe) != generation) {
+        entries.remove(userId);
+      }
+    }
+    return summary;
+  }
+
+  /**
+   * Invalida el resumen del usuario una vez confirmada la transacción actual
+   * (antes del commit el cálculo nuevo aún no es visible para otras lecturas).
+   */
+  public void invalidateAfterCommit(UUID userId) {
+    if (TransactionSynchronizationManager.isSynchronizationActive()) {
+      TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+        @Override
+        public void afterCommit() {
+          invalidate(userId);
+        }
+      });
+    } else {
+      invalidate(userId);
+    }
+  }
+
+  public void invalidate(UUID userId) {
+    generations.incrementAndGet(stripeOf(userId));
+    entries.remove(userId);
+    invalidations.increment();
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void evictExpired() {
+    long now = System.currentTimeMillis();
+    LocalDate today = LocalDate.now();
+    int before = entries.size();
+    entries.values().removeIf(e -> e.expiresAt() <= now || !e.day().equals(today));
+    int removed = before - entries.size();
+    if (removed > 0) {
+      logger.debug("Caché de resumen de estadísticas: {} entradas expiradas eliminadas", removed);
+    }
+  }
+
+  private void put(UUID userId, StatsDtos.StatsSummary summary, long version) {
+    // Caché llena: se descarta el usuario leído hace más tiempo; la BD sigue siendo la fuente de verdad
+    entries.put(userId, new Entry(summary, version, System.currentTimeMillis() + ttlMillis, LocalDate.now()));
+  }
+
+  private static int stripeOf(UUID userId) {
+    return (userId.hashCode() & 0x7fffffff) % GENERATION_STRIPES;
+  }
+}
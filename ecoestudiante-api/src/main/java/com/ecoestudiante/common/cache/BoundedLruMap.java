@@ -0,0 +1,32 @@
+package com.ecoestudiante.common.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Mapa acotado con desalojo LRU para las cachés en memoria.
+ *
+ * Es un LinkedHashMap en orden de acceso: al superar el máximo se descarta la
+ * entrada usada hace más tiempo, en lugar de vaciar toda la caché. Las lecturas
+ * también reordenan, así que todas las operaciones pasan por el monitor del mapa
+ * sincronizado; para recorrerlo hay que sincronizar sobre él.
+ */
+public final class BoundedLruMap {
+
+  private BoundedLruMap() {
+  }
+
+  /**
+   * Mapa sincronizado que retiene como máximo {@code maxEntries} entradas
+   */
+  public static <K, V> Map<K, V> create(int maxEntries) {
+    int max = Math.max(1, maxEntries);
+    return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > max;
+      }
+    });
+  }
+}
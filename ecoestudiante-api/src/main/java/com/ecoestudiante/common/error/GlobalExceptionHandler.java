@@ -5,6 +5,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -52,6 +53,14 @@ public class GlobalExceptionHandler {
     return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(new ErrorResponse(body));
   }
 
+  // @PreAuthorize lanza la excepción dentro del controlador: sin este handler la capturaría el genérico (500)
+  @ExceptionHandler(AccessDeniedException.class)
+  public ResponseEntity<ErrorResponse> handleAccessDenied(AccessDeniedException ex) {
+    logger.warn("Access denied: {}", ex.getMessage());
+    var body = new ErrorResponse.ErrorBody("FORBIDDEN", ex.getMessage(), UUID.randomUUID().toString(), java.util.List.of());
+    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ErrorResponse(body));
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<ErrorResponse> handleGeneric(Exception ex) {
     String correlationId = UUID.randomUUID().toString();
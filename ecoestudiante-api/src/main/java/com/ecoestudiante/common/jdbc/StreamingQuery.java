@@ -0,0 +1,59 @@
+package com.ecoestudiante.common.jdbc;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Consulta que recorre sus filas con un cursor de servidor, sin cargarlas en memoria.
+ *
+ * Usa un JdbcTemplate propio con fetch size dentro de una transacción de solo
+ * lectura: PgJDBC solo usa cursor con autocommit desactivado. Lo comparten las
+ * exportaciones de historial y los reportes, cada uno con su propio fetch size.
+ */
+public class StreamingQuery {
+
+  /**
+   * Recibe cada fila; una IOException (cliente desconectado, disco lleno)
+   * aborta la consulta y libera el cursor
+   */
+  @FunctionalInterface
+  public interface RowSink {
+    void accept(ResultSet rs) throws SQLException, IOException;
+  }
+
+  private final JdbcTemplate jdbc;
+  private final TransactionTemplate readOnlyTx;
+
+  public StreamingQuery(DataSource dataSource, PlatformTransactionManager transactionManager, int fetchSize) {
+    this.jdbc = new JdbcTemplate(dataSource);
+    this.jdbc.setFetchSize(fetchSize);
+    this.readOnlyTx = new TransactionTemplate(transactionManager);
+    this.readOnlyTx.setReadOnly(true);
+  }
+
+  /**
+   * Ejecuta la consulta y entrega sus filas una a una a {@code sink}
+   *
+   * @return filas recorridas
+   * @throws UncheckedIOException si {@code sink} lanzó una IOException
+   */
+  public long forEach(String sql, Object[] params, RowSink sink) {
+    long[] rows = {0};
+    readOnlyTx.executeWithoutResult(status -> jdbc.query(sql, rs -> {
+      try {
+        sink.accept(rs);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      rows[0]++;
+    }, params));
+    return rows[0];
+  }
+}
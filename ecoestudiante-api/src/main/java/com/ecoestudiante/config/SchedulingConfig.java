@@ -0,0 +1,49 @@
+package com.ecoestudiante.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskSchedulerBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Schedulers de las tareas programadas (@Scheduled).
+ *
+ * - taskScheduler: el de Spring Boot (spring.task.scheduling.*), para las
+ *   tareas periódicas cortas. Su pool tiene un thread por tarea.
+ * - heavyJobScheduler: pool propio para los trabajos largos (reconciliación
+ *   del leaderboard, refresco de agregados anonimizados), que se eligen con
+ *   {@code @Scheduled(scheduler = HEAVY_JOB_SCHEDULER)}. Así un recálculo de
+ *   minutos no retrasa el outbox, el stream del leaderboard ni los reportes.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-18
+ */
+@Configuration
+public class SchedulingConfig {
+
+    public static final String HEAVY_JOB_SCHEDULER = "heavyJobScheduler";
+
+    /**
+     * Scheduler por defecto; se declara explícitamente porque definir otro
+     * TaskScheduler desactiva el que crea Spring Boot
+     */
+    @Bean
+    @Primary
+    public ThreadPoolTaskScheduler taskScheduler(ThreadPoolTaskSchedulerBuilder builder) {
+        return builder.build();
+    }
+
+    @Bean(name = HEAVY_JOB_SCHEDULER)
+    public ThreadPoolTaskScheduler heavyJobScheduler(
+            @Value("${app.scheduling.heavy-pool-size:3}") int poolSize) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(Math.max(1, poolSize));
+        scheduler.setThreadNamePrefix("heavy-job-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+}
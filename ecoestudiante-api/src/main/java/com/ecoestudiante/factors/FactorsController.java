@@ -1,8 +1,11 @@
 package com.ecoestudiante.factors;
 
+import com.ecoestudiante.calc.service.EmissionFactorEngine;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import java.util.List;
@@ -13,6 +16,12 @@ import java.util.Map;
 @Tag(name="Factors", description="Metadatos de factores de emisión")
 public class FactorsController {
 
+  private final EmissionFactorEngine factorEngine;
+
+  public FactorsController(EmissionFactorEngine factorEngine) {
+    this.factorEngine = factorEngine;
+  }
+
   @GetMapping("/meta")
   @Operation(summary="Metadatos de factores disponibles (mock)")
   public List<Map<String,Object>> meta() {
@@ -21,4 +30,12 @@ public class FactorsController {
       Map.of("source_id","HUELLACHILE-2023","scope","national","region_level","region","year",2023,"unit","kgCO2e/km","valid_from","2023-01-01","valid_to","2023-12-31","hash","def456")
     );
   }
+
+  @PostMapping("/reload")
+  @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN')")
+  @Operation(summary="Recarga en memoria los factores de emisión versionados")
+  public Map<String,Object> reload() {
+    int loaded = factorEngine.reload();
+    return Map.of("loaded", loaded, "loadedAt", factorEngine.loadedAt().toString());
+  }
 }
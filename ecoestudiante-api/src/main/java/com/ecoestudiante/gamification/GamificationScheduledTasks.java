@@ -1,120 +1,134 @@
 package com.ecoestudiante.gamification;
 
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.repository.ScheduledJobLockRepository;
+import com.ecoestudiante.gamification.service.IsoWeekCalendar;
+import com.ecoestudiante.gamification.service.MissionCatalog;
 import com.ecoestudiante.gamification.service.MissionService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDate;
-import java.time.temporal.WeekFields;
+import java.lang.management.ManagementFactory;
 
 /**
  * Tareas programadas para el módulo de gamificación.
- * Incluye la generación automática de misiones semanales.
+ * Incluye el cambio de semana de las misiones: generar las de la semana actual
+ * y expirar las no completadas de la anterior.
+ *
+ * Con varias réplicas de la API, solo una ejecuta el cambio de semana: lo
+ * protege el lock de scheduled_job_lock, que además recuerda la última semana
+ * completada. Por eso la tarea puede revisarse seguido
+ * (app.gamification.rollover.cron): si la réplica estaba caída el lunes, la
+ * semana se procesa en la siguiente revisión, y si ya se procesó no hace nada.
+ *
+ * Se habilita por perfil con app.gamification.rollover.enabled.
  */
 @Component
+@ConditionalOnProperty(prefix = "app.gamification.rollover", name = "enabled", havingValue = "true", matchIfMissing = true)
 public class GamificationScheduledTasks {
   private static final Logger logger = LoggerFactory.getLogger(GamificationScheduledTasks.class);
 
-  private final MissionService missionService;
+  private static final String ROLLOVER_JOB = "mission-weekly-rollover";
 
-  public GamificationScheduledTasks(MissionService missionService) {
+  private final MissionService missionService;
+  private final IsoWeekCalendar weekCalendar;
+  private final MissionCatalog missionCatalog;
+  private final ScheduledJobLockRepository lockRepository;
+  private final MeterRegistry meterRegistry;
+  private final long lockLeaseSeconds;
+  private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+  private final Counter generatedRows;
+  private final Counter expiredRows;
+
+  public GamificationScheduledTasks(MissionService missionService, IsoWeekCalendar weekCalendar,
+                                    MissionCatalog missionCatalog, ScheduledJobLockRepository lockRepository,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${app.gamification.rollover.lock-lease-seconds:600}") long lockLeaseSeconds) {
     this.missionService = missionService;
+    this.weekCalendar = weekCalendar;
+    this.missionCatalog = missionCatalog;
+    this.lockRepository = lockRepository;
+    this.meterRegistry = meterRegistry;
+    this.lockLeaseSeconds = lockLeaseSeconds;
+    this.generatedRows = Counter.builder("gamification.rollover.rows")
+        .description("Misiones generadas por el cambio de semana")
+        .tag("type", "generated")
+        .register(meterRegistry);
+    this.expiredRows = Counter.builder("gamification.rollover.rows")
+        .description("Progresos de misiones expirados por el cambio de semana")
+        .tag("type", "expired")
+        .register(meterRegistry);
   }
 
   /**
-   * Genera misiones para la semana actual.
-   * Se ejecuta cada lunes a las 00:00 (medianoche).
+   * Cambio de semana de las misiones, una vez por semana ISO y en una sola réplica:
+   * 1. Genera las misiones de la semana actual (una inserción para todos los templates)
+   * 2. Marca como expiradas las misiones no completadas de la semana anterior
+   *    (una sentencia) y descarta sus definiciones de la caché de misiones
    *
-   * Expresión cron: "0 0 0 * * MON"
-   * - Segundo: 0
-   * - Minuto: 0
-   * - Hora: 0
-   * - Día del mes: * (cualquiera)
-   * - Mes: * (cualquiera)
-   * - Día de la semana: MON (lunes)
+   * Por defecto revisa cada 10 minutos; fuera del cambio de semana solo
+   * ejecuta la sentencia del lock.
    */
-  @Scheduled(cron = "0 0 0 * * MON", zone = "America/Santiago")
-  public void generateWeeklyMissions() {
-    try {
-      LocalDate now = LocalDate.now();
-      WeekFields weekFields = WeekFields.ISO;
-      int weekNumber = now.get(weekFields.weekOfWeekBasedYear());
-      int year = now.get(weekFields.weekBasedYear());
-      String weekString = String.format("%04d-W%02d", year, weekNumber);
-
-      logger.info("========================================");
-      logger.info("Iniciando generación automática de misiones semanales");
-      logger.info("Semana: {}", weekString);
-      logger.info("========================================");
-
-      int generatedCount = missionService.generateWeeklyMissions(weekString, year);
-
-      logger.info("========================================");
-      logger.info("Generación de misiones completada exitosamente");
-      logger.info("Total de misiones generadas: {}", generatedCount);
-      logger.info("========================================");
-
-    } catch (Exception e) {
-      logger.error("========================================");
-      logger.error("ERROR: Fallo en la generación automática de misiones semanales", e);
-      logger.error("========================================");
-      // No lanzar excepción para no interrumpir otras tareas programadas
+  @Scheduled(cron = "${app.gamification.rollover.cron:0 */10 * * * *}", zone = "${app.gamification.zone:America/Santiago}")
+  public void rollOverWeek() {
+    int week = weekCalendar.currentWeek();
+    String weekString = IsoWeek.label(week);
+
+    if (!lockRepository.tryAcquire(ROLLOVER_JOB, weekString, owner, lockLeaseSeconds)) {
+      logger.debug("Cambio de semana {} ya procesado o en curso en otra réplica", weekString);
+      return;
     }
-  }
 
-  /**
-   * Marca como expiradas las misiones no completadas de la semana anterior.
-   * Se ejecuta cada lunes a las 00:05 (5 minutos después de generar nuevas misiones).
-   */
-  @Scheduled(cron = "0 5 0 * * MON", zone = "America/Santiago")
-  public void expireLastWeekMissions() {
+    Timer.Sample sample = Timer.start(meterRegistry);
+    String outcome = "success";
     try {
-      LocalDate lastWeek = LocalDate.now().minusWeeks(1);
-      WeekFields weekFields = WeekFields.ISO;
-      int weekNumber = lastWeek.get(weekFields.weekOfWeekBasedYear());
-      int year = lastWeek.get(weekFields.weekBasedYear());
-      String weekString = String.format("%04d-W%02d", year, weekNumber);
-
       logger.info("========================================");
-      logger.info("Marcando misiones de la semana pasada como expiradas");
+      logger.info("Iniciando cambio de semana de misiones");
       logger.info("Semana: {}", weekString);
       logger.info("========================================");
 
-      int expiredCount = missionService.expireWeeklyMissions(weekString, year);
+      int generatedCount = missionService.generateWeeklyMissions(weekString, IsoWeek.year(week));
+      generatedRows.increment(generatedCount);
+
+      int lastWeek = IsoWeek.previous(week);
+      int expiredCount = missionService.expireWeeklyMissions(IsoWeek.label(lastWeek), IsoWeek.year(lastWeek));
+      expiredRows.increment(expiredCount);
+      missionCatalog.evictWeek(IsoWeek.label(lastWeek), IsoWeek.year(lastWeek));
+
+      lockRepository.complete(ROLLOVER_JOB, weekString, owner);
 
       logger.info("========================================");
-      logger.info("Expiración de misiones completada");
-      logger.info("Total de misiones expiradas: {}", expiredCount);
+      logger.info("Cambio de semana completado exitosamente");
+      logger.info("Misiones generadas: {} - Misiones expiradas ({}): {}",
+          generatedCount, IsoWeek.label(lastWeek), expiredCount);
       logger.info("========================================");
 
     } catch (Exception e) {
+      outcome = "failure";
       logger.error("========================================");
-      logger.error("ERROR: Fallo al marcar misiones como expiradas", e);
+      logger.error("ERROR: Fallo en el cambio de semana de misiones {}", weekString, e);
       logger.error("========================================");
-    }
-  }
-
-  /**
-   * SOLO PARA TESTING/DEVELOPMENT:
-   * Genera misiones cada 5 minutos durante desarrollo.
-   * COMENTAR/ELIMINAR ESTE MÉTODO EN PRODUCCIÓN.
-   */
-  @Scheduled(cron = "0 */5 * * * *") // Cada 5 minutos
-  public void generateWeeklyMissionsDevMode() {
-    try {
-      LocalDate now = LocalDate.now();
-      WeekFields weekFields = WeekFields.ISO;
-      int weekNumber = now.get(weekFields.weekOfWeekBasedYear());
-      int year = now.get(weekFields.weekBasedYear());
-      String weekString = String.format("%04d-W%02d", year, weekNumber);
-
-      logger.info("[DEV MODE] Generando misiones de prueba para semana {}...", weekString);
-      int generatedCount = missionService.generateWeeklyMissions(weekString, year);
-      logger.info("[DEV MODE] Misiones generadas: {}", generatedCount);
-    } catch (Exception e) {
-      logger.error("[DEV MODE] Error generando misiones: ", e);
+      // Liberar el lock para reintentar en la siguiente revisión; no lanzar
+      // excepción para no interrumpir otras tareas programadas
+      try {
+        lockRepository.release(ROLLOVER_JOB, owner);
+      } catch (Exception releaseError) {
+        logger.error("ERROR: No se pudo liberar el lock de {}; vence en {} s",
+            ROLLOVER_JOB, lockLeaseSeconds, releaseError);
+      }
+    } finally {
+      sample.stop(Timer.builder("gamification.rollover.duration")
+          .description("Duración del cambio de semana de misiones")
+          .tag("outcome", outcome)
+          .register(meterRegistry));
     }
   }
 }
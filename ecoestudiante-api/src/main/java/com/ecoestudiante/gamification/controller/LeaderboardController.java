@@ -2,7 +2,10 @@ package com.ecoestudiante.gamification.controller;
 
 import com.ecoestudiante.auth.UserContextResolver;
 import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import com.ecoestudiante.gamification.service.LeaderboardService;
+import com.ecoestudiante.gamification.service.LeaderboardStreamService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,20 +17,23 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.time.LocalDate;
-import java.time.temporal.IsoFields;
+import java.util.List;
 import java.util.UUID;
 
 /**
  * Controlador REST para Leaderboard (Ranking).
  *
  * Gestiona endpoints para:
- * - Ver ranking semanal (top N)
+ * - Ver ranking semanal (top N), global o de la institución, campus o carrera del usuario
  * - Ver posición del usuario
+ * - Seguir el ranking en vivo (Server-Sent Events)
+ * - Ver el historial de posiciones en semanas archivadas
  * - Recalcular ranking (admin)
  *
  * Ruta base: /api/v1/gam/leaderboard
@@ -44,12 +50,15 @@ public class LeaderboardController {
     private static final Logger logger = LoggerFactory.getLogger(LeaderboardController.class);
 
     private final LeaderboardService leaderboardService;
+    private final LeaderboardStreamService leaderboardStreamService;
     private final UserContextResolver userContextResolver;
 
     public LeaderboardController(
             LeaderboardService leaderboardService,
+            LeaderboardStreamService leaderboardStreamService,
             UserContextResolver userContextResolver) {
         this.leaderboardService = leaderboardService;
+        this.leaderboardStreamService = leaderboardStreamService;
         this.userContextResolver = userContextResolver;
     }
 
@@ -65,23 +74,27 @@ public class LeaderboardController {
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Leaderboard obtenido exitosamente",
                     content = @Content(schema = @Schema(implementation = MissionDtos.LeaderboardResponse.class))),
+            @ApiResponse(responseCode = "400", description = "El usuario no pertenece a una partición del alcance"),
             @ApiResponse(responseCode = "401", description = "No autenticado"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     public ResponseEntity<MissionDtos.LeaderboardResponse> getCurrentLeaderboard(
             @Parameter(description = "Número de usuarios top a mostrar")
             @RequestParam(defaultValue = "10") int topN,
+            @Parameter(description = "Alcance: GLOBAL, INSTITUTION, CAMPUS o CAREER (los del usuario)")
+            @RequestParam(defaultValue = "GLOBAL") LeaderboardScope scope,
             HttpServletRequest request) {
 
         try {
             UUID userId = userContextResolver.resolve(request).normalizedUserId();
-            logger.info("Obteniendo leaderboard actual (top {}) para usuario {}", topN, userId);
+            logger.info("Obteniendo leaderboard actual {} (top {}) para usuario {}", scope, topN, userId);
 
             // Obtener leaderboard
-            MissionDtos.LeaderboardResponse leaderboard = leaderboardService.getCurrentWeekLeaderboard(topN);
+            MissionDtos.LeaderboardResponse leaderboard =
+                    leaderboardService.getCurrentWeekLeaderboard(topN, scope, userId);
 
             // Obtener posición del usuario si no está en el top
-            MissionDtos.LeaderboardEntryResponse userPosition = leaderboardService.getUserPosition(userId);
+            MissionDtos.LeaderboardEntryResponse userPosition = leaderboardService.getUserPosition(userId, scope);
 
             // Si el usuario no está en el top N, agregarlo como currentUser
             boolean userInTop = leaderboard.topUsers().stream()
@@ -99,12 +112,47 @@ public class LeaderboardController {
             }
 
             return ResponseEntity.ok(leaderboard);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error al obtener leaderboard", e);
             throw new RuntimeException("Error al obtener leaderboard", e);
         }
     }
 
+    /**
+     * Stream en vivo del leaderboard de la semana actual
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(
+            summary = "Seguir ranking en vivo",
+            description = "Server-Sent Events: evento 'top' con el top N cuando cambia y evento 'position' "
+                    + "con la posición del usuario actual cuando cambia. Reemplaza el polling de /leaderboard"
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Stream abierto"),
+            @ApiResponse(responseCode = "400", description = "topN inválido o el usuario no pertenece a una partición del alcance"),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "503", description = "Máximo de conexiones alcanzado")
+    })
+    public ResponseEntity<SseEmitter> streamLeaderboard(
+            @Parameter(description = "Número de usuarios top a seguir")
+            @RequestParam(defaultValue = "10") int topN,
+            @Parameter(description = "Alcance: GLOBAL, INSTITUTION, CAMPUS o CAREER (los del usuario)")
+            @RequestParam(defaultValue = "GLOBAL") LeaderboardScope scope,
+            HttpServletRequest request) {
+
+        UUID userId = userContextResolver.resolve(request).normalizedUserId();
+        logger.info("Abriendo stream de leaderboard {} (top {}) para usuario {}", scope, topN, userId);
+
+        return leaderboardStreamService.subscribe(userId, scope, topN, request)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                        .header("Retry-After", "30")
+                        .build());
+    }
+
     /**
      * Obtiene el leaderboard de una semana específica
      */
@@ -126,27 +174,26 @@ public class LeaderboardController {
             @RequestParam(required = false) Integer year,
             @Parameter(description = "Número de usuarios top a mostrar")
             @RequestParam(defaultValue = "10") int topN,
+            @Parameter(description = "Alcance: GLOBAL, INSTITUTION, CAMPUS o CAREER (los del usuario)")
+            @RequestParam(defaultValue = "GLOBAL") LeaderboardScope scope,
             HttpServletRequest request) {
 
         try {
             UUID userId = userContextResolver.resolve(request).normalizedUserId();
 
-            // Parsear año si no se proporciona
-            if (year == null) {
-                String[] parts = weekNumber.split("-");
-                year = Integer.parseInt(parts[0]);
-            }
+            // Validar la semana y tomar su año ISO si no se proporciona
+            year = IsoWeek.year(IsoWeek.parse(weekNumber, year));
 
-            logger.info("Obteniendo leaderboard de semana {}-{} (top {}) para usuario {}",
-                    weekNumber, year, topN, userId);
+            logger.info("Obteniendo leaderboard {} de semana {}-{} (top {}) para usuario {}",
+                    scope, weekNumber, year, topN, userId);
 
             MissionDtos.LeaderboardResponse leaderboard = leaderboardService.getWeekLeaderboard(
-                    weekNumber, year, topN
+                    weekNumber, year, topN, scope, userId
             );
 
             // Agregar posición del usuario si no está en el top
             MissionDtos.LeaderboardEntryResponse userPosition = leaderboardService.getUserPositionInWeek(
-                    userId, weekNumber, year
+                    userId, weekNumber, year, scope
             );
 
             boolean userInTop = leaderboard.topUsers().stream()
@@ -164,6 +211,8 @@ public class LeaderboardController {
             }
 
             return ResponseEntity.ok(leaderboard);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error al obtener leaderboard de semana {}", weekNumber, e);
             throw new RuntimeException("Error al obtener leaderboard", e);
@@ -184,24 +233,57 @@ public class LeaderboardController {
             @ApiResponse(responseCode = "404", description = "Usuario no está en el ranking"),
             @ApiResponse(responseCode = "401", description = "No autenticado")
     })
-    public ResponseEntity<MissionDtos.LeaderboardEntryResponse> getMyPosition(HttpServletRequest request) {
+    public ResponseEntity<MissionDtos.LeaderboardEntryResponse> getMyPosition(
+            @Parameter(description = "Alcance: GLOBAL, INSTITUTION, CAMPUS o CAREER (los del usuario)")
+            @RequestParam(defaultValue = "GLOBAL") LeaderboardScope scope,
+            HttpServletRequest request) {
         try {
             UUID userId = userContextResolver.resolve(request).normalizedUserId();
-            logger.info("Obteniendo posición de usuario {} en leaderboard", userId);
+            logger.info("Obteniendo posición {} de usuario {} en leaderboard", scope, userId);
 
-            MissionDtos.LeaderboardEntryResponse position = leaderboardService.getUserPosition(userId);
+            MissionDtos.LeaderboardEntryResponse position = leaderboardService.getUserPosition(userId, scope);
 
             if (position == null) {
                 return ResponseEntity.notFound().build();
             }
 
             return ResponseEntity.ok(position);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error al obtener posición del usuario", e);
             throw new RuntimeException("Error al obtener posición", e);
         }
     }
 
+    /**
+     * Obtiene el historial de posiciones del usuario actual en semanas cerradas
+     */
+    @GetMapping(path = "/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    @Operation(
+            summary = "Ver mi historial de posiciones",
+            description = "Retorna la posición del usuario actual en cada semana archivada, de la más reciente a la más antigua"
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Historial obtenido exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Límite inválido"),
+            @ApiResponse(responseCode = "401", description = "No autenticado")
+    })
+    public ResponseEntity<List<MissionDtos.RankHistoryEntry>> getMyRankHistory(
+            @Parameter(description = "Número máximo de semanas (1-104)")
+            @RequestParam(defaultValue = "12") int limit,
+            HttpServletRequest request) {
+
+        if (limit < 1 || limit > 104) {
+            throw new IllegalArgumentException("limit debe estar entre 1 y 104");
+        }
+        UUID userId = userContextResolver.resolve(request).normalizedUserId();
+        logger.info("Obteniendo historial de posiciones de usuario {} (últimas {} semanas)", userId, limit);
+
+        return ResponseEntity.ok(leaderboardService.getUserRankHistory(userId, limit));
+    }
+
     /**
      * Recalcula el leaderboard de la semana actual (endpoint administrativo)
      */
@@ -253,11 +335,8 @@ public class LeaderboardController {
             @RequestParam(required = false) Integer year) {
 
         try {
-            // Parsear año si no se proporciona
-            if (year == null) {
-                String[] parts = weekNumber.split("-");
-                year = Integer.parseInt(parts[0]);
-            }
+            // Validar la semana y tomar su año ISO si no se proporciona
+            year = IsoWeek.year(IsoWeek.parse(weekNumber, year));
 
             logger.info("Recalculando leaderboard de semana {}-{}", weekNumber, year);
 
@@ -269,6 +348,8 @@ public class LeaderboardController {
             );
 
             return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error al recalcular leaderboard de semana {}", weekNumber, e);
             throw new RuntimeException("Error al recalcular leaderboard", e);
@@ -2,6 +2,8 @@ package com.ecoestudiante.gamification.controller;
 
 import com.ecoestudiante.auth.UserContextResolver;
 import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.service.IsoWeekCalendar;
 import com.ecoestudiante.gamification.service.MissionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -16,10 +18,9 @@ import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.time.LocalDate;
-import java.time.temporal.IsoFields;
 import java.util.List;
 import java.util.UUID;
 
@@ -48,12 +49,15 @@ public class MissionController {
 
     private final MissionService missionService;
     private final UserContextResolver userContextResolver;
+    private final IsoWeekCalendar weekCalendar;
 
     public MissionController(
             MissionService missionService,
-            UserContextResolver userContextResolver) {
+            UserContextResolver userContextResolver,
+            IsoWeekCalendar weekCalendar) {
         this.missionService = missionService;
         this.userContextResolver = userContextResolver;
+        this.weekCalendar = weekCalendar;
     }
 
     /**
@@ -73,15 +77,15 @@ public class MissionController {
     })
     public ResponseEntity<MissionDtos.MissionsListResponse> getCurrentWeekMissions() {
         try {
-            String[] currentWeek = getCurrentWeekAndYear();
+            int currentWeek = weekCalendar.currentWeek();
             List<MissionDtos.MissionResponse> missions = missionService.getMissionsByWeek(
-                    currentWeek[0], Integer.parseInt(currentWeek[1])
+                    IsoWeek.label(currentWeek), IsoWeek.year(currentWeek)
             );
 
             MissionDtos.MissionsListResponse response = new MissionDtos.MissionsListResponse(
                     missions,
                     missions.size(),
-                    currentWeek[0]
+                    IsoWeek.label(currentWeek)
             );
 
             return ResponseEntity.ok(response);
@@ -109,18 +113,18 @@ public class MissionController {
     public ResponseEntity<MissionDtos.MissionsListResponse> getAvailableMissions(HttpServletRequest request) {
         try {
             UUID userId = userContextResolver.resolve(request).normalizedUserId();
-            String[] currentWeek = getCurrentWeekAndYear();
+            int currentWeek = weekCalendar.currentWeek();
             
-            logger.info("Obteniendo misiones disponibles para usuario {} en semana {}", userId, currentWeek[0]);
+            logger.info("Obteniendo misiones disponibles para usuario {} en semana {}", userId, IsoWeek.label(currentWeek));
             
             List<MissionDtos.MissionResponse> availableMissions = missionService.getAvailableMissionsForUser(
-                    userId, currentWeek[0], Integer.parseInt(currentWeek[1])
+                    userId, IsoWeek.label(currentWeek), IsoWeek.year(currentWeek)
             );
 
             MissionDtos.MissionsListResponse response = new MissionDtos.MissionsListResponse(
                     availableMissions,
                     availableMissions.size(),
-                    currentWeek[0]
+                    IsoWeek.label(currentWeek)
             );
 
             return ResponseEntity.ok(response);
@@ -224,6 +228,38 @@ public class MissionController {
         }
     }
 
+    /**
+     * Asigna una misión a toda una cohorte (carrera, campus o institución)
+     */
+    @PostMapping(path = "/{missionId}/assign/cohort", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN', 'SUPER_ADMIN', 'PROFESOR')")
+    @Operation(
+            summary = "Asignar misión a una cohorte",
+            description = "Asigna la misión a todos los estudiantes de una carrera, campus o institución que aún no la tienen"
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses({
+            @ApiResponse(responseCode = "201", description = "Misión asignada a la cohorte"),
+            @ApiResponse(responseCode = "400", description = "Cohorte inválida"),
+            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "403", description = "Requiere rol de profesor o administrador"),
+            @ApiResponse(responseCode = "404", description = "Misión no encontrada")
+    })
+    public ResponseEntity<MissionDtos.CohortAssignResponse> assignMissionToCohort(
+            @PathVariable Long missionId,
+            @RequestBody MissionDtos.CohortAssignRequest request) {
+
+        try {
+            MissionDtos.CohortAssignResponse response = missionService.assignMissionToCohort(missionId, request);
+            return ResponseEntity.status(HttpStatus.CREATED).body(response);
+        } catch (IllegalArgumentException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            logger.error("Error al asignar misión {} a una cohorte", missionId, e);
+            throw e;
+        }
+    }
+
     /**
      * Actualiza el progreso de una misión
      */
@@ -328,9 +364,9 @@ public class MissionController {
             @RequestParam(required = false) String weekNumber,
             @RequestParam(required = false) Integer year) {
         try {
-            String[] currentWeek = getCurrentWeekAndYear();
-            String targetWeek = weekNumber != null ? weekNumber : currentWeek[0];
-            Integer targetYear = year != null ? year : Integer.parseInt(currentWeek[1]);
+            int currentWeek = weekCalendar.currentWeek();
+            String targetWeek = weekNumber != null ? weekNumber : IsoWeek.label(currentWeek);
+            Integer targetYear = year != null ? year : IsoWeek.year(currentWeek);
 
             logger.info("[ADMIN] Generando misiones para semana {}-{}", targetWeek, targetYear);
 
@@ -357,16 +393,4 @@ public class MissionController {
             String message
     ) {}
 
-    // =========================================================================
-    // Métodos auxiliares
-    // =========================================================================
-
-    private String[] getCurrentWeekAndYear() {
-        LocalDate now = LocalDate.now();
-        int weekNum = now.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-        int year = now.get(IsoFields.WEEK_BASED_YEAR);
-        String weekNumber = String.format("%d-W%02d", year, weekNum);
-        return new String[]{weekNumber, String.valueOf(year)};
-    }
-
 }
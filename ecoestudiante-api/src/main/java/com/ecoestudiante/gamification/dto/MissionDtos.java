@@ -128,6 +128,37 @@ public final class MissionDtos {
             BigDecimal baselineValue
     ) {}
 
+    /**
+     * DTO de solicitud para asignar una misión a una cohorte completa
+     */
+    public record CohortAssignRequest(
+            @Schema(description = "Cohorte: INSTITUTION, CAMPUS o CAREER", example = "CAREER", required = true)
+            String scope,
+
+            @Schema(description = "ID de la institución o campus, o nombre de la carrera", example = "Ingeniería Informática", required = true)
+            String value,
+
+            @Schema(description = "Baseline para estudiantes sin historial en la categoría (misiones de reducción)")
+            BigDecimal defaultBaselineValue
+    ) {}
+
+    /**
+     * DTO de respuesta de la asignación a una cohorte
+     */
+    public record CohortAssignResponse(
+            @Schema(description = "ID de la misión", example = "1")
+            Long missionId,
+
+            @Schema(description = "Cohorte", example = "CAREER")
+            String scope,
+
+            @Schema(description = "Valor de la cohorte", example = "Ingeniería Informática")
+            String value,
+
+            @Schema(description = "Estudiantes a los que se asignó la misión (sin contar los que ya la tenían)", example = "4850")
+            int assignedCount
+    ) {}
+
     // =========================================================================
     // DTOs de Perfil de Gamificación
     // =========================================================================
@@ -246,6 +277,32 @@ public final class MissionDtos {
             LocalDateTime calculatedAt
     ) {}
 
+    /**
+     * DTO de respuesta para la posición de un usuario en una semana archivada
+     */
+    public record RankHistoryEntry(
+            @Schema(description = "Número de semana", example = "2025-W01")
+            String weekNumber,
+
+            @Schema(description = "Año", example = "2025")
+            Integer year,
+
+            @Schema(description = "Posición en el ranking", example = "12")
+            Integer rank,
+
+            @Schema(description = "Total de usuarios en el ranking", example = "150")
+            Integer totalUsers,
+
+            @Schema(description = "kg de CO₂ evitados", example = "45.3")
+            BigDecimal co2AvoidedKg,
+
+            @Schema(description = "Misiones completadas", example = "5")
+            Integer missionsCompleted,
+
+            @Schema(description = "XP ganado en la semana", example = "350")
+            Integer totalXpWeek
+    ) {}
+
     // =========================================================================
     // DTOs de Transacciones XP
     // =========================================================================
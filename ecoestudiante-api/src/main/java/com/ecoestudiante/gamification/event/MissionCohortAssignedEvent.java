@@ -0,0 +1,39 @@
+package com.ecoestudiante.gamification.event;
+
+import lombok.Getter;
+import org.springframework.context.ApplicationEvent;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Evento publicado una sola vez cuando se asigna una misión a una cohorte
+ * completa (carrera, campus o institución), con todos los usuarios asignados.
+ * Equivale a un {@link MissionAssignedEvent} por usuario.
+ */
+@Getter
+public class MissionCohortAssignedEvent extends ApplicationEvent {
+
+    private final List<UUID> userIds;
+    private final Long missionId;
+    private final String weekNumber;
+    private final Integer year;
+    private final LocalDateTime assignedAt;
+
+    public MissionCohortAssignedEvent(
+            Object source,
+            List<UUID> userIds,
+            Long missionId,
+            String weekNumber,
+            Integer year,
+            LocalDateTime assignedAt
+    ) {
+        super(source);
+        this.userIds = userIds;
+        this.missionId = missionId;
+        this.weekNumber = weekNumber;
+        this.year = year;
+        this.assignedAt = assignedAt;
+    }
+}
@@ -1,29 +1,35 @@
 package com.ecoestudiante.gamification.listener;
 
-import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
 import com.ecoestudiante.gamification.event.MissionAssignedEvent;
+import com.ecoestudiante.gamification.event.MissionCohortAssignedEvent;
 import com.ecoestudiante.gamification.event.MissionCompletedEvent;
-import com.ecoestudiante.gamification.service.LeaderboardService;
-import com.ecoestudiante.gamification.service.MissionProgressService;
+import com.ecoestudiante.gamification.service.LeaderboardUpdateCoalescer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.event.EventListener;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 /**
  * Listener centralizado para eventos de gamificación.
  *
  * Responsabilidades:
- * - Escuchar eventos de cálculos completados
  * - Escuchar eventos de misiones completadas/asignadas
- * - Actualizar progreso de misiones automáticamente
- * - Actualizar leaderboard en tiempo real
+ * - Registrar el delta del evento en leaderboard_delta_outbox; {@link LeaderboardUpdateCoalescer}
+ *   lo aplica en lote (una actualización por usuario y ventana, no una por evento)
+ *
+ * Los cálculos completados ya no llegan como evento: se registran en
+ * calculation_outbox y los procesa {@link com.ecoestudiante.gamification.service.CalculationOutboxProcessor}.
  *
- * Usa @TransactionalEventListener para garantizar que solo se procesan
- * eventos de transacciones exitosas (AFTER_COMMIT).
+ * La semana del delta es la del momento del evento (completedAt / assignedAt),
+ * la misma que usan las métricas semanales al recalcular.
+ *
+ * Usa @TransactionalEventListener en fase BEFORE_COMMIT: el delta se inserta
+ * en la misma transacción que la misión, así que se confirma o se descarta con
+ * ella y una caída de la instancia no lo pierde.
  *
  * @author EcoEstudiante Team
  * @version 1.0.0
@@ -34,118 +40,50 @@ public class GamificationEventListener {
 
     private static final Logger logger = LoggerFactory.getLogger(GamificationEventListener.class);
 
-    private final MissionProgressService missionProgressService;
-    private final LeaderboardService leaderboardService;
-
-    public GamificationEventListener(
-            MissionProgressService missionProgressService,
-            LeaderboardService leaderboardService
-    ) {
-        this.missionProgressService = missionProgressService;
-        this.leaderboardService = leaderboardService;
-    }
-
-    /**
-     * Escucha eventos de cálculos completados y actualiza misiones automáticamente.
-     *
-     * Se ejecuta DESPUÉS del commit de la transacción del cálculo para garantizar consistencia.
-     * Es async para no bloquear el flujo principal de cálculo.
-     */
-    @Async
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
-    public void onCalculationCompleted(CalculationCompletedEvent event) {
-        logger.info("🎮 Evento recibido: Cálculo completado - Usuario: {}, Categoría: {}, CO2: {} kg",
-                event.getUserId(), event.getCategory(), event.getKgCO2e());
-
-        try {
-            // Actualizar progreso de misiones automáticamente
-            int updatedMissions = missionProgressService.processCalculationAndUpdateMissions(event);
-
-            if (updatedMissions > 0) {
-                logger.info("✅ Actualizadas {} misiones para usuario {} tras cálculo de {}",
-                        updatedMissions, event.getUserId(), event.getCategory());
-            } else {
-                logger.info("ℹ️ No se actualizaron misiones para usuario {} (sin misiones activas de categoría {})",
-                        event.getUserId(), event.getCategory());
-            }
-
-            // ⚠️ CRÍTICO: SIEMPRE actualizar leaderboard después de un cálculo
-            // independientemente de si hay misiones activas o no
-            updateUserLeaderboard(event.getUserId());
+    private final LeaderboardUpdateCoalescer leaderboardUpdater;
 
-        } catch (Exception e) {
-            logger.error("❌ Error procesando cálculo para actualizar misiones - Usuario: {}",
-                    event.getUserId(), e);
-            // No propagar la excepción para no afectar el flujo principal
-        }
+    public GamificationEventListener(LeaderboardUpdateCoalescer leaderboardUpdater) {
+        this.leaderboardUpdater = leaderboardUpdater;
     }
 
     /**
-     * Escucha eventos de misiones completadas y actualiza leaderboard.
+     * Escucha eventos de misiones completadas y registra su delta en el leaderboard.
      */
-    @Async
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
     public void onMissionCompleted(MissionCompletedEvent event) {
         logger.info("🏆 Evento recibido: Misión completada - Usuario: {}, Misión: '{}', XP: {}, CO2 Impact: {} kg",
                 event.getUserId(), event.getMissionTitle(), event.getXpRewarded(), event.getCo2ImpactKg());
 
-        try {
-            // Actualizar leaderboard inmediatamente
-            leaderboardService.updateUserLeaderboardEntry(
-                    event.getUserId(),
-                    event.getWeekNumber(),
-                    event.getYear()
-            );
-
-            logger.info("✅ Leaderboard actualizado para usuario {} en semana {}-{}",
-                    event.getUserId(), event.getWeekNumber(), event.getYear());
-        } catch (Exception e) {
-            logger.error("❌ Error actualizando leaderboard tras misión completada - Usuario: {}",
-                    event.getUserId(), e);
-        }
+        // Delta: una misión más y su XP
+        leaderboardUpdater.recordMissionCompleted(
+                event.getUserId(),
+                event.getCompletedAt() != null ? event.getCompletedAt() : LocalDateTime.now(),
+                event.getXpRewarded() != null ? event.getXpRewarded() : 0);
     }
 
     /**
-     * Escucha eventos de misiones asignadas y actualiza leaderboard inmediatamente.
+     * Escucha eventos de misiones asignadas y marca la entrada del leaderboard.
      */
-    @Async
-    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
     public void onMissionAssigned(MissionAssignedEvent event) {
         logger.info("📝 Evento recibido: Misión asignada - Usuario: {}, Misión ID: {}, Semana: {}-{}",
                 event.getUserId(), event.getMissionId(), event.getWeekNumber(), event.getYear());
 
-        try {
-            // Actualizar entrada del usuario en leaderboard
-            // Esto asegura que aparezca inmediatamente en el ranking aunque no haya completado nada
-            leaderboardService.updateUserLeaderboardEntry(
-                    event.getUserId(),
-                    event.getWeekNumber(),
-                    event.getYear()
-            );
-
-            logger.info("✅ Usuario {} agregado/actualizado en leaderboard semana {}-{}",
-                    event.getUserId(), event.getWeekNumber(), event.getYear());
-        } catch (Exception e) {
-            logger.error("❌ Error actualizando leaderboard tras asignación de misión - Usuario: {}",
-                    event.getUserId(), e);
-        }
+        // Esto asegura que aparezca en el ranking aunque no haya completado nada
+        leaderboardUpdater.markDirty(List.of(event.getUserId()),
+                event.getAssignedAt() != null ? event.getAssignedAt() : LocalDateTime.now());
     }
 
     /**
-     * Actualiza la entrada de un usuario en el leaderboard de la semana actual.
+     * Escucha asignaciones a una cohorte y marca la entrada de cada usuario
+     * (una sola inserción); el coalescer las aplica en lotes.
      */
-    private void updateUserLeaderboard(java.util.UUID userId) {
-        try {
-            java.time.LocalDate now = java.time.LocalDate.now();
-            int weekNum = now.get(java.time.temporal.IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-            int year = now.getYear();
-            String weekNumber = String.format("%04d-W%02d", year, weekNum);
-
-            leaderboardService.updateUserLeaderboardEntry(userId, weekNumber, year);
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT, fallbackExecution = true)
+    public void onMissionCohortAssigned(MissionCohortAssignedEvent event) {
+        logger.info("📝 Evento recibido: Misión {} asignada a {} usuarios - Semana: {}-{}",
+                event.getMissionId(), event.getUserIds().size(), event.getWeekNumber(), event.getYear());
 
-            logger.info("✅ Leaderboard actualizado para usuario {} en semana {}", userId, weekNumber);
-        } catch (Exception e) {
-            logger.error("❌ Error actualizando leaderboard para usuario {}", userId, e);
-        }
+        leaderboardUpdater.markDirty(event.getUserIds(),
+                event.getAssignedAt() != null ? event.getAssignedAt() : LocalDateTime.now());
     }
 }
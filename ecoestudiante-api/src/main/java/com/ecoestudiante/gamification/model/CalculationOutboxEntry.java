@@ -0,0 +1,59 @@
+package com.ecoestudiante.gamification.model;
+
+import lombok.Data;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Modelo de dominio para una fila del outbox de cálculos.
+ *
+ * Representa los efectos secundarios pendientes de un cálculo ya persistido
+ * (XP, racha, progreso de misiones y leaderboard), que un worker aplica en
+ * segundo plano agrupando por usuario.
+ *
+ * Mapea a la tabla: calculation_outbox (categoría, emisiones y payload
+ * provienen del cálculo asociado en calculation)
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-14
+ */
+@Data
+public class CalculationOutboxEntry {
+
+    private Long id;
+
+    /**
+     * Cálculo que originó la fila (FK a calculation.id)
+     */
+    private UUID calculationId;
+
+    private UUID userId;
+
+    /**
+     * Categoría del cálculo: electricidad, transporte, residuos
+     */
+    private String category;
+
+    private BigDecimal kgCo2e;
+
+    /**
+     * XP a otorgar por este cálculo
+     */
+    private Integer xpAmount;
+
+    /**
+     * Datos de entrada del cálculo en JSON (para evaluar misiones)
+     */
+    private String payload;
+
+    private LocalDateTime createdAt;
+
+    private Integer attempts;
+
+    /**
+     * Momento en que se otorgaron XP y misiones (null si aún está pendiente)
+     */
+    private LocalDateTime processedAt;
+}
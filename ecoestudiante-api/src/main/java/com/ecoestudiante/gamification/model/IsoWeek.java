@@ -0,0 +1,188 @@
+package com.ecoestudiante.gamification.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Semana ISO-8601 empaquetada en un int: {@code (año basado en semanas << 6) | semana}.
+ *
+ * Es la clave de semana común de leaderboard, misiones y tareas programadas. El
+ * año es siempre el año ISO basado en semanas (el 1 de enero de 2027 pertenece
+ * a 2026-W53), de modo que la misma fecha produce la misma clave en todos los
+ * componentes. Las claves se ordenan cronológicamente como enteros.
+ *
+ * Para los años de la tabla precalculada (2000-2099) las etiquetas "YYYY-Www"
+ * y los límites de cada semana se obtienen sin crear objetos; fuera de ella se
+ * calculan.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+public final class IsoWeek {
+
+    private static final int WEEK_BITS = 6;
+    private static final int WEEK_MASK = (1 << WEEK_BITS) - 1;
+
+    private static final int FIRST_YEAR = 2000;
+    private static final int YEARS = 100;
+    private static final int BASE_KEY = FIRST_YEAR << WEEK_BITS;
+
+    // Lunes de la semana 1 de cada año de la tabla (+1 año para cerrar el último)
+    private static final long[] WEEK_ONE_MONDAY = new long[YEARS + 1];
+    private static final String[] LABELS = new String[YEARS << WEEK_BITS];
+
+    static {
+        for (int i = 0; i <= YEARS; i++) {
+            WEEK_ONE_MONDAY[i] = computeWeekOneMonday(FIRST_YEAR + i);
+        }
+        for (int i = 0; i < YEARS; i++) {
+            int weeks = (int) ((WEEK_ONE_MONDAY[i + 1] - WEEK_ONE_MONDAY[i]) / 7);
+            for (int week = 1; week <= weeks; week++) {
+                LABELS[(i << WEEK_BITS) | week] = format(FIRST_YEAR + i, week);
+            }
+        }
+    }
+
+    private IsoWeek() {
+    }
+
+    /**
+     * @throws IllegalArgumentException si la semana no existe en ese año ISO
+     */
+    public static int of(int year, int week) {
+        if (week < 1 || week > weeksInYear(year)) {
+            throw new IllegalArgumentException("Semana ISO inválida: " + year + "-W" + week);
+        }
+        return (year << WEEK_BITS) | week;
+    }
+
+    /**
+     * Semana ISO que contiene la fecha
+     */
+    public static int of(LocalDate date) {
+        long day = date.toEpochDay();
+        int year = date.getYear();
+        // Del 29-dic al 3-ene la fecha puede pertenecer al año ISO vecino
+        if (day < weekOneMonday(year)) {
+            year--;
+        } else if (day >= weekOneMonday(year + 1)) {
+            year++;
+        }
+        return (year << WEEK_BITS) | (int) ((day - weekOneMonday(year)) / 7 + 1);
+    }
+
+    public static int of(LocalDateTime dateTime) {
+        return of(dateTime.toLocalDate());
+    }
+
+    /**
+     * Clave de una etiqueta "YYYY-Www"
+     *
+     * @throws IllegalArgumentException si el formato o la semana no son válidos
+     */
+    public static int parse(String label) {
+        int sep = label != null ? label.indexOf("-W") : -1;
+        if (sep < 1 || sep > 6 || label.length() - sep < 3 || label.length() - sep > 4) {
+            throw new IllegalArgumentException("Formato de semana inválido (esperado YYYY-Www): " + label);
+        }
+        return of(digits(label, 0, sep), digits(label, sep + 2, label.length()));
+    }
+
+    /**
+     * Clave de una etiqueta "YYYY-Www" junto con su año
+     *
+     * @throws IllegalArgumentException si el año no coincide con el de la etiqueta
+     */
+    public static int parse(String label, Integer year) {
+        int key = parse(label);
+        if (year != null && year != year(key)) {
+            throw new IllegalArgumentException("El año " + year + " no corresponde a la semana " + label);
+        }
+        return key;
+    }
+
+    public static int year(int key) {
+        return key >> WEEK_BITS;
+    }
+
+    public static int week(int key) {
+        return key & WEEK_MASK;
+    }
+
+    /**
+     * Etiqueta "YYYY-Www" (formato de week_number en la BD)
+     */
+    public static String label(int key) {
+        int index = key - BASE_KEY;
+        if (index >= 0 && index < LABELS.length && LABELS[index] != null) {
+            return LABELS[index];
+        }
+        return format(year(key), week(key));
+    }
+
+    /**
+     * Lunes de la semana
+     */
+    public static LocalDate monday(int key) {
+        return LocalDate.ofEpochDay(mondayEpochDay(key));
+    }
+
+    /**
+     * Inicio de la semana (lunes 00:00, inclusive)
+     */
+    public static LocalDateTime start(int key) {
+        return monday(key).atStartOfDay();
+    }
+
+    /**
+     * Fin de la semana (lunes siguiente 00:00, exclusivo)
+     */
+    public static LocalDateTime end(int key) {
+        return LocalDate.ofEpochDay(mondayEpochDay(key) + 7).atStartOfDay();
+    }
+
+    public static int previous(int key) {
+        return week(key) > 1 ? key - 1 : (year(key) - 1) << WEEK_BITS | weeksInYear(year(key) - 1);
+    }
+
+    public static int next(int key) {
+        return week(key) < weeksInYear(year(key)) ? key + 1 : (year(key) + 1) << WEEK_BITS | 1;
+    }
+
+    public static int weeksInYear(int year) {
+        return (int) ((weekOneMonday(year + 1) - weekOneMonday(year)) / 7);
+    }
+
+    static long mondayEpochDay(int key) {
+        return weekOneMonday(year(key)) + (week(key) - 1) * 7L;
+    }
+
+    private static long weekOneMonday(int year) {
+        int index = year - FIRST_YEAR;
+        return index >= 0 && index <= YEARS ? WEEK_ONE_MONDAY[index] : computeWeekOneMonday(year);
+    }
+
+    private static long computeWeekOneMonday(int year) {
+        // El 4 de enero siempre está en la semana 1
+        LocalDate jan4 = LocalDate.of(year, 1, 4);
+        return jan4.toEpochDay() - (jan4.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Formato de semana inválido (esperado YYYY-Www): " + s);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static String format(int year, int week) {
+        return String.format("%04d-W%02d", year, week);
+    }
+}
@@ -0,0 +1,19 @@
+package com.ecoestudiante.gamification.model;
+
+/**
+ * Alcance de un ranking semanal.
+ *
+ * GLOBAL incluye a todos los usuarios de la semana; el resto particiona el
+ * ranking según la institución, el campus o la carrera del usuario (app_user),
+ * y las posiciones se calculan solo entre los miembros de la partición.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+public enum LeaderboardScope {
+    GLOBAL,       // Todos los usuarios
+    INSTITUTION,  // Misma institución (app_user.institution_id)
+    CAMPUS,       // Mismo campus/sede (app_user.campus_id)
+    CAREER        // Misma carrera (app_user.carrera)
+}
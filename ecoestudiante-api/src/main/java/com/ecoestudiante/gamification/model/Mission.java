@@ -80,6 +80,12 @@ public class Mission {
      */
     private BigDecimal co2ImpactKg;
 
+    /**
+     * Predicados que debe cumplir un cálculo para contar en la misión
+     * (modo de transporte, combustible, artefactos, residuos, rango de kg)
+     */
+    private MissionMatchRule matchRule = MissionMatchRule.ANY;
+
     /**
      * Número de semana ISO (formato: 2025-W01)
      * Null si es template
@@ -0,0 +1,32 @@
+package com.ecoestudiante.gamification.model;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Predicados que debe cumplir un cálculo para contar en una misión, además de
+ * coincidir con su categoría.
+ *
+ * Un predicado null no restringe. Las listas aceptan cualquiera de sus valores
+ * (sin distinguir mayúsculas); los límites de kg son inclusivos.
+ *
+ * Mapea a las columnas match_* de la tabla: missions
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+public record MissionMatchRule(
+        List<String> transportModes,
+        List<String> fuelTypes,
+        List<String> appliances,
+        List<String> wasteTypes,
+        BigDecimal minKg,
+        BigDecimal maxKg
+) {
+
+    /**
+     * Sin predicados: cuenta cualquier cálculo de la categoría
+     */
+    public static final MissionMatchRule ANY = new MissionMatchRule(null, null, null, null, null, null);
+}
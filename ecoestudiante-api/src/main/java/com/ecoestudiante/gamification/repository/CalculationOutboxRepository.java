@@ -0,0 +1,197 @@
+package com.ecoestudiante.gamification.repository;
+
+import com.ecoestudiante.gamification.model.CalculationOutboxEntry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio del outbox de efectos secundarios de cálculos.
+ *
+ * Las filas se insertan desde el módulo de cálculo en la misma transacción que
+ * el cálculo; aquí se reclaman, marcan como procesadas o se registran fallos.
+ * Una fila procesada sigue pendiente para el leaderboard hasta que su delta se
+ * suma a leaderboard_cache ({@link #claimLeaderboardPending}).
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-14
+ */
+@Repository
+public class CalculationOutboxRepository {
+
+    private final JdbcTemplate jdbc;
+
+    public CalculationOutboxRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Reclama hasta {@code limit} filas pendientes con un lease de {@code leaseSeconds},
+     * junto con la categoría, emisiones y datos de entrada del cálculo asociado.
+     *
+     * FOR UPDATE SKIP LOCKED permite varias instancias del worker sin pisarse;
+     * si una instancia muere, el lease vence y otra puede reintentar las filas.
+     */
+    public List<CalculationOutboxEntry> claimPending(int limit, int leaseSeconds, int maxAttempts) {
+        String sql = """
+                UPDATE calculation_outbox o
+                SET claimed_until = now() + (? * INTERVAL '1 second'),
+                    attempts = o.attempts + 1
+                FROM calculation c
+                WHERE c.id = o.calculation_id
+                  AND o.id IN (
+                    SELECT id
+                    FROM calculation_outbox
+                    WHERE processed_at IS NULL
+                      AND failed_at IS NULL
+                      AND (claimed_until IS NULL OR claimed_until < now())
+                      AND attempts < ?
+                    ORDER BY id
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING o.id, o.calculation_id, o.user_id, c.category, c.result_kg_co2e AS kg_co2e,
+                          o.xp_amount, c.input_json::text AS payload, o.created_at, o.attempts, o.processed_at
+                """;
+
+        List<CalculationOutboxEntry> claimed = jdbc.query(sql, outboxRowMapper(), leaseSeconds, maxAttempts, limit);
+        claimed.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return claimed;
+    }
+
+    /**
+     * Marca filas como procesadas
+     */
+    public int markProcessed(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                UPDATE calculation_outbox
+                SET processed_at = now(), claimed_until = NULL, last_error = NULL
+                WHERE id = ANY(?)
+                """;
+        return jdbc.update(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    /**
+     * Libera filas tras un fallo para que se reintenten cuando venza el lease
+     */
+    public int recordFailure(List<Long> ids, String error) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                UPDATE calculation_outbox
+                SET last_error = ?
+                WHERE id = ANY(?)
+                """;
+        return jdbc.update(sql, ps -> {
+            ps.setString(1, error);
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", ids.toArray()));
+        });
+    }
+
+    /**
+     * Pasa a FAILED las filas que agotaron sus intentos y cuyo lease ya venció
+     * (fallaron o su worker murió en el último intento); ya no se reclaman.
+     *
+     * @return filas marcadas
+     */
+    public List<Long> markExhausted(int maxAttempts) {
+        String sql = """
+                UPDATE calculation_outbox
+                SET failed_at = now(), claimed_until = NULL
+                WHERE processed_at IS NULL
+                  AND failed_at IS NULL
+                  AND attempts >= ?
+                  AND (claimed_until IS NULL OR claimed_until < now())
+                RETURNING id
+                """;
+        return jdbc.queryForList(sql, Long.class, maxAttempts);
+    }
+
+    /**
+     * Reclama filas procesadas cuyo delta aún no se suma al leaderboard.
+     * Debe llamarse dentro de la transacción que aplica los deltas y llama a
+     * {@link #markLeaderboardApplied}: el bloqueo dura hasta su commit.
+     */
+    public List<CalculationOutboxEntry> claimLeaderboardPending(int limit) {
+        String sql = """
+                SELECT o.id, o.calculation_id, o.user_id, c.category, c.result_kg_co2e AS kg_co2e,
+                       o.xp_amount, NULL AS payload, o.created_at, o.attempts, o.processed_at
+                FROM calculation_outbox o
+                JOIN calculation c ON c.id = o.calculation_id
+                WHERE o.processed_at IS NOT NULL
+                  AND o.leaderboard_applied_at IS NULL
+                ORDER BY o.id
+                LIMIT ?
+                FOR UPDATE OF o SKIP LOCKED
+                """;
+        return jdbc.query(sql, outboxRowMapper(), limit);
+    }
+
+    /**
+     * Marca el delta de las filas como sumado a leaderboard_cache
+     */
+    public int markLeaderboardApplied(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                UPDATE calculation_outbox
+                SET leaderboard_applied_at = now()
+                WHERE id = ANY(?)
+                """;
+        return jdbc.update(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    /**
+     * Cuenta cálculos anteriores a {@code before} cuyo delta aún no llega a
+     * leaderboard_cache (sin procesar o sin aplicar; las filas FAILED no cuentan)
+     */
+    public long countUnsettledBefore(LocalDateTime before) {
+        Long count = jdbc.queryForObject("""
+                SELECT COUNT(*)
+                FROM calculation_outbox
+                WHERE leaderboard_applied_at IS NULL
+                  AND failed_at IS NULL
+                  AND created_at < ?
+                """, Long.class, Timestamp.valueOf(before));
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Cuenta filas pendientes (para métricas/monitoreo)
+     */
+    public long countPending() {
+        Long count = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM calculation_outbox WHERE processed_at IS NULL AND failed_at IS NULL",
+                Long.class);
+        return count != null ? count : 0L;
+    }
+
+    private RowMapper<CalculationOutboxEntry> outboxRowMapper() {
+        return (rs, rowNum) -> {
+            CalculationOutboxEntry entry = new CalculationOutboxEntry();
+            entry.setId(rs.getLong("id"));
+            entry.setCalculationId(rs.getObject("calculation_id", UUID.class));
+            entry.setUserId(rs.getObject("user_id", UUID.class));
+            entry.setCategory(rs.getString("category"));
+            entry.setKgCo2e(rs.getBigDecimal("kg_co2e"));
+            entry.setXpAmount(rs.getInt("xp_amount"));
+            entry.setPayload(rs.getString("payload"));
+            entry.setCreatedAt(rs.getTimestamp("created_at").toLocalDateTime());
+            entry.setAttempts(rs.getInt("attempts"));
+            Timestamp processedAt = rs.getTimestamp("processed_at");
+            entry.setProcessedAt(processedAt != null ? processedAt.toLocalDateTime() : null);
+            return entry;
+        };
+    }
+}
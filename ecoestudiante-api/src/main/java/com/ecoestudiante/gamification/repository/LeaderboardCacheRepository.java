@@ -1,14 +1,19 @@
 package com.ecoestudiante.gamification.repository;
 
 import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -65,6 +70,33 @@ public class LeaderboardCacheRepository {
         return jdbc.query(sql, cacheRowMapper(), weekNumber, year);
     }
 
+    /**
+     * Obtiene las entradas de una semana de los usuarios de una partición
+     * (institución, campus o carrera). Parte de los miembros en app_user, así
+     * que no recorre la semana global.
+     *
+     * @param scopeValue ID de institución/campus o nombre de la carrera
+     */
+    public List<LeaderboardCache> findByWeekInScope(String weekNumber, Integer year,
+                                                    LeaderboardScope scope, String scopeValue) {
+        String memberFilter = switch (scope) {
+            case INSTITUTION -> "u.institution_id = ?::uuid";
+            case CAMPUS -> "u.campus_id = ?::uuid";
+            case CAREER -> "u.carrera = ?";
+            case GLOBAL -> throw new IllegalArgumentException("El ranking global no tiene partición");
+        };
+        String sql = """
+                SELECT lc.id, lc.user_id, lc.week_number, lc.year, lc.co2_avoided_kg,
+                       lc.missions_completed, lc.total_xp_week, lc.rank_position, lc.calculated_at
+                FROM app_user u
+                JOIN leaderboard_cache lc
+                  ON lc.user_id = u.id AND lc.week_number = ? AND lc.year = ?
+                WHERE %s
+                """.formatted(memberFilter);
+
+        return jdbc.query(sql, cacheRowMapper(), weekNumber, year, scopeValue);
+    }
+
     /**
      * Obtiene el Top N del ranking de una semana
      */
@@ -232,7 +264,7 @@ public class LeaderboardCacheRepository {
         String sql = """
                 WITH ranked AS (
                     SELECT id,
-                           ROW_NUMBER() OVER (ORDER BY co2_avoided_kg DESC, missions_completed DESC) AS new_rank
+                           ROW_NUMBER() OVER (ORDER BY co2_avoided_kg DESC, missions_completed DESC, user_id) AS new_rank
                     FROM leaderboard_cache
                     WHERE week_number = ? AND year = ?
                 )
@@ -246,6 +278,327 @@ public class LeaderboardCacheRepository {
         return jdbc.update(sql, weekNumber, year);
     }
 
+    /**
+     * Recalcula por conjuntos todas las entradas de una semana.
+     *
+     * Calcula CO2 (rollup diario), misiones completadas y XP de la semana para
+     * todos los usuarios en una pasada agrupada, hace upsert en leaderboard_cache
+     * con las posiciones ya calculadas y elimina las entradas de usuarios que
+     * dejaron de tener actividad en la semana. Una sola sentencia.
+     *
+     * Debe llamarse dentro de una transacción que tomó {@link #lockForRecalculation()}
+     * y {@link #bumpWeekVersion} (con recarga completa).
+     *
+     * @param weekStart lunes de la semana (inclusive)
+     * @param weekEnd lunes siguiente (exclusivo)
+     * @param version versión de la semana con que se marcan las filas
+     * @return usuarios en el ranking
+     */
+    public int recalculateWeek(String weekNumber, Integer year, LocalDateTime weekStart, LocalDateTime weekEnd,
+                               long version) {
+        String sql = "WITH " + weekMetricsCtes(false) + """
+                , active AS (
+                    SELECT user_id FROM co2
+                    UNION SELECT user_id FROM missions
+                    UNION SELECT user_id FROM xp
+                    UNION SELECT user_id FROM mission_progress WHERE started_at >= ? AND started_at < ?
+                ), ranked AS (
+                    SELECT a.user_id,
+                           ROUND(COALESCE(c.kg, 0), 2) AS co2_kg,
+                           COALESCE(m.completed, 0) AS missions_completed,
+                           COALESCE(x.xp, 0) AS xp
+                    FROM active a
+                    JOIN app_user u ON u.id = a.user_id
+                    LEFT JOIN co2 c ON c.user_id = a.user_id
+                    LEFT JOIN missions m ON m.user_id = a.user_id
+                    LEFT JOIN xp x ON x.user_id = a.user_id
+                ), upserted AS (
+                    INSERT INTO leaderboard_cache
+                    (user_id, week_number, year, co2_avoided_kg, missions_completed,
+                     total_xp_week, rank_position, calculated_at, change_version)
+                    SELECT user_id, ?, ?, co2_kg, missions_completed, xp,
+                           ROW_NUMBER() OVER (ORDER BY co2_kg DESC, missions_completed DESC, user_id),
+                           CURRENT_TIMESTAMP, ?
+                    FROM ranked
+                    ON CONFLICT (user_id, week_number, year) DO UPDATE
+                    SET co2_avoided_kg = EXCLUDED.co2_avoided_kg,
+                        missions_completed = EXCLUDED.missions_completed,
+                        total_xp_week = EXCLUDED.total_xp_week,
+                        rank_position = EXCLUDED.rank_position,
+                        calculated_at = EXCLUDED.calculated_at,
+                        change_version = EXCLUDED.change_version
+                    RETURNING 1
+                ), removed AS (
+                    DELETE FROM leaderboard_cache lc
+                    WHERE lc.week_number = ? AND lc.year = ?
+                      AND NOT EXISTS (SELECT 1 FROM ranked r WHERE r.user_id = lc.user_id)
+                    RETURNING 1
+                )
+                SELECT COUNT(*) FROM upserted
+                """;
+
+        Timestamp start = Timestamp.valueOf(weekStart);
+        Timestamp end = Timestamp.valueOf(weekEnd);
+        Integer count = jdbc.queryForObject(sql, Integer.class,
+                java.sql.Date.valueOf(weekStart.toLocalDate()), java.sql.Date.valueOf(weekEnd.toLocalDate()),
+                start, end,
+                start, end,
+                start, end,
+                start, end,
+                start, end,
+                start, end,
+                start, end,
+                weekNumber, year, version,
+                weekNumber, year);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Recalcula por conjuntos las entradas de los usuarios indicados en una semana.
+     *
+     * Una sola sentencia para todo el lote: métricas agrupadas + upsert. La posición
+     * guardada no se toca (el ranking vivo lo mantiene el índice en memoria).
+     *
+     * @param version versión de la semana ({@link #bumpWeekVersion}) con que se marcan las filas
+     * @return entradas resultantes, una por usuario existente
+     */
+    public List<LeaderboardCache> upsertUsersForWeek(Collection<UUID> userIds, String weekNumber, Integer year,
+                                                     LocalDateTime weekStart, LocalDateTime weekEnd, long version) {
+        return computeUsersForWeek(userIds, weekNumber, year, weekStart, weekEnd, version, """
+                ON CONFLICT (user_id, week_number, year) DO UPDATE
+                SET co2_avoided_kg = EXCLUDED.co2_avoided_kg,
+                    missions_completed = EXCLUDED.missions_completed,
+                    total_xp_week = EXCLUDED.total_xp_week,
+                    calculated_at = EXCLUDED.calculated_at,
+                    change_version = EXCLUDED.change_version
+                """);
+    }
+
+    /**
+     * Como {@link #upsertUsersForWeek}, pero solo crea entradas nuevas: si otra
+     * transacción creó la del usuario entre medio, no la pisa (el llamador le
+     * suma su delta con {@link #applyDeltas}).
+     *
+     * @return entradas creadas
+     */
+    public List<LeaderboardCache> insertUsersForWeek(Collection<UUID> userIds, String weekNumber, Integer year,
+                                                     LocalDateTime weekStart, LocalDateTime weekEnd, long version) {
+        return computeUsersForWeek(userIds, weekNumber, year, weekStart, weekEnd, version, """
+                ON CONFLICT (user_id, week_number, year) DO NOTHING
+                """);
+    }
+
+    private List<LeaderboardCache> computeUsersForWeek(Collection<UUID> userIds, String weekNumber, Integer year,
+                                                       LocalDateTime weekStart, LocalDateTime weekEnd,
+                                                       long version, String onConflict) {
+        String sql = "WITH users AS (SELECT DISTINCT unnest(?::uuid[]) AS user_id), "
+                + weekMetricsCtes(true) + """
+                INSERT INTO leaderboard_cache
+                (user_id, week_number, year, co2_avoided_kg, missions_completed,
+                 total_xp_week, calculated_at, change_version)
+                SELECT u.user_id, ?, ?, ROUND(COALESCE(c.kg, 0), 2),
+                       COALESCE(m.completed, 0), COALESCE(x.xp, 0), CURRENT_TIMESTAMP, ?
+                FROM users u
+                JOIN app_user au ON au.id = u.user_id
+                LEFT JOIN co2 c ON c.user_id = u.user_id
+                LEFT JOIN missions m ON m.user_id = u.user_id
+                LEFT JOIN xp x ON x.user_id = u.user_id
+                """ + onConflict + """
+                RETURNING id, user_id, week_number, year, co2_avoided_kg,
+                          missions_completed, total_xp_week, rank_position, calculated_at
+                """;
+
+        Timestamp start = Timestamp.valueOf(weekStart);
+        Timestamp end = Timestamp.valueOf(weekEnd);
+        return jdbc.query(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("uuid", userIds.toArray()));
+            ps.setDate(2, java.sql.Date.valueOf(weekStart.toLocalDate()));
+            ps.setDate(3, java.sql.Date.valueOf(weekEnd.toLocalDate()));
+            for (int i = 4; i <= 15; i += 2) {
+                ps.setTimestamp(i, start);
+                ps.setTimestamp(i + 1, end);
+            }
+            ps.setString(16, weekNumber);
+            ps.setInt(17, year);
+            ps.setLong(18, version);
+        }, cacheRowMapper());
+    }
+
+    /**
+     * Suma deltas a las entradas existentes de la semana (O(1) por usuario).
+     *
+     * Los usuarios sin entrada no se tocan: no aparecen en el resultado y el
+     * llamador debe calcularlos completos con {@link #upsertUsersForWeek}.
+     *
+     * @param version versión de la semana ({@link #bumpWeekVersion}) con que se marcan las filas
+     * @return entradas actualizadas
+     */
+    public List<LeaderboardCache> applyDeltas(String weekNumber, Integer year, List<UUID> userIds,
+                                              List<BigDecimal> co2Kg, List<Integer> missions, List<Integer> xp,
+                                              long version) {
+        String sql = """
+                UPDATE leaderboard_cache lc
+                SET co2_avoided_kg = lc.co2_avoided_kg + ROUND(d.kg, 2),
+                    missions_completed = lc.missions_completed + d.missions,
+                    total_xp_week = lc.total_xp_week + d.xp,
+                    calculated_at = CURRENT_TIMESTAMP,
+                    change_version = ?
+                FROM unnest(?::uuid[], ?::numeric[], ?::int[], ?::int[]) AS d(user_id, kg, missions, xp)
+                WHERE lc.user_id = d.user_id AND lc.week_number = ? AND lc.year = ?
+                RETURNING lc.id, lc.user_id, lc.week_number, lc.year, lc.co2_avoided_kg,
+                          lc.missions_completed, lc.total_xp_week, lc.rank_position, lc.calculated_at
+                """;
+
+        return jdbc.query(sql, ps -> {
+            ps.setLong(1, version);
+            ps.setArray(2, ps.getConnection().createArrayOf("uuid", userIds.toArray()));
+            ps.setArray(3, ps.getConnection().createArrayOf("numeric", co2Kg.toArray()));
+            ps.setArray(4, ps.getConnection().createArrayOf("int4", missions.toArray()));
+            ps.setArray(5, ps.getConnection().createArrayOf("int4", xp.toArray()));
+            ps.setString(6, weekNumber);
+            ps.setInt(7, year);
+        }, cacheRowMapper());
+    }
+
+    /**
+     * Versión de una semana de leaderboard_cache
+     *
+     * @param reloadedVersion versión del último recálculo completo
+     */
+    public record WeekVersion(long version, long reloadedVersion) {
+    }
+
+    /**
+     * Incrementa la versión de la semana. Debe llamarse dentro de la transacción
+     * que escribe leaderboard_cache y antes de escribir: la fila queda bloqueada
+     * hasta el commit, así que las versiones se confirman en orden y quien lee la
+     * versión V ya puede leer todas las filas marcadas con V o menos.
+     *
+     * @param fullReload la escritura puede eliminar filas (recálculo completo)
+     * @return versión con la que marcar las filas escritas
+     */
+    public long bumpWeekVersion(String weekNumber, Integer year, boolean fullReload) {
+        Long version = jdbc.queryForObject("""
+                INSERT INTO leaderboard_week_version (year, week_number, version, reloaded_version, updated_at)
+                VALUES (?, ?, 1, CASE WHEN ? THEN 1 ELSE 0 END, now())
+                ON CONFLICT (year, week_number) DO UPDATE
+                SET version = leaderboard_week_version.version + 1,
+                    reloaded_version = CASE WHEN ? THEN leaderboard_week_version.version + 1
+                                            ELSE leaderboard_week_version.reloaded_version END,
+                    updated_at = now()
+                RETURNING version
+                """, Long.class, year, weekNumber, fullReload, fullReload);
+        return version != null ? version : 0L;
+    }
+
+    /**
+     * Versión confirmada de la semana (cero si nunca se escribió)
+     */
+    public WeekVersion findWeekVersion(String weekNumber, Integer year) {
+        return jdbc.query(
+                "SELECT version, reloaded_version FROM leaderboard_week_version WHERE year = ? AND week_number = ?",
+                (rs, rowNum) -> new WeekVersion(rs.getLong("version"), rs.getLong("reloaded_version")),
+                year, weekNumber).stream().findFirst().orElse(new WeekVersion(0, 0));
+    }
+
+    /**
+     * Entradas de la semana que cambiaron después de la versión indicada
+     */
+    public List<LeaderboardCache> findChangedSince(String weekNumber, Integer year, long version) {
+        String sql = """
+                SELECT id, user_id, week_number, year, co2_avoided_kg,
+                       missions_completed, total_xp_week, rank_position, calculated_at
+                FROM leaderboard_cache
+                WHERE year = ? AND week_number = ? AND change_version > ?
+                """;
+
+        return jdbc.query(sql, cacheRowMapper(), year, weekNumber, version);
+    }
+
+    /**
+     * Lock compartido para sumar deltas a leaderboard_cache; no espera si hay un
+     * recálculo en curso. Debe llamarse dentro de la transacción de los deltas.
+     */
+    public boolean tryLockForDeltas() {
+        Boolean locked = jdbc.queryForObject(
+                "SELECT pg_try_advisory_xact_lock_shared(hashtext('leaderboard_cache'))", Boolean.class);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    /**
+     * Lock exclusivo para recalcular una semana: espera a que terminen los deltas
+     * en curso y bloquea los nuevos hasta el commit. Sin él, un delta confirmado
+     * entre la lectura y el upsert del recálculo se perdería.
+     */
+    public void lockForRecalculation() {
+        jdbc.query("SELECT pg_advisory_xact_lock(hashtext('leaderboard_cache'))", rs -> null);
+    }
+
+    /**
+     * CTEs co2 / missions / xp con las métricas semanales por usuario.
+     * Parámetros: día inicio, día fin y luego inicio, fin seis veces.
+     *
+     * Los cálculos del outbox cuyo delta aún no se suma (leaderboard_applied_at
+     * nulo) se descuentan: su kg (semana del cálculo) y, si ya se procesaron, su
+     * XP (semana en que se otorgó). Lo mismo con las misiones y el XP de
+     * leaderboard_delta_outbox sin aplicar. Ese delta lo suma después el flush de
+     * LeaderboardUpdateCoalescer, así que no se cuenta dos veces.
+     *
+     * @param onlyListedUsers limitar a los usuarios del CTE users
+     */
+    private static String weekMetricsCtes(boolean onlyListedUsers) {
+        String userFilter = onlyListedUsers ? " AND %s IN (SELECT user_id FROM users)" : "";
+        return """
+                co2 AS (
+                    SELECT user_id, SUM(kg) AS kg
+                    FROM (
+                        SELECT user_id, kg_co2e AS kg
+                        FROM calculation_daily_rollup
+                        WHERE day >= ? AND day < ?%1$s
+                        UNION ALL
+                        SELECT o.user_id, -c.result_kg_co2e
+                        FROM calculation_outbox o
+                        JOIN calculation c ON c.id = o.calculation_id
+                        WHERE o.leaderboard_applied_at IS NULL AND o.failed_at IS NULL
+                          AND o.created_at >= ? AND o.created_at < ?%2$s
+                    ) k
+                    GROUP BY user_id
+                ), missions AS (
+                    SELECT user_id, SUM(n) AS completed
+                    FROM (
+                        SELECT user_id, 1 AS n
+                        FROM mission_progress
+                        WHERE status = 'COMPLETED'::mission_status
+                          AND completed_at >= ? AND completed_at < ?%1$s
+                        UNION ALL
+                        SELECT user_id, -missions
+                        FROM leaderboard_delta_outbox
+                        WHERE applied_at IS NULL
+                          AND occurred_at >= ? AND occurred_at < ?%1$s
+                    ) m
+                    GROUP BY user_id
+                ), xp AS (
+                    SELECT user_id, SUM(amount) AS xp
+                    FROM (
+                        SELECT user_id, amount
+                        FROM xp_transactions
+                        WHERE created_at >= ? AND created_at < ?%1$s
+                        UNION ALL
+                        SELECT user_id, -xp_amount
+                        FROM calculation_outbox
+                        WHERE leaderboard_applied_at IS NULL
+                          AND processed_at >= ? AND processed_at < ?%1$s
+                        UNION ALL
+                        SELECT user_id, -xp
+                        FROM leaderboard_delta_outbox
+                        WHERE applied_at IS NULL
+                          AND occurred_at >= ? AND occurred_at < ?%1$s
+                    ) x
+                    GROUP BY user_id
+                )
+                """.formatted(userFilter.formatted("user_id"), userFilter.formatted("o.user_id"));
+    }
+
     /**
      * RowMapper para convertir ResultSet a LeaderboardCache
      */
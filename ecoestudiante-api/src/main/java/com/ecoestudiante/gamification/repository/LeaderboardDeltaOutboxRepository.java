@@ -0,0 +1,125 @@
+package com.ecoestudiante.gamification.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Repositorio del outbox de deltas de misiones para el leaderboard
+ * (tabla leaderboard_delta_outbox).
+ *
+ * Las filas se insertan en la misma transacción que completa o asigna la
+ * misión; el coalescer las reclama, suma su delta a leaderboard_cache y las
+ * marca aplicadas en una sola transacción.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-17
+ */
+@Repository
+public class LeaderboardDeltaOutboxRepository {
+
+    /**
+     * Fila pendiente: misiones y XP a sumar en la semana de {@code occurredAt}
+     */
+    public record PendingDelta(long id, UUID userId, LocalDateTime occurredAt, int missions, int xp) {
+    }
+
+    private final JdbcTemplate jdbc;
+
+    public LeaderboardDeltaOutboxRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Registra el delta de un usuario
+     */
+    public int insert(UUID userId, LocalDateTime occurredAt, int missions, int xp) {
+        String sql = """
+                INSERT INTO leaderboard_delta_outbox (user_id, occurred_at, missions, xp)
+                VALUES (?, ?, ?, ?)
+                """;
+        return jdbc.update(sql, userId, Timestamp.valueOf(occurredAt), missions, xp);
+    }
+
+    /**
+     * Registra un delta vacío (solo asegura la entrada) para cada usuario, en una sentencia
+     */
+    public int insertEmpty(Collection<UUID> userIds, LocalDateTime occurredAt) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                INSERT INTO leaderboard_delta_outbox (user_id, occurred_at)
+                SELECT unnest(?::uuid[]), ?
+                """;
+        return jdbc.update(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("uuid", userIds.toArray()));
+            ps.setTimestamp(2, Timestamp.valueOf(occurredAt));
+        });
+    }
+
+    /**
+     * Reclama filas cuyo delta aún no se suma al leaderboard.
+     * Debe llamarse dentro de la transacción que aplica los deltas y llama a
+     * {@link #markApplied}: el bloqueo dura hasta su commit.
+     */
+    public List<PendingDelta> claimPending(int limit) {
+        String sql = """
+                SELECT id, user_id, occurred_at, missions, xp
+                FROM leaderboard_delta_outbox
+                WHERE applied_at IS NULL
+                ORDER BY id
+                LIMIT ?
+                FOR UPDATE SKIP LOCKED
+                """;
+        return jdbc.query(sql, (rs, rowNum) -> new PendingDelta(
+                rs.getLong("id"),
+                rs.getObject("user_id", UUID.class),
+                rs.getTimestamp("occurred_at").toLocalDateTime(),
+                rs.getInt("missions"),
+                rs.getInt("xp")), limit);
+    }
+
+    /**
+     * Marca el delta de las filas como sumado a leaderboard_cache
+     */
+    public int markApplied(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                UPDATE leaderboard_delta_outbox
+                SET applied_at = now()
+                WHERE id = ANY(?)
+                """;
+        return jdbc.update(sql, ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())));
+    }
+
+    /**
+     * Cuenta deltas anteriores a {@code before} que aún no llegan a leaderboard_cache
+     */
+    public long countUnappliedBefore(LocalDateTime before) {
+        Long count = jdbc.queryForObject("""
+                SELECT COUNT(*)
+                FROM leaderboard_delta_outbox
+                WHERE applied_at IS NULL
+                  AND occurred_at < ?
+                """, Long.class, Timestamp.valueOf(before));
+        return count != null ? count : 0L;
+    }
+
+    /**
+     * Elimina las filas aplicadas antes de {@code before}
+     *
+     * @return filas eliminadas
+     */
+    public int deleteAppliedBefore(LocalDateTime before) {
+        return jdbc.update("DELETE FROM leaderboard_delta_outbox WHERE applied_at < ?", Timestamp.valueOf(before));
+    }
+}
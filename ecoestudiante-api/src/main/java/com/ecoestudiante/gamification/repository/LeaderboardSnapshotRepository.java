@@ -0,0 +1,143 @@
+package com.ecoestudiante.gamification.repository;
+
+import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repositorio del archivo histórico del leaderboard
+ * (tablas leaderboard_snapshot y leaderboard_rank_history).
+ *
+ * Los snapshots se escriben una sola vez por semana y nunca se modifican.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Repository
+public class LeaderboardSnapshotRepository {
+
+    /**
+     * Snapshot tal como está guardado
+     */
+    public record StoredSnapshot(byte[] payload, LocalDateTime frozenAt) {
+    }
+
+    private final JdbcTemplate jdbc;
+
+    public LeaderboardSnapshotRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public Optional<StoredSnapshot> find(String weekNumber, Integer year) {
+        return jdbc.query("""
+                        SELECT payload, frozen_at
+                        FROM leaderboard_snapshot
+                        WHERE year = ? AND week_number = ?
+                        """,
+                (rs, rowNum) -> new StoredSnapshot(
+                        rs.getBytes("payload"), rs.getTimestamp("frozen_at").toLocalDateTime()),
+                year, weekNumber).stream().findFirst();
+    }
+
+    public boolean exists(String weekNumber, Integer year) {
+        Boolean exists = jdbc.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM leaderboard_snapshot WHERE year = ? AND week_number = ?)",
+                Boolean.class, year, weekNumber);
+        return Boolean.TRUE.equals(exists);
+    }
+
+    /**
+     * Entradas de leaderboard_cache de la semana en orden de ranking
+     * (co2 DESC, misiones DESC, user_id; el mismo orden del ranking vivo)
+     */
+    public List<LeaderboardCache> findRankedEntries(String weekNumber, Integer year) {
+        return jdbc.query("""
+                SELECT user_id, co2_avoided_kg, missions_completed, total_xp_week
+                FROM leaderboard_cache
+                WHERE week_number = ? AND year = ?
+                ORDER BY co2_avoided_kg DESC, missions_completed DESC, user_id
+                """, (rs, rowNum) -> {
+            LeaderboardCache entry = new LeaderboardCache();
+            entry.setUserId(rs.getObject("user_id", UUID.class));
+            entry.setWeekNumber(weekNumber);
+            entry.setYear(year);
+            entry.setCo2AvoidedKg(rs.getBigDecimal("co2_avoided_kg"));
+            entry.setMissionsCompleted(rs.getInt("missions_completed"));
+            entry.setTotalXpWeek(rs.getInt("total_xp_week"));
+            return entry;
+        }, weekNumber, year);
+    }
+
+    /**
+     * Guarda el snapshot y el historial de posiciones en una sola sentencia.
+     * Las listas van en orden de ranking (posición = índice + 1). Si la semana
+     * ya estaba archivada no escribe nada.
+     *
+     * @return true si se archivó en esta llamada
+     */
+    public boolean insert(String weekNumber, Integer year, byte[] payload, List<UUID> userIds,
+                          List<BigDecimal> co2Kg, List<Integer> missions, List<Integer> xp) {
+        Boolean inserted = jdbc.query("""
+                WITH snapshot AS (
+                    INSERT INTO leaderboard_snapshot (year, week_number, user_count, payload)
+                    VALUES (?, ?, ?, ?)
+                    ON CONFLICT (year, week_number) DO NOTHING
+                    RETURNING 1
+                ), history AS (
+                    INSERT INTO leaderboard_rank_history
+                    (user_id, year, week_number, rank_position, total_users,
+                     co2_avoided_kg, missions_completed, total_xp_week)
+                    SELECT h.user_id, ?, ?, h.rank_position, ?, h.kg, h.missions, h.xp
+                    FROM unnest(?::uuid[], ?::numeric[], ?::int[], ?::int[])
+                         WITH ORDINALITY AS h(user_id, kg, missions, xp, rank_position)
+                    JOIN app_user u ON u.id = h.user_id
+                    WHERE EXISTS (SELECT 1 FROM snapshot)
+                    ON CONFLICT (user_id, year, week_number) DO NOTHING
+                )
+                SELECT EXISTS (SELECT 1 FROM snapshot)
+                """, ps -> {
+            ps.setInt(1, year);
+            ps.setString(2, weekNumber);
+            ps.setInt(3, userIds.size());
+            ps.setBytes(4, payload);
+            ps.setInt(5, year);
+            ps.setString(6, weekNumber);
+            ps.setInt(7, userIds.size());
+            ps.setArray(8, ps.getConnection().createArrayOf("uuid", userIds.toArray()));
+            ps.setArray(9, ps.getConnection().createArrayOf("numeric", co2Kg.toArray()));
+            ps.setArray(10, ps.getConnection().createArrayOf("int4", missions.toArray()));
+            ps.setArray(11, ps.getConnection().createArrayOf("int4", xp.toArray()));
+        }, rs -> rs.next() && rs.getBoolean(1));
+        return Boolean.TRUE.equals(inserted);
+    }
+
+    /**
+     * Historial de posiciones del usuario, de la semana más reciente a la más antigua
+     */
+    public List<MissionDtos.RankHistoryEntry> findHistory(UUID userId, int limit) {
+        return jdbc.query("""
+                SELECT week_number, year, rank_position, total_users,
+                       co2_avoided_kg, missions_completed, total_xp_week
+                FROM leaderboard_rank_history
+                WHERE user_id = ?
+                ORDER BY year DESC, week_number DESC
+                LIMIT ?
+                """, (rs, rowNum) -> new MissionDtos.RankHistoryEntry(
+                rs.getString("week_number"),
+                rs.getInt("year"),
+                rs.getInt("rank_position"),
+                rs.getInt("total_users"),
+                rs.getBigDecimal("co2_avoided_kg"),
+                rs.getInt("missions_completed"),
+                rs.getInt("total_xp_week")
+        ), userId, limit);
+    }
+}
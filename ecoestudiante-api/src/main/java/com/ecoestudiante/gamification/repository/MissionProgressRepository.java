@@ -1,5 +1,6 @@
 package com.ecoestudiante.gamification.repository;
 
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import com.ecoestudiante.gamification.model.MissionProgress;
 import com.ecoestudiante.gamification.model.MissionProgress.MissionStatus;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -8,9 +9,12 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -86,6 +90,27 @@ public class MissionProgressRepository {
         return jdbc.query(sql, progressRowMapper(), userId);
     }
 
+    /**
+     * Obtiene los progresos activos de un usuario en las misiones indicadas
+     */
+    public List<MissionProgress> findActiveByUserIdAndMissionIds(UUID userId, Collection<Long> missionIds) {
+        if (missionIds.isEmpty()) {
+            return List.of();
+        }
+        String sql = """
+                SELECT id, user_id, mission_id, current_progress, target_progress,
+                       status, started_at, completed_at, baseline_value
+                FROM mission_progress
+                WHERE user_id = ? AND mission_id = ANY(?) AND status = 'ACTIVE'::mission_status
+                ORDER BY started_at DESC
+                """;
+
+        return jdbc.query(sql, ps -> {
+            ps.setObject(1, userId);
+            ps.setArray(2, ps.getConnection().createArrayOf("bigint", missionIds.toArray()));
+        }, progressRowMapper());
+    }
+
     /**
      * Obtiene todas las misiones completadas de un usuario
      */
@@ -148,6 +173,66 @@ public class MissionProgressRepository {
         return count != null ? count : 0;
     }
 
+    /**
+     * Crea en una sola sentencia el progreso de la misión para todos los
+     * estudiantes habilitados de una cohorte que aún no la tienen.
+     *
+     * Con {@code baselineCategory}, el baseline de cada estudiante es su
+     * promedio de kg CO₂e por cálculo en esa categoría desde
+     * {@code baselineFrom} (rollup diario, una consulta agrupada para toda la
+     * cohorte); sin historial se usa {@code defaultBaseline}.
+     *
+     * @param scope INSTITUTION, CAMPUS o CAREER
+     * @param scopeValue UUID de la institución o campus, o nombre de la carrera
+     * @param baselineCategory categoría de cálculo del baseline, o null si la misión no lo usa
+     * @return usuarios a los que se asignó la misión
+     */
+    public List<UUID> insertForCohort(Long missionId, BigDecimal targetProgress,
+                                      LeaderboardScope scope, Object scopeValue,
+                                      String baselineCategory, LocalDate baselineFrom,
+                                      BigDecimal defaultBaseline) {
+        String column = switch (scope) {
+            case INSTITUTION -> "institution_id";
+            case CAMPUS -> "campus_id";
+            case CAREER -> "carrera";
+            case GLOBAL -> throw new IllegalArgumentException("La asignación por cohorte requiere institución, campus o carrera");
+        };
+
+        String baselineJoin = baselineCategory == null ? "" : """
+                LEFT JOIN (
+                    SELECT r.user_id, SUM(r.kg_co2e) / NULLIF(SUM(r.calc_count), 0) AS baseline
+                    FROM calculation_daily_rollup r
+                    JOIN app_user m ON m.id = r.user_id AND m.%s = ?
+                    WHERE r.category = ? AND r.day >= ?
+                    GROUP BY r.user_id
+                ) b ON b.user_id = u.id
+                """.formatted(column);
+
+        String sql = """
+                INSERT INTO mission_progress
+                (user_id, mission_id, current_progress, target_progress, status, baseline_value)
+                SELECT u.id, ?, 0, ?, 'ACTIVE'::mission_status, %s
+                FROM app_user u
+                %s
+                WHERE u.%s = ? AND u.role = 'ESTUDIANTE' AND u.enabled
+                ON CONFLICT (user_id, mission_id) DO NOTHING
+                RETURNING user_id
+                """.formatted(baselineCategory == null ? "?" : "COALESCE(ROUND(b.baseline, 2), ?)", baselineJoin, column);
+
+        return jdbc.query(sql, ps -> {
+            int i = 1;
+            ps.setLong(i++, missionId);
+            ps.setBigDecimal(i++, targetProgress);
+            ps.setBigDecimal(i++, defaultBaseline);
+            if (baselineCategory != null) {
+                ps.setObject(i++, scopeValue);
+                ps.setString(i++, baselineCategory);
+                ps.setObject(i++, baselineFrom);
+            }
+            ps.setObject(i, scopeValue);
+        }, (rs, rowNum) -> (UUID) rs.getObject("user_id"));
+    }
+
     /**
      * Guarda o actualiza un progreso de misión
      */
@@ -224,6 +309,47 @@ public class MissionProgressRepository {
         return findById(progress.getId()).orElse(progress);
     }
 
+    /**
+     * Escribe progreso actual, estado y fecha de completado de varios progresos
+     * en una sola sentencia
+     *
+     * @return filas actualizadas
+     */
+    public int updateProgressBatch(List<MissionProgress> progresses) {
+        if (progresses.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                UPDATE mission_progress mp
+                SET current_progress = u.current_progress,
+                    status = u.status::mission_status,
+                    completed_at = u.completed_at
+                FROM unnest(?::bigint[], ?::numeric[], ?::text[], ?::timestamp[])
+                     AS u(id, current_progress, status, completed_at)
+                WHERE mp.id = u.id
+                """;
+
+        int size = progresses.size();
+        Long[] ids = new Long[size];
+        BigDecimal[] currentProgress = new BigDecimal[size];
+        String[] statuses = new String[size];
+        Timestamp[] completedAt = new Timestamp[size];
+        for (int i = 0; i < size; i++) {
+            MissionProgress progress = progresses.get(i);
+            ids[i] = progress.getId();
+            currentProgress[i] = progress.getCurrentProgress();
+            statuses[i] = progress.getStatus().name();
+            completedAt[i] = progress.getCompletedAt() != null ? Timestamp.valueOf(progress.getCompletedAt()) : null;
+        }
+
+        return jdbc.update(sql, ps -> {
+            ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids));
+            ps.setArray(2, ps.getConnection().createArrayOf("numeric", currentProgress));
+            ps.setArray(3, ps.getConnection().createArrayOf("text", statuses));
+            ps.setArray(4, ps.getConnection().createArrayOf("timestamp", completedAt));
+        });
+    }
+
     /**
      * Actualiza solo el progreso actual
      */
@@ -4,14 +4,20 @@ import com.ecoestudiante.gamification.model.Mission;
 import com.ecoestudiante.gamification.model.Mission.MissionCategory;
 import com.ecoestudiante.gamification.model.Mission.MissionDifficulty;
 import com.ecoestudiante.gamification.model.Mission.MissionType;
+import com.ecoestudiante.gamification.model.MissionMatchRule;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
+import java.sql.Array;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Types;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,7 +46,9 @@ public class MissionRepository {
         String sql = """
                 SELECT id, title, description, category, type, difficulty,
                        target_value, target_unit, xp_reward, co2_impact_kg,
-                       week_number, year, is_template, created_at
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
                 FROM missions
                 WHERE id = ?
                 """;
@@ -53,6 +61,28 @@ public class MissionRepository {
         }
     }
 
+    /**
+     * Busca varias misiones por ID en una sola consulta
+     */
+    public List<Mission> findByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String sql = """
+                SELECT id, title, description, category, type, difficulty,
+                       target_value, target_unit, xp_reward, co2_impact_kg,
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
+                FROM missions
+                WHERE id = ANY(?)
+                """;
+
+        return jdbc.query(sql,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("bigint", ids.toArray())),
+                missionRowMapper());
+    }
+
     /**
      * Obtiene todas las misiones template (reutilizables)
      */
@@ -60,7 +90,9 @@ public class MissionRepository {
         String sql = """
                 SELECT id, title, description, category, type, difficulty,
                        target_value, target_unit, xp_reward, co2_impact_kg,
-                       week_number, year, is_template, created_at
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
                 FROM missions
                 WHERE is_template = true
                 ORDER BY category, difficulty
@@ -76,7 +108,9 @@ public class MissionRepository {
         String sql = """
                 SELECT id, title, description, category, type, difficulty,
                        target_value, target_unit, xp_reward, co2_impact_kg,
-                       week_number, year, is_template, created_at
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
                 FROM missions
                 WHERE week_number = ? AND year = ? AND is_template = false
                 ORDER BY difficulty, xp_reward DESC
@@ -92,7 +126,9 @@ public class MissionRepository {
         String sql = """
                 SELECT id, title, description, category, type, difficulty,
                        target_value, target_unit, xp_reward, co2_impact_kg,
-                       week_number, year, is_template, created_at
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
                 FROM missions
                 WHERE category = ?::mission_category AND is_template = true
                 ORDER BY difficulty
@@ -108,7 +144,9 @@ public class MissionRepository {
         String sql = """
                 SELECT id, title, description, category, type, difficulty,
                        target_value, target_unit, xp_reward, co2_impact_kg,
-                       week_number, year, is_template, created_at
+                       week_number, year, is_template, created_at,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
                 FROM missions
                 WHERE difficulty = ?::mission_difficulty AND is_template = true
                 ORDER BY category
@@ -135,9 +173,11 @@ public class MissionRepository {
         String sql = """
                 INSERT INTO missions
                 (title, description, category, type, difficulty, target_value, target_unit,
-                 xp_reward, co2_impact_kg, week_number, year, is_template)
+                 xp_reward, co2_impact_kg, week_number, year, is_template,
+                 match_transport_modes, match_fuel_types, match_appliances,
+                 match_waste_types, match_min_kg, match_max_kg)
                 VALUES (?, ?, ?::mission_category, ?::mission_type, ?::mission_difficulty,
-                        ?, ?, ?, ?, ?, ?, ?)
+                        ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                 """;
 
         KeyHolder keyHolder = new GeneratedKeyHolder();
@@ -162,6 +202,7 @@ public class MissionRepository {
             }
 
             ps.setBoolean(12, mission.getIsTemplate() != null ? mission.getIsTemplate() : false);
+            setMatchRule(ps, 13, mission.getMatchRule());
 
             return ps;
         }, keyHolder);
@@ -172,6 +213,38 @@ public class MissionRepository {
         return findById(generatedId).orElse(mission);
     }
 
+    /**
+     * Crea las instancias semanales de varios templates en una sola sentencia,
+     * copiando las definiciones en la BD
+     *
+     * @return filas insertadas
+     */
+    public int insertInstancesFromTemplates(Collection<Long> templateIds, String weekNumber, Integer year) {
+        if (templateIds.isEmpty()) {
+            return 0;
+        }
+        String sql = """
+                INSERT INTO missions
+                (title, description, category, type, difficulty, target_value, target_unit,
+                 xp_reward, co2_impact_kg, week_number, year, is_template,
+                 match_transport_modes, match_fuel_types, match_appliances,
+                 match_waste_types, match_min_kg, match_max_kg)
+                SELECT title, description, category, type, difficulty, target_value, target_unit,
+                       xp_reward, co2_impact_kg, ?, ?, false,
+                       match_transport_modes, match_fuel_types, match_appliances,
+                       match_waste_types, match_min_kg, match_max_kg
+                FROM missions
+                WHERE id = ANY(?) AND is_template = true
+                ORDER BY id
+                """;
+
+        return jdbc.update(sql, ps -> {
+            ps.setString(1, weekNumber);
+            ps.setInt(2, year);
+            ps.setArray(3, ps.getConnection().createArrayOf("bigint", templateIds.toArray()));
+        });
+    }
+
     /**
      * Actualiza una misión existente
      */
@@ -189,25 +262,32 @@ public class MissionRepository {
                     co2_impact_kg = ?,
                     week_number = ?,
                     year = ?,
-                    is_template = ?
+                    is_template = ?,
+                    match_transport_modes = ?,
+                    match_fuel_types = ?,
+                    match_appliances = ?,
+                    match_waste_types = ?,
+                    match_min_kg = ?,
+                    match_max_kg = ?
                 WHERE id = ?
                 """;
 
-        jdbc.update(sql,
-                mission.getTitle(),
-                mission.getDescription(),
-                mission.getCategory().name(),
-                mission.getType().name(),
-                mission.getDifficulty().name(),
-                mission.getTargetValue(),
-                mission.getTargetUnit(),
-                mission.getXpReward(),
-                mission.getCo2ImpactKg(),
-                mission.getWeekNumber(),
-                mission.getYear(),
-                mission.getIsTemplate(),
-                mission.getId()
-        );
+        jdbc.update(sql, ps -> {
+            ps.setString(1, mission.getTitle());
+            ps.setString(2, mission.getDescription());
+            ps.setString(3, mission.getCategory().name());
+            ps.setString(4, mission.getType().name());
+            ps.setString(5, mission.getDifficulty().name());
+            ps.setBigDecimal(6, mission.getTargetValue());
+            ps.setString(7, mission.getTargetUnit());
+            ps.setInt(8, mission.getXpReward());
+            ps.setBigDecimal(9, mission.getCo2ImpactKg());
+            ps.setString(10, mission.getWeekNumber());
+            ps.setObject(11, mission.getYear(), java.sql.Types.INTEGER);
+            ps.setObject(12, mission.getIsTemplate(), java.sql.Types.BOOLEAN);
+            setMatchRule(ps, 13, mission.getMatchRule());
+            ps.setLong(19, mission.getId());
+        });
 
         return findById(mission.getId()).orElse(mission);
     }
@@ -282,7 +362,41 @@ public class MissionRepository {
                 mission.setCreatedAt(createdAt.toLocalDateTime());
             }
 
+            mission.setMatchRule(new MissionMatchRule(
+                    textList(rs, "match_transport_modes"),
+                    textList(rs, "match_fuel_types"),
+                    textList(rs, "match_appliances"),
+                    textList(rs, "match_waste_types"),
+                    rs.getBigDecimal("match_min_kg"),
+                    rs.getBigDecimal("match_max_kg")));
+
             return mission;
         };
     }
+
+    /**
+     * Escribe los predicados de la regla en 6 parámetros consecutivos desde {@code index}
+     */
+    private static void setMatchRule(PreparedStatement ps, int index, MissionMatchRule rule) throws SQLException {
+        MissionMatchRule r = rule != null ? rule : MissionMatchRule.ANY;
+        setTextArray(ps, index, r.transportModes());
+        setTextArray(ps, index + 1, r.fuelTypes());
+        setTextArray(ps, index + 2, r.appliances());
+        setTextArray(ps, index + 3, r.wasteTypes());
+        ps.setBigDecimal(index + 4, r.minKg());
+        ps.setBigDecimal(index + 5, r.maxKg());
+    }
+
+    private static void setTextArray(PreparedStatement ps, int index, List<String> values) throws SQLException {
+        if (values == null) {
+            ps.setNull(index, Types.ARRAY);
+        } else {
+            ps.setArray(index, ps.getConnection().createArrayOf("text", values.toArray()));
+        }
+    }
+
+    private static List<String> textList(ResultSet rs, String column) throws SQLException {
+        Array array = rs.getArray(column);
+        return array != null ? List.of((String[]) array.getArray()) : null;
+    }
 }
@@ -0,0 +1,72 @@
+package com.ecoestudiante.gamification.repository;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repositorio del lock distribuido de tareas programadas (tabla scheduled_job_lock).
+ *
+ * Cada operación es una sola sentencia en autocommit, fuera de la transacción
+ * del trabajo que protege.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Repository
+public class ScheduledJobLockRepository {
+
+    private final JdbcTemplate jdbc;
+
+    public ScheduledJobLockRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Toma el lock de la tarea si está libre (o vencido) y la ejecución
+     * {@code runKey} aún no se completó
+     *
+     * @param leaseSeconds duración máxima del lock si la réplica cae sin liberarlo
+     * @return true si esta réplica debe ejecutar la tarea
+     */
+    public boolean tryAcquire(String jobName, String runKey, String owner, long leaseSeconds) {
+        String sql = """
+                INSERT INTO scheduled_job_lock (job_name, locked_until, locked_by, locked_at)
+                VALUES (?, now() + make_interval(secs => ?), ?, now())
+                ON CONFLICT (job_name) DO UPDATE
+                SET locked_until = EXCLUDED.locked_until,
+                    locked_by = EXCLUDED.locked_by,
+                    locked_at = EXCLUDED.locked_at
+                WHERE scheduled_job_lock.locked_until < now()
+                  AND scheduled_job_lock.completed_key IS DISTINCT FROM ?
+                """;
+
+        return jdbc.update(sql, jobName, leaseSeconds, owner, runKey) == 1;
+    }
+
+    /**
+     * Registra la ejecución como completada y libera el lock
+     */
+    public int complete(String jobName, String runKey, String owner) {
+        String sql = """
+                UPDATE scheduled_job_lock
+                SET completed_key = ?, completed_at = now(), locked_until = now()
+                WHERE job_name = ? AND locked_by = ?
+                """;
+
+        return jdbc.update(sql, runKey, jobName, owner);
+    }
+
+    /**
+     * Libera el lock sin completar la ejecución (se reintenta en la siguiente corrida)
+     */
+    public int release(String jobName, String owner) {
+        String sql = """
+                UPDATE scheduled_job_lock
+                SET locked_until = now()
+                WHERE job_name = ? AND locked_by = ?
+                """;
+
+        return jdbc.update(sql, jobName, owner);
+    }
+}
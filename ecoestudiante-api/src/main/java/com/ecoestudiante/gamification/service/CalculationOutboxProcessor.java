@@ -0,0 +1,176 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
+import com.ecoestudiante.gamification.model.CalculationOutboxEntry;
+import com.ecoestudiante.gamification.repository.CalculationOutboxRepository;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Worker que drena el outbox de cálculos (calculation_outbox).
+ *
+ * Los endpoints de cálculo solo persisten el cálculo, su auditoría y una fila de
+ * outbox; todo lo demás se aplica aquí en segundo plano, agrupado por usuario:
+ * - XP: una sola transacción de XP por usuario y lote (suma de todos sus cálculos)
+ * - Racha y última actividad: se actualizan una vez dentro de esa misma llamada
+ * - Misiones: se evalúa cada cálculo, en orden, sin carreras entre threads
+ * - Leaderboard: la fila procesada queda pendiente con su delta (kg + XP);
+ *   {@link LeaderboardUpdateCoalescer} lo suma en lote y la marca aplicada
+ *
+ * Entrega al-menos-una-vez: una fila solo se marca procesada junto con el XP
+ * y el progreso de misiones (misma transacción); si falla, se reintenta al
+ * vencer el lease. Tras app.outbox.max-attempts intentos pasa a FAILED
+ * (failed_at, métrica calculation.outbox.failed) y deja de reclamarse.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-14
+ */
+@Service
+public class CalculationOutboxProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(CalculationOutboxProcessor.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final CalculationOutboxRepository outboxRepository;
+    private final GamificationService gamificationService;
+    private final MissionProgressService missionProgressService;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter failedRows;
+
+    private final int batchSize;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+
+    public CalculationOutboxProcessor(
+            CalculationOutboxRepository outboxRepository,
+            GamificationService gamificationService,
+            MissionProgressService missionProgressService,
+            PlatformTransactionManager transactionManager,
+            MeterRegistry meterRegistry,
+            @Value("${app.outbox.batch-size:200}") int batchSize,
+            @Value("${app.outbox.lease-seconds:60}") int leaseSeconds,
+            @Value("${app.outbox.max-attempts:5}") int maxAttempts
+    ) {
+        this.outboxRepository = outboxRepository;
+        this.gamificationService = gamificationService;
+        this.missionProgressService = missionProgressService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.failedRows = Counter.builder("calculation.outbox.failed")
+                .description("Filas del outbox de cálculos que agotaron sus intentos")
+                .register(meterRegistry);
+        this.batchSize = batchSize;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Drena el outbox periódicamente; si un lote viene lleno, sigue con el siguiente.
+     */
+    @Scheduled(fixedDelayString = "${app.outbox.poll-interval-ms:1000}")
+    public void drain() {
+        try {
+            int processed;
+            do {
+                processed = drainOnce();
+            } while (processed >= batchSize);
+            markExhausted();
+        } catch (Exception e) {
+            logger.error("❌ Error drenando outbox de cálculos", e);
+        }
+    }
+
+    /**
+     * Reclama y procesa un lote.
+     *
+     * @return número de filas reclamadas
+     */
+    public int drainOnce() {
+        List<CalculationOutboxEntry> claimed = outboxRepository.claimPending(batchSize, leaseSeconds, maxAttempts);
+        if (claimed.isEmpty()) {
+            return 0;
+        }
+
+        Map<UUID, List<CalculationOutboxEntry>> byUser = new LinkedHashMap<>();
+        for (CalculationOutboxEntry entry : claimed) {
+            byUser.computeIfAbsent(entry.getUserId(), k -> new ArrayList<>()).add(entry);
+        }
+
+        logger.debug("Outbox: {} cálculos reclamados de {} usuarios", claimed.size(), byUser.size());
+
+        byUser.forEach(this::processUser);
+        return claimed.size();
+    }
+
+    private void processUser(UUID userId, List<CalculationOutboxEntry> entries) {
+        List<Long> ids = entries.stream().map(CalculationOutboxEntry::getId).toList();
+        int totalXp = entries.stream().mapToInt(e -> e.getXpAmount() != null ? e.getXpAmount() : 0).sum();
+
+        // XP + racha coalescidos y misiones de cada cálculo (en orden), en la misma
+        // transacción que marca las filas: si algo falla no queda nada aplicado a medias
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (totalXp > 0) {
+                    gamificationService.awardXP(userId.toString(), totalXp, "CALCULATION");
+                }
+                for (CalculationOutboxEntry entry : entries) {
+                    missionProgressService.processCalculationAndUpdateMissions(toEvent(entry));
+                }
+                outboxRepository.markProcessed(ids);
+            });
+        } catch (Exception e) {
+            logger.warn("Outbox: fallo procesando {} cálculos de usuario {}; se reintentará",
+                    entries.size(), userId, e);
+            outboxRepository.recordFailure(ids, e.getMessage());
+            return;
+        }
+
+        // El delta del leaderboard queda pendiente en las mismas filas; lo aplica LeaderboardUpdateCoalescer
+        logger.info("✅ Outbox: {} cálculos aplicados para usuario {} (+{} XP)", entries.size(), userId, totalXp);
+    }
+
+    /**
+     * Pasa a FAILED las filas que agotaron sus intentos (ya no se reclaman)
+     */
+    private void markExhausted() {
+        List<Long> failed = outboxRepository.markExhausted(maxAttempts);
+        if (!failed.isEmpty()) {
+            failedRows.increment(failed.size());
+            logger.error("❌ Outbox: {} cálculos agotaron {} intentos y quedan en FAILED: {}",
+                    failed.size(), maxAttempts, failed);
+        }
+    }
+
+    private CalculationCompletedEvent toEvent(CalculationOutboxEntry entry) {
+        Map<String, Object> input;
+        try {
+            input = objectMapper.readValue(entry.getPayload(), new TypeReference<Map<String, Object>>() {});
+        } catch (Exception e) {
+            input = Map.of();
+        }
+        return new CalculationCompletedEvent(
+                this,
+                entry.getUserId(),
+                entry.getCalculationId().toString(),
+                entry.getCategory(),
+                entry.getKgCo2e(),
+                input,
+                entry.getCreatedAt()
+        );
+    }
+}
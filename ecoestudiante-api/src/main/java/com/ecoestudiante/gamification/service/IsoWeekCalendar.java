@@ -0,0 +1,68 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.IsoWeek;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Calendario de semanas ISO compartido por leaderboard, misiones y tareas
+ * programadas.
+ *
+ * Entrega la semana actual como clave {@link IsoWeek}. La clave se calcula una
+ * vez por semana: hasta el lunes siguiente, cada consulta solo compara el reloj
+ * con el límite ya calculado, sin crear fechas ni cadenas.
+ *
+ * Las semanas cambian a medianoche del lunes en la zona app.gamification.zone,
+ * la misma con que se evalúa el cron del cambio de semana
+ * (GamificationScheduledTasks.rollOverWeek), independiente de la zona de la JVM.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class IsoWeekCalendar {
+
+    private record Cached(int week, long untilMillis) {
+    }
+
+    private final Clock clock;
+    private volatile Cached cached = new Cached(0, Long.MIN_VALUE);
+
+    public IsoWeekCalendar(@Value("${app.gamification.zone:America/Santiago}") ZoneId zone) {
+        this.clock = Clock.system(zone);
+    }
+
+    /**
+     * Semana ISO actual
+     */
+    public int currentWeek() {
+        Cached current = cached;
+        if (clock.millis() < current.untilMillis()) {
+            return current.week();
+        }
+        ZoneId zone = clock.getZone();
+        int week = IsoWeek.of(LocalDate.now(clock));
+        long until = IsoWeek.end(week).atZone(zone).toInstant().toEpochMilli();
+        cached = new Cached(week, until);
+        return week;
+    }
+
+    /**
+     * Semana ISO anterior a la actual
+     */
+    public int previousWeek() {
+        return IsoWeek.previous(currentWeek());
+    }
+
+    /**
+     * true si la semana ya terminó
+     */
+    public boolean isClosed(int week) {
+        return week < currentWeek();
+    }
+}
@@ -0,0 +1,112 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.repository.LeaderboardSnapshotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Archivo histórico del leaderboard.
+ *
+ * Al cerrar una semana su ranking global se congela en un
+ * {@link LeaderboardSnapshot} inmutable (leaderboard_snapshot) junto con la
+ * posición de cada usuario (leaderboard_rank_history). Las semanas cerradas se
+ * sirven desde el snapshot con caché de lectura: recalcular leaderboard_cache
+ * después ya no cambia lo que se muestra.
+ *
+ * Solo la reconciliación congela semanas ({@link LeaderboardUpdateCoalescer}),
+ * tras su recálculo final. Leer nunca congela: una semana cerrada que aún no
+ * tiene snapshot se sigue sirviendo desde leaderboard_cache.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardArchive.class);
+
+    private final LeaderboardSnapshotRepository repository;
+    private final IsoWeekCalendar weekCalendar;
+    private final Map<String, LeaderboardSnapshot> cache;
+
+    public LeaderboardArchive(
+            LeaderboardSnapshotRepository repository,
+            IsoWeekCalendar weekCalendar,
+            @Value("${app.gamification.leaderboard.archive.cache-max-weeks:52}") int maxCachedWeeks) {
+        this.repository = repository;
+        this.weekCalendar = weekCalendar;
+        this.cache = BoundedLruMap.create(maxCachedWeeks);
+    }
+
+    /**
+     * Snapshot guardado de la semana, o vacío si la semana no ha cerrado o aún
+     * no se finaliza (el llamador lee entonces leaderboard_cache)
+     */
+    Optional<LeaderboardSnapshot> find(String weekNumber, Integer year) {
+        String key = year + "|" + weekNumber;
+        LeaderboardSnapshot snapshot = cache.get(key);
+        if (snapshot != null) {
+            return Optional.of(snapshot);
+        }
+        if (!weekCalendar.isClosed(IsoWeek.parse(weekNumber, year))) {
+            return Optional.empty();
+        }
+
+        Optional<LeaderboardSnapshotRepository.StoredSnapshot> stored = repository.find(weekNumber, year);
+        if (stored.isEmpty()) {
+            return Optional.empty();
+        }
+        snapshot = LeaderboardSnapshot.decode(weekNumber, year, stored.get().payload(), stored.get().frozenAt());
+
+        cache.put(key, snapshot);
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * Indica si la semana ya tiene snapshot (semana cerrada y finalizada)
+     */
+    public boolean isFrozen(String weekNumber, Integer year) {
+        return cache.containsKey(year + "|" + weekNumber) || repository.exists(weekNumber, year);
+    }
+
+    /**
+     * Congela el ranking actual de leaderboard_cache para la semana. Idempotente:
+     * si la semana ya estaba archivada no cambia nada.
+     *
+     * @return true si se archivó en esta llamada
+     */
+    public boolean freeze(String weekNumber, Integer year) {
+        List<LeaderboardCache> ranked = repository.findRankedEntries(weekNumber, year);
+        LeaderboardSnapshot snapshot = LeaderboardSnapshot.of(weekNumber, year, ranked, LocalDateTime.now());
+
+        boolean inserted = repository.insert(weekNumber, year, snapshot.encode(),
+                ranked.stream().map(LeaderboardCache::getUserId).toList(),
+                ranked.stream().map(LeaderboardCache::getCo2AvoidedKg).toList(),
+                ranked.stream().map(LeaderboardCache::getMissionsCompleted).toList(),
+                ranked.stream().map(LeaderboardCache::getTotalXpWeek).toList());
+        if (inserted) {
+            logger.info("✅ Leaderboard {} archivado: {} usuarios", weekNumber, snapshot.size());
+        }
+        return inserted;
+    }
+
+    /**
+     * Posiciones del usuario en las semanas archivadas, de la más reciente a la más antigua
+     */
+    public List<MissionDtos.RankHistoryEntry> history(UUID userId, int limit) {
+        return repository.findHistory(userId, limit);
+    }
+}
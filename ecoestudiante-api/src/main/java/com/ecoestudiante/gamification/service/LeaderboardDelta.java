@@ -0,0 +1,24 @@
+package com.ecoestudiante.gamification.service;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Cambio acumulado en las métricas semanales de un usuario, transportado por
+ * los eventos (kg de un cálculo, una misión completada, XP otorgado).
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+public record LeaderboardDelta(UUID userId, BigDecimal co2Kg, int missionsCompleted, int xp) {
+
+    public static LeaderboardDelta none(UUID userId) {
+        return new LeaderboardDelta(userId, BigDecimal.ZERO, 0, 0);
+    }
+
+    public LeaderboardDelta plus(LeaderboardDelta other) {
+        return new LeaderboardDelta(userId, co2Kg.add(other.co2Kg),
+                missionsCompleted + other.missionsCompleted, xp + other.xp);
+    }
+}
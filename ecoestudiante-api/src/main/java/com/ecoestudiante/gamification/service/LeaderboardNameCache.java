@@ -0,0 +1,177 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.auth.UserProfileUpdatedEvent;
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Caché acotada de nombres para mostrar en el leaderboard.
+ *
+ * Resuelve los usernames de una página completa con una sola consulta
+ * (id = ANY(?)) para los que falten, en lugar de una consulta por entrada, y
+ * guarda junto al username su versión anonimizada ya calculada. La misma fila
+ * aporta la pertenencia del usuario (institución, campus, carrera) con la que
+ * se eligen sus rankings por partición. Una entrada se
+ * invalida al confirmarse una actualización del perfil del usuario y, para
+ * cambios hechos por otras instancias, vence con el TTL.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardNameCache {
+
+    /**
+     * Username real y su versión anonimizada
+     */
+    public record DisplayName(String username, String anonymized) {
+    }
+
+    /**
+     * Particiones a las que pertenece el usuario (null si no aplica)
+     */
+    public record Membership(UUID institutionId, UUID campusId, String career) {
+
+        static final Membership NONE = new Membership(null, null, null);
+
+        /**
+         * Valor de la partición del usuario para el alcance, o null si no pertenece a ninguna
+         */
+        public String scopeValue(LeaderboardScope scope) {
+            return switch (scope) {
+                case GLOBAL -> null;
+                case INSTITUTION -> institutionId != null ? institutionId.toString() : null;
+                case CAMPUS -> campusId != null ? campusId.toString() : null;
+                case CAREER -> career;
+            };
+        }
+    }
+
+    private record Entry(DisplayName name, Membership membership, long expiresAt) {
+        boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+
+    private final JdbcTemplate jdbc;
+    private final Map<UUID, Entry> cache;
+    private final long ttlMillis;
+
+    public LeaderboardNameCache(
+            JdbcTemplate jdbc,
+            @Value("${app.gamification.leaderboard.name-cache.ttl-seconds:3600}") long ttlSeconds,
+            @Value("${app.gamification.leaderboard.name-cache.max-entries:100000}") int maxEntries) {
+        this.jdbc = jdbc;
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.cache = BoundedLruMap.create(maxEntries);
+    }
+
+    /**
+     * Nombres de todos los usuarios indicados; los ausentes de la caché se
+     * cargan en una sola consulta
+     */
+    public Map<UUID, DisplayName> resolve(Collection<UUID> userIds) {
+        Map<UUID, DisplayName> result = new HashMap<>();
+        load(userIds).forEach((id, entry) -> result.put(id, entry.name()));
+        return result;
+    }
+
+    /**
+     * Pertenencia de todos los usuarios indicados, con la misma carga que {@link #resolve}
+     */
+    public Map<UUID, Membership> memberships(Collection<UUID> userIds) {
+        Map<UUID, Membership> result = new HashMap<>();
+        load(userIds).forEach((id, entry) -> result.put(id, entry.membership()));
+        return result;
+    }
+
+    private Map<UUID, Entry> load(Collection<UUID> userIds) {
+        long now = System.currentTimeMillis();
+        Map<UUID, Entry> result = new HashMap<>();
+        List<UUID> missing = new ArrayList<>();
+        for (UUID userId : userIds) {
+            Entry entry = cache.get(userId);
+            if (entry != null && !entry.isExpired(now)) {
+                result.put(userId, entry);
+            } else {
+                missing.add(userId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        jdbc.query("SELECT id, username, institution_id, campus_id, carrera FROM app_user WHERE id = ANY(?)",
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", missing.toArray())),
+                rs -> {
+                    UUID id = rs.getObject("id", UUID.class);
+                    Entry entry = new Entry(
+                            of(rs.getString("username")),
+                            new Membership(
+                                    rs.getObject("institution_id", UUID.class),
+                                    rs.getObject("campus_id", UUID.class),
+                                    rs.getString("carrera")),
+                            now + ttlMillis);
+                    cache.put(id, entry);
+                    result.put(id, entry);
+                });
+
+        // Usuarios eliminados: nombre genérico, sin partición y sin cachear
+        for (UUID userId : missing) {
+            result.computeIfAbsent(userId, id -> new Entry(of("Usuario-" + id), Membership.NONE, now));
+        }
+        return result;
+    }
+
+    public DisplayName resolve(UUID userId) {
+        return resolve(List.of(userId)).get(userId);
+    }
+
+    /**
+     * Pertenencia actual del usuario, leída de nuevo desde la BD
+     */
+    public Membership refreshMembership(UUID userId) {
+        cache.remove(userId);
+        return memberships(List.of(userId)).get(userId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProfileUpdated(UserProfileUpdatedEvent event) {
+        cache.remove(event.getUserId());
+    }
+
+    /**
+     * Elimina entradas expiradas de la caché
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        cache.entrySet().removeIf(e -> e.getValue().isExpired(now));
+    }
+
+    static DisplayName of(String username) {
+        return new DisplayName(username, anonymize(username));
+    }
+
+    static String anonymize(String username) {
+        if (username == null || username.length() <= 3) {
+            return "eco_***";
+        }
+
+        // Mostrar primeros 3 caracteres y reemplazar el resto con ***
+        return username.substring(0, 3) + "_***";
+    }
+}
@@ -0,0 +1,511 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.auth.UserProfileUpdatedEvent;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice en memoria del ranking semanal.
+ *
+ * Mantiene un {@link RankedLeaderboard} por semana y alcance (global, o una
+ * institución, campus o carrera), con posiciones siempre al día: cada
+ * actualización de entradas se aplica tras el commit en O(log n) al ranking
+ * global y a los de las particiones del usuario ya cargadas, y el top N y la
+ * posición de un usuario se responden sin leer leaderboard_cache (cuyo
+ * rank_position solo se refresca al recalcular la semana).
+ *
+ * La tabla es el almacenamiento durable: cada ranking se carga desde ella en su
+ * primer acceso (el global de la semana actual al arrancar; los de partición,
+ * solo con las filas de sus miembros) y se recarga tras un recálculo completo.
+ *
+ * Los cambios hechos por otras instancias llegan por la versión de la semana en
+ * la BD (leaderboard_week_version): cada
+ * app.gamification.leaderboard.index.sync-interval-ms se compara con la versión
+ * ya vista y se aplican solo las filas marcadas con una posterior; tras un
+ * recálculo completo en otra instancia la semana se recarga entera. Una
+ * re-sincronización completa (app.gamification.leaderboard.index.resync-ms)
+ * queda como red de seguridad.
+ *
+ * Solo se conservan los rankings usados más recientemente:
+ * app.gamification.leaderboard.index.max-weeks globales y
+ * app.gamification.leaderboard.index.max-scoped-boards de partición.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardRankIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardRankIndex.class);
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private static final class Board {
+        final String weekNumber;
+        final int year;
+        final LeaderboardScope scope;
+        final String scopeValue;
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        final ReentrantLock reloadLock = new ReentrantLock();
+        RankedLeaderboard ranking = new RankedLeaderboard();
+        volatile boolean loaded;
+        // Cambios aplicados mientras se reconstruye desde la BD; se re-aplican al reemplazar
+        List<LeaderboardCache> replay;
+        volatile long lastAccess = System.nanoTime();
+        // Cambia con cada modificación o recarga; único entre rankings
+        volatile long version = VERSIONS.incrementAndGet();
+        // Versión de la semana en la BD (leaderboard_week_version) ya reflejada
+        volatile long syncedVersion;
+
+        Board(String weekNumber, int year, LeaderboardScope scope, String scopeValue) {
+            this.weekNumber = weekNumber;
+            this.year = year;
+            this.scope = scope;
+            this.scopeValue = scopeValue;
+        }
+
+        boolean isScoped() {
+            return scope != LeaderboardScope.GLOBAL;
+        }
+
+        boolean isWeek(String weekNumber, Integer year) {
+            return this.weekNumber.equals(weekNumber) && Objects.equals(this.year, year);
+        }
+    }
+
+    private final LeaderboardCacheRepository repository;
+    private final LeaderboardNameCache nameCache;
+    private final IsoWeekCalendar weekCalendar;
+    private final Map<String, Board> boards = new ConcurrentHashMap<>();
+    private final int maxWeeks;
+    private final int maxScopedBoards;
+
+    public LeaderboardRankIndex(
+            LeaderboardCacheRepository repository,
+            LeaderboardNameCache nameCache,
+            IsoWeekCalendar weekCalendar,
+            @Value("${app.gamification.leaderboard.index.max-weeks:4}") int maxWeeks,
+            @Value("${app.gamification.leaderboard.index.max-scoped-boards:256}") int maxScopedBoards) {
+        this.repository = repository;
+        this.nameCache = nameCache;
+        this.weekCalendar = weekCalendar;
+        this.maxWeeks = Math.max(1, maxWeeks);
+        this.maxScopedBoards = Math.max(1, maxScopedBoards);
+    }
+
+    /**
+     * Top N global de la semana, con rankPosition asignado
+     */
+    public List<LeaderboardCache> top(String weekNumber, Integer year, int limit) {
+        return top(weekNumber, year, LeaderboardScope.GLOBAL, null, limit);
+    }
+
+    /**
+     * Top N de la semana dentro de una partición, con la posición en ella
+     *
+     * @param scopeValue ID de institución/campus o carrera (null para GLOBAL)
+     */
+    public List<LeaderboardCache> top(String weekNumber, Integer year,
+                                      LeaderboardScope scope, String scopeValue, int limit) {
+        Board board = loadedBoard(weekNumber, year, scope, scopeValue);
+        List<LeaderboardCache> entries;
+        board.lock.readLock().lock();
+        try {
+            entries = board.ranking.top(limit);
+        } finally {
+            board.lock.readLock().unlock();
+        }
+        List<LeaderboardCache> result = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            result.add(withRank(entries.get(i), i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Entrada del usuario en la semana con su posición global actual
+     */
+    public Optional<LeaderboardCache> position(UUID userId, String weekNumber, Integer year) {
+        return position(userId, weekNumber, year, LeaderboardScope.GLOBAL, null);
+    }
+
+    /**
+     * Entrada del usuario en la semana con su posición dentro de la partición
+     */
+    public Optional<LeaderboardCache> position(UUID userId, String weekNumber, Integer year,
+                                               LeaderboardScope scope, String scopeValue) {
+        Board board = loadedBoard(weekNumber, year, scope, scopeValue);
+        board.lock.readLock().lock();
+        try {
+            LeaderboardCache entry = board.ranking.get(userId);
+            return entry == null
+                    ? Optional.empty()
+                    : Optional.of(withRank(entry, board.ranking.rankOf(userId)));
+        } finally {
+            board.lock.readLock().unlock();
+        }
+    }
+
+    public int count(String weekNumber, Integer year) {
+        return count(weekNumber, year, LeaderboardScope.GLOBAL, null);
+    }
+
+    public int count(String weekNumber, Integer year, LeaderboardScope scope, String scopeValue) {
+        Board board = loadedBoard(weekNumber, year, scope, scopeValue);
+        board.lock.readLock().lock();
+        try {
+            return board.ranking.size();
+        } finally {
+            board.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Versión actual del ranking (lo carga si hace falta). Dos lecturas con la
+     * misma versión ven el mismo ranking.
+     */
+    public long version(String weekNumber, Integer year, LeaderboardScope scope, String scopeValue) {
+        return loadedBoard(weekNumber, year, scope, scopeValue).version;
+    }
+
+    /**
+     * Aplica las entradas a los rankings al confirmar la transacción en curso
+     */
+    public void upsertAfterCommit(Collection<LeaderboardCache> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        List<LeaderboardCache> copies = entries.stream().map(LeaderboardRankIndex::copyOf).toList();
+        afterCommit(() -> apply(copies));
+    }
+
+    /**
+     * Recarga los rankings de la semana desde la BD al confirmar la transacción en curso
+     */
+    public void reloadAfterCommit(String weekNumber, Integer year) {
+        afterCommit(() -> {
+            for (Board board : boards.values()) {
+                if (board.isWeek(weekNumber, year)) {
+                    reload(board);
+                }
+            }
+        });
+    }
+
+    /**
+     * Un cambio de institución, campus o carrera mueve al usuario de partición:
+     * se descartan los rankings de partición que aún lo tienen sin pertenecer a
+     * ella (los anteriores) y los de su partición nueva que aún no lo tienen, y
+     * se vuelven a cargar al usarse. Los demás rankings no cambian.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProfileUpdated(UserProfileUpdatedEvent event) {
+        UUID userId = event.getUserId();
+        LeaderboardNameCache.Membership membership = nameCache.refreshMembership(userId);
+        boards.values().removeIf(board -> {
+            if (!board.isScoped()) {
+                return false;
+            }
+            boolean member = board.scopeValue.equals(membership.scopeValue(board.scope));
+            if (contains(board, userId)) {
+                return !member;
+            }
+            Board global = boards.get(key(board.weekNumber, board.year, LeaderboardScope.GLOBAL, null));
+            return member && (global == null || contains(global, userId));
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        int week = weekCalendar.currentWeek();
+        String weekNumber = IsoWeek.label(week);
+        int year = IsoWeek.year(week);
+        try {
+            int users = count(weekNumber, year);
+            logger.info("✅ Índice de leaderboard cargado para {}: {} usuarios", weekNumber, users);
+        } catch (Exception e) {
+            logger.warn("No se pudo precargar el índice de leaderboard para {}: {}", weekNumber, e.getMessage());
+        }
+    }
+
+    /**
+     * Aplica los cambios de otras instancias: por semana cargada compara la
+     * versión en la BD con la ya vista y lee solo las filas posteriores (o
+     * recarga la semana si hubo un recálculo completo)
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.index.sync-interval-ms:1000}")
+    public void sync() {
+        Map<String, List<Board>> byWeek = new HashMap<>();
+        for (Board board : boards.values()) {
+            if (board.loaded) {
+                byWeek.computeIfAbsent(key(board.weekNumber, board.year, LeaderboardScope.GLOBAL, null),
+                        k -> new ArrayList<>()).add(board);
+            }
+        }
+        for (List<Board> weekBoards : byWeek.values()) {
+            try {
+                sync(weekBoards);
+            } catch (Exception e) {
+                logger.error("❌ Error sincronizando leaderboard {}", weekBoards.get(0).weekNumber, e);
+            }
+        }
+    }
+
+    private void sync(List<Board> weekBoards) {
+        String weekNumber = weekBoards.get(0).weekNumber;
+        int year = weekBoards.get(0).year;
+        LeaderboardCacheRepository.WeekVersion current = repository.findWeekVersion(weekNumber, year);
+
+        List<Board> behind = new ArrayList<>();
+        for (Board board : weekBoards) {
+            if (board.syncedVersion < current.reloadedVersion()) {
+                // Recálculo completo en otra instancia: pudo eliminar filas
+                reload(board);
+            } else if (board.syncedVersion < current.version()) {
+                behind.add(board);
+            }
+        }
+        if (behind.isEmpty()) {
+            return;
+        }
+
+        long since = behind.stream().mapToLong(board -> board.syncedVersion).min().orElseThrow();
+        // Leídas después de la versión: incluyen todo lo confirmado hasta ella
+        List<LeaderboardCache> changed = repository.findChangedSince(weekNumber, year, since);
+        apply(changed.stream().map(LeaderboardRankIndex::copyOf).toList());
+        for (Board board : behind) {
+            advance(board, current.version());
+        }
+    }
+
+    /**
+     * Re-sincroniza los rankings cargados con la tabla (red de seguridad de {@link #sync()})
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.index.resync-ms:300000}",
+            initialDelayString = "${app.gamification.leaderboard.index.resync-ms:300000}")
+    public void resync() {
+        for (Board board : boards.values()) {
+            try {
+                reload(board);
+            } catch (Exception e) {
+                logger.error("❌ Error re-sincronizando leaderboard {}", board.weekNumber, e);
+            }
+        }
+    }
+
+    private void apply(List<LeaderboardCache> entries) {
+        // Los rankings no cargados se leerán desde la BD (ya confirmada) en su primer acceso
+        Map<UUID, LeaderboardNameCache.Membership> memberships = boards.values().stream().anyMatch(Board::isScoped)
+                ? nameCache.memberships(entries.stream().map(LeaderboardCache::getUserId).toList())
+                : Map.of();
+        for (LeaderboardCache entry : entries) {
+            apply(boards.get(key(entry.getWeekNumber(), entry.getYear(), LeaderboardScope.GLOBAL, null)), entry);
+            LeaderboardNameCache.Membership membership = memberships.get(entry.getUserId());
+            if (membership == null) {
+                continue;
+            }
+            for (LeaderboardScope scope : LeaderboardScope.values()) {
+                String scopeValue = membership.scopeValue(scope);
+                if (scope != LeaderboardScope.GLOBAL && scopeValue != null) {
+                    apply(boards.get(key(entry.getWeekNumber(), entry.getYear(), scope, scopeValue)), entry);
+                }
+            }
+        }
+    }
+
+    private void apply(Board board, LeaderboardCache entry) {
+        if (board == null) {
+            return;
+        }
+        board.lock.writeLock().lock();
+        try {
+            if (!board.loaded) {
+                return;
+            }
+            board.ranking.upsert(entry);
+            board.version = VERSIONS.incrementAndGet();
+            if (board.replay != null) {
+                board.replay.add(entry);
+            }
+        } finally {
+            board.lock.writeLock().unlock();
+        }
+    }
+
+    private Board loadedBoard(String weekNumber, Integer year, LeaderboardScope scope, String scopeValue) {
+        Board board = boards.computeIfAbsent(key(weekNumber, year, scope, scopeValue),
+                k -> new Board(weekNumber, year, scope, scopeValue));
+        board.lastAccess = System.nanoTime();
+        if (!board.loaded) {
+            board.lock.writeLock().lock();
+            try {
+                if (!board.loaded) {
+                    // Versión antes que las filas: un cambio posterior se aplica en el siguiente sync
+                    long synced = repository.findWeekVersion(weekNumber, year).version();
+                    board.ranking = build(rows(board));
+                    board.version = VERSIONS.incrementAndGet();
+                    board.syncedVersion = synced;
+                    board.loaded = true;
+                }
+            } finally {
+                board.lock.writeLock().unlock();
+            }
+            evictLeastRecentlyUsed(board.isScoped(), board.isScoped() ? maxScopedBoards : maxWeeks);
+        }
+        return board;
+    }
+
+    private List<LeaderboardCache> rows(Board board) {
+        return board.isScoped()
+                ? repository.findByWeekInScope(board.weekNumber, board.year, board.scope, board.scopeValue)
+                : repository.findByWeek(board.weekNumber, board.year);
+    }
+
+    /**
+     * Reconstruye fuera del lock de escritura; los cambios que lleguen mientras
+     * tanto se re-aplican sobre el ranking nuevo antes de publicarlo.
+     */
+    private void reload(Board board) {
+        board.reloadLock.lock();
+        try {
+            board.lock.writeLock().lock();
+            try {
+                if (!board.loaded) {
+                    return;
+                }
+                board.replay = new ArrayList<>();
+            } finally {
+                board.lock.writeLock().unlock();
+            }
+
+            RankedLeaderboard fresh = null;
+            long synced = 0;
+            try {
+                synced = repository.findWeekVersion(board.weekNumber, board.year).version();
+                fresh = build(rows(board));
+            } finally {
+                board.lock.writeLock().lock();
+                try {
+                    if (fresh != null) {
+                        board.replay.forEach(fresh::upsert);
+                        board.ranking = fresh;
+                        board.version = VERSIONS.incrementAndGet();
+                        board.syncedVersion = Math.max(board.syncedVersion, synced);
+                    }
+                    board.replay = null;
+                } finally {
+                    board.lock.writeLock().unlock();
+                }
+            }
+        } finally {
+            board.reloadLock.unlock();
+        }
+    }
+
+    private static void advance(Board board, long synced) {
+        board.lock.writeLock().lock();
+        try {
+            board.syncedVersion = Math.max(board.syncedVersion, synced);
+        } finally {
+            board.lock.writeLock().unlock();
+        }
+    }
+
+    private static boolean contains(Board board, UUID userId) {
+        board.lock.readLock().lock();
+        try {
+            return board.ranking.get(userId) != null;
+        } finally {
+            board.lock.readLock().unlock();
+        }
+    }
+
+    private void evictLeastRecentlyUsed(boolean scoped, int max) {
+        while (boards.values().stream().filter(b -> b.isScoped() == scoped).count() > max) {
+            boards.entrySet().stream()
+                    .filter(e -> e.getValue().isScoped() == scoped)
+                    .min(Comparator.comparingLong(e -> e.getValue().lastAccess))
+                    .ifPresent(e -> boards.remove(e.getKey(), e.getValue()));
+        }
+    }
+
+    private static RankedLeaderboard build(List<LeaderboardCache> rows) {
+        RankedLeaderboard ranking = new RankedLeaderboard();
+        for (LeaderboardCache row : rows) {
+            ranking.upsert(copyOf(row));
+        }
+        return ranking;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * Copia sin posición y con el CO2 a la escala de la columna (DECIMAL(10,2))
+     */
+    private static LeaderboardCache copyOf(LeaderboardCache entry) {
+        LeaderboardCache copy = new LeaderboardCache();
+        copy.setId(entry.getId());
+        copy.setUserId(entry.getUserId());
+        copy.setWeekNumber(entry.getWeekNumber());
+        copy.setYear(entry.getYear());
+        copy.setCo2AvoidedKg(entry.getCo2AvoidedKg() != null
+                ? entry.getCo2AvoidedKg().setScale(2, RoundingMode.HALF_UP)
+                : null);
+        copy.setMissionsCompleted(entry.getMissionsCompleted());
+        copy.setTotalXpWeek(entry.getTotalXpWeek());
+        copy.setCalculatedAt(entry.getCalculatedAt() != null ? entry.getCalculatedAt() : LocalDateTime.now());
+        return copy;
+    }
+
+    private static LeaderboardCache withRank(LeaderboardCache entry, int rank) {
+        LeaderboardCache copy = copyOf(entry);
+        copy.setRankPosition(rank);
+        return copy;
+    }
+
+    private static String key(String weekNumber, Integer year, LeaderboardScope scope, String scopeValue) {
+        return scope == LeaderboardScope.GLOBAL
+                ? year + "|" + weekNumber
+                : year + "|" + weekNumber + "|" + scope + "|" + scopeValue;
+    }
+}
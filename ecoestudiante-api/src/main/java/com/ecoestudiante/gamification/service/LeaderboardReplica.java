@@ -0,0 +1,167 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardSnapshotRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Réplica de lectura del leaderboard en un archivo compartido.
+ *
+ * Separa las lecturas del ranking de la BD para escalarlas horizontalmente
+ * (app.gamification.leaderboard.replica.mode):
+ * - PUBLISHER: cada app.gamification.leaderboard.replica.interval-ms, si la
+ *   versión de la semana actual en la BD (leaderboard_week_version) cambió,
+ *   lee el ranking global completo de leaderboard_cache (que incluye los deltas
+ *   de todas las instancias) y lo publica en
+ *   app.gamification.leaderboard.replica.path ({@link LeaderboardReplicaFile})
+ *   con un epoch nuevo. Debe haber uno solo.
+ * - READER: con la misma frecuencia compara el epoch del archivo con el
+ *   cargado y, si cambió, mapea el archivo y reemplaza la réplica en memoria de
+ *   una sola vez. El top y las posiciones globales de la semana se sirven desde
+ *   ella sin consultar la BD.
+ * - OFF: sin réplica.
+ *
+ * La ruta es obligatoria fuera de OFF y debe estar en un volumen compartido
+ * por el publicador y los lectores (otro pod no ve el disco local); sin ella la
+ * aplicación no arranca.
+ *
+ * Aunque el ranking no cambie, el publicador vuelve a publicar cada
+ * max-age-ms / 2. Una réplica más antigua que
+ * app.gamification.leaderboard.replica.max-age-ms (publicador caído) deja de
+ * servirse y las lecturas vuelven al índice en memoria. El epoch es la hora
+ * del publicador y la antigüedad se mide con la del lector: la comprobación
+ * supone relojes sincronizados (NTP) entre hosts, con un desfase muy inferior
+ * a max-age-ms.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardReplica {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardReplica.class);
+
+    public enum Mode {
+        OFF, PUBLISHER, READER
+    }
+
+    private final LeaderboardCacheRepository leaderboardRepository;
+    private final LeaderboardSnapshotRepository snapshotRepository;
+    private final LeaderboardNameCache nameCache;
+    private final IsoWeekCalendar weekCalendar;
+    private final Mode mode;
+    private final Path path;
+    private final long maxAgeMillis;
+
+    // Lector: réplica servida; se reemplaza completa
+    private volatile LeaderboardReplicaFile.Contents current;
+
+    // Publicador (solo desde el hilo del scheduler)
+    private long lastEpoch;
+    private long publishedVersion = -1;
+
+    public LeaderboardReplica(
+            LeaderboardCacheRepository leaderboardRepository,
+            LeaderboardSnapshotRepository snapshotRepository,
+            LeaderboardNameCache nameCache,
+            IsoWeekCalendar weekCalendar,
+            @Value("${app.gamification.leaderboard.replica.mode:OFF}") Mode mode,
+            @Value("${app.gamification.leaderboard.replica.path:}") String path,
+            @Value("${app.gamification.leaderboard.replica.max-age-ms:60000}") long maxAgeMillis) {
+        if (mode != Mode.OFF && (path == null || path.isBlank())) {
+            throw new IllegalStateException("app.gamification.leaderboard.replica.path es obligatorio en modo " + mode
+                    + ": debe apuntar a un volumen compartido por el publicador y los lectores");
+        }
+        this.leaderboardRepository = leaderboardRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.nameCache = nameCache;
+        this.weekCalendar = weekCalendar;
+        this.mode = mode;
+        this.path = mode != Mode.OFF ? Path.of(path) : null;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * Réplica vigente del ranking global de la semana, o vacío si no la hay
+     * (modo distinto de READER, otra semana o réplica vencida)
+     */
+    Optional<LeaderboardReplicaFile.Contents> find(String weekNumber, Integer year) {
+        LeaderboardReplicaFile.Contents contents = current;
+        if (contents == null
+                || !contents.weekNumber().equals(weekNumber)
+                || year == null || contents.year() != year
+                || System.currentTimeMillis() - contents.epoch() > maxAgeMillis) {
+            return Optional.empty();
+        }
+        return Optional.of(contents);
+    }
+
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.replica.interval-ms:5000}")
+    public void sync() {
+        try {
+            if (mode == Mode.PUBLISHER) {
+                publish();
+            } else if (mode == Mode.READER) {
+                refresh();
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error sincronizando la réplica del leaderboard ({}) en {}", mode, path, e);
+        }
+    }
+
+    private void publish() throws IOException {
+        int week = weekCalendar.currentWeek();
+        String weekNumber = IsoWeek.label(week);
+        int year = IsoWeek.year(week);
+        // Versión leída antes que el ranking: un cambio posterior se publica en el siguiente ciclo
+        long version = leaderboardRepository.findWeekVersion(weekNumber, year).version();
+        long now = System.currentTimeMillis();
+        if (version == publishedVersion && now - lastEpoch < maxAgeMillis / 2) {
+            return;
+        }
+        if (lastEpoch == 0) {
+            // Epoch creciente también tras reiniciar el publicador
+            lastEpoch = LeaderboardReplicaFile.readEpoch(path).orElse(0);
+        }
+
+        // Desde la tabla, no desde el índice local: incluye los deltas aplicados por otras instancias
+        List<LeaderboardCache> ranked = snapshotRepository.findRankedEntries(weekNumber, year);
+        Map<UUID, LeaderboardNameCache.DisplayName> names = nameCache.resolve(
+                ranked.stream().map(LeaderboardCache::getUserId).toList());
+        long epoch = Math.max(now, lastEpoch + 1);
+
+        LeaderboardReplicaFile.write(path, epoch, week,
+                LeaderboardSnapshot.of(weekNumber, year, ranked, LeaderboardReplicaFile.publishedAt(epoch)),
+                ranked.stream().map(entry -> names.get(entry.getUserId()).username()).toList());
+        lastEpoch = epoch;
+        publishedVersion = version;
+        logger.debug("Réplica de leaderboard {} publicada: {} usuarios (epoch {})", weekNumber, ranked.size(), epoch);
+    }
+
+    private void refresh() throws IOException {
+        OptionalLong epoch = LeaderboardReplicaFile.readEpoch(path);
+        LeaderboardReplicaFile.Contents contents = current;
+        if (epoch.isEmpty() || (contents != null && contents.epoch() == epoch.getAsLong())) {
+            return;
+        }
+        contents = LeaderboardReplicaFile.read(path);
+        current = contents;
+        logger.debug("Réplica de leaderboard {} cargada: {} usuarios (epoch {})",
+                contents.weekNumber(), contents.snapshot().size(), contents.epoch());
+    }
+}
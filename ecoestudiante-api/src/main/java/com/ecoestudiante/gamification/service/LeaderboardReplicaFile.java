@@ -0,0 +1,175 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.IsoWeek;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.UUID;
+
+/**
+ * Archivo de réplica del leaderboard: el ranking global de una semana con los
+ * nombres para mostrar, legible sin acceso a la BD.
+ *
+ * Formato binario: magic "ECLB" (int), un byte de versión, epoch (long, los
+ * milisegundos de la publicación, creciente entre publicaciones), semana
+ * ({@link IsoWeek}, int), largo del payload (int), payload de
+ * {@link LeaderboardSnapshot} y, por entrada en orden de ranking, el username
+ * (largo en un short sin signo + UTF-8).
+ *
+ * Se escribe en un archivo temporal que luego reemplaza al anterior con un
+ * rename atómico: un lector ve el archivo anterior o el nuevo completo, nunca
+ * uno a medio escribir. La lectura mapea el archivo en memoria.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+final class LeaderboardReplicaFile {
+
+    private static final int MAGIC = 0x45434C42;
+    private static final byte FORMAT = 1;
+    private static final int EPOCH_OFFSET = Integer.BYTES + 1;
+
+    /**
+     * Contenido de una publicación
+     */
+    record Contents(long epoch, int week, LeaderboardSnapshot snapshot,
+                    Map<UUID, LeaderboardNameCache.DisplayName> names) {
+
+        String weekNumber() {
+            return IsoWeek.label(week);
+        }
+
+        int year() {
+            return IsoWeek.year(week);
+        }
+    }
+
+    private LeaderboardReplicaFile() {
+    }
+
+    /**
+     * Fecha de publicación correspondiente a un epoch
+     */
+    static LocalDateTime publishedAt(long epoch) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epoch), ZoneId.systemDefault());
+    }
+
+    /**
+     * Publica el snapshot reemplazando atómicamente el archivo
+     *
+     * @param usernames username de cada entrada, en orden de ranking
+     */
+    static void write(Path path, long epoch, int week, LeaderboardSnapshot snapshot,
+                      List<String> usernames) throws IOException {
+        byte[] payload = snapshot.encode();
+        List<byte[]> names = new ArrayList<>(usernames.size());
+        int namesBytes = 0;
+        for (String username : usernames) {
+            byte[] name = (username != null ? username : "").getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF) {
+                throw new IllegalArgumentException("Username demasiado largo para la réplica del leaderboard");
+            }
+            names.add(name);
+            namesBytes += Short.BYTES + name.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                EPOCH_OFFSET + Long.BYTES + Integer.BYTES * 2 + payload.length + namesBytes);
+        buffer.putInt(MAGIC);
+        buffer.put(FORMAT);
+        buffer.putLong(epoch);
+        buffer.putInt(week);
+        buffer.putInt(payload.length);
+        buffer.put(payload);
+        for (byte[] name : names) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+            Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Epoch del archivo publicado leyendo solo la cabecera, o vacío si no existe
+     */
+    static OptionalLong readEpoch(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(EPOCH_OFFSET + Long.BYTES);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    break;
+                }
+            }
+            header.flip();
+            checkHeader(header, path);
+            return OptionalLong.of(header.getLong());
+        } catch (NoSuchFileException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    static Contents read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            checkHeader(buffer, path);
+            long epoch = buffer.getLong();
+            int week = buffer.getInt();
+            int payloadLength = buffer.getInt();
+
+            LeaderboardSnapshot snapshot = LeaderboardSnapshot.decode(IsoWeek.label(week), IsoWeek.year(week),
+                    buffer.slice(buffer.position(), payloadLength), publishedAt(epoch));
+            buffer.position(buffer.position() + payloadLength);
+
+            Map<UUID, LeaderboardNameCache.DisplayName> names = new HashMap<>(snapshot.size() * 2);
+            byte[] name = new byte[0xFFFF];
+            for (int i = 0; i < snapshot.size(); i++) {
+                int length = Short.toUnsignedInt(buffer.getShort());
+                buffer.get(name, 0, length);
+                names.put(snapshot.userIdAt(i),
+                        LeaderboardNameCache.of(new String(name, 0, length, StandardCharsets.UTF_8)));
+            }
+            return new Contents(epoch, week, snapshot, names);
+        }
+    }
+
+    private static void checkHeader(ByteBuffer buffer, Path path) {
+        if (buffer.remaining() < EPOCH_OFFSET + Long.BYTES || buffer.getInt() != MAGIC) {
+            throw new IllegalStateException("Archivo de réplica de leaderboard inválido: " + path);
+        }
+        byte format = buffer.get();
+        if (format != FORMAT) {
+            throw new IllegalStateException("Formato de réplica de leaderboard desconocido: " + format);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.ecoestudiante.gamification.service;
 
 import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import java.util.UUID;
 
 /**
@@ -23,6 +24,17 @@ public interface LeaderboardService {
      */
     MissionDtos.LeaderboardResponse getCurrentWeekLeaderboard(int topN);
 
+    /**
+     * Obtiene el leaderboard de la semana actual dentro de la partición del usuario
+     *
+     * @param topN Número de usuarios top a retornar
+     * @param scope Alcance del ranking (institución, campus o carrera del usuario)
+     * @param userId Usuario cuya partición se usa
+     * @return Leaderboard con posiciones relativas a la partición
+     * @throws IllegalArgumentException si el usuario no pertenece a ninguna partición del alcance
+     */
+    MissionDtos.LeaderboardResponse getCurrentWeekLeaderboard(int topN, LeaderboardScope scope, UUID userId);
+
     /**
      * Obtiene el leaderboard de una semana específica
      *
@@ -33,6 +45,19 @@ public interface LeaderboardService {
      */
     MissionDtos.LeaderboardResponse getWeekLeaderboard(String weekNumber, Integer year, int topN);
 
+    /**
+     * Obtiene el leaderboard de una semana dentro de la partición del usuario
+     *
+     * @param weekNumber Número de semana ISO
+     * @param year Año
+     * @param topN Número de usuarios top a retornar
+     * @param scope Alcance del ranking
+     * @param userId Usuario cuya partición se usa (ignorado para GLOBAL)
+     * @return Leaderboard con posiciones relativas a la partición
+     */
+    MissionDtos.LeaderboardResponse getWeekLeaderboard(String weekNumber, Integer year, int topN,
+                                                       LeaderboardScope scope, UUID userId);
+
     /**
      * Obtiene la posición de un usuario en el leaderboard de la semana actual
      *
@@ -41,6 +66,15 @@ public interface LeaderboardService {
      */
     MissionDtos.LeaderboardEntryResponse getUserPosition(UUID userId);
 
+    /**
+     * Obtiene la posición de un usuario en la semana actual dentro de su partición
+     *
+     * @param userId ID del usuario
+     * @param scope Alcance del ranking
+     * @return Entrada del leaderboard del usuario con la posición en la partición
+     */
+    MissionDtos.LeaderboardEntryResponse getUserPosition(UUID userId, LeaderboardScope scope);
+
     /**
      * Obtiene la posición de un usuario en una semana específica
      *
@@ -51,6 +85,27 @@ public interface LeaderboardService {
      */
     MissionDtos.LeaderboardEntryResponse getUserPositionInWeek(UUID userId, String weekNumber, Integer year);
 
+    /**
+     * Obtiene la posición de un usuario en una semana dentro de su partición
+     *
+     * @param userId ID del usuario
+     * @param weekNumber Número de semana ISO
+     * @param year Año
+     * @param scope Alcance del ranking
+     * @return Entrada del leaderboard del usuario con la posición en la partición
+     */
+    MissionDtos.LeaderboardEntryResponse getUserPositionInWeek(UUID userId, String weekNumber, Integer year,
+                                                               LeaderboardScope scope);
+
+    /**
+     * Obtiene las posiciones de un usuario en las semanas ya archivadas
+     *
+     * @param userId ID del usuario
+     * @param limit Número máximo de semanas (las más recientes)
+     * @return Historial de posiciones, de la semana más reciente a la más antigua
+     */
+    java.util.List<MissionDtos.RankHistoryEntry> getUserRankHistory(UUID userId, int limit);
+
     /**
      * Recalcula el leaderboard de la semana actual
      * (actualiza el cache con datos frescos)
@@ -78,6 +133,31 @@ public interface LeaderboardService {
      */
     void updateUserLeaderboardEntry(UUID userId, String weekNumber, Integer year);
 
+    /**
+     * Actualiza en lote las entradas del leaderboard de varios usuarios en una semana
+     * (usado por {@link LeaderboardUpdateCoalescer})
+     *
+     * @param userIds IDs de los usuarios
+     * @param weekNumber Número de semana ISO
+     * @param year Año
+     * @return Número de entradas actualizadas
+     */
+    int updateUserLeaderboardEntries(java.util.Collection<UUID> userIds, String weekNumber, Integer year);
+
+    /**
+     * Aplica deltas de métricas a las entradas de una semana. Las entradas que aún
+     * no existen se calculan completas desde las tablas de origen.
+     *
+     * Debe llamarse dentro de una transacción que obtuvo
+     * {@link com.ecoestudiante.gamification.repository.LeaderboardCacheRepository#tryLockForDeltas()}.
+     *
+     * @param weekNumber Número de semana ISO
+     * @param year Año
+     * @param deltas Un delta por usuario
+     * @return Número de entradas actualizadas
+     */
+    int applyLeaderboardDeltas(String weekNumber, Integer year, java.util.List<LeaderboardDelta> deltas);
+
     /**
      * Calcula los kg de CO₂ evitados por un usuario en una semana
      * (comparado con su baseline de 4 semanas anteriores)
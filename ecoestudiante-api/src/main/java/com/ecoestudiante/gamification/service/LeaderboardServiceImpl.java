@@ -1,10 +1,10 @@
 package com.ecoestudiante.gamification.service;
 
 import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
 import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
-import com.ecoestudiante.gamification.repository.MissionProgressRepository;
-import com.ecoestudiante.gamification.repository.XpTransactionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -12,11 +12,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.IsoFields;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -24,7 +25,11 @@ import java.util.stream.Collectors;
  * Implementación del servicio de Leaderboard.
  *
  * Gestiona el cálculo y cache del ranking semanal basado en
- * reducción de huella de carbono.
+ * reducción de huella de carbono. Las lecturas (top N y posición) se sirven
+ * desde {@link LeaderboardRankIndex}; leaderboard_cache es el respaldo durable.
+ * El ranking global de las semanas cerradas se sirve desde su snapshot
+ * inmutable ({@link LeaderboardArchive}) y, en las instancias lectoras, el de la
+ * semana actual desde la réplica en archivo ({@link LeaderboardReplica}).
  *
  * @author EcoEstudiante Team
  * @version 1.0.0
@@ -36,41 +41,91 @@ public class LeaderboardServiceImpl implements LeaderboardService {
     private static final Logger logger = LoggerFactory.getLogger(LeaderboardServiceImpl.class);
 
     private final LeaderboardCacheRepository leaderboardRepository;
-    private final MissionProgressRepository progressRepository;
-    private final XpTransactionRepository xpRepository;
     private final JdbcTemplate jdbcTemplate;
+    private final LeaderboardRankIndex rankIndex;
+    private final LeaderboardNameCache nameCache;
+    private final LeaderboardArchive archive;
+    private final LeaderboardReplica replica;
+    private final IsoWeekCalendar weekCalendar;
 
     public LeaderboardServiceImpl(
             LeaderboardCacheRepository leaderboardRepository,
-            MissionProgressRepository progressRepository,
-            XpTransactionRepository xpRepository,
-            JdbcTemplate jdbcTemplate) {
+            JdbcTemplate jdbcTemplate,
+            LeaderboardRankIndex rankIndex,
+            LeaderboardNameCache nameCache,
+            LeaderboardArchive archive,
+            LeaderboardReplica replica,
+            IsoWeekCalendar weekCalendar) {
         this.leaderboardRepository = leaderboardRepository;
-        this.progressRepository = progressRepository;
-        this.xpRepository = xpRepository;
         this.jdbcTemplate = jdbcTemplate;
+        this.rankIndex = rankIndex;
+        this.nameCache = nameCache;
+        this.archive = archive;
+        this.replica = replica;
+        this.weekCalendar = weekCalendar;
     }
 
     @Override
     public MissionDtos.LeaderboardResponse getCurrentWeekLeaderboard(int topN) {
-        String[] currentWeek = getCurrentWeekAndYear();
-        return getWeekLeaderboard(currentWeek[0], Integer.parseInt(currentWeek[1]), topN);
+        int week = weekCalendar.currentWeek();
+        return getWeekLeaderboard(IsoWeek.label(week), IsoWeek.year(week), topN);
+    }
+
+    @Override
+    public MissionDtos.LeaderboardResponse getCurrentWeekLeaderboard(int topN, LeaderboardScope scope, UUID userId) {
+        int week = weekCalendar.currentWeek();
+        return getWeekLeaderboard(IsoWeek.label(week), IsoWeek.year(week), topN, scope, userId);
     }
 
     @Override
     public MissionDtos.LeaderboardResponse getWeekLeaderboard(String weekNumber, Integer year, int topN) {
-        logger.debug("Obteniendo leaderboard para semana {}-{}, top {}", weekNumber, year, topN);
+        return getWeekLeaderboard(weekNumber, year, topN, LeaderboardScope.GLOBAL, null);
+    }
 
-        // Obtener top N del cache
-        List<LeaderboardCache> topEntries = leaderboardRepository.findTopNByWeek(weekNumber, year, topN);
+    @Override
+    public MissionDtos.LeaderboardResponse getWeekLeaderboard(String weekNumber, Integer year, int topN,
+                                                              LeaderboardScope scope, UUID userId) {
+        logger.debug("Obteniendo leaderboard {} para semana {}-{}, top {}", scope, weekNumber, year, topN);
+
+        // Semana cerrada: snapshot inmutable (una búsqueda por clave)
+        Optional<LeaderboardSnapshot> snapshot = archivedSnapshot(weekNumber, year, scope);
+        if (snapshot.isPresent()) {
+            List<LeaderboardCache> topEntries = snapshot.get().top(topN);
+            return new MissionDtos.LeaderboardResponse(
+                    weekNumber,
+                    year,
+                    toEntryResponses(topEntries),
+                    null,
+                    snapshot.get().size(),
+                    snapshot.get().frozenAt()
+            );
+        }
 
-        // Convertir a DTOs
-        List<MissionDtos.LeaderboardEntryResponse> topUsers = topEntries.stream()
-                .map(entry -> toLeaderboardEntryResponse(entry, false))
-                .collect(Collectors.toList());
+        // Instancia lectora: réplica en archivo, sin acceso a la BD
+        Optional<LeaderboardReplicaFile.Contents> replicated = replicated(weekNumber, year, scope);
+        if (replicated.isPresent()) {
+            LeaderboardSnapshot replicaSnapshot = replicated.get().snapshot();
+            Map<UUID, LeaderboardNameCache.DisplayName> names = replicated.get().names();
+            return new MissionDtos.LeaderboardResponse(
+                    weekNumber,
+                    year,
+                    replicaSnapshot.top(topN).stream()
+                            .map(entry -> toLeaderboardEntryResponse(entry, names.get(entry.getUserId()), false))
+                            .collect(Collectors.toList()),
+                    null,
+                    replicaSnapshot.size(),
+                    replicaSnapshot.frozenAt()
+            );
+        }
+
+        // Top N del índice en memoria (posiciones siempre al día, dentro de la partición)
+        String scopeValue = scopeValueOf(userId, scope);
+        List<LeaderboardCache> topEntries = rankIndex.top(weekNumber, year, scope, scopeValue, topN);
+
+        List<MissionDtos.LeaderboardEntryResponse> topUsers = toEntryResponses(topEntries);
 
         // Contar total de usuarios en el ranking
-        int totalUsers = leaderboardRepository.countByWeek(weekNumber, year);
+        int totalUsers = rankIndex.count(weekNumber, year, scope, scopeValue);
 
         return new MissionDtos.LeaderboardResponse(
                 weekNumber,
@@ -84,24 +139,54 @@ public class LeaderboardServiceImpl implements LeaderboardService {
 
     @Override
     public MissionDtos.LeaderboardEntryResponse getUserPosition(UUID userId) {
-        String[] currentWeek = getCurrentWeekAndYear();
-        return getUserPositionInWeek(userId, currentWeek[0], Integer.parseInt(currentWeek[1]));
+        int week = weekCalendar.currentWeek();
+        return getUserPositionInWeek(userId, IsoWeek.label(week), IsoWeek.year(week));
+    }
+
+    @Override
+    public MissionDtos.LeaderboardEntryResponse getUserPosition(UUID userId, LeaderboardScope scope) {
+        int week = weekCalendar.currentWeek();
+        return getUserPositionInWeek(userId, IsoWeek.label(week), IsoWeek.year(week), scope);
     }
 
     @Override
     public MissionDtos.LeaderboardEntryResponse getUserPositionInWeek(UUID userId, String weekNumber, Integer year) {
-        logger.debug("Obteniendo posición de usuario {} en semana {}-{}", userId, weekNumber, year);
+        return getUserPositionInWeek(userId, weekNumber, year, LeaderboardScope.GLOBAL);
+    }
 
-        return leaderboardRepository.findByUserAndWeek(userId, weekNumber, year)
-                .map(entry -> toLeaderboardEntryResponse(entry, true))
+    @Override
+    public MissionDtos.LeaderboardEntryResponse getUserPositionInWeek(UUID userId, String weekNumber, Integer year,
+                                                                      LeaderboardScope scope) {
+        logger.debug("Obteniendo posición {} de usuario {} en semana {}-{}", scope, userId, weekNumber, year);
+
+        Optional<LeaderboardSnapshot> snapshot = archivedSnapshot(weekNumber, year, scope);
+        if (snapshot.isEmpty()) {
+            Optional<LeaderboardReplicaFile.Contents> replicated = replicated(weekNumber, year, scope);
+            if (replicated.isPresent()) {
+                Map<UUID, LeaderboardNameCache.DisplayName> names = replicated.get().names();
+                return replicated.get().snapshot().position(userId)
+                        .map(entry -> toLeaderboardEntryResponse(entry, names.get(userId), true))
+                        .orElse(null);
+            }
+        }
+        Optional<LeaderboardCache> position = snapshot.isPresent()
+                ? snapshot.get().position(userId)
+                : rankIndex.position(userId, weekNumber, year, scope, scopeValueOf(userId, scope));
+        return position
+                .map(entry -> toLeaderboardEntryResponse(entry, nameCache.resolve(userId), true))
                 .orElse(null);
     }
 
+    @Override
+    public List<MissionDtos.RankHistoryEntry> getUserRankHistory(UUID userId, int limit) {
+        return archive.history(userId, limit);
+    }
+
     @Override
     @Transactional
     public int recalculateCurrentWeekLeaderboard() {
-        String[] currentWeek = getCurrentWeekAndYear();
-        return recalculateWeekLeaderboard(currentWeek[0], Integer.parseInt(currentWeek[1]));
+        int week = weekCalendar.currentWeek();
+        return recalculateWeekLeaderboard(IsoWeek.label(week), IsoWeek.year(week));
     }
 
     @Override
@@ -109,38 +194,21 @@ public class LeaderboardServiceImpl implements LeaderboardService {
     public int recalculateWeekLeaderboard(String weekNumber, Integer year) {
         logger.info("Recalculando leaderboard para semana {}-{}", weekNumber, year);
 
-        // Obtener todos los usuarios activos (que tienen al menos 1 cálculo o misión)
-        String sql = """
-                SELECT DISTINCT user_id FROM (
-                    SELECT user_id FROM mission_progress WHERE started_at >= get_week_start(?, ?)
-                    UNION
-                    SELECT user_id FROM xp_transactions WHERE created_at >= get_week_start(?, ?)
-                ) AS active_users
-                """;
-
-        List<UUID> activeUserIds = jdbcTemplate.queryForList(
-                sql, UUID.class,
-                weekNumber, year,
-                weekNumber, year
-        );
+        // Sin deltas concurrentes hasta el commit: ninguno se pierde ni se cuenta dos veces
+        leaderboardRepository.lockForRecalculation();
 
-        logger.debug("Encontrados {} usuarios activos para semana {}-{}",
-                activeUserIds.size(), weekNumber, year);
+        // Puede eliminar filas: las demás instancias recargan la semana completa
+        long version = leaderboardRepository.bumpWeekVersion(weekNumber, year, true);
 
-        // Calcular y guardar entrada para cada usuario
-        for (UUID userId : activeUserIds) {
-            try {
-                updateUserLeaderboardEntry(userId, weekNumber, year);
-            } catch (Exception e) {
-                logger.error("Error al actualizar leaderboard para usuario {}: {}", userId, e.getMessage());
-            }
-        }
+        // Una sola sentencia: métricas de todos los usuarios activos, upsert y ranking
+        int week = IsoWeek.parse(weekNumber, year);
+        int users = leaderboardRepository.recalculateWeek(
+                weekNumber, year, IsoWeek.start(week), IsoWeek.end(week), version);
 
-        // Recalcular rankings (posiciones)
-        leaderboardRepository.recalculateRankings(weekNumber, year);
+        rankIndex.reloadAfterCommit(weekNumber, year);
 
-        logger.info("Leaderboard recalculado para {} usuarios", activeUserIds.size());
-        return activeUserIds.size();
+        logger.info("Leaderboard recalculado para {} usuarios", users);
+        return users;
     }
 
     @Override
@@ -149,21 +217,68 @@ public class LeaderboardServiceImpl implements LeaderboardService {
         logger.debug("Actualizando entrada de leaderboard para usuario {} en semana {}-{}",
                 userId, weekNumber, year);
 
-        // Calcular métricas
-        BigDecimal co2Avoided = calculateCo2AvoidedForWeek(userId, weekNumber, year);
-        int missionsCompleted = countMissionsCompletedInWeek(userId, weekNumber, year);
-        int xpGained = sumXpGainedInWeek(userId, weekNumber, year);
-
-        // Crear o actualizar entrada en cache
-        LeaderboardCache entry = new LeaderboardCache();
-        entry.setUserId(userId);
-        entry.setWeekNumber(weekNumber);
-        entry.setYear(year);
-        entry.setCo2AvoidedKg(co2Avoided);
-        entry.setMissionsCompleted(missionsCompleted);
-        entry.setTotalXpWeek(xpGained);
-
-        leaderboardRepository.save(entry);
+        updateUserLeaderboardEntries(List.of(userId), weekNumber, year);
+    }
+
+    @Override
+    @Transactional
+    public int updateUserLeaderboardEntries(Collection<UUID> userIds, String weekNumber, Integer year) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+
+        // Métricas de todo el lote + upsert en una sola sentencia
+        int week = IsoWeek.parse(weekNumber, year);
+        long version = leaderboardRepository.bumpWeekVersion(weekNumber, year, false);
+        List<LeaderboardCache> entries = leaderboardRepository.upsertUsersForWeek(
+                userIds, weekNumber, year, IsoWeek.start(week), IsoWeek.end(week), version);
+
+        rankIndex.upsertAfterCommit(entries);
+        return entries.size();
+    }
+
+    @Override
+    @Transactional
+    public int applyLeaderboardDeltas(String weekNumber, Integer year, List<LeaderboardDelta> deltas) {
+        if (deltas.isEmpty()) {
+            return 0;
+        }
+
+        // Las demás instancias leen las filas marcadas con esta versión
+        long version = leaderboardRepository.bumpWeekVersion(weekNumber, year, false);
+        List<UUID> userIds = deltas.stream().map(LeaderboardDelta::userId).toList();
+        List<LeaderboardCache> updated = leaderboardRepository.applyDeltas(weekNumber, year, userIds,
+                deltas.stream().map(LeaderboardDelta::co2Kg).toList(),
+                deltas.stream().map(LeaderboardDelta::missionsCompleted).toList(),
+                deltas.stream().map(LeaderboardDelta::xp).toList(),
+                version);
+        rankIndex.upsertAfterCommit(updated);
+
+        // Primera entrada de la semana: se calcula completa (ya incluye lo que traía el delta)
+        Set<UUID> existing = updated.stream().map(LeaderboardCache::getUserId).collect(Collectors.toSet());
+        List<UUID> missing = userIds.stream().filter(id -> !existing.contains(id)).toList();
+        if (missing.isEmpty()) {
+            return updated.size();
+        }
+        int week = IsoWeek.parse(weekNumber, year);
+        List<LeaderboardCache> created = leaderboardRepository.insertUsersForWeek(
+                missing, weekNumber, year, IsoWeek.start(week), IsoWeek.end(week), version);
+        rankIndex.upsertAfterCommit(created);
+
+        // Otra transacción creó la entrada entre medio: se le suma el delta como a las demás
+        Set<UUID> createdIds = created.stream().map(LeaderboardCache::getUserId).collect(Collectors.toSet());
+        List<LeaderboardDelta> raced = deltas.stream()
+                .filter(delta -> !existing.contains(delta.userId()) && !createdIds.contains(delta.userId()))
+                .toList();
+        List<LeaderboardCache> late = raced.isEmpty() ? List.of() : leaderboardRepository.applyDeltas(
+                weekNumber, year, raced.stream().map(LeaderboardDelta::userId).toList(),
+                raced.stream().map(LeaderboardDelta::co2Kg).toList(),
+                raced.stream().map(LeaderboardDelta::missionsCompleted).toList(),
+                raced.stream().map(LeaderboardDelta::xp).toList(),
+                version);
+        rankIndex.upsertAfterCommit(late);
+
+        return updated.size() + created.size() + late.size();
     }
 
     @Override
@@ -171,9 +286,9 @@ public class LeaderboardServiceImpl implements LeaderboardService {
         logger.debug("Calculando CO2 evitado para usuario {} en semana {}-{}", userId, weekNumber, year);
 
         // Obtener rango de fechas de la semana
-        LocalDateTime[] weekRange = getWeekDateRange(weekNumber, year);
+        int week = IsoWeek.parse(weekNumber, year);
 
-        logger.debug("Rango de semana: {} a {}", weekRange[0], weekRange[1]);
+        logger.debug("Rango de semana: {} a {}", IsoWeek.start(week), IsoWeek.end(week));
 
         // Sumar las emisiones de todos los cálculos de la semana
         String query = """
@@ -188,8 +303,8 @@ public class LeaderboardServiceImpl implements LeaderboardService {
                 query,
                 BigDecimal.class,
                 userId.toString(),
-                weekRange[0],
-                weekRange[1]
+                IsoWeek.start(week),
+                IsoWeek.end(week)
         );
 
         logger.info("📊 CO2 total calculado para usuario {} en semana {}-{}: {} kg",
@@ -202,59 +317,59 @@ public class LeaderboardServiceImpl implements LeaderboardService {
     // Métodos auxiliares
     // =========================================================================
 
-    private String[] getCurrentWeekAndYear() {
-        LocalDate now = LocalDate.now();
-        int weekNum = now.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-        int year = now.get(IsoFields.WEEK_BASED_YEAR);
-        String weekNumber = String.format("%d-W%02d", year, weekNum);
-        return new String[]{weekNumber, String.valueOf(year)};
+    /**
+     * Snapshot de la semana si ya se finalizó y el ranking es global; los rankings
+     * por partición se siguen sirviendo desde el índice
+     */
+    private Optional<LeaderboardSnapshot> archivedSnapshot(String weekNumber, Integer year, LeaderboardScope scope) {
+        return scope == LeaderboardScope.GLOBAL ? archive.find(weekNumber, year) : Optional.empty();
     }
 
-    private int countMissionsCompletedInWeek(UUID userId, String weekNumber, Integer year) {
-        // Obtener rango de fechas de la semana
-        LocalDateTime[] weekRange = getWeekDateRange(weekNumber, year);
-
-        return progressRepository.countCompletedByUserBetweenDates(
-                userId, weekRange[0], weekRange[1]
-        );
+    /**
+     * Réplica en archivo de la semana si esta instancia es lectora y el ranking es global
+     */
+    private Optional<LeaderboardReplicaFile.Contents> replicated(String weekNumber, Integer year,
+                                                                 LeaderboardScope scope) {
+        return scope == LeaderboardScope.GLOBAL ? replica.find(weekNumber, year) : Optional.empty();
     }
 
-    private int sumXpGainedInWeek(UUID userId, String weekNumber, Integer year) {
-        LocalDateTime[] weekRange = getWeekDateRange(weekNumber, year);
-
-        return xpRepository.sumXpByUserBetweenDates(
-                userId, weekRange[0], weekRange[1]
-        );
+    /**
+     * Convierte a DTOs (nombres de toda la página en una sola consulta como máximo)
+     */
+    private List<MissionDtos.LeaderboardEntryResponse> toEntryResponses(List<LeaderboardCache> entries) {
+        Map<UUID, LeaderboardNameCache.DisplayName> names = nameCache.resolve(
+                entries.stream().map(LeaderboardCache::getUserId).toList());
+        return entries.stream()
+                .map(entry -> toLeaderboardEntryResponse(entry, names.get(entry.getUserId()), false))
+                .collect(Collectors.toList());
     }
 
-    private LocalDateTime[] getWeekDateRange(String weekNumber, Integer year) {
-        // Parsear weekNumber (formato: "2025-W01")
-        String[] parts = weekNumber.split("-W");
-        int weekNum = Integer.parseInt(parts[1]);
-
-        // Calcular primer día de la semana
-        LocalDate firstDayOfWeek = LocalDate.of(year, 1, 1)
-                .with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, weekNum)
-                .with(java.time.DayOfWeek.MONDAY); // Lunes
-
-        LocalDate lastDayOfWeek = firstDayOfWeek.plusDays(6); // Domingo
-
-        return new LocalDateTime[]{
-                firstDayOfWeek.atStartOfDay(),
-                lastDayOfWeek.atTime(23, 59, 59)
-        };
+    /**
+     * Partición del usuario para el alcance (null para GLOBAL)
+     *
+     * @throws IllegalArgumentException si el usuario no pertenece a ninguna partición del alcance
+     */
+    private String scopeValueOf(UUID userId, LeaderboardScope scope) {
+        if (scope == LeaderboardScope.GLOBAL) {
+            return null;
+        }
+        String scopeValue = userId == null ? null
+                : nameCache.memberships(List.of(userId)).get(userId).scopeValue(scope);
+        if (scopeValue == null) {
+            throw new IllegalArgumentException("El usuario no tiene asignada una partición para el ranking " + scope);
+        }
+        return scopeValue;
     }
 
     private MissionDtos.LeaderboardEntryResponse toLeaderboardEntryResponse(
             LeaderboardCache entry,
+            LeaderboardNameCache.DisplayName name,
             boolean isCurrentUser) {
 
         if (entry == null) return null;
 
-        // Anonimizar username (obtener de BD si es necesario)
-        String username = isCurrentUser
-                ? getUsername(entry.getUserId())
-                : anonymizeUsername(getUsername(entry.getUserId()));
+        // El usuario actual ve su username; el resto, la versión anonimizada
+        String username = isCurrentUser ? name.username() : name.anonymized();
 
         return new MissionDtos.LeaderboardEntryResponse(
                 entry.getRankPosition(),
@@ -267,27 +382,4 @@ public class LeaderboardServiceImpl implements LeaderboardService {
                 entry.getMedalEmoji()
         );
     }
-
-    private String getUsername(UUID userId) {
-        // Consultar username desde tabla app_user
-        try {
-            return jdbcTemplate.queryForObject(
-                    "SELECT username FROM app_user WHERE id = ?",
-                    String.class,
-                    userId
-            );
-        } catch (Exception e) {
-            logger.warn("No se pudo obtener username para usuario {}", userId);
-            return "Usuario-" + userId;
-        }
-    }
-
-    private String anonymizeUsername(String username) {
-        if (username == null || username.length() <= 3) {
-            return "eco_***";
-        }
-
-        // Mostrar primeros 3 caracteres y reemplazar el resto con ***
-        return username.substring(0, 3) + "_***";
-    }
 }
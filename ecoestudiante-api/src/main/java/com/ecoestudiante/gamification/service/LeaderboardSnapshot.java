@@ -0,0 +1,172 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Ranking congelado de una semana cerrada, como arreglos paralelos en orden de
+ * ranking (la posición es el índice + 1).
+ *
+ * Formato binario (leaderboard_snapshot.payload): un byte de versión, un int
+ * con el número de entradas y, por entrada, 32 bytes: UUID (2 longs), CO2 en
+ * centésimas de kg (long), misiones (int) y XP (int).
+ *
+ * Inmutable y thread-safe.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+final class LeaderboardSnapshot {
+
+    private static final byte FORMAT = 1;
+    private static final int ENTRY_BYTES = 32;
+
+    private final String weekNumber;
+    private final int year;
+    private final LocalDateTime frozenAt;
+    private final UUID[] userIds;
+    private final long[] co2Cents;
+    private final int[] missions;
+    private final int[] xp;
+    private final Map<UUID, Integer> indexByUser;
+
+    private LeaderboardSnapshot(String weekNumber, int year, LocalDateTime frozenAt,
+                                UUID[] userIds, long[] co2Cents, int[] missions, int[] xp) {
+        this.weekNumber = weekNumber;
+        this.year = year;
+        this.frozenAt = frozenAt;
+        this.userIds = userIds;
+        this.co2Cents = co2Cents;
+        this.missions = missions;
+        this.xp = xp;
+        this.indexByUser = new HashMap<>(userIds.length * 2);
+        for (int i = 0; i < userIds.length; i++) {
+            indexByUser.put(userIds[i], i);
+        }
+    }
+
+    /**
+     * Snapshot de entradas ya ordenadas por ranking
+     */
+    static LeaderboardSnapshot of(String weekNumber, int year, List<LeaderboardCache> ranked,
+                                  LocalDateTime frozenAt) {
+        int n = ranked.size();
+        UUID[] userIds = new UUID[n];
+        long[] co2Cents = new long[n];
+        int[] missions = new int[n];
+        int[] xp = new int[n];
+        for (int i = 0; i < n; i++) {
+            LeaderboardCache entry = ranked.get(i);
+            userIds[i] = entry.getUserId();
+            co2Cents[i] = entry.getCo2AvoidedKg() != null
+                    ? entry.getCo2AvoidedKg().setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue()
+                    : 0;
+            missions[i] = entry.getMissionsCompleted() != null ? entry.getMissionsCompleted() : 0;
+            xp[i] = entry.getTotalXpWeek() != null ? entry.getTotalXpWeek() : 0;
+        }
+        return new LeaderboardSnapshot(weekNumber, year, frozenAt, userIds, co2Cents, missions, xp);
+    }
+
+    static LeaderboardSnapshot decode(String weekNumber, int year, byte[] payload, LocalDateTime frozenAt) {
+        return decode(weekNumber, year, ByteBuffer.wrap(payload), frozenAt);
+    }
+
+    /**
+     * Decodifica desde la posición actual del buffer (p. ej. un archivo mapeado en memoria)
+     */
+    static LeaderboardSnapshot decode(String weekNumber, int year, ByteBuffer buffer, LocalDateTime frozenAt) {
+        byte format = buffer.get();
+        if (format != FORMAT) {
+            throw new IllegalStateException("Formato de snapshot de leaderboard desconocido: " + format);
+        }
+        int n = buffer.getInt();
+        UUID[] userIds = new UUID[n];
+        long[] co2Cents = new long[n];
+        int[] missions = new int[n];
+        int[] xp = new int[n];
+        for (int i = 0; i < n; i++) {
+            userIds[i] = new UUID(buffer.getLong(), buffer.getLong());
+            co2Cents[i] = buffer.getLong();
+            missions[i] = buffer.getInt();
+            xp[i] = buffer.getInt();
+        }
+        return new LeaderboardSnapshot(weekNumber, year, frozenAt, userIds, co2Cents, missions, xp);
+    }
+
+    byte[] encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(1 + Integer.BYTES + size() * ENTRY_BYTES);
+        buffer.put(FORMAT);
+        buffer.putInt(size());
+        for (int i = 0; i < size(); i++) {
+            buffer.putLong(userIds[i].getMostSignificantBits());
+            buffer.putLong(userIds[i].getLeastSignificantBits());
+            buffer.putLong(co2Cents[i]);
+            buffer.putInt(missions[i]);
+            buffer.putInt(xp[i]);
+        }
+        return buffer.array();
+    }
+
+    int size() {
+        return userIds.length;
+    }
+
+    /**
+     * Usuario en la posición {@code index + 1}
+     */
+    UUID userIdAt(int index) {
+        return userIds[index];
+    }
+
+    LocalDateTime frozenAt() {
+        return frozenAt;
+    }
+
+    /**
+     * Primeras {@code limit} entradas, con rankPosition asignado
+     */
+    List<LeaderboardCache> top(int limit) {
+        int n = Math.min(Math.max(limit, 0), size());
+        List<LeaderboardCache> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            result.add(entry(i));
+        }
+        return result;
+    }
+
+    Optional<LeaderboardCache> position(UUID userId) {
+        Integer i = indexByUser.get(userId);
+        return i == null ? Optional.empty() : Optional.of(entry(i));
+    }
+
+    /**
+     * Entradas en orden de ranking (la posición de cada una es su índice + 1)
+     */
+    List<LeaderboardCache> entries() {
+        return top(size());
+    }
+
+    private LeaderboardCache entry(int i) {
+        LeaderboardCache entry = new LeaderboardCache();
+        entry.setUserId(userIds[i]);
+        entry.setWeekNumber(weekNumber);
+        entry.setYear(year);
+        entry.setCo2AvoidedKg(BigDecimal.valueOf(co2Cents[i], 2));
+        entry.setMissionsCompleted(missions[i]);
+        entry.setTotalXpWeek(xp[i]);
+        entry.setRankPosition(i + 1);
+        entry.setCalculatedAt(frozenAt);
+        return entry;
+    }
+}
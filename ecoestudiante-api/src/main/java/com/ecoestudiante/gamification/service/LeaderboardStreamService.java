@@ -0,0 +1,424 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.auth.UserProfileUpdatedEvent;
+import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Difusión del leaderboard en vivo por Server-Sent Events.
+ *
+ * Las suscripciones se agrupan por alcance, partición y tamaño del top. En cada
+ * ciclo (app.gamification.leaderboard.stream.push-interval-ms) solo se procesan
+ * los grupos cuyo ranking cambió en {@link LeaderboardRankIndex} (o en la
+ * réplica, en una instancia lectora) desde el ciclo anterior: el top N se calcula y serializa una vez por grupo y se envía como
+ * evento "top" solo si cambió; a cada suscriptor se le envía su evento
+ * "position" solo si su propia entrada cambió.
+ *
+ * El scheduler solo calcula y encola: cada suscriptor tiene su propia cola de
+ * eventos y las escrituras (bloqueantes en el servlet) las hace un pool acotado
+ * (app.gamification.leaderboard.stream.sender-threads), sin un hilo por
+ * suscriptor. Un cliente lento no frena a las demás tareas programadas: se
+ * descarta si su cola supera stream.max-queued-events, si una escritura lleva
+ * más de stream.write-timeout-ms o si el pool ya no acepta trabajo. Una
+ * escritura bloqueada retiene el monitor del emisor (complete y completeWithError
+ * esperarían tras ella), así que se libera cerrando el contexto asíncrono de la
+ * petición: el contenedor cierra la conexión y el send falla, devolviendo el hilo
+ * al pool.
+ *
+ * Se siguen la semana actual (al cambiar de semana los suscriptores reciben el
+ * nuevo ranking) y, tras un cambio de perfil, la conexión se cierra para que el
+ * cliente se vuelva a suscribir a su nueva partición.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardStreamService.class);
+
+    private record GroupKey(LeaderboardScope scope, String scopeValue, int topN) {
+    }
+
+    private static final class Group {
+        final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+        long version = -1;
+        String topJson;
+    }
+
+    private static final class Subscriber {
+        final UUID userId;
+        final GroupKey key;
+        final SseEmitter emitter;
+        final HttpServletRequest request;
+        final Queue<SseEmitter.SseEventBuilder> events = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicBoolean draining = new AtomicBoolean();
+        /** Inicio de la escritura en curso (System.nanoTime), 0 si no hay ninguna */
+        volatile long writeStartedAt;
+        volatile boolean closed;
+        MissionDtos.LeaderboardEntryResponse lastPosition;
+
+        Subscriber(UUID userId, GroupKey key, SseEmitter emitter, HttpServletRequest request) {
+            this.userId = userId;
+            this.key = key;
+            this.emitter = emitter;
+            this.request = request;
+        }
+    }
+
+    private final LeaderboardService leaderboardService;
+    private final LeaderboardRankIndex rankIndex;
+    private final LeaderboardReplica replica;
+    private final LeaderboardNameCache nameCache;
+    private final ObjectMapper objectMapper;
+    private final IsoWeekCalendar weekCalendar;
+    private final Map<GroupKey, Group> groups = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final ThreadPoolTaskExecutor sender;
+    private final long timeoutMillis;
+    private final int maxSubscribers;
+    private final int maxTopN;
+    private final int maxQueuedEvents;
+    private final long writeTimeoutNanos;
+
+    public LeaderboardStreamService(
+            LeaderboardService leaderboardService,
+            LeaderboardRankIndex rankIndex,
+            LeaderboardReplica replica,
+            LeaderboardNameCache nameCache,
+            ObjectMapper objectMapper,
+            IsoWeekCalendar weekCalendar,
+            @Value("${app.gamification.leaderboard.stream.timeout-ms:1800000}") long timeoutMillis,
+            @Value("${app.gamification.leaderboard.stream.max-subscribers:10000}") int maxSubscribers,
+            @Value("${app.gamification.leaderboard.stream.max-top-n:100}") int maxTopN,
+            @Value("${app.gamification.leaderboard.stream.sender-threads:8}") int senderThreads,
+            @Value("${app.gamification.leaderboard.stream.max-queued-events:16}") int maxQueuedEvents,
+            @Value("${app.gamification.leaderboard.stream.write-timeout-ms:5000}") long writeTimeoutMillis) {
+        this.leaderboardService = leaderboardService;
+        this.rankIndex = rankIndex;
+        this.replica = replica;
+        this.nameCache = nameCache;
+        this.objectMapper = objectMapper;
+        this.weekCalendar = weekCalendar;
+        this.timeoutMillis = timeoutMillis;
+        this.maxSubscribers = maxSubscribers;
+        this.maxTopN = maxTopN;
+        this.maxQueuedEvents = Math.max(1, maxQueuedEvents);
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+
+        this.sender = new ThreadPoolTaskExecutor();
+        this.sender.setCorePoolSize(senderThreads);
+        this.sender.setMaxPoolSize(senderThreads);
+        // A lo más un drenado pendiente por suscriptor
+        this.sender.setQueueCapacity(Math.max(1, maxSubscribers));
+        this.sender.setThreadNamePrefix("leaderboard-sse-");
+        this.sender.initialize();
+    }
+
+    /**
+     * Abre una suscripción y envía de inmediato el top y la posición actuales
+     *
+     * @param request petición del stream; su contexto asíncrono se cierra si una escritura se bloquea
+     * @return el emisor, o vacío si se alcanzó el máximo de suscriptores
+     * @throws IllegalArgumentException si topN es inválido o el usuario no pertenece
+     *                                  a una partición del alcance
+     */
+    public Optional<SseEmitter> subscribe(UUID userId, LeaderboardScope scope, int topN, HttpServletRequest request) {
+        if (topN < 1 || topN > maxTopN) {
+            throw new IllegalArgumentException("topN debe estar entre 1 y " + maxTopN);
+        }
+        // Valida la partición del usuario antes de reservar la conexión
+        MissionDtos.LeaderboardResponse top = leaderboardService.getCurrentWeekLeaderboard(topN, scope, userId);
+
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            logger.warn("Stream de leaderboard lleno ({} suscriptores)", maxSubscribers);
+            return Optional.empty();
+        }
+
+        GroupKey key = new GroupKey(scope, nameCache.memberships(Set.of(userId)).get(userId).scopeValue(scope), topN);
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(userId, key, emitter, request);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> emitter.complete());
+
+        // Registrado antes del primer envío: el ciclo de push espera al estado inicial
+        synchronized (subscriber) {
+            groups.compute(key, (k, group) -> {
+                Group g = group != null ? group : new Group();
+                g.subscribers.add(subscriber);
+                return g;
+            });
+            subscriber.lastPosition = leaderboardService.getUserPosition(userId, scope);
+            enqueue(subscriber, event("top", toJson(top)));
+            if (subscriber.lastPosition != null) {
+                enqueue(subscriber, event("position", toJson(subscriber.lastPosition)));
+            }
+        }
+        logger.debug("Suscripción de {} al leaderboard {} (top {})", userId, scope, topN);
+        return Optional.of(emitter);
+    }
+
+    /**
+     * Envía los cambios de los grupos cuyo ranking se modificó
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.stream.push-interval-ms:1000}")
+    public void push() {
+        if (groups.isEmpty()) {
+            return;
+        }
+        dropStalledWriters();
+        int week = weekCalendar.currentWeek();
+        String weekNumber = IsoWeek.label(week);
+        int year = IsoWeek.year(week);
+
+        for (Map.Entry<GroupKey, Group> entry : groups.entrySet()) {
+            GroupKey key = entry.getKey();
+            Group group = entry.getValue();
+            try {
+                pushGroup(key, group, weekNumber, year);
+            } catch (Exception e) {
+                logger.error("❌ Error enviando leaderboard {} en vivo", key.scope(), e);
+            }
+        }
+    }
+
+    /**
+     * Comentario periódico para mantener abiertas las conexiones inactivas
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.stream.heartbeat-ms:20000}")
+    public void heartbeat() {
+        for (Group group : groups.values()) {
+            for (Subscriber subscriber : group.subscribers) {
+                // Si ya tiene eventos en cola, la conexión no está inactiva
+                if (subscriber.queued.get() == 0) {
+                    enqueue(subscriber, SseEmitter.event().comment("ping"));
+                }
+            }
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onProfileUpdated(UserProfileUpdatedEvent event) {
+        for (Group group : groups.values()) {
+            for (Subscriber subscriber : group.subscribers) {
+                if (subscriber.userId.equals(event.getUserId())) {
+                    drop(subscriber, "cambio de perfil");
+                }
+            }
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdown();
+        groups.values().forEach(group -> group.subscribers.forEach(s -> s.emitter.complete()));
+    }
+
+    private void pushGroup(GroupKey key, Group group, String weekNumber, int year) {
+        // En una instancia lectora el ranking global cambia con cada epoch de la réplica
+        long version = key.scope() == LeaderboardScope.GLOBAL
+                ? replica.find(weekNumber, year)
+                        .map(LeaderboardReplicaFile.Contents::epoch)
+                        .orElseGet(() -> rankIndex.version(weekNumber, year, key.scope(), null))
+                : rankIndex.version(weekNumber, year, key.scope(), key.scopeValue());
+        if (version == group.version) {
+            return;
+        }
+
+        // El top se calcula y serializa una vez para todo el grupo
+        Subscriber any = group.subscribers.stream().findAny().orElse(null);
+        if (any == null) {
+            return;
+        }
+        String topJson = toJson(leaderboardService.getWeekLeaderboard(
+                weekNumber, year, key.topN(), key.scope(), any.userId));
+        boolean topChanged = !topJson.equals(group.topJson);
+        group.topJson = topJson;
+
+        for (Subscriber subscriber : group.subscribers) {
+            synchronized (subscriber) {
+                if (topChanged) {
+                    enqueue(subscriber, event("top", topJson));
+                }
+                MissionDtos.LeaderboardEntryResponse position =
+                        leaderboardService.getUserPositionInWeek(subscriber.userId, weekNumber, year, key.scope());
+                if (position != null && !Objects.equals(position, subscriber.lastPosition)) {
+                    subscriber.lastPosition = position;
+                    enqueue(subscriber, event("position", toJson(position)));
+                }
+            }
+        }
+        // Solo tras calcular y encolar: si algo falla, el siguiente ciclo reintenta esta versión
+        group.version = version;
+    }
+
+    private static SseEmitter.SseEventBuilder event(String eventName, String json) {
+        return SseEmitter.event().name(eventName).data(json, MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Encola un evento y agenda su envío; nunca escribe en la conexión
+     */
+    private void enqueue(Subscriber subscriber, SseEmitter.SseEventBuilder event) {
+        if (subscriber.closed) {
+            return;
+        }
+        if (subscriber.queued.incrementAndGet() > maxQueuedEvents) {
+            drop(subscriber, "cola llena");
+            return;
+        }
+        subscriber.events.add(event);
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (!subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            sender.execute(() -> drain(subscriber));
+        } catch (RejectedExecutionException e) {
+            subscriber.draining.set(false);
+            if (!subscriber.closed) {
+                // Sin hilo para escribirle; el emisor lo cierra el contenedor al vencer su timeout
+                subscriber.closed = true;
+                unsubscribe(subscriber);
+                logger.warn("Stream de leaderboard: pool de envío saturado, se descarta a {}", subscriber.userId);
+            }
+        }
+    }
+
+    /**
+     * Envía los eventos en cola del suscriptor (en el pool de envío, un drenado
+     * a la vez por suscriptor). Un suscriptor descartado se completa aquí, fuera
+     * del scheduler: completar espera a que termine la escritura en curso.
+     */
+    private void drain(Subscriber subscriber) {
+        try {
+            SseEmitter.SseEventBuilder event;
+            while (!subscriber.closed && (event = subscriber.events.poll()) != null) {
+                subscriber.queued.decrementAndGet();
+                subscriber.writeStartedAt = System.nanoTime();
+                try {
+                    subscriber.emitter.send(event);
+                } catch (IOException | IllegalStateException e) {
+                    // Cliente desconectado
+                    subscriber.closed = true;
+                    unsubscribe(subscriber);
+                } finally {
+                    subscriber.writeStartedAt = 0;
+                }
+            }
+            if (subscriber.closed) {
+                subscriber.events.clear();
+                subscriber.emitter.complete();
+            }
+        } finally {
+            subscriber.draining.set(false);
+            // Un evento encolado mientras terminaba este drenado
+            if (!subscriber.events.isEmpty() && !subscriber.closed) {
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    /**
+     * Descarta a los suscriptores con una escritura en curso de más de
+     * stream.write-timeout-ms y libera la escritura cerrando su contexto asíncrono
+     */
+    private void dropStalledWriters() {
+        long now = System.nanoTime();
+        for (Group group : groups.values()) {
+            for (Subscriber subscriber : group.subscribers) {
+                long started = subscriber.writeStartedAt;
+                if (started != 0 && now - started > writeTimeoutNanos) {
+                    drop(subscriber, "escritura bloqueada");
+                    releaseStalledWrite(subscriber);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra el contexto asíncrono de la petición sin pasar por el emisor (su
+     * monitor lo retiene la escritura bloqueada). El contenedor cierra la
+     * conexión, el send en curso falla y el drenado completa el emisor.
+     */
+    private void releaseStalledWrite(Subscriber subscriber) {
+        try {
+            if (subscriber.request.isAsyncStarted()) {
+                subscriber.request.getAsyncContext().complete();
+            }
+        } catch (IllegalStateException e) {
+            // El contenedor ya completó la petición (timeout o desconexión)
+            logger.debug("Stream de leaderboard: contexto asíncrono de {} ya cerrado", subscriber.userId);
+        }
+    }
+
+    /**
+     * Saca al suscriptor de su grupo sin tocar la conexión; el pool de envío la
+     * completa cuando termina (o falla) la escritura en curso
+     */
+    private void drop(Subscriber subscriber, String reason) {
+        if (subscriber.closed) {
+            return;
+        }
+        subscriber.closed = true;
+        unsubscribe(subscriber);
+        logger.debug("Stream de leaderboard: se descarta a {} ({})", subscriber.userId, reason);
+        scheduleDrain(subscriber);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        groups.computeIfPresent(subscriber.key, (k, group) -> {
+            if (group.subscribers.remove(subscriber)) {
+                subscriberCount.decrementAndGet();
+            }
+            return group.subscribers.isEmpty() ? null : group;
+        });
+    }
+
+    private String toJson(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar el leaderboard", e);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.config.SchedulingConfig;
+import com.ecoestudiante.gamification.model.CalculationOutboxEntry;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.repository.CalculationOutboxRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardDeltaOutboxRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardDeltaOutboxRepository.PendingDelta;
+import com.ecoestudiante.gamification.repository.ScheduledJobLockRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Actualizador incremental del leaderboard con agrupación (debounce) de eventos.
+ *
+ * Cada app.gamification.leaderboard.flush-interval-ms se suman a
+ * leaderboard_cache, en lotes y sin re-agregar la semana del usuario, un
+ * {@link LeaderboardDelta} por usuario y semana:
+ * - Cálculos: las filas ya procesadas de calculation_outbox; su kg va a la
+ *   semana del cálculo y su XP a la semana en que se otorgó (las mismas que usa
+ *   el recálculo). El delta se suma y la fila se marca aplicada en la misma
+ *   transacción, así que no se pierde si la instancia se cae antes del flush
+ * - Misiones completadas y asignaciones: filas de leaderboard_delta_outbox,
+ *   insertadas en la misma transacción que la misión ({@link #recordMissionCompleted},
+ *   {@link #markDirty}) y aplicadas igual que las del outbox de cálculos
+ * Diez cálculos seguidos de un estudiante producen una sola actualización O(1).
+ *
+ * Una reconciliación periódica (app.gamification.leaderboard.reconcile-interval-ms)
+ * recalcula la semana actual desde las tablas de origen, para los cambios que
+ * no traen delta. El recálculo descuenta las filas de ambos outbox aún no
+ * aplicadas y toma un lock exclusivo (los flushes toman uno compartido y, si
+ * no lo consiguen, esperan al siguiente ciclo sin bloquear el scheduler): cada
+ * cálculo y cada misión se cuentan una sola vez. Con varias réplicas, la
+ * reconciliación corre en una sola por intervalo (lock de scheduled_job_lock).
+ *
+ * Cierre de semana: toda semana cerrada de las últimas
+ * app.gamification.leaderboard.finalize-lookback-weeks que aún no tenga
+ * snapshot se recalcula por última vez y se archiva ({@link LeaderboardArchive}),
+ * en cuanto los outbox no tengan cálculos ni misiones anteriores a su fin sin
+ * aplicar. El estado vive en leaderboard_snapshot, así que un reinicio o un
+ * despliegue en el cambio de semana no deja semanas sin cerrar.
+ *
+ * Si un lote falla, su transacción se deshace y las filas siguen pendientes
+ * para el siguiente flush.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class LeaderboardUpdateCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(LeaderboardUpdateCoalescer.class);
+
+    private static final String RECONCILE_JOB = "leaderboard-reconcile";
+
+    private record OutboxBatch(boolean full, int updated) {
+    }
+
+    private final LeaderboardService leaderboardService;
+    private final LeaderboardArchive archive;
+    private final IsoWeekCalendar weekCalendar;
+    private final CalculationOutboxRepository outboxRepository;
+    private final LeaderboardDeltaOutboxRepository deltaOutboxRepository;
+    private final LeaderboardCacheRepository leaderboardRepository;
+    private final ScheduledJobLockRepository lockRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final int batchSize;
+    private final int finalizeLookbackWeeks;
+    private final long reconcileIntervalMs;
+    private final long reconcileLockLeaseSeconds;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+    public LeaderboardUpdateCoalescer(
+            LeaderboardService leaderboardService,
+            LeaderboardArchive archive,
+            IsoWeekCalendar weekCalendar,
+            CalculationOutboxRepository outboxRepository,
+            LeaderboardDeltaOutboxRepository deltaOutboxRepository,
+            LeaderboardCacheRepository leaderboardRepository,
+            ScheduledJobLockRepository lockRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.gamification.leaderboard.flush-batch-size:500}") int batchSize,
+            @Value("${app.gamification.leaderboard.finalize-lookback-weeks:4}") int finalizeLookbackWeeks,
+            @Value("${app.gamification.leaderboard.reconcile-interval-ms:900000}") long reconcileIntervalMs,
+            @Value("${app.gamification.leaderboard.reconcile-lock-lease-seconds:600}") long reconcileLockLeaseSeconds) {
+        this.leaderboardService = leaderboardService;
+        this.archive = archive;
+        this.weekCalendar = weekCalendar;
+        this.outboxRepository = outboxRepository;
+        this.deltaOutboxRepository = deltaOutboxRepository;
+        this.leaderboardRepository = leaderboardRepository;
+        this.lockRepository = lockRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = Math.max(1, batchSize);
+        this.finalizeLookbackWeeks = Math.max(1, finalizeLookbackWeeks);
+        this.reconcileIntervalMs = Math.max(1, reconcileIntervalMs);
+        this.reconcileLockLeaseSeconds = reconcileLockLeaseSeconds;
+    }
+
+    /**
+     * Registra una misión completada (una misión más y su XP en la semana de
+     * {@code completedAt}). Debe llamarse dentro de la transacción que completa
+     * la misión: el delta se confirma o se descarta con ella.
+     */
+    public void recordMissionCompleted(UUID userId, LocalDateTime completedAt, int xp) {
+        deltaOutboxRepository.insert(userId, completedAt, 1, xp);
+    }
+
+    /**
+     * Asegura que los usuarios tengan entrada en la semana de {@code assignedAt},
+     * sin cambiar sus métricas. Debe llamarse dentro de la transacción de la asignación.
+     */
+    public void markDirty(Collection<UUID> userIds, LocalDateTime assignedAt) {
+        deltaOutboxRepository.insertEmpty(userIds, assignedAt);
+    }
+
+    /**
+     * Aplica los deltas pendientes de ambos outbox, agrupados por semana y en lotes
+     *
+     * @return entradas actualizadas
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.flush-interval-ms:2000}")
+    public int flush() {
+        flushLock.lock();
+        try {
+            int updated = 0;
+            try {
+                OutboxBatch batch;
+                do {
+                    batch = transactionTemplate.execute(status -> flushOutboxBatch());
+                    updated += batch.updated();
+                } while (batch.full());
+            } catch (Exception e) {
+                logger.error("❌ Error aplicando deltas del outbox al leaderboard; se reintentará", e);
+            }
+            return updated;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Un lote de filas de cada outbox: suma sus deltas y las marca aplicadas en
+     * la misma transacción (si falla, las filas siguen pendientes)
+     *
+     * @return si algún outbox llenó el lote, y entradas actualizadas
+     */
+    private OutboxBatch flushOutboxBatch() {
+        if (!leaderboardRepository.tryLockForDeltas()) {
+            logger.debug("Leaderboard: recálculo en curso, los deltas del outbox esperan al siguiente flush");
+            return new OutboxBatch(false, 0);
+        }
+        List<CalculationOutboxEntry> rows = outboxRepository.claimLeaderboardPending(batchSize);
+        List<PendingDelta> missionRows = deltaOutboxRepository.claimPending(batchSize);
+        if (rows.isEmpty() && missionRows.isEmpty()) {
+            return new OutboxBatch(false, 0);
+        }
+
+        // Semanas en orden: las transacciones de varias instancias bloquean sus versiones en el mismo orden
+        Map<Integer, Map<UUID, LeaderboardDelta>> byWeek = new TreeMap<>();
+        for (CalculationOutboxEntry row : rows) {
+            UUID userId = row.getUserId();
+            BigDecimal kg = row.getKgCo2e() != null ? row.getKgCo2e() : BigDecimal.ZERO;
+            int xp = row.getXpAmount() != null ? row.getXpAmount() : 0;
+            byWeek.computeIfAbsent(IsoWeek.of(row.getCreatedAt()), w -> new LinkedHashMap<>())
+                    .merge(userId, new LeaderboardDelta(userId, kg, 0, 0), LeaderboardDelta::plus);
+            byWeek.computeIfAbsent(IsoWeek.of(row.getProcessedAt()), w -> new LinkedHashMap<>())
+                    .merge(userId, new LeaderboardDelta(userId, BigDecimal.ZERO, 0, xp), LeaderboardDelta::plus);
+        }
+        for (PendingDelta row : missionRows) {
+            byWeek.computeIfAbsent(IsoWeek.of(row.occurredAt()), w -> new LinkedHashMap<>())
+                    .merge(row.userId(), new LeaderboardDelta(row.userId(), BigDecimal.ZERO, row.missions(), row.xp()),
+                            LeaderboardDelta::plus);
+        }
+
+        // Primero marcar: una entrada nueva se calcula completa y ya debe incluir estas filas
+        outboxRepository.markLeaderboardApplied(rows.stream().map(CalculationOutboxEntry::getId).toList());
+        deltaOutboxRepository.markApplied(missionRows.stream().map(PendingDelta::id).toList());
+        int updated = 0;
+        for (Map.Entry<Integer, Map<UUID, LeaderboardDelta>> entry : byWeek.entrySet()) {
+            int week = entry.getKey();
+            updated += leaderboardService.applyLeaderboardDeltas(
+                    IsoWeek.label(week), IsoWeek.year(week), new ArrayList<>(entry.getValue().values()));
+        }
+        return new OutboxBatch(rows.size() >= batchSize || missionRows.size() >= batchSize, updated);
+    }
+
+    /**
+     * Cierra las semanas pendientes y corrige la deriva de los deltas recalculando
+     * la semana actual desde las tablas de origen.
+     *
+     * Una sola réplica por intervalo: el lock de scheduled_job_lock usa como
+     * clave el intervalo en curso, así que las demás lo omiten. Al terminar
+     * elimina las filas de leaderboard_delta_outbox aplicadas hace más de un intervalo.
+     */
+    @Scheduled(fixedDelayString = "${app.gamification.leaderboard.reconcile-interval-ms:900000}",
+            initialDelayString = "${app.gamification.leaderboard.reconcile-interval-ms:900000}",
+            scheduler = SchedulingConfig.HEAVY_JOB_SCHEDULER)
+    public void reconcile() {
+        String runKey = Long.toString(System.currentTimeMillis() / reconcileIntervalMs);
+        if (!lockRepository.tryAcquire(RECONCILE_JOB, runKey, owner, reconcileLockLeaseSeconds)) {
+            logger.debug("Reconciliación del leaderboard ya hecha o en curso en otra réplica");
+            return;
+        }
+        int currentWeek = weekCalendar.currentWeek();
+        try {
+            flush();
+            finalizeClosedWeeks(currentWeek);
+            int users = leaderboardService.recalculateWeekLeaderboard(
+                    IsoWeek.label(currentWeek), IsoWeek.year(currentWeek));
+            deltaOutboxRepository.deleteAppliedBefore(LocalDateTime.now().minus(Duration.ofMillis(reconcileIntervalMs)));
+            lockRepository.complete(RECONCILE_JOB, runKey, owner);
+            logger.info("✅ Leaderboard {} reconciliado con las tablas de origen: {} usuarios",
+                    IsoWeek.label(currentWeek), users);
+        } catch (Exception e) {
+            logger.error("❌ Error reconciliando leaderboard {}", IsoWeek.label(currentWeek), e);
+            try {
+                lockRepository.release(RECONCILE_JOB, owner);
+            } catch (Exception releaseError) {
+                logger.error("❌ No se pudo liberar el lock de {}; vence en {} s",
+                        RECONCILE_JOB, reconcileLockLeaseSeconds, releaseError);
+            }
+        }
+    }
+
+    /**
+     * Recalcula por última vez y archiva cada semana cerrada sin snapshot, de la
+     * más antigua a la más reciente. Una semana con cálculos o misiones aún sin
+     * aplicar espera a la siguiente reconciliación (y con ella las posteriores).
+     * Solo se llama desde {@link #reconcile()}, bajo su lock.
+     */
+    void finalizeClosedWeeks(int currentWeek) {
+        int week = currentWeek;
+        for (int i = 0; i < finalizeLookbackWeeks; i++) {
+            week = IsoWeek.previous(week);
+        }
+        for (; week != currentWeek; week = IsoWeek.next(week)) {
+            String label = IsoWeek.label(week);
+            int year = IsoWeek.year(week);
+            if (archive.isFrozen(label, year)) {
+                continue;
+            }
+            long unsettled = outboxRepository.countUnsettledBefore(IsoWeek.end(week))
+                    + deltaOutboxRepository.countUnappliedBefore(IsoWeek.end(week));
+            if (unsettled > 0) {
+                logger.info("Leaderboard {}: {} deltas del outbox sin aplicar; se cerrará en la próxima reconciliación",
+                        label, unsettled);
+                return;
+            }
+            // Recálculo y snapshot en la misma transacción (bajo el lock exclusivo del recálculo)
+            transactionTemplate.executeWithoutResult(status -> {
+                leaderboardService.recalculateWeekLeaderboard(label, year);
+                archive.freeze(label, year);
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+}
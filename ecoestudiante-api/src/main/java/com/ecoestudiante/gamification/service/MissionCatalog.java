@@ -0,0 +1,210 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.Mission;
+import com.ecoestudiante.gamification.repository.MissionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Caché en memoria de las definiciones de misiones, por semana.
+ *
+ * Las misiones de una semana se generan una sola vez
+ * ({@link MissionService#generateWeeklyMissions}) y no cambian después, y los
+ * templates solo cambian con migraciones: se leen de la BD una vez y luego se
+ * sirven desde memoria a todos los endpoints y servicios de misiones.
+ *
+ * - La generación publica la semana al confirmarse su transacción.
+ * - Una semana que no está en caché se carga completa en la primera lectura;
+ *   si aún no tiene misiones no se guarda, para ver su generación en otra
+ *   instancia.
+ * - La semana anterior se descarta al expirar sus misiones
+ *   (GamificationScheduledTasks.rollOverWeek).
+ *
+ * Las semanas se guardan con su propio índice por ID, acotadas por
+ * app.gamification.missions.catalog.max-weeks. Las misiones de semanas no
+ * cacheadas (historial del usuario) van aparte, acotadas por
+ * app.gamification.missions.catalog.max-missions: llenar ese índice no
+ * desaloja misiones de las semanas en caché. Ambas cachés descartan la entrada
+ * usada hace más tiempo. Las instancias devueltas son compartidas y no deben
+ * modificarse.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class MissionCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(MissionCatalog.class);
+
+    /**
+     * Misiones de una semana y su índice por ID
+     */
+    private record CachedWeek(List<Mission> missions, Map<Long, Mission> byId) {
+
+        static CachedWeek of(List<Mission> missions) {
+            Map<Long, Mission> byId = new HashMap<>();
+            missions.forEach(mission -> byId.put(mission.getId(), mission));
+            return new CachedWeek(missions, Collections.unmodifiableMap(byId));
+        }
+    }
+
+    private final MissionRepository missionRepository;
+
+    private final Map<Integer, CachedWeek> weeks;
+    private final Map<Long, Mission> byId;
+    private volatile List<Mission> templates;
+
+    public MissionCatalog(
+            MissionRepository missionRepository,
+            @Value("${app.gamification.missions.catalog.max-weeks:8}") int maxWeeks,
+            @Value("${app.gamification.missions.catalog.max-missions:10000}") int maxMissions) {
+        this.missionRepository = missionRepository;
+        this.weeks = BoundedLruMap.create(maxWeeks);
+        this.byId = BoundedLruMap.create(maxMissions);
+    }
+
+    /**
+     * Misiones de una semana (no templates), ordenadas por categoría y dificultad
+     */
+    public List<Mission> week(String weekNumber, Integer year) {
+        int week = IsoWeek.parse(weekNumber, year);
+        CachedWeek cached = weeks.get(week);
+        if (cached != null) {
+            return cached.missions();
+        }
+        List<Mission> missions = List.copyOf(missionRepository.findByWeek(weekNumber, year));
+        if (!missions.isEmpty()) {
+            cacheWeek(week, missions);
+        }
+        return missions;
+    }
+
+    /**
+     * Todos los templates, ordenados por categoría y dificultad
+     */
+    public List<Mission> templates() {
+        List<Mission> cached = templates;
+        if (cached == null) {
+            cached = List.copyOf(missionRepository.findAllTemplates());
+            templates = cached;
+        }
+        return cached;
+    }
+
+    /**
+     * Templates de una categoría, ordenados por dificultad
+     */
+    public List<Mission> templatesByCategory(Mission.MissionCategory category) {
+        return templates().stream()
+                .filter(template -> template.getCategory() == category)
+                .toList();
+    }
+
+    public Optional<Mission> find(Long missionId) {
+        Mission mission = cached(missionId);
+        if (mission == null) {
+            mission = missionRepository.findById(missionId).orElse(null);
+            if (mission != null) {
+                remember(mission);
+            }
+        }
+        return Optional.ofNullable(mission);
+    }
+
+    /**
+     * Varias misiones por ID, con una sola consulta para las que no estén en caché
+     */
+    public Map<Long, Mission> findAll(Collection<Long> missionIds) {
+        Map<Long, Mission> found = new HashMap<>();
+        List<Long> missing = new ArrayList<>();
+        for (Long missionId : missionIds) {
+            Mission mission = cached(missionId);
+            if (mission != null) {
+                found.put(missionId, mission);
+            } else {
+                missing.add(missionId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Mission mission : missionRepository.findByIds(missing)) {
+                remember(mission);
+                found.put(mission.getId(), mission);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Publica en la caché las misiones recién generadas de una semana, al
+     * confirmarse la transacción que las insertó
+     */
+    public void cacheGeneratedWeek(String weekNumber, Integer year, List<Mission> missions) {
+        int week = IsoWeek.parse(weekNumber, year);
+        List<Mission> generated = List.copyOf(missions);
+        afterCommit(() -> cacheWeek(week, generated));
+    }
+
+    /**
+     * Descarta la semana de la caché (cambio de semana)
+     */
+    public void evictWeek(String weekNumber, Integer year) {
+        CachedWeek evicted = weeks.remove(IsoWeek.parse(weekNumber, year));
+        if (evicted != null) {
+            logger.info("Misiones de la semana {} descartadas de la caché: {}", weekNumber, evicted.missions().size());
+        }
+    }
+
+    private void cacheWeek(int week, List<Mission> missions) {
+        CachedWeek cached = CachedWeek.of(missions);
+        weeks.put(week, cached);
+        // Ya se sirven desde su semana
+        cached.byId().keySet().forEach(byId::remove);
+    }
+
+    /**
+     * Misión en caché: primero en las semanas cacheadas (pocas), luego en el historial
+     */
+    private Mission cached(Long missionId) {
+        synchronized (weeks) {
+            for (CachedWeek week : weeks.values()) {
+                Mission mission = week.byId().get(missionId);
+                if (mission != null) {
+                    return mission;
+                }
+            }
+        }
+        return byId.get(missionId);
+    }
+
+    private void remember(Mission mission) {
+        byId.put(mission.getId(), mission);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+}
@@ -2,10 +2,10 @@ package com.ecoestudiante.gamification.service;
 
 import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
 import com.ecoestudiante.gamification.event.MissionCompletedEvent;
+import com.ecoestudiante.gamification.model.IsoWeek;
 import com.ecoestudiante.gamification.model.Mission;
 import com.ecoestudiante.gamification.model.MissionProgress;
 import com.ecoestudiante.gamification.repository.MissionProgressRepository;
-import com.ecoestudiante.gamification.repository.MissionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationEventPublisher;
@@ -15,7 +15,7 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
 import java.time.LocalDateTime;
-import java.time.temporal.IsoFields;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -24,7 +24,7 @@ import java.util.UUID;
  * Implementación del servicio de actualización inteligente de progreso de misiones.
  *
  * Responsabilidades:
- * - Correlacionar cálculos con misiones activas
+ * - Correlacionar cálculos con misiones activas ({@link MissionRuleEngine})
  * - Actualizar progreso automáticamente según el tipo de misión
  * - Detectar y completar misiones que alcanzaron su objetivo
  * - Publicar eventos cuando se completan misiones
@@ -39,20 +39,23 @@ public class MissionProgressServiceImpl implements MissionProgressService {
     private static final Logger logger = LoggerFactory.getLogger(MissionProgressServiceImpl.class);
 
     private final MissionProgressRepository progressRepository;
-    private final MissionRepository missionRepository;
+    private final MissionCatalog missionCatalog;
     private final GamificationService gamificationService;
     private final ApplicationEventPublisher eventPublisher;
+    private final MissionRuleEngine ruleEngine;
 
     public MissionProgressServiceImpl(
             MissionProgressRepository progressRepository,
-            MissionRepository missionRepository,
+            MissionCatalog missionCatalog,
             GamificationService gamificationService,
-            ApplicationEventPublisher eventPublisher
+            ApplicationEventPublisher eventPublisher,
+            MissionRuleEngine ruleEngine
     ) {
         this.progressRepository = progressRepository;
-        this.missionRepository = missionRepository;
+        this.missionCatalog = missionCatalog;
         this.gamificationService = gamificationService;
         this.eventPublisher = eventPublisher;
+        this.ruleEngine = ruleEngine;
     }
 
     @Override
@@ -61,58 +64,43 @@ public class MissionProgressServiceImpl implements MissionProgressService {
         logger.info("📊 Procesando cálculo {} de categoría '{}' para usuario {}",
                 event.getCalculationId(), event.getCategory(), event.getUserId());
 
-        // Obtener misiones activas del usuario
-        List<MissionProgress> activeMissions = progressRepository.findActiveByUserId(event.getUserId());
+        // Misiones de la semana ISO del cálculo cuyas reglas cumple (índice compilado, con sus definiciones)
+        Map<Long, Mission> matching = ruleEngine.matchingMissions(event);
 
-        if (activeMissions.isEmpty()) {
-            logger.info("ℹ️ Usuario {} no tiene misiones activas", event.getUserId());
+        logger.info("📅 Semana del cálculo: {} - {} misiones de la semana corresponden al cálculo",
+                IsoWeek.label(IsoWeek.of(event.getCalculatedAt())), matching.size());
+
+        if (matching.isEmpty()) {
             return 0;
         }
 
-        logger.info("📋 Encontradas {} misiones activas para usuario {}", activeMissions.size(), event.getUserId());
-
-        int updatedCount = 0;
+        // Solo los progresos activos del usuario en esas misiones, en una consulta
+        List<MissionProgress> activeMissions =
+                progressRepository.findActiveByUserIdAndMissionIds(event.getUserId(), matching.keySet());
 
-        // Obtener semana actual del cálculo
-        String currentWeek = getCurrentWeekNumber(event.getCalculatedAt());
-        int currentYear = event.getCalculatedAt().getYear();
+        if (activeMissions.isEmpty()) {
+            logger.info("ℹ️ Usuario {} no tiene misiones activas que correspondan al cálculo", event.getUserId());
+            return 0;
+        }
 
-        logger.info("📅 Semana del cálculo: {}, Año: {}", currentWeek, currentYear);
+        List<MissionProgress> updated = new ArrayList<>();
+        List<MissionProgress> completed = new ArrayList<>();
 
         for (MissionProgress progress : activeMissions) {
-            Mission mission = missionRepository.findById(progress.getMissionId()).orElse(null);
-
-            if (mission == null) {
-                logger.warn("⚠️ Misión {} no encontrada para progreso {}", progress.getMissionId(), progress.getId());
-                continue;
-            }
+            Mission mission = matching.get(progress.getMissionId());
 
-            logger.info("🎯 Evaluando misión '{}' (ID: {}, Categoría: {}, Tipo: {}, Semana: {}-{})",
-                    mission.getTitle(), mission.getId(), mission.getCategory(), mission.getType(),
-                    mission.getWeekNumber(), mission.getYear());
-
-            // Verificar si la misión corresponde a la semana actual
-            if (!currentWeek.equals(mission.getWeekNumber()) || currentYear != mission.getYear()) {
-                logger.info("⏭️ Saltando misión '{}' - no corresponde a la semana actual {}-{} (misión es para {}-{})",
-                        mission.getTitle(), currentWeek, currentYear, mission.getWeekNumber(), mission.getYear());
-                continue;
-            }
-
-            // Intentar actualizar el progreso según correlación
-            boolean updated = updateProgressBasedOnCalculation(progress, mission, event);
-
-            if (updated) {
-                updatedCount++;
+            // Actualizar el progreso según el tipo de misión
+            if (updateProgressBasedOnCalculation(progress, mission, event)) {
+                updated.add(progress);
 
                 logger.info("✅ Progreso actualizado para misión '{}': {}/{}",
                         mission.getTitle(), progress.getCurrentProgress(), progress.getTargetProgress());
 
                 // Verificar si se completó la misión
-                if (progress.isProgressComplete() &&
-                    progress.getStatus() == MissionProgress.MissionStatus.ACTIVE) {
-
+                if (progress.isProgressComplete()) {
                     logger.info("🎉 Misión '{}' completada!", mission.getTitle());
-                    completeMission(progress, mission);
+                    markCompleted(progress);
+                    completed.add(progress);
                 }
             } else {
                 logger.info("❌ NO se actualizó progreso para misión '{}' - no cumple condiciones",
@@ -120,53 +108,49 @@ public class MissionProgressServiceImpl implements MissionProgressService {
             }
         }
 
+        // Todos los progresos modificados en una sola sentencia
+        progressRepository.updateProgressBatch(updated);
+        completed.forEach(progress -> rewardCompletion(progress, matching.get(progress.getMissionId())));
+
         logger.info("📈 Actualizadas {} misiones para usuario {} tras cálculo de {}",
-                updatedCount, event.getUserId(), event.getCategory());
+                updated.size(), event.getUserId(), event.getCategory());
 
-        return updatedCount;
+        return updated.size();
     }
 
     @Override
     @Transactional
     public int checkAndAutoCompleteMissions(UUID userId) {
-        List<MissionProgress> activeMissions = progressRepository.findActiveByUserId(userId);
-        int completedCount = 0;
-
-        for (MissionProgress progress : activeMissions) {
-            if (progress.isProgressComplete()) {
-                Mission mission = missionRepository.findById(progress.getMissionId()).orElse(null);
-                if (mission != null) {
-                    completeMission(progress, mission);
-                    completedCount++;
-                }
-            }
+        List<MissionProgress> completed = progressRepository.findActiveByUserId(userId).stream()
+                .filter(MissionProgress::isProgressComplete)
+                .toList();
+        if (completed.isEmpty()) {
+            return 0;
         }
 
-        return completedCount;
+        // Definiciones de todas las misiones a completar (caché; una consulta para las que falten)
+        Map<Long, Mission> missions = missionCatalog.findAll(
+                completed.stream().map(MissionProgress::getMissionId).distinct().toList());
+
+        List<MissionProgress> toComplete = completed.stream()
+                .filter(progress -> missions.containsKey(progress.getMissionId()))
+                .toList();
+        toComplete.forEach(this::markCompleted);
+        progressRepository.updateProgressBatch(toComplete);
+        toComplete.forEach(progress -> rewardCompletion(progress, missions.get(progress.getMissionId())));
+
+        return toComplete.size();
     }
 
     /**
-     * Actualiza el progreso de una misión basándose en un cálculo.
-     * Implementa la lógica de correlación inteligente.
+     * Actualiza el progreso de una misión para la que cuenta el cálculo
+     * (la correlación ya la resolvió {@link MissionRuleEngine}).
      */
     private boolean updateProgressBasedOnCalculation(
             MissionProgress progress,
             Mission mission,
             CalculationCompletedEvent event
     ) {
-        // Mapear categoría de cálculo a categoría de misión
-        Mission.MissionCategory missionCategory = mapCalculationToMissionCategory(event.getCategory());
-
-        logger.info("🔍 Verificando correlación - Categoría cálculo: '{}' -> Categoría misión mapeada: {}, Categoría misión real: {}",
-                event.getCategory(), missionCategory, mission.getCategory());
-
-        if (missionCategory == null || mission.getCategory() != missionCategory) {
-            logger.info("⛔ Categorías no coinciden - cálculo: {}, misión: {}", missionCategory, mission.getCategory());
-            return false;
-        }
-
-        logger.info("✓ Categorías coinciden - procesando tipo de misión: {}", mission.getType());
-
         boolean updated = false;
 
         switch (mission.getType()) {
@@ -191,13 +175,6 @@ public class MissionProgressServiceImpl implements MissionProgressService {
                 break;
         }
 
-        if (updated) {
-            progressRepository.save(progress);
-            logger.info("💾 Guardado progreso de misión '{}' para usuario {}: {}/{}",
-                    mission.getTitle(), event.getUserId(),
-                    progress.getCurrentProgress(), progress.getTargetProgress());
-        }
-
         return updated;
     }
 
@@ -210,54 +187,10 @@ public class MissionProgressServiceImpl implements MissionProgressService {
             Mission mission,
             CalculationCompletedEvent event
     ) {
-        logger.info("🔢 Procesando misión de FRECUENCIA: '{}'", mission.getTitle());
-
-        // Verificar condiciones específicas si existen
-        if (mission.getCategory() == Mission.MissionCategory.TRANSPORT) {
-            Map<String, Object> input = event.getCalculationInput();
-            String transportMode = (String) input.get("transportMode");
-
-            logger.info("🚗 Modo de transporte del cálculo: '{}'", transportMode);
-            logger.info("📝 Input completo: {}", input);
-
-            // Verificar si la misión requiere un modo específico
-            String missionTitle = mission.getTitle().toLowerCase();
-
-            logger.info("📋 Título de misión (lowercase): '{}'", missionTitle);
-
-            // Ejemplos de verificaciones:
-            // "Usa transporte público 3 veces" -> verificar bus/metro
-            if (missionTitle.contains("público") || missionTitle.contains("bus") || missionTitle.contains("metro")) {
-                logger.info("🚌 Misión requiere transporte público (bus/metro)");
-                if (!"bus".equals(transportMode) && !"metro".equals(transportMode)) {
-                    logger.info("❌ Modo '{}' NO es transporte público - no cuenta", transportMode);
-                    return false; // No cuenta para esta misión
-                }
-                logger.info("✅ Modo '{}' es transporte público - cuenta!", transportMode);
-            }
-            // "Usa bicicleta 3 veces"
-            else if (missionTitle.contains("bicicleta") || missionTitle.contains("bicycle")) {
-                logger.info("🚴 Misión requiere bicicleta");
-                if (!"bicycle".equals(transportMode)) {
-                    logger.info("❌ Modo '{}' NO es bicicleta - no cuenta", transportMode);
-                    return false;
-                }
-                logger.info("✅ Modo '{}' es bicicleta - cuenta!", transportMode);
-            }
-            // "Camina 3 veces"
-            else if (missionTitle.contains("camina") || missionTitle.contains("walking")) {
-                logger.info("🚶 Misión requiere caminar");
-                if (!"walking".equals(transportMode)) {
-                    logger.info("❌ Modo '{}' NO es caminar - no cuenta", transportMode);
-                    return false;
-                }
-                logger.info("✅ Modo '{}' es caminar - cuenta!", transportMode);
-            }
-        }
-
         // Incrementar contador
         BigDecimal newProgress = progress.getCurrentProgress().add(BigDecimal.ONE);
-        logger.info("➕ Incrementando progreso de {} a {}", progress.getCurrentProgress(), newProgress);
+        logger.info("➕ Incrementando progreso de '{}' de {} a {}",
+                mission.getTitle(), progress.getCurrentProgress(), newProgress);
         progress.setCurrentProgress(newProgress);
 
         return true;
@@ -309,40 +242,8 @@ public class MissionProgressServiceImpl implements MissionProgressService {
             CalculationCompletedEvent event
     ) {
         // Las misiones de descubrimiento se completan con una sola acción
-        Map<String, Object> input = event.getCalculationInput();
-
-        // Verificar condiciones específicas según el título de la misión
-        String missionTitle = mission.getTitle().toLowerCase();
-
-        if (mission.getCategory() == Mission.MissionCategory.WASTE) {
-            // "Explora el calculador de residuos" -> cualquier cálculo de residuos cuenta
-            progress.setCurrentProgress(progress.getTargetProgress()); // Completar inmediatamente
-            return true;
-        }
-
-        if (mission.getCategory() == Mission.MissionCategory.ELECTRICITY) {
-            // "Calcula tu huella de electricidad" -> cualquier cálculo de electricidad
-            progress.setCurrentProgress(progress.getTargetProgress());
-            return true;
-        }
-
-        if (mission.getCategory() == Mission.MissionCategory.TRANSPORT) {
-            // Podría requerir un modo específico
-            String transportMode = (String) input.get("transportMode");
-
-            if (missionTitle.contains("eléctrico") || missionTitle.contains("electric")) {
-                if ("electric".equals(input.get("fuelType"))) {
-                    progress.setCurrentProgress(progress.getTargetProgress());
-                    return true;
-                }
-            } else {
-                // Cualquier transporte
-                progress.setCurrentProgress(progress.getTargetProgress());
-                return true;
-            }
-        }
-
-        return false;
+        progress.setCurrentProgress(progress.getTargetProgress());
+        return true;
     }
 
     /**
@@ -364,13 +265,17 @@ public class MissionProgressServiceImpl implements MissionProgressService {
     }
 
     /**
-     * Completa una misión y publica evento.
+     * Marca el progreso como completado; se persiste junto con el resto del lote.
      */
-    private void completeMission(MissionProgress progress, Mission mission) {
+    private void markCompleted(MissionProgress progress) {
         progress.setStatus(MissionProgress.MissionStatus.COMPLETED);
         progress.setCompletedAt(LocalDateTime.now());
-        progressRepository.save(progress);
+    }
 
+    /**
+     * Otorga el XP de una misión ya completada y publica evento.
+     */
+    private void rewardCompletion(MissionProgress progress, Mission mission) {
         // Otorgar XP por completar misión
         try {
             gamificationService.awardXP(
@@ -403,24 +308,4 @@ public class MissionProgressServiceImpl implements MissionProgressService {
         logger.info("Usuario {} completó misión '{}' - XP: {}, CO2 Impact: {} kg",
                 progress.getUserId(), mission.getTitle(), mission.getXpReward(), mission.getCo2ImpactKg());
     }
-
-    /**
-     * Mapea categoría de cálculo a categoría de misión.
-     */
-    private Mission.MissionCategory mapCalculationToMissionCategory(String calculationCategory) {
-        return switch (calculationCategory.toLowerCase()) {
-            case "electricidad" -> Mission.MissionCategory.ELECTRICITY;
-            case "transporte" -> Mission.MissionCategory.TRANSPORT;
-            case "residuos" -> Mission.MissionCategory.WASTE;
-            default -> null;
-        };
-    }
-
-    /**
-     * Obtiene el número de semana ISO del año.
-     */
-    private String getCurrentWeekNumber(LocalDateTime date) {
-        int weekNum = date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
-        return String.format("%04d-W%02d", date.getYear(), weekNum);
-    }
 }
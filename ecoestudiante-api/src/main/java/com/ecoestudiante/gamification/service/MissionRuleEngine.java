@@ -0,0 +1,70 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.Mission;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Motor de correlación entre cálculos y misiones semanales.
+ *
+ * Compila las reglas de las misiones de cada semana ({@link MissionCatalog})
+ * en un {@link MissionRuleSet}
+ * la primera vez que llega un cálculo de esa semana y lo reutiliza para los
+ * siguientes: las misiones de una semana se generan todas juntas y no cambian
+ * después. Una semana aún sin misiones no se guarda, para que su generación
+ * (en esta u otra instancia) se vea en el siguiente cálculo. Guarda tantas
+ * semanas como el catálogo (app.gamification.missions.catalog.max-weeks).
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class MissionRuleEngine {
+
+    private final MissionCatalog missionCatalog;
+    private final Map<Integer, MissionRuleSet> rulesByWeek;
+
+    public MissionRuleEngine(
+            MissionCatalog missionCatalog,
+            @Value("${app.gamification.missions.catalog.max-weeks:8}") int maxWeeks) {
+        this.missionCatalog = missionCatalog;
+        this.rulesByWeek = BoundedLruMap.create(maxWeeks);
+    }
+
+    /**
+     * Misiones de la semana del cálculo para las que este cuenta, indexadas por ID.
+     *
+     * Las definiciones salen del conjunto compilado, sin consultar la BD.
+     */
+    public Map<Long, Mission> matchingMissions(CalculationCompletedEvent event) {
+        MissionRuleSet.Facts facts = MissionRuleSet.Facts.of(event);
+        if (facts.category() == null) {
+            return Map.of();
+        }
+        MissionRuleSet rules = rules(IsoWeek.of(event.getCalculatedAt()));
+        Map<Long, Mission> matching = new HashMap<>();
+        for (Long missionId : rules.match(facts)) {
+            matching.put(missionId, rules.mission(missionId));
+        }
+        return matching;
+    }
+
+    private MissionRuleSet rules(int week) {
+        MissionRuleSet rules = rulesByWeek.get(week);
+        if (rules != null) {
+            return rules;
+        }
+        rules = MissionRuleSet.compile(missionCatalog.week(IsoWeek.label(week), IsoWeek.year(week)));
+        if (!rules.isEmpty()) {
+            rulesByWeek.put(week, rules);
+        }
+        return rules;
+    }
+}
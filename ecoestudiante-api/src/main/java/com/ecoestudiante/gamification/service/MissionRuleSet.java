@@ -0,0 +1,190 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
+import com.ecoestudiante.gamification.model.Mission;
+import com.ecoestudiante.gamification.model.MissionMatchRule;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reglas de correlación de un conjunto de misiones, compiladas a un índice.
+ *
+ * Cada {@link MissionMatchRule} se compila una vez a conjuntos normalizados; las
+ * reglas se indexan por categoría y, en transporte, por modo (más las que
+ * aceptan cualquier modo). Un cálculo se reduce a sus {@link Facts} una sola
+ * vez y solo se evalúan las reglas de su entrada en el índice, sin mirar el
+ * título de la misión. Conserva además las definiciones de las misiones, que
+ * no cambian una vez generada la semana.
+ *
+ * Inmutable y thread-safe.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+final class MissionRuleSet {
+
+    /**
+     * Datos del cálculo que evalúan las reglas (valores en minúsculas)
+     */
+    record Facts(Mission.MissionCategory category, String transportMode, String fuelType,
+                 Set<String> appliances, Set<String> wasteTypes, BigDecimal kg) {
+
+        static Facts of(CalculationCompletedEvent event) {
+            Map<String, Object> input = event.getCalculationInput() != null ? event.getCalculationInput() : Map.of();
+            Set<String> wasteTypes = new HashSet<>();
+            if (input.get("wasteItems") instanceof Collection<?> items) {
+                for (Object item : items) {
+                    if (item instanceof Map<?, ?> map) {
+                        addNormalized(wasteTypes, map.get("wasteType"));
+                    }
+                }
+            }
+            Set<String> appliances = new HashSet<>();
+            if (input.get("selectedAppliances") instanceof Collection<?> selected) {
+                selected.forEach(appliance -> addNormalized(appliances, appliance));
+            }
+            return new Facts(
+                    categoryOf(event.getCategory()),
+                    normalize(input.get("transportMode")),
+                    normalize(input.get("fuelType")),
+                    appliances,
+                    wasteTypes,
+                    event.getKgCO2e());
+        }
+    }
+
+    private record CompiledRule(Long missionId, Set<String> fuelTypes, Set<String> appliances,
+                                Set<String> wasteTypes, BigDecimal minKg, BigDecimal maxKg) {
+
+        boolean matches(Facts facts) {
+            return (fuelTypes == null || fuelTypes.contains(facts.fuelType()))
+                    && (appliances == null || intersects(appliances, facts.appliances()))
+                    && (wasteTypes == null || intersects(wasteTypes, facts.wasteTypes()))
+                    && (minKg == null || (facts.kg() != null && facts.kg().compareTo(minKg) >= 0))
+                    && (maxKg == null || (facts.kg() != null && facts.kg().compareTo(maxKg) <= 0));
+        }
+    }
+
+    // Reglas que aceptan cualquier modo de transporte (o de categorías sin modo)
+    private final Map<Mission.MissionCategory, List<CompiledRule>> anyMode =
+            new EnumMap<>(Mission.MissionCategory.class);
+    private final Map<Mission.MissionCategory, Map<String, List<CompiledRule>>> byMode =
+            new EnumMap<>(Mission.MissionCategory.class);
+    private final Map<Long, Mission> missions = new HashMap<>();
+
+    private MissionRuleSet() {
+    }
+
+    static MissionRuleSet compile(Collection<Mission> missions) {
+        MissionRuleSet set = new MissionRuleSet();
+        for (Mission mission : missions) {
+            MissionMatchRule rule = mission.getMatchRule() != null ? mission.getMatchRule() : MissionMatchRule.ANY;
+            CompiledRule compiled = new CompiledRule(mission.getId(),
+                    normalize(rule.fuelTypes()), normalize(rule.appliances()), normalize(rule.wasteTypes()),
+                    rule.minKg(), rule.maxKg());
+
+            Set<String> modes = normalize(rule.transportModes());
+            if (modes == null) {
+                set.anyMode.computeIfAbsent(mission.getCategory(), c -> new ArrayList<>()).add(compiled);
+            } else {
+                Map<String, List<CompiledRule>> index =
+                        set.byMode.computeIfAbsent(mission.getCategory(), c -> new HashMap<>());
+                modes.forEach(mode -> index.computeIfAbsent(mode, m -> new ArrayList<>()).add(compiled));
+            }
+            set.missions.put(mission.getId(), mission);
+        }
+        return set;
+    }
+
+    /**
+     * IDs de las misiones para las que cuenta el cálculo
+     */
+    Set<Long> match(Facts facts) {
+        if (facts.category() == null) {
+            return Set.of();
+        }
+        Set<Long> matched = new HashSet<>();
+        addMatches(matched, anyMode.get(facts.category()), facts);
+        Map<String, List<CompiledRule>> index = byMode.get(facts.category());
+        if (index != null && facts.transportMode() != null) {
+            addMatches(matched, index.get(facts.transportMode()), facts);
+        }
+        return matched;
+    }
+
+    /**
+     * Definición de una misión del conjunto, o null si no pertenece a él
+     */
+    Mission mission(Long missionId) {
+        return missions.get(missionId);
+    }
+
+    boolean isEmpty() {
+        return missions.isEmpty();
+    }
+
+    /**
+     * Mapea categoría de cálculo a categoría de misión.
+     */
+    static Mission.MissionCategory categoryOf(String calculationCategory) {
+        if (calculationCategory == null) {
+            return null;
+        }
+        return switch (calculationCategory.toLowerCase(Locale.ROOT)) {
+            case "electricidad" -> Mission.MissionCategory.ELECTRICITY;
+            case "transporte" -> Mission.MissionCategory.TRANSPORT;
+            case "residuos" -> Mission.MissionCategory.WASTE;
+            default -> null;
+        };
+    }
+
+    private static void addMatches(Set<Long> matched, List<CompiledRule> rules, Facts facts) {
+        if (rules == null) {
+            return;
+        }
+        for (CompiledRule rule : rules) {
+            if (rule.matches(facts)) {
+                matched.add(rule.missionId());
+            }
+        }
+    }
+
+    private static boolean intersects(Set<String> accepted, Set<String> values) {
+        for (String value : values) {
+            if (accepted.contains(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Set<String> normalize(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        Set<String> normalized = new HashSet<>();
+        values.forEach(value -> addNormalized(normalized, value));
+        return normalized;
+    }
+
+    private static void addNormalized(Set<String> target, Object value) {
+        String normalized = normalize(value);
+        if (normalized != null) {
+            target.add(normalized);
+        }
+    }
+
+    private static String normalize(Object value) {
+        return value instanceof String s && !s.isBlank() ? s.trim().toLowerCase(Locale.ROOT) : null;
+    }
+}
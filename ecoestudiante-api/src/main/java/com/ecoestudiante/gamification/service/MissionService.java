@@ -64,6 +64,17 @@ public interface MissionService {
      */
     MissionDtos.MissionProgressResponse assignMissionToUser(UUID userId, MissionDtos.CreateMissionProgressRequest request);
 
+    /**
+     * Asigna una misión a todos los estudiantes de una carrera, campus o
+     * institución que aún no la tienen, con una sola inserción y un solo evento
+     *
+     * @param missionId ID de la misión
+     * @param request Cohorte y baseline por defecto
+     * @return Cantidad de estudiantes asignados
+     * @throws IllegalArgumentException si la cohorte es inválida
+     */
+    MissionDtos.CohortAssignResponse assignMissionToCohort(Long missionId, MissionDtos.CohortAssignRequest request);
+
     /**
      * Actualiza el progreso de una misión
      *
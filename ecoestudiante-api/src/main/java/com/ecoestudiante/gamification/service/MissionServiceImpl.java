@@ -2,19 +2,25 @@ package com.ecoestudiante.gamification.service;
 
 import com.ecoestudiante.gamification.dto.MissionDtos;
 import com.ecoestudiante.gamification.event.MissionAssignedEvent;
+import com.ecoestudiante.gamification.event.MissionCohortAssignedEvent;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
 import com.ecoestudiante.gamification.model.Mission;
 import com.ecoestudiante.gamification.model.MissionProgress;
 import com.ecoestudiante.gamification.repository.MissionProgressRepository;
 import com.ecoestudiante.gamification.repository.MissionRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -23,7 +29,7 @@ import java.util.stream.Collectors;
  *
  * Gestiona todo el ciclo de vida de las misiones:
  * - Generación semanal automática
- * - Asignación a usuarios
+ * - Asignación a usuarios (individual o por cohorte)
  * - Seguimiento de progreso
  * - Completitud automática
  * - Expiración de misiones
@@ -40,21 +46,27 @@ public class MissionServiceImpl implements MissionService {
     private final MissionRepository missionRepository;
     private final MissionProgressRepository progressRepository;
     private final ApplicationEventPublisher eventPublisher;
+    private final MissionCatalog missionCatalog;
+    private final int baselineDays;
 
     public MissionServiceImpl(
             MissionRepository missionRepository,
             MissionProgressRepository progressRepository,
-            ApplicationEventPublisher eventPublisher) {
+            ApplicationEventPublisher eventPublisher,
+            MissionCatalog missionCatalog,
+            @Value("${app.gamification.missions.baseline-days:28}") int baselineDays) {
         this.missionRepository = missionRepository;
         this.progressRepository = progressRepository;
         this.eventPublisher = eventPublisher;
+        this.missionCatalog = missionCatalog;
+        this.baselineDays = baselineDays;
     }
 
     @Override
     public List<MissionDtos.MissionResponse> getMissionsByWeek(String weekNumber, Integer year) {
         logger.debug("Obteniendo misiones para semana: {}-{}", weekNumber, year);
 
-        List<Mission> missions = missionRepository.findByWeek(weekNumber, year);
+        List<Mission> missions = missionCatalog.week(weekNumber, year);
         return missions.stream()
                 .map(this::toMissionResponse)
                 .collect(Collectors.toList());
@@ -65,13 +77,10 @@ public class MissionServiceImpl implements MissionService {
         logger.debug("Obteniendo misiones activas para usuario: {}", userId);
 
         List<MissionProgress> activeProgress = progressRepository.findActiveByUserId(userId);
+        Map<Long, Mission> missions = missionsOf(activeProgress);
 
         return activeProgress.stream()
-                .map(progress -> {
-                    Mission mission = missionRepository.findById(progress.getMissionId())
-                            .orElse(null);
-                    return toMissionProgressResponse(progress, mission);
-                })
+                .map(progress -> toMissionProgressResponse(progress, missions.get(progress.getMissionId())))
                 .collect(Collectors.toList());
     }
 
@@ -80,20 +89,21 @@ public class MissionServiceImpl implements MissionService {
         logger.debug("Obteniendo todas las misiones para usuario: {}", userId);
 
         List<MissionProgress> allProgress = progressRepository.findAllByUserId(userId);
+        Map<Long, Mission> missions = missionsOf(allProgress);
 
         List<MissionDtos.MissionProgressResponse> active = allProgress.stream()
                 .filter(p -> p.getStatus() == MissionProgress.MissionStatus.ACTIVE)
-                .map(p -> toMissionProgressResponse(p, getMission(p.getMissionId())))
+                .map(p -> toMissionProgressResponse(p, missions.get(p.getMissionId())))
                 .collect(Collectors.toList());
 
         List<MissionDtos.MissionProgressResponse> completed = allProgress.stream()
                 .filter(p -> p.getStatus() == MissionProgress.MissionStatus.COMPLETED)
-                .map(p -> toMissionProgressResponse(p, getMission(p.getMissionId())))
+                .map(p -> toMissionProgressResponse(p, missions.get(p.getMissionId())))
                 .collect(Collectors.toList());
 
         List<MissionDtos.MissionProgressResponse> expired = allProgress.stream()
                 .filter(p -> p.getStatus() == MissionProgress.MissionStatus.EXPIRED)
-                .map(p -> toMissionProgressResponse(p, getMission(p.getMissionId())))
+                .map(p -> toMissionProgressResponse(p, missions.get(p.getMissionId())))
                 .collect(Collectors.toList());
 
         return new MissionDtos.UserMissionsProgressResponse(
@@ -163,6 +173,56 @@ public class MissionServiceImpl implements MissionService {
         return toMissionProgressResponse(progress, mission);
     }
 
+    @Override
+    @Transactional
+    public MissionDtos.CohortAssignResponse assignMissionToCohort(
+            Long missionId,
+            MissionDtos.CohortAssignRequest request) {
+
+        if (request == null || request.scope() == null || request.value() == null || request.value().isBlank()) {
+            throw new IllegalArgumentException("Debe indicar la cohorte (scope) y su valor");
+        }
+        LeaderboardScope scope = LeaderboardScope.valueOf(request.scope().trim().toUpperCase(Locale.ROOT));
+        String value = request.value().trim();
+        // Institución y campus se identifican por UUID; la carrera por nombre
+        Object scopeValue = switch (scope) {
+            case INSTITUTION, CAMPUS -> UUID.fromString(value);
+            case CAREER -> value;
+            case GLOBAL -> throw new IllegalArgumentException("La asignación por cohorte requiere institución, campus o carrera");
+        };
+
+        Mission mission = getMission(missionId);
+        logger.info("Asignando misión {} a la cohorte {}={}", missionId, scope, value);
+
+        // Baseline de reducción: promedio por cálculo de cada estudiante en la categoría
+        String baselineCategory = mission.getType() == Mission.MissionType.REDUCTION
+                ? calculationCategoryOf(mission.getCategory())
+                : null;
+        List<UUID> assigned = progressRepository.insertForCohort(
+                missionId,
+                mission.getTargetValue(),
+                scope,
+                scopeValue,
+                baselineCategory,
+                LocalDate.now().minusDays(baselineDays),
+                request.defaultBaselineValue());
+
+        // Un solo evento para toda la cohorte
+        if (!assigned.isEmpty()) {
+            eventPublisher.publishEvent(new MissionCohortAssignedEvent(
+                    this,
+                    assigned,
+                    mission.getId(),
+                    mission.getWeekNumber(),
+                    mission.getYear(),
+                    LocalDateTime.now()
+            ));
+        }
+
+        logger.info("Misión {} asignada a {} estudiantes de la cohorte {}={}", missionId, assigned.size(), scope, value);
+        return new MissionDtos.CohortAssignResponse(missionId, scope.name(), value, assigned.size());
+    }
+
     @Override
     @Transactional
     public MissionDtos.MissionProgressResponse updateMissionProgress(
@@ -230,8 +290,9 @@ public class MissionServiceImpl implements MissionService {
                 })
                 .collect(Collectors.toList());
 
+        Map<Long, Mission> missions = missionsOf(completedMissions);
         return completedMissions.stream()
-                .map(p -> toMissionProgressResponse(p, getMission(p.getMissionId())))
+                .map(p -> toMissionProgressResponse(p, missions.get(p.getMissionId())))
                 .collect(Collectors.toList());
     }
 
@@ -248,29 +309,27 @@ public class MissionServiceImpl implements MissionService {
         }
 
         // Obtener templates
-        List<Mission> templates = missionRepository.findAllTemplates();
+        List<Mission> templates = missionCatalog.templates();
 
         // Crear instancias de misiones para esta semana
-        // Por simplicidad, creamos una muestra de cada categoría
-        int createdCount = 0;
-
-        for (Mission template : templates) {
-            // Crear solo 1-2 misiones por categoría
-            boolean shouldCreate = switch (template.getCategory()) {
-                case TRANSPORT -> template.getDifficulty() == Mission.MissionDifficulty.EASY ||
-                        template.getDifficulty() == Mission.MissionDifficulty.MEDIUM;
-                case ELECTRICITY -> template.getDifficulty() == Mission.MissionDifficulty.EASY;
-                case WASTE -> template.getDifficulty() == Mission.MissionDifficulty.EASY;
-                case BONUS -> template.getDifficulty() == Mission.MissionDifficulty.MEDIUM;
-                default -> false;
-            };
-
-            if (shouldCreate) {
-                Mission instance = createMissionInstance(template, weekNumber, year);
-                missionRepository.save(instance);
-                createdCount++;
-            }
-        }
+        // Por simplicidad, creamos una muestra de cada categoría (1-2 por categoría)
+        List<Long> selectedTemplateIds = templates.stream()
+                .filter(template -> switch (template.getCategory()) {
+                    case TRANSPORT -> template.getDifficulty() == Mission.MissionDifficulty.EASY ||
+                            template.getDifficulty() == Mission.MissionDifficulty.MEDIUM;
+                    case ELECTRICITY -> template.getDifficulty() == Mission.MissionDifficulty.EASY;
+                    case WASTE -> template.getDifficulty() == Mission.MissionDifficulty.EASY;
+                    case BONUS -> template.getDifficulty() == Mission.MissionDifficulty.MEDIUM;
+                    default -> false;
+                })
+                .map(Mission::getId)
+                .toList();
+
+        // Todas las instancias en una sola inserción (copiadas de los templates en la BD)
+        int createdCount = missionRepository.insertInstancesFromTemplates(selectedTemplateIds, weekNumber, year);
+
+        // Las misiones de la semana ya no cambian: se sirven desde memoria
+        missionCatalog.cacheGeneratedWeek(weekNumber, year, missionRepository.findByWeek(weekNumber, year));
 
         logger.info("Generadas {} misiones para semana {}-{}", createdCount, weekNumber, year);
         return createdCount;
@@ -289,12 +348,12 @@ public class MissionServiceImpl implements MissionService {
 
     @Override
     public List<Mission> getAllMissionTemplates() {
-        return missionRepository.findAllTemplates();
+        return missionCatalog.templates();
     }
 
     @Override
     public List<Mission> getMissionTemplatesByCategory(Mission.MissionCategory category) {
-        return missionRepository.findTemplatesByCategory(category);
+        return missionCatalog.templatesByCategory(category);
     }
 
     @Override
@@ -310,7 +369,7 @@ public class MissionServiceImpl implements MissionService {
         logger.debug("Obteniendo misiones disponibles para usuario {} en semana {}-{}", userId, weekNumber, year);
 
         // Obtener todas las misiones de la semana
-        List<Mission> allMissions = missionRepository.findByWeek(weekNumber, year);
+        List<Mission> allMissions = missionCatalog.week(weekNumber, year);
 
         // Obtener las misiones que el usuario ya aceptó (tiene progreso)
         List<Long> acceptedMissionIds = progressRepository.findAllByUserId(userId).stream()
@@ -335,25 +394,30 @@ public class MissionServiceImpl implements MissionService {
     // =========================================================================
 
     private Mission getMission(Long missionId) {
-        return missionRepository.findById(missionId)
+        return missionCatalog.find(missionId)
                 .orElseThrow(() -> new RuntimeException("Misión no encontrada: " + missionId));
     }
 
-    private Mission createMissionInstance(Mission template, String weekNumber, Integer year) {
-        Mission instance = new Mission();
-        instance.setTitle(template.getTitle());
-        instance.setDescription(template.getDescription());
-        instance.setCategory(template.getCategory());
-        instance.setType(template.getType());
-        instance.setDifficulty(template.getDifficulty());
-        instance.setTargetValue(template.getTargetValue());
-        instance.setTargetUnit(template.getTargetUnit());
-        instance.setXpReward(template.getXpReward());
-        instance.setCo2ImpactKg(template.getCo2ImpactKg());
-        instance.setWeekNumber(weekNumber);
-        instance.setYear(year);
-        instance.setIsTemplate(false);
-        return instance;
+    /**
+     * Categoría de cálculo correspondiente a una categoría de misión (null si no hay)
+     */
+    private static String calculationCategoryOf(Mission.MissionCategory category) {
+        return switch (category) {
+            case ELECTRICITY -> "electricidad";
+            case TRANSPORT -> "transporte";
+            case WASTE -> "residuos";
+            default -> null;
+        };
+    }
+
+    /**
+     * Definiciones de las misiones de los progresos, indexadas por ID
+     */
+    private Map<Long, Mission> missionsOf(List<MissionProgress> progresses) {
+        return missionCatalog.findAll(progresses.stream()
+                .map(MissionProgress::getMissionId)
+                .distinct()
+                .toList());
     }
 
     private MissionDtos.MissionResponse toMissionResponse(Mission mission) {
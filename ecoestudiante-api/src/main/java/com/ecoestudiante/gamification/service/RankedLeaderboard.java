@@ -0,0 +1,221 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Ranking de una semana como árbol de estadísticos de orden (treap con tamaño
+ * de subárbol).
+ *
+ * Orden: co2 DESC, misiones DESC, user_id ASC; el mismo que usa el ranking en
+ * SQL (comparando el UUID sin signo, como PostgreSQL). Insertar, eliminar y
+ * obtener la posición de un usuario cuestan O(log n); el top N, O(log n + N).
+ *
+ * No es thread-safe: {@link LeaderboardRankIndex} sincroniza el acceso.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+final class RankedLeaderboard {
+
+    static final Comparator<LeaderboardCache> ORDER = (a, b) -> {
+        int c = co2(b).compareTo(co2(a));
+        if (c != 0) {
+            return c;
+        }
+        c = Integer.compare(missions(b), missions(a));
+        if (c != 0) {
+            return c;
+        }
+        UUID ua = a.getUserId();
+        UUID ub = b.getUserId();
+        c = Long.compareUnsigned(ua.getMostSignificantBits(), ub.getMostSignificantBits());
+        return c != 0 ? c : Long.compareUnsigned(ua.getLeastSignificantBits(), ub.getLeastSignificantBits());
+    };
+
+    private static final class Node {
+        final LeaderboardCache entry;
+        final int priority = ThreadLocalRandom.current().nextInt();
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(LeaderboardCache entry) {
+            this.entry = entry;
+        }
+    }
+
+    private final Map<UUID, LeaderboardCache> byUser = new HashMap<>();
+    private Node root;
+
+    int size() {
+        return byUser.size();
+    }
+
+    LeaderboardCache get(UUID userId) {
+        return byUser.get(userId);
+    }
+
+    /**
+     * Inserta o reemplaza la entrada del usuario
+     */
+    void upsert(LeaderboardCache entry) {
+        LeaderboardCache previous = byUser.put(entry.getUserId(), entry);
+        if (previous != null) {
+            root = remove(root, previous);
+        }
+        root = insert(root, new Node(entry));
+    }
+
+    boolean remove(UUID userId) {
+        LeaderboardCache previous = byUser.remove(userId);
+        if (previous == null) {
+            return false;
+        }
+        root = remove(root, previous);
+        return true;
+    }
+
+    /**
+     * Posición (1 = primero) o 0 si el usuario no está en el ranking
+     */
+    int rankOf(UUID userId) {
+        LeaderboardCache entry = byUser.get(userId);
+        if (entry == null) {
+            return 0;
+        }
+        int rank = 0;
+        Node t = root;
+        while (t != null) {
+            int c = ORDER.compare(entry, t.entry);
+            if (c < 0) {
+                t = t.left;
+            } else if (c > 0) {
+                rank += size(t.left) + 1;
+                t = t.right;
+            } else {
+                return rank + size(t.left) + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Primeras {@code limit} entradas en orden de ranking
+     */
+    List<LeaderboardCache> top(int limit) {
+        List<LeaderboardCache> result = new ArrayList<>(Math.min(limit, size()));
+        Deque<Node> stack = new ArrayDeque<>();
+        Node t = root;
+        while ((t != null || !stack.isEmpty()) && result.size() < limit) {
+            while (t != null) {
+                stack.push(t);
+                t = t.left;
+            }
+            t = stack.pop();
+            result.add(t.entry);
+            t = t.right;
+        }
+        return result;
+    }
+
+    private static Node insert(Node t, Node n) {
+        if (t == null) {
+            return n;
+        }
+        if (n.priority > t.priority) {
+            Node[] parts = split(t, n.entry);
+            n.left = parts[0];
+            n.right = parts[1];
+            update(n);
+            return n;
+        }
+        if (ORDER.compare(n.entry, t.entry) < 0) {
+            t.left = insert(t.left, n);
+        } else {
+            t.right = insert(t.right, n);
+        }
+        update(t);
+        return t;
+    }
+
+    private static Node remove(Node t, LeaderboardCache entry) {
+        if (t == null) {
+            return null;
+        }
+        int c = ORDER.compare(entry, t.entry);
+        if (c == 0) {
+            return merge(t.left, t.right);
+        }
+        if (c < 0) {
+            t.left = remove(t.left, entry);
+        } else {
+            t.right = remove(t.right, entry);
+        }
+        update(t);
+        return t;
+    }
+
+    /**
+     * Divide en (menores que key, mayores o iguales a key)
+     */
+    private static Node[] split(Node t, LeaderboardCache key) {
+        if (t == null) {
+            return new Node[] {null, null};
+        }
+        if (ORDER.compare(t.entry, key) < 0) {
+            Node[] parts = split(t.right, key);
+            t.right = parts[0];
+            update(t);
+            return new Node[] {t, parts[1]};
+        }
+        Node[] parts = split(t.left, key);
+        t.left = parts[1];
+        update(t);
+        return new Node[] {parts[0], t};
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = merge(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void update(Node t) {
+        t.size = 1 + size(t.left) + size(t.right);
+    }
+
+    private static int size(Node t) {
+        return t == null ? 0 : t.size;
+    }
+
+    private static BigDecimal co2(LeaderboardCache e) {
+        return e.getCo2AvoidedKg() != null ? e.getCo2AvoidedKg() : BigDecimal.ZERO;
+    }
+
+    private static int missions(LeaderboardCache e) {
+        return e.getMissionsCompleted() != null ? e.getMissionsCompleted() : 0;
+    }
+}
@@ -2,6 +2,7 @@ package com.ecoestudiante.reports.controller;
 
 import com.ecoestudiante.auth.UserContextResolver;
 import com.ecoestudiante.reports.dto.ReportsDtos;
+import com.ecoestudiante.reports.service.ReportDownload;
 import com.ecoestudiante.reports.service.ReportsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -14,11 +15,17 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
@@ -33,8 +40,8 @@ import java.util.List;
  * Ruta base: /api/v1/reports
  * Alineado con arquitectura de microservicios descrita en la tesis.
  * 
- * NOTA: Implementación inicial es STUB - retorna datos mock.
- * La estructura está lista para implementación completa futura.
+ * Los reportes se generan en segundo plano (ReportJobWorker); aquí solo se
+ * encolan, se consulta su estado y se descargan los archivos generados.
  * 
  * @author EcoEstudiante Team
  * @version 0.1.0-SNAPSHOT
@@ -101,6 +108,8 @@ public class ReportsController {
             
             ReportsDtos.ReportJob job = reportsService.generateReport(userId, request);
             return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error al generar reporte", e);
             throw new RuntimeException("Error al generar reporte", e);
@@ -159,6 +168,50 @@ public class ReportsController {
         }
     }
 
+    /**
+     * Descarga el archivo de un reporte completado.
+     * 
+     * @param jobId ID del job
+     * @param httpRequest HttpServletRequest para extraer información del usuario
+     * @return Archivo del reporte (PDF o CSV)
+     */
+    @GetMapping(path = "/jobs/{jobId}/download")
+    @Operation(
+            summary = "Descargar reporte",
+            description = "Descarga el archivo de un reporte completado mientras su enlace no haya expirado."
+    )
+    @SecurityRequirement(name = "bearerAuth")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Archivo del reporte"),
+            @ApiResponse(responseCode = "404", description = "Job no encontrado"),
+            @ApiResponse(responseCode = "409", description = "El reporte aún no está listo"),
+            @ApiResponse(responseCode = "410", description = "El enlace de descarga expiró"),
+            @ApiResponse(responseCode = "401", description = "No autenticado")
+    })
+    public ResponseEntity<Resource> downloadReport(
+            @PathVariable String jobId,
+            HttpServletRequest httpRequest) {
+        String userId = userContextResolver.resolve(httpRequest).normalizedUserIdAsString();
+        ReportDownload download = reportsService.getDownload(jobId, userId);
+
+        if (download == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return switch (download.status()) {
+            case NOT_READY -> ResponseEntity.status(HttpStatus.CONFLICT).build();
+            case EXPIRED -> ResponseEntity.status(HttpStatus.GONE).build();
+            case READY -> {
+                logger.info("Descargando reporte {} para usuario: {}", jobId, userId);
+                yield ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_DISPOSITION,
+                                ContentDisposition.attachment().filename(download.fileName()).build().toString())
+                        .contentType(MediaType.parseMediaType(download.contentType()))
+                        .contentLength(download.size())
+                        .body(new FileSystemResource(download.path()));
+            }
+        };
+    }
+
     /**
      * Obtiene lista de exports disponibles para el usuario.
      * 
@@ -210,10 +263,13 @@ public class ReportsController {
      * Obtiene agregados anonimizados para análisis estadístico.
      * 
      * Estos datos se usan para análisis agregados sin exponer
-     * información personal de usuarios individuales.
+     * información personal de usuarios individuales. Son públicos (dashboards):
+     * solo incluyen grupos con al menos k usuarios y se sirven desde una tabla
+     * materializada con caché en memoria.
      * 
-     * @param period Período del agregado (ej: "2025-01")
+     * @param period Período del agregado (ej: "2025-01"); por defecto los últimos 12 meses
      * @param category Categoría a agregar (opcional)
+     * @param scope Nivel: GLOBAL (por defecto), INSTITUTION o CAMPUS
      * @return Lista de agregados anonimizados
      */
     @GetMapping(
@@ -222,10 +278,10 @@ public class ReportsController {
     )
     @Operation(
             summary = "Obtener agregados anonimizados",
-            description = "Retorna agregados estadísticos anonimizados para análisis. " +
-                    "Los datos están agregados y no contienen información personal identificable."
+            description = "Retorna agregados estadísticos anonimizados por mes y categoría, a nivel global, " +
+                    "por institución o por campus. Los grupos con menos de k usuarios se suprimen; " +
+                    "los datos no contienen información personal identificable."
     )
-    @SecurityRequirement(name = "bearerAuth")
     @ApiResponses({
             @ApiResponse(
                     responseCode = "200",
@@ -235,29 +291,18 @@ public class ReportsController {
                             schema = @Schema(implementation = ReportsDtos.AnonymizedAggregate.class)
                     )
             ),
-            @ApiResponse(responseCode = "401", description = "No autenticado"),
+            @ApiResponse(responseCode = "400", description = "Parámetros inválidos"),
             @ApiResponse(responseCode = "500", description = "Error interno")
     })
     public ResponseEntity<List<ReportsDtos.AnonymizedAggregate>> getAnonymizedAggregates(
             @RequestParam(value = "period", required = false) String period,
             @RequestParam(value = "category", required = false) String category,
-            HttpServletRequest httpRequest) {
-        try {
-            String userId = userContextResolver.resolve(httpRequest).normalizedUserIdAsString();
-            logger.info("Obteniendo agregados anonimizados para usuario: {}, period: {}, category: {}",
-                    userId, period, category);
-            
-            List<ReportsDtos.AnonymizedAggregate> aggregates = 
-                    reportsService.getAnonymizedAggregates(period, category);
-            
-            return ResponseEntity.ok(aggregates);
-        } catch (Exception e) {
-            logger.error("Error al obtener agregados anonimizados", e);
-            throw new RuntimeException("Error al obtener agregados anonimizados", e);
-        }
+            @RequestParam(value = "scope", required = false) String scope) {
+        List<ReportsDtos.AnonymizedAggregate> aggregates =
+                reportsService.getAnonymizedAggregates(period, category, scope);
+
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofMinutes(1)).cachePublic())
+                .body(aggregates);
     }
 }
-
-
-
-
@@ -0,0 +1,79 @@
+package com.ecoestudiante.reports.model;
+
+import lombok.Data;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Modelo de dominio para un job de generación de reporte.
+ *
+ * Mapea a la tabla: report_job
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Data
+public class ReportJobRecord {
+
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String COMPLETED = "COMPLETED";
+    public static final String FAILED = "FAILED";
+
+    private UUID id;
+
+    private UUID userId;
+
+    /**
+     * Estado: PENDING, PROCESSING, COMPLETED, FAILED
+     */
+    private String status;
+
+    /**
+     * Tipo de reporte: MONTHLY, YEARLY, CUSTOM
+     */
+    private String reportType;
+
+    /**
+     * Formato del archivo: PDF, CSV
+     */
+    private String exportFormat;
+
+    /**
+     * Rango de fechas resuelto al crear el job (ambos inclusive)
+     */
+    private LocalDate rangeStart;
+
+    private LocalDate rangeEnd;
+
+    /**
+     * Categorías a incluir (vacío = todas), persistidas en params
+     */
+    private List<String> categories;
+
+    private Integer progress;
+
+    private Integer attempts;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime completedAt;
+
+    private String errorMessage;
+
+    /**
+     * Ruta relativa del archivo dentro del almacenamiento de reportes
+     */
+    private String filePath;
+
+    private String fileName;
+
+    private Long fileSize;
+
+    private LocalDateTime expiresAt;
+}
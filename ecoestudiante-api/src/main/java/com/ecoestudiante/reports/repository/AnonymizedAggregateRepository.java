@@ -0,0 +1,175 @@
+package com.ecoestudiante.reports.repository;
+
+import com.ecoestudiante.reports.dto.ReportsDtos;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Repositorio de agregados anonimizados (tabla anonymized_aggregate).
+ *
+ * La materialización parte de calculation_daily_rollup (una fila por usuario,
+ * día y dimensiones) y calcula los tres niveles (global, institución, campus)
+ * en una sola pasada con GROUPING SETS. Los grupos con menos de k usuarios
+ * distintos nunca llegan a la tabla.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Repository
+public class AnonymizedAggregateRepository {
+
+    public static final String GLOBAL = "GLOBAL";
+    public static final String INSTITUTION = "INSTITUTION";
+    public static final String CAMPUS = "CAMPUS";
+
+    private static final String NIL_UUID = "00000000-0000-0000-0000-000000000000";
+
+    private final JdbcTemplate jdbc;
+
+    public AnonymizedAggregateRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    /**
+     * Lock de transacción para que solo una instancia refresque a la vez;
+     * debe llamarse dentro de la transacción del refresco.
+     */
+    public boolean tryRefreshLock() {
+        Boolean locked = jdbc.queryForObject(
+                "SELECT pg_try_advisory_xact_lock(hashtext('anonymized_aggregate'))", Boolean.class);
+        return Boolean.TRUE.equals(locked);
+    }
+
+    public int deletePeriods(YearMonth from, YearMonth to) {
+        return jdbc.update("DELETE FROM anonymized_aggregate WHERE period BETWEEN ? AND ?",
+                from.toString(), to.toString());
+    }
+
+    /**
+     * Recalcula los agregados de los meses [from, to] con supresión de grupos pequeños
+     *
+     * @return filas materializadas
+     */
+    public int materialize(YearMonth from, YearMonth to, int k) {
+        // GROUPING(institution_id, campus_id): 0 = campus, 1 = institución, 3 = global
+        return jdbc.update("""
+                WITH src AS (
+                    SELECT to_char(r.day, 'YYYY-MM') AS period, r.category, r.user_id,
+                           u.institution_id, u.campus_id,
+                           SUM(r.kg_co2e) AS kg, SUM(r.calc_count) AS records
+                      FROM calculation_daily_rollup r
+                      LEFT JOIN app_user u ON u.id = r.user_id
+                     WHERE r.day >= ? AND r.day < ?
+                     GROUP BY 1, 2, 3, 4, 5
+                ), grouped AS (
+                    SELECT period, category, institution_id, campus_id,
+                           GROUPING(institution_id, campus_id) AS level,
+                           COUNT(DISTINCT user_id) AS users, SUM(records) AS records, SUM(kg) AS kg
+                      FROM src
+                     GROUP BY GROUPING SETS ((period, category),
+                                             (period, category, institution_id),
+                                             (period, category, institution_id, campus_id))
+                )
+                INSERT INTO anonymized_aggregate (period, category, scope, scope_id, parent_id,
+                                                  user_count, record_count, total_kg_co2e, refreshed_at)
+                SELECT period, category,
+                       CASE level WHEN 0 THEN 'CAMPUS' WHEN 1 THEN 'INSTITUTION' ELSE 'GLOBAL' END,
+                       CASE level WHEN 0 THEN campus_id WHEN 1 THEN institution_id ELSE ?::uuid END,
+                       CASE level WHEN 0 THEN institution_id WHEN 1 THEN ?::uuid END,
+                       users, records, kg, now()
+                  FROM grouped
+                 WHERE users >= ?
+                   AND (level = 3
+                        OR (level = 1 AND institution_id IS NOT NULL)
+                        OR (level = 0 AND campus_id IS NOT NULL))
+                """,
+                Date.valueOf(from.atDay(1)), Date.valueOf(to.plusMonths(1).atDay(1)),
+                NIL_UUID, NIL_UUID, k);
+    }
+
+    /**
+     * Supresión complementaria: si "usuarios del padre - usuarios de los hijos publicados"
+     * queda entre 1 y k-1, el resto podría deducirse por diferencia; se suprime
+     * el hijo más pequeño, lo que lleva el resto a >= k.
+     *
+     * Con el hijo se suprimen también sus propios hijos (los campus de una
+     * institución suprimida): si siguieran publicados, su suma acotaría a la
+     * institución y el resto volvería a deducirse desde el padre.
+     *
+     * @return filas suprimidas, incluidos los hijos del grupo suprimido
+     */
+    public int suppressComplementary(String childScope, String parentScope, YearMonth from, YearMonth to, int k) {
+        Integer suppressed = jdbc.queryForObject("""
+                WITH siblings AS (
+                    SELECT c.period, c.category, c.scope_id,
+                           p.user_count - SUM(c.user_count) OVER w AS residual,
+                           ROW_NUMBER() OVER (w ORDER BY c.user_count, c.scope_id) AS rn
+                      FROM anonymized_aggregate c
+                      JOIN anonymized_aggregate p
+                        ON p.scope = ? AND p.period = c.period AND p.category = c.category
+                       AND p.scope_id = c.parent_id
+                     WHERE c.scope = ? AND c.period BETWEEN ? AND ?
+                    WINDOW w AS (PARTITION BY c.period, c.category, c.parent_id)
+                ), suppressed AS (
+                    DELETE FROM anonymized_aggregate a
+                     USING siblings s
+                     WHERE a.scope = ? AND a.period = s.period AND a.category = s.category
+                       AND a.scope_id = s.scope_id
+                       AND s.rn = 1 AND s.residual > 0 AND s.residual < ?
+                    RETURNING a.period, a.category, a.scope_id
+                ), descendants AS (
+                    DELETE FROM anonymized_aggregate d
+                     USING suppressed s
+                     WHERE d.period = s.period AND d.category = s.category
+                       AND d.parent_id = s.scope_id AND d.scope <> ?
+                    RETURNING 1
+                )
+                SELECT (SELECT COUNT(*) FROM suppressed) + (SELECT COUNT(*) FROM descendants)
+                """,
+                Integer.class,
+                parentScope, childScope, from.toString(), to.toString(), childScope, k, childScope);
+        return suppressed != null ? suppressed : 0;
+    }
+
+    /**
+     * Agregados publicados de un nivel en el rango de meses [from, to]
+     *
+     * @param category categoría exacta o null para todas
+     */
+    public List<ReportsDtos.AnonymizedAggregate> find(String scope, YearMonth from, YearMonth to, String category) {
+        StringBuilder sql = new StringBuilder("""
+                SELECT a.period, a.category, a.record_count, a.total_kg_co2e,
+                       CASE a.scope WHEN 'INSTITUTION' THEN i.name
+                                    WHEN 'CAMPUS' THEN ci.name || ' - ' || c.name END AS region
+                  FROM anonymized_aggregate a
+                  LEFT JOIN institution i ON a.scope = 'INSTITUTION' AND i.id = a.scope_id
+                  LEFT JOIN campus c ON a.scope = 'CAMPUS' AND c.id = a.scope_id
+                  LEFT JOIN institution ci ON ci.id = c.institution_id
+                 WHERE a.scope = ? AND a.period BETWEEN ? AND ?
+                """);
+        List<Object> params = new ArrayList<>(List.of(scope, from.toString(), to.toString()));
+        if (category != null) {
+            sql.append(" AND a.category = ?");
+            params.add(category);
+        }
+        sql.append(" ORDER BY a.period, a.category, region");
+
+        return jdbc.query(sql.toString(), (rs, rowNum) -> {
+            long records = rs.getLong("record_count");
+            BigDecimal total = rs.getBigDecimal("total_kg_co2e");
+            return new ReportsDtos.AnonymizedAggregate(
+                    rs.getString("period"),
+                    rs.getString("category"),
+                    records > 0 ? total.doubleValue() / records : 0.0,
+                    records,
+                    rs.getString("region"));
+        }, params.toArray());
+    }
+}
@@ -0,0 +1,228 @@
+package com.ecoestudiante.reports.repository;
+
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Repositorio de jobs de reportes (tabla report_job).
+ *
+ * La tabla actúa como cola persistente: los workers reclaman jobs con
+ * FOR UPDATE SKIP LOCKED y un lease (claimed_until) que se renueva con cada
+ * avance de progreso; si un worker muere, el job vuelve a estar disponible
+ * al vencer el lease.
+ *
+ * Cada reclamo incrementa attempts, y las escrituras del worker exigen el
+ * attempts de su reclamo: si el lease venció y otro worker retomó el job, la
+ * escritura no actualiza nada (devuelve false) y el worker debe abandonarlo.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Repository
+public class ReportJobRepository {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String COLUMNS = """
+            id, user_id, status, params::text AS params, report_type, export_format, range_start, range_end,
+            progress, attempts, created_at, started_at, completed_at, error_message,
+            file_path, file_name, file_size, expires_at
+            """;
+
+    private final JdbcTemplate jdbc;
+
+    public ReportJobRepository(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    public void insert(ReportJobRecord job) {
+        String params;
+        try {
+            params = objectMapper.writeValueAsString(Map.of("categories", job.getCategories()));
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudieron serializar los parámetros del reporte", e);
+        }
+        jdbc.update("""
+                INSERT INTO report_job (id, user_id, status, params, report_type, export_format,
+                                        range_start, range_end, progress, created_at)
+                VALUES (?::uuid, ?::uuid, ?, cast(? as jsonb), ?, ?, ?, ?, 0, ?)
+                """,
+                job.getId(), job.getUserId(), job.getStatus(), params, job.getReportType(), job.getExportFormat(),
+                Date.valueOf(job.getRangeStart()), Date.valueOf(job.getRangeEnd()),
+                Timestamp.valueOf(job.getCreatedAt()));
+    }
+
+    public Optional<ReportJobRecord> findByIdAndUser(UUID id, UUID userId) {
+        return jdbc.query("SELECT " + COLUMNS + " FROM report_job WHERE id = ?::uuid AND user_id = ?::uuid",
+                rowMapper(), id, userId).stream().findFirst();
+    }
+
+    /**
+     * Reportes completados cuyo enlace de descarga sigue vigente
+     */
+    public List<ReportJobRecord> findDownloadable(UUID userId) {
+        return jdbc.query("SELECT " + COLUMNS + """
+                 FROM report_job
+                WHERE user_id = ?::uuid
+                  AND status = 'COMPLETED'
+                  AND file_path IS NOT NULL
+                  AND expires_at > now()
+                ORDER BY completed_at DESC
+                """, rowMapper(), userId);
+    }
+
+    /**
+     * Reclama hasta {@code limit} jobs: pendientes cuya espera de reintento ya
+     * pasó o en proceso con lease vencido (worker caído) que aún no agotaron sus
+     * intentos. Cada job devuelto trae el attempts de este reclamo.
+     */
+    public List<ReportJobRecord> claim(int limit, int leaseSeconds, int maxAttempts) {
+        return jdbc.query("""
+                UPDATE report_job
+                SET status = 'PROCESSING',
+                    claimed_until = now() + (? * INTERVAL '1 second'),
+                    attempts = attempts + 1,
+                    started_at = COALESCE(started_at, now())
+                WHERE id IN (
+                    SELECT id
+                    FROM report_job
+                    WHERE ((status = 'PENDING' AND (next_attempt_at IS NULL OR next_attempt_at <= now()))
+                           OR (status = 'PROCESSING' AND claimed_until < now()))
+                      AND attempts < ?
+                    ORDER BY created_at
+                    LIMIT ?
+                    FOR UPDATE SKIP LOCKED
+                )
+                RETURNING\s""" + COLUMNS,
+                rowMapper(), leaseSeconds, maxAttempts, limit);
+    }
+
+    /**
+     * Registra progreso y renueva el lease del reclamo {@code attempts}
+     *
+     * @return false si el job ya no pertenece a ese reclamo (lease perdido)
+     */
+    public boolean updateProgress(UUID id, int attempts, int progress, int leaseSeconds) {
+        return jdbc.update("""
+                UPDATE report_job
+                SET progress = ?, claimed_until = now() + (? * INTERVAL '1 second')
+                WHERE id = ?::uuid AND status = 'PROCESSING' AND attempts = ?
+                """, progress, leaseSeconds, id, attempts) > 0;
+    }
+
+    /**
+     * @return false si el job ya no pertenece al reclamo {@code attempts} (lease perdido)
+     */
+    public boolean markCompleted(UUID id, int attempts, String filePath, String fileName, long fileSize,
+                                 LocalDateTime expiresAt) {
+        return jdbc.update("""
+                UPDATE report_job
+                SET status = 'COMPLETED', progress = 100, completed_at = now(), claimed_until = NULL,
+                    next_attempt_at = NULL, error_message = NULL,
+                    file_path = ?, file_name = ?, file_size = ?, expires_at = ?
+                WHERE id = ?::uuid AND status = 'PROCESSING' AND attempts = ?
+                """, filePath, fileName, fileSize, Timestamp.valueOf(expiresAt), id, attempts) > 0;
+    }
+
+    /**
+     * Registra un fallo del reclamo {@code attempts}: si quedan intentos vuelve a
+     * PENDING con una espera de retryDelaySeconds × attempts, si no queda FAILED
+     *
+     * @return false si el job ya no pertenece a ese reclamo (lease perdido)
+     */
+    public boolean markFailed(UUID id, int attempts, String error, int maxAttempts, int retryDelaySeconds) {
+        return jdbc.update("""
+                UPDATE report_job
+                SET status = CASE WHEN attempts >= ? THEN 'FAILED' ELSE 'PENDING' END,
+                    completed_at = CASE WHEN attempts >= ? THEN now() ELSE NULL END,
+                    next_attempt_at = CASE WHEN attempts >= ? THEN NULL
+                                           ELSE now() + (? * attempts * INTERVAL '1 second') END,
+                    claimed_until = NULL,
+                    error_message = ?
+                WHERE id = ?::uuid AND status = 'PROCESSING' AND attempts = ?
+                """, maxAttempts, maxAttempts, maxAttempts, retryDelaySeconds, error, id, attempts) > 0;
+    }
+
+    /**
+     * Cierra como FAILED los jobs abandonados (lease vencido) sin intentos restantes
+     */
+    public int failAbandoned(int maxAttempts) {
+        return jdbc.update("""
+                UPDATE report_job
+                SET status = 'FAILED', completed_at = now(), claimed_until = NULL,
+                    error_message = COALESCE(error_message, 'Tiempo de procesamiento agotado')
+                WHERE status = 'PROCESSING' AND claimed_until < now() AND attempts >= ?
+                """, maxAttempts);
+    }
+
+    public List<ReportJobRecord> findExpiredFiles(int limit) {
+        return jdbc.query("SELECT " + COLUMNS + """
+                 FROM report_job
+                WHERE file_path IS NOT NULL AND expires_at <= now()
+                ORDER BY expires_at
+                LIMIT ?
+                """, rowMapper(), limit);
+    }
+
+    public void clearFile(UUID id) {
+        jdbc.update("UPDATE report_job SET file_path = NULL WHERE id = ?::uuid", id);
+    }
+
+    private RowMapper<ReportJobRecord> rowMapper() {
+        return (rs, rowNum) -> {
+            ReportJobRecord job = new ReportJobRecord();
+            job.setId(rs.getObject("id", UUID.class));
+            job.setUserId(rs.getObject("user_id", UUID.class));
+            job.setStatus(rs.getString("status"));
+            job.setReportType(rs.getString("report_type"));
+            job.setExportFormat(rs.getString("export_format"));
+            Date rangeStart = rs.getDate("range_start");
+            job.setRangeStart(rangeStart != null ? rangeStart.toLocalDate() : null);
+            Date rangeEnd = rs.getDate("range_end");
+            job.setRangeEnd(rangeEnd != null ? rangeEnd.toLocalDate() : null);
+            job.setCategories(parseCategories(rs.getString("params")));
+            job.setProgress(rs.getInt("progress"));
+            job.setAttempts(rs.getInt("attempts"));
+            job.setCreatedAt(toLocalDateTime(rs.getTimestamp("created_at")));
+            job.setStartedAt(toLocalDateTime(rs.getTimestamp("started_at")));
+            job.setCompletedAt(toLocalDateTime(rs.getTimestamp("completed_at")));
+            job.setErrorMessage(rs.getString("error_message"));
+            job.setFilePath(rs.getString("file_path"));
+            job.setFileName(rs.getString("file_name"));
+            long fileSize = rs.getLong("file_size");
+            job.setFileSize(rs.wasNull() ? null : fileSize);
+            job.setExpiresAt(toLocalDateTime(rs.getTimestamp("expires_at")));
+            return job;
+        };
+    }
+
+    private static List<String> parseCategories(String params) {
+        if (params == null || params.isBlank()) {
+            return List.of();
+        }
+        try {
+            Map<String, List<String>> parsed = objectMapper.readValue(params, new TypeReference<>() {});
+            List<String> categories = parsed.get("categories");
+            return categories != null ? categories : List.of();
+        } catch (Exception e) {
+            return List.of();
+        }
+    }
+
+    private static LocalDateTime toLocalDateTime(Timestamp ts) {
+        return ts != null ? ts.toLocalDateTime() : null;
+    }
+}
@@ -0,0 +1,155 @@
+package com.ecoestudiante.reports.service;
+
+import com.ecoestudiante.common.cache.BoundedLruMap;
+import com.ecoestudiante.config.SchedulingConfig;
+import com.ecoestudiante.reports.dto.ReportsDtos;
+import com.ecoestudiante.reports.repository.AnonymizedAggregateRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Agregados anonimizados materializados y su caché en memoria.
+ *
+ * - Un refresco programado recalcula los meses recientes (app.reports.aggregates.recent-months)
+ *   desde calculation_daily_rollup; el primero de cada instancia y el nocturno
+ *   reconstruyen todo el historial (cubre cálculos eliminados o retroactivos).
+ * - Cada refresco corre en una transacción con advisory lock: si otra instancia
+ *   ya está refrescando, se omite. Los lectores ven la versión anterior hasta el commit.
+ * - Las consultas se sirven desde una caché TTL por (nivel, rango, categoría),
+ *   que se vacía al terminar un refresco local; la tabla es pequeña y nunca se
+ *   toca calculation en el camino de lectura.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class AnonymizedAggregateService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnonymizedAggregateService.class);
+
+    private record Entry(List<ReportsDtos.AnonymizedAggregate> aggregates, long expiresAt) {
+        boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+
+    private final AnonymizedAggregateRepository repository;
+    private final TransactionTemplate tx;
+    private final Map<String, Entry> cache;
+
+    private final int k;
+    private final int recentMonths;
+    private final long ttlMillis;
+
+    private volatile boolean fullRefreshDone;
+
+    public AnonymizedAggregateService(
+            AnonymizedAggregateRepository repository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.reports.aggregates.k-anonymity:5}") int k,
+            @Value("${app.reports.aggregates.recent-months:2}") int recentMonths,
+            @Value("${app.reports.aggregates.cache-ttl-seconds:300}") long ttlSeconds,
+            @Value("${app.reports.aggregates.cache-max-entries:2000}") int maxEntries) {
+        this.repository = repository;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.k = Math.max(1, k);
+        this.recentMonths = Math.max(1, recentMonths);
+        this.ttlMillis = ttlSeconds * 1000L;
+        this.cache = BoundedLruMap.create(maxEntries);
+    }
+
+    /**
+     * Agregados publicados de un nivel (GLOBAL, INSTITUTION, CAMPUS) en [from, to]
+     */
+    public List<ReportsDtos.AnonymizedAggregate> find(String scope, YearMonth from, YearMonth to, String category) {
+        String key = scope + '|' + from + '|' + to + '|' + (category != null ? category : "");
+        long now = System.currentTimeMillis();
+        Entry entry = cache.get(key);
+        if (entry != null && !entry.isExpired(now)) {
+            return entry.aggregates();
+        }
+
+        List<ReportsDtos.AnonymizedAggregate> aggregates = List.copyOf(repository.find(scope, from, to, category));
+        cache.put(key, new Entry(aggregates, now + ttlMillis));
+        return aggregates;
+    }
+
+    /**
+     * Refresco incremental: solo los meses recientes (el primero de la instancia es completo)
+     */
+    @Scheduled(fixedDelayString = "${app.reports.aggregates.refresh-interval-ms:600000}",
+            initialDelayString = "${app.reports.aggregates.initial-delay-ms:30000}",
+            scheduler = SchedulingConfig.HEAVY_JOB_SCHEDULER)
+    public void refreshRecent() {
+        if (!fullRefreshDone) {
+            refreshAll();
+            return;
+        }
+        YearMonth to = YearMonth.now();
+        refresh(to.minusMonths(recentMonths - 1L), to);
+    }
+
+    /**
+     * Reconstrucción completa nocturna
+     */
+    @Scheduled(cron = "${app.reports.aggregates.full-refresh-cron:0 30 3 * * *}",
+            scheduler = SchedulingConfig.HEAVY_JOB_SCHEDULER)
+    public void refreshAll() {
+        // Desde 1970 para borrar también meses que quedaron sin datos
+        if (refresh(YearMonth.of(1970, 1), YearMonth.now())) {
+            fullRefreshDone = true;
+        }
+    }
+
+    boolean refresh(YearMonth from, YearMonth to) {
+        long start = System.currentTimeMillis();
+        try {
+            int[] rows = new int[1];
+            Boolean done = tx.execute(status -> {
+                if (!repository.tryRefreshLock()) {
+                    return false;
+                }
+                repository.deletePeriods(from, to);
+                rows[0] = repository.materialize(from, to, k);
+                // Primero campus contra institución, luego institución contra global
+                // (una institución suprimida arrastra a sus campus)
+                int suppressed = repository.suppressComplementary(
+                        AnonymizedAggregateRepository.CAMPUS, AnonymizedAggregateRepository.INSTITUTION, from, to, k);
+                suppressed += repository.suppressComplementary(
+                        AnonymizedAggregateRepository.INSTITUTION, AnonymizedAggregateRepository.GLOBAL, from, to, k);
+                rows[0] -= suppressed;
+                return true;
+            });
+            if (!Boolean.TRUE.equals(done)) {
+                logger.debug("Agregados anonimizados: otra instancia está refrescando, se omite");
+                return false;
+            }
+            cache.clear();
+            logger.info("✅ Agregados anonimizados {} a {} refrescados: {} grupos publicados (k={}) en {} ms",
+                    from, to, rows[0], k, System.currentTimeMillis() - start);
+            return true;
+        } catch (Exception e) {
+            logger.error("❌ Error refrescando agregados anonimizados {} a {}", from, to, e);
+            return false;
+        }
+    }
+
+    /**
+     * Elimina entradas expiradas de la caché
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        cache.entrySet().removeIf(e -> e.getValue().isExpired(now));
+    }
+}
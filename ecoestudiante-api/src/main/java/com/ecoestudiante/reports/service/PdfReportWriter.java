@@ -0,0 +1,228 @@
+package com.ecoestudiante.reports.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escritor PDF mínimo en streaming para reportes tabulares.
+ *
+ * Genera texto con las fuentes estándar Helvetica / Helvetica-Bold (WinAnsiEncoding,
+ * sin incrustar fuentes). Solo mantiene en memoria la página en curso: cada página
+ * se vuelca al OutputStream al llenarse, así que el tamaño del reporte no afecta
+ * la memoria.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+class PdfReportWriter implements AutoCloseable {
+
+    private static final Charset WIN_ANSI = Charset.forName("windows-1252");
+
+    private static final float PAGE_WIDTH = 595f;   // A4
+    private static final float PAGE_HEIGHT = 842f;
+    private static final float MARGIN = 50f;
+    private static final float LINE_HEIGHT = 14f;
+    private static final float FONT_SIZE = 9f;
+
+    // Objetos fijos: 1 catálogo, 2 árbol de páginas, 3 Helvetica, 4 Helvetica-Bold
+    private static final int CATALOG = 1;
+    private static final int PAGES = 2;
+    private static final int FONT_REGULAR = 3;
+    private static final int FONT_BOLD = 4;
+
+    private final CountingOutputStream out;
+    private final List<Long> offsets = new ArrayList<>();
+    private final List<Integer> pageObjects = new ArrayList<>();
+    private final ByteArrayOutputStream page = new ByteArrayOutputStream();
+    private float y;
+    private boolean pageOpen;
+    private String[] repeatHeader;
+    private float[] repeatColumns;
+
+    PdfReportWriter(OutputStream target) throws IOException {
+        this.out = new CountingOutputStream(target);
+        write("%PDF-1.4\n%âãÏÓ\n", StandardCharsets.ISO_8859_1);
+        // Reservar los objetos fijos; el árbol de páginas se escribe al cerrar
+        offsets.add(0L); // objeto 0 (libre)
+        startObject(CATALOG);
+        write("<< /Type /Catalog /Pages " + PAGES + " 0 R >>\nendobj\n");
+        offsets.add(0L); // PAGES, se completa al final
+        startObject(FONT_REGULAR);
+        write("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica /Encoding /WinAnsiEncoding >>\nendobj\n");
+        startObject(FONT_BOLD);
+        write("<< /Type /Font /Subtype /Type1 /BaseFont /Helvetica-Bold /Encoding /WinAnsiEncoding >>\nendobj\n");
+    }
+
+    /**
+     * Título en negrita, más grande
+     */
+    void title(String text) throws IOException {
+        ensureSpace(LINE_HEIGHT * 2);
+        text(MARGIN, y, FONT_BOLD, 14f, text, Integer.MAX_VALUE);
+        y -= LINE_HEIGHT * 2;
+    }
+
+    void line(String text) throws IOException {
+        ensureSpace(LINE_HEIGHT);
+        text(MARGIN, y, FONT_REGULAR, FONT_SIZE, text, Integer.MAX_VALUE);
+        y -= LINE_HEIGHT;
+    }
+
+    void blank() throws IOException {
+        y -= LINE_HEIGHT;
+    }
+
+    /**
+     * Encabezado de tabla; se repite al inicio de cada página nueva hasta {@link #endTable()}
+     *
+     * @param columns posición x de cada columna relativa al margen
+     */
+    void tableHeader(float[] columns, String... headers) throws IOException {
+        repeatColumns = columns;
+        repeatHeader = headers;
+        ensureSpace(LINE_HEIGHT * 2);
+        writeRow(FONT_BOLD, columns, headers);
+    }
+
+    void row(String... cells) throws IOException {
+        ensureSpace(LINE_HEIGHT);
+        writeRow(FONT_REGULAR, repeatColumns, cells);
+    }
+
+    void endTable() {
+        repeatHeader = null;
+        repeatColumns = null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!pageOpen) {
+            openPage();
+        }
+        flushPage();
+
+        offsets.set(PAGES, out.count);
+        StringBuilder kids = new StringBuilder();
+        for (int obj : pageObjects) {
+            kids.append(obj).append(" 0 R ");
+        }
+        write(PAGES + " 0 obj\n<< /Type /Pages /Kids [" + kids + "] /Count " + pageObjects.size() + " >>\nendobj\n");
+
+        long xref = out.count;
+        StringBuilder table = new StringBuilder("xref\n0 " + offsets.size() + "\n");
+        table.append("0000000000 65535 f \n");
+        for (int i = 1; i < offsets.size(); i++) {
+            table.append(String.format("%010d 00000 n \n", offsets.get(i)));
+        }
+        table.append("trailer\n<< /Size ").append(offsets.size()).append(" /Root ").append(CATALOG)
+                .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+        write(table.toString());
+        out.flush();
+    }
+
+    private void writeRow(int font, float[] columns, String[] cells) throws IOException {
+        for (int i = 0; i < cells.length && i < columns.length; i++) {
+            float width = (i + 1 < columns.length ? columns[i + 1] : PAGE_WIDTH - 2 * MARGIN) - columns[i];
+            // Ancho medio de Helvetica ≈ 0.5 em
+            int maxChars = Math.max(1, (int) (width / (FONT_SIZE * 0.5f)) - 1);
+            text(MARGIN + columns[i], y, font, FONT_SIZE, cells[i], maxChars);
+        }
+        y -= LINE_HEIGHT;
+    }
+
+    private void ensureSpace(float needed) throws IOException {
+        if (pageOpen && y - needed >= MARGIN) {
+            return;
+        }
+        if (pageOpen) {
+            flushPage();
+        }
+        openPage();
+        if (repeatHeader != null) {
+            writeRow(FONT_BOLD, repeatColumns, repeatHeader);
+        }
+    }
+
+    private void openPage() {
+        page.reset();
+        y = PAGE_HEIGHT - MARGIN;
+        pageOpen = true;
+    }
+
+    private void flushPage() throws IOException {
+        byte[] content = page.toByteArray();
+        int contentObj = offsets.size();
+        startObject(contentObj);
+        write("<< /Length " + content.length + " >>\nstream\n");
+        out.write(content);
+        write("\nendstream\nendobj\n");
+
+        int pageObj = offsets.size();
+        startObject(pageObj);
+        write("<< /Type /Page /Parent " + PAGES + " 0 R /MediaBox [0 0 " + (int) PAGE_WIDTH + " " + (int) PAGE_HEIGHT + "]"
+                + " /Resources << /Font << /F1 " + FONT_REGULAR + " 0 R /F2 " + FONT_BOLD + " 0 R >> >>"
+                + " /Contents " + contentObj + " 0 R >>\nendobj\n");
+        pageObjects.add(pageObj);
+        pageOpen = false;
+    }
+
+    private void text(float x, float y, int font, float size, String value, int maxChars) throws IOException {
+        String text = value == null ? "" : value;
+        if (text.length() > maxChars) {
+            text = text.substring(0, Math.max(0, maxChars - 1)) + "…";
+        }
+        String fontName = font == FONT_BOLD ? "/F2" : "/F1";
+        page.write(("BT " + fontName + " " + size + " Tf " + x + " " + y + " Td (").getBytes(StandardCharsets.US_ASCII));
+        for (byte b : text.getBytes(WIN_ANSI)) {
+            if (b == '(' || b == ')' || b == '\\') {
+                page.write('\\');
+            }
+            page.write(b);
+        }
+        page.write(") Tj ET\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void startObject(int number) throws IOException {
+        if (number < offsets.size()) {
+            offsets.set(number, out.count);
+        } else {
+            offsets.add(out.count);
+        }
+        write(number + " 0 obj\n");
+    }
+
+    private void write(String s) throws IOException {
+        write(s, StandardCharsets.US_ASCII);
+    }
+
+    private void write(String s, Charset charset) throws IOException {
+        out.write(s.getBytes(charset));
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
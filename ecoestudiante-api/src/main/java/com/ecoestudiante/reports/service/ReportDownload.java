@@ -0,0 +1,22 @@
+package com.ecoestudiante.reports.service;
+
+import java.nio.file.Path;
+
+/**
+ * Resultado de solicitar la descarga de un reporte.
+ *
+ * @param status READY si el archivo puede enviarse, NOT_READY si el job aún no termina
+ *               (o falló) y EXPIRED si venció la ventana de descarga
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+public record ReportDownload(Status status, Path path, String fileName, String contentType, long size) {
+
+    public enum Status { READY, NOT_READY, EXPIRED }
+
+    static ReportDownload of(Status status) {
+        return new ReportDownload(status, null, null, null, 0L);
+    }
+}
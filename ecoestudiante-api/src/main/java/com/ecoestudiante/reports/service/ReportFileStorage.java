@@ -0,0 +1,123 @@
+package com.ecoestudiante.reports.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+/**
+ * Almacenamiento local de los archivos de reportes generados.
+ *
+ * Cada reporte se escribe primero en un archivo temporal y se mueve a su nombre
+ * final al terminar, de modo que una descarga nunca ve un archivo a medias.
+ * Ambos nombres incluyen el intento del job: si un worker pierde su lease y otro
+ * retoma el job, cada uno escribe (y limpia) solo sus propios archivos.
+ * Las rutas guardadas en report_job son relativas al directorio base.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class ReportFileStorage {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportFileStorage.class);
+
+    private final Path baseDir;
+
+    public ReportFileStorage(
+            @Value("${app.reports.storage-dir:${java.io.tmpdir}/ecoestudiante-reports}") String baseDir) {
+        this.baseDir = Paths.get(baseDir).toAbsolutePath().normalize();
+    }
+
+    /**
+     * Archivo en escritura: se publica con {@link #commit()} o se descarta con {@link #close()}.
+     */
+    public final class PendingFile implements AutoCloseable {
+        private final Path tmp;
+        private final Path target;
+        private final String relativePath;
+        private final OutputStream out;
+        private boolean committed;
+
+        private PendingFile(Path tmp, Path target, String relativePath) throws IOException {
+            this.tmp = tmp;
+            this.target = target;
+            this.relativePath = relativePath;
+            this.out = Files.newOutputStream(tmp);
+        }
+
+        public OutputStream outputStream() {
+            return out;
+        }
+
+        /**
+         * Cierra el archivo y lo mueve a su ubicación final.
+         *
+         * @return ruta relativa para guardar en report_job
+         */
+        public String commit() throws IOException {
+            out.close();
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+            return relativePath;
+        }
+
+        public long size() throws IOException {
+            return Files.size(committed ? target : tmp);
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                out.close();
+                Files.deleteIfExists(tmp);
+            } catch (IOException e) {
+                logger.warn("No se pudo eliminar archivo temporal de reporte {}", tmp, e);
+            }
+        }
+    }
+
+    public PendingFile create(UUID jobId, int attempt, String extension) {
+        try {
+            Files.createDirectories(baseDir);
+            String relativePath = jobId + "." + attempt + "." + extension;
+            Path target = baseDir.resolve(relativePath);
+            Path tmp = baseDir.resolve(jobId + "." + attempt + ".part");
+            return new PendingFile(tmp, target, relativePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo crear el archivo del reporte " + jobId, e);
+        }
+    }
+
+    /**
+     * Resuelve una ruta relativa guardada, sin permitir salir del directorio base
+     */
+    public Path resolve(String relativePath) {
+        Path path = baseDir.resolve(relativePath).normalize();
+        if (!path.startsWith(baseDir)) {
+            throw new IllegalArgumentException("Ruta de reporte inválida: " + relativePath);
+        }
+        return path;
+    }
+
+    public void delete(String relativePath) {
+        try {
+            Files.deleteIfExists(resolve(relativePath));
+        } catch (IOException e) {
+            logger.warn("No se pudo eliminar archivo de reporte {}", relativePath, e);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.ecoestudiante.reports.service;
+
+import com.ecoestudiante.gamification.repository.ScheduledJobLockRepository;
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import com.ecoestudiante.reports.repository.ReportJobRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker de generación de reportes.
+ *
+ * Un poller programado reclama jobs de report_job (FOR UPDATE SKIP LOCKED) solo
+ * hasta llenar los threads libres del pool acotado, y cada job se genera en ese
+ * pool; nunca en un thread de petición HTTP. Varias instancias de la API pueden
+ * compartir la cola sin pisarse.
+ *
+ * Un job que falla vuelve a PENDING hasta agotar app.reports.max-attempts, y no
+ * se reintenta antes de app.reports.retry-delay-seconds × intentos; si el proceso
+ * muere a mitad, el lease vence y otro worker lo retoma. Un worker que detecta que
+ * perdió su lease (sus escrituras ya no coinciden con el intento reclamado)
+ * abandona el job sin tocar su estado.
+ *
+ * La limpieza corre en una sola réplica por intervalo (scheduled_job_lock).
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class ReportJobWorker {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReportJobWorker.class);
+
+    private static final String CLEANUP_JOB = "report-cleanup";
+
+    /**
+     * El job fue retomado por otro worker tras vencer el lease de este intento
+     */
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException(ReportJobRecord job) {
+            super("Lease perdido para el reporte " + job.getId() + " (intento " + job.getAttempts() + ")");
+        }
+    }
+
+    private final ReportJobRepository repository;
+    private final ReportRenderer renderer;
+    private final ReportFileStorage storage;
+    private final ScheduledJobLockRepository lockRepository;
+    private final TransactionTemplate progressTx;
+    private final ThreadPoolTaskExecutor executor;
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final int threads;
+    private final int leaseSeconds;
+    private final int maxAttempts;
+    private final int retryDelaySeconds;
+    private final int downloadTtlHours;
+    private final long cleanupIntervalMs;
+    private final long cleanupLockLeaseSeconds;
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName();
+
+    public ReportJobWorker(
+            ReportJobRepository repository,
+            ReportRenderer renderer,
+            ReportFileStorage storage,
+            ScheduledJobLockRepository lockRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.reports.worker.threads:2}") int threads,
+            @Value("${app.reports.lease-seconds:120}") int leaseSeconds,
+            @Value("${app.reports.max-attempts:3}") int maxAttempts,
+            @Value("${app.reports.retry-delay-seconds:60}") int retryDelaySeconds,
+            @Value("${app.reports.download-ttl-hours:24}") int downloadTtlHours,
+            @Value("${app.reports.cleanup-interval-ms:600000}") long cleanupIntervalMs,
+            @Value("${app.reports.cleanup-lock-lease-seconds:300}") long cleanupLockLeaseSeconds) {
+        this.repository = repository;
+        this.renderer = renderer;
+        this.storage = storage;
+        this.lockRepository = lockRepository;
+        // El render corre en una transacción de solo lectura: el progreso se confirma aparte
+        this.progressTx = new TransactionTemplate(transactionManager);
+        this.progressTx.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.threads = threads;
+        this.leaseSeconds = leaseSeconds;
+        this.maxAttempts = maxAttempts;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.downloadTtlHours = downloadTtlHours;
+        this.cleanupIntervalMs = Math.max(1, cleanupIntervalMs);
+        this.cleanupLockLeaseSeconds = cleanupLockLeaseSeconds;
+
+        this.executor = new ThreadPoolTaskExecutor();
+        this.executor.setCorePoolSize(threads);
+        this.executor.setMaxPoolSize(threads);
+        this.executor.setQueueCapacity(threads);
+        this.executor.setThreadNamePrefix("report-worker-");
+        this.executor.setWaitForTasksToCompleteOnShutdown(true);
+        this.executor.setAwaitTerminationSeconds(30);
+        this.executor.initialize();
+    }
+
+    /**
+     * Reclama tantos jobs como threads libres haya
+     */
+    @Scheduled(fixedDelayString = "${app.reports.poll-interval-ms:2000}")
+    public void poll() {
+        try {
+            int free = threads - running.get();
+            if (free <= 0) {
+                return;
+            }
+            List<ReportJobRecord> claimed = repository.claim(free, leaseSeconds, maxAttempts);
+            for (ReportJobRecord job : claimed) {
+                running.incrementAndGet();
+                executor.execute(() -> {
+                    try {
+                        process(job);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+            }
+        } catch (Exception e) {
+            logger.error("❌ Error reclamando jobs de reportes", e);
+        }
+    }
+
+    /**
+     * Cierra jobs abandonados y elimina archivos cuyo enlace de descarga venció.
+     * Una sola réplica por intervalo: las demás encuentran el lock tomado y lo omiten.
+     */
+    @Scheduled(fixedDelayString = "${app.reports.cleanup-interval-ms:600000}")
+    public void cleanup() {
+        String runKey = Long.toString(System.currentTimeMillis() / cleanupIntervalMs);
+        if (!lockRepository.tryAcquire(CLEANUP_JOB, runKey, owner, cleanupLockLeaseSeconds)) {
+            logger.debug("Limpieza de reportes ya hecha o en curso en otra réplica");
+            return;
+        }
+        try {
+            int abandoned = repository.failAbandoned(maxAttempts);
+            if (abandoned > 0) {
+                logger.warn("Reportes: {} jobs abandonados marcados como FAILED", abandoned);
+            }
+            for (ReportJobRecord job : repository.findExpiredFiles(500)) {
+                storage.delete(job.getFilePath());
+                repository.clearFile(job.getId());
+            }
+            lockRepository.complete(CLEANUP_JOB, runKey, owner);
+        } catch (Exception e) {
+            logger.error("❌ Error limpiando reportes expirados", e);
+            try {
+                lockRepository.release(CLEANUP_JOB, owner);
+            } catch (Exception releaseError) {
+                logger.error("❌ No se pudo liberar el lock de {}; vence en {} s",
+                        CLEANUP_JOB, cleanupLockLeaseSeconds, releaseError);
+            }
+        }
+    }
+
+    void process(ReportJobRecord job) {
+        String extension = "PDF".equals(job.getExportFormat()) ? "pdf" : "csv";
+        logger.info("Generando reporte {} - usuario: {}, tipo: {}, formato: {}, intento: {}",
+                job.getId(), job.getUserId(), job.getReportType(), job.getExportFormat(), job.getAttempts());
+
+        int attempt = job.getAttempts();
+        try (ReportFileStorage.PendingFile file = storage.create(job.getId(), attempt, extension)) {
+            renderer.render(job, file.outputStream(), progress -> {
+                Boolean renewed = progressTx.execute(s ->
+                        repository.updateProgress(job.getId(), attempt, progress, leaseSeconds));
+                if (!Boolean.TRUE.equals(renewed)) {
+                    throw new LeaseLostException(job);
+                }
+            });
+            String path = file.commit();
+            String fileName = "reporte_" + job.getReportType().toLowerCase() + "_" + job.getRangeStart() + "." + extension;
+            long size = file.size();
+            if (!repository.markCompleted(job.getId(), attempt, path, fileName, size,
+                    LocalDateTime.now().plusHours(downloadTtlHours))) {
+                // El archivo es de este intento: nadie más lo referencia
+                storage.delete(path);
+                throw new LeaseLostException(job);
+            }
+            logger.info("✅ Reporte {} generado ({} bytes)", job.getId(), size);
+        } catch (LeaseLostException e) {
+            logger.warn("Reporte {}: {}; se abandona este intento", job.getId(), e.getMessage());
+        } catch (Exception e) {
+            logger.error("❌ Error generando reporte {} (intento {}/{})", job.getId(), attempt, maxAttempts, e);
+            if (!repository.markFailed(job.getId(), attempt, e.getMessage(), maxAttempts, retryDelaySeconds)) {
+                logger.warn("Reporte {}: lease perdido, el fallo del intento {} no se registra", job.getId(), attempt);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,160 @@
+package com.ecoestudiante.reports.service;
+
+import com.ecoestudiante.common.jdbc.StreamingQuery;
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Genera el contenido de un reporte de huella de carbono (PDF o CSV).
+ *
+ * Los cálculos del rango se leen con un cursor de servidor ({@link StreamingQuery})
+ * y se escriben fila a fila; el resumen por
+ * categoría se acumula durante el recorrido y se escribe al final.
+ *
+ * @author EcoEstudiante Team
+ * @version 1.0.0
+ * @since 2026-01-16
+ */
+@Component
+public class ReportRenderer {
+
+    private static final DateTimeFormatter DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    private static final float[] PDF_COLUMNS = {0f, 95f, 180f, 420f};
+
+    private final JdbcTemplate jdbc;
+    private final StreamingQuery streamingQuery;
+
+    public ReportRenderer(
+            JdbcTemplate jdbc,
+            DataSource dataSource,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.reports.fetch-size:1000}") int fetchSize) {
+        this.jdbc = jdbc;
+        this.streamingQuery = new StreamingQuery(dataSource, transactionManager, fetchSize);
+    }
+
+    /**
+     * Escribe el reporte del job en {@code out}.
+     *
+     * @param progress recibe el avance (0-99) tras el conteo y a medida que se
+     *                 recorren las filas; si lanza una excepción el render se aborta
+     */
+    public void render(ReportJobRecord job, OutputStream out, IntConsumer progress) throws IOException {
+        StringBuilder where = new StringBuilder(
+                "user_id = ?::uuid AND created_at >= ? AND created_at < ?::date + 1");
+        List<Object> params = new ArrayList<>();
+        params.add(job.getUserId());
+        params.add(Date.valueOf(job.getRangeStart()));
+        params.add(Date.valueOf(job.getRangeEnd()));
+        if (job.getCategories() != null && !job.getCategories().isEmpty()) {
+            where.append(" AND category IN (")
+                    .append(String.join(", ", java.util.Collections.nCopies(job.getCategories().size(), "?")))
+                    .append(")");
+            params.addAll(job.getCategories());
+        }
+
+        Long total = jdbc.queryForObject(
+                "SELECT COUNT(*) FROM calculation WHERE " + where, Long.class, params.toArray());
+        long expected = total != null ? total : 0L;
+        // El conteo puede tardar: renueva el lease antes de abrir el cursor
+        progress.accept(0);
+
+        String sql = "SELECT created_at, category, subcategory_label, result_kg_co2e FROM calculation WHERE "
+                + where + " ORDER BY created_at, id";
+
+        if ("PDF".equals(job.getExportFormat())) {
+            renderPdf(job, sql, params, expected, out, progress);
+        } else {
+            renderCsv(sql, params, expected, out, progress);
+        }
+    }
+
+    private void renderCsv(String sql, List<Object> params, long expected, OutputStream out, IntConsumer progress)
+            throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        writer.write("created_at,category,subcategory,kg_co2e\n");
+        stream(sql, params, expected, progress, rs -> {
+            writer.write(rs.getTimestamp("created_at").toLocalDateTime().format(DATE_TIME));
+            writer.write(',');
+            writer.write(csv(rs.getString("category")));
+            writer.write(',');
+            writer.write(csv(rs.getString("subcategory_label")));
+            writer.write(',');
+            writer.write(rs.getBigDecimal("result_kg_co2e").toPlainString());
+            writer.write('\n');
+        });
+        writer.flush();
+    }
+
+    private void renderPdf(ReportJobRecord job, String sql, List<Object> params, long expected,
+                           OutputStream out, IntConsumer progress) throws IOException {
+        Map<String, BigDecimal> byCategory = new TreeMap<>();
+        try (PdfReportWriter pdf = new PdfReportWriter(out)) {
+            pdf.title("Reporte de huella de carbono");
+            pdf.line("Tipo: " + job.getReportType() + "   Período: " + job.getRangeStart() + " a " + job.getRangeEnd());
+            pdf.line("Registros: " + expected);
+            pdf.blank();
+            pdf.tableHeader(PDF_COLUMNS, "Fecha", "Categoría", "Subcategoría", "kg CO2e");
+            stream(sql, params, expected, progress, rs -> {
+                BigDecimal kg = rs.getBigDecimal("result_kg_co2e");
+                String category = rs.getString("category");
+                byCategory.merge(category, kg, BigDecimal::add);
+                pdf.row(
+                        rs.getTimestamp("created_at").toLocalDateTime().format(DATE_TIME),
+                        category,
+                        rs.getString("subcategory_label"),
+                        kg.setScale(3, java.math.RoundingMode.HALF_UP).toPlainString());
+            });
+            pdf.endTable();
+
+            pdf.blank();
+            pdf.tableHeader(new float[] {0f, 180f}, "Resumen por categoría", "kg CO2e");
+            BigDecimal total = BigDecimal.ZERO;
+            for (Map.Entry<String, BigDecimal> entry : byCategory.entrySet()) {
+                pdf.row(entry.getKey(), entry.getValue().setScale(3, java.math.RoundingMode.HALF_UP).toPlainString());
+                total = total.add(entry.getValue());
+            }
+            pdf.row("Total", total.setScale(3, java.math.RoundingMode.HALF_UP).toPlainString());
+            pdf.endTable();
+        }
+    }
+
+    private void stream(String sql, List<Object> params, long expected, IntConsumer progress,
+                        StreamingQuery.RowSink sink) {
+        long step = Math.max(1, expected / 20); // ~5% por aviso
+        long[] rows = {0};
+        streamingQuery.forEach(sql, params.toArray(), rs -> {
+            sink.accept(rs);
+            rows[0]++;
+            if (rows[0] % step == 0 && expected > 0) {
+                progress.accept((int) Math.min(99, rows[0] * 100 / expected));
+            }
+        });
+    }
+
+    private static String csv(String value) {
+        if (value == null) {
+            return "";
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -12,8 +12,6 @@ import java.util.List;
  * - Exportación de reportes (PDF, CSV, Excel)
  * - Agregados anonimizados
  * 
- * Implementación inicial: Stub que retorna datos vacíos o mock.
- * 
  * Alineado con la arquitectura de microservicios descrita en la tesis.
  * 
  * @author EcoEstudiante Team
@@ -48,14 +46,24 @@ public interface ReportsService {
      */
     List<ReportsDtos.ReportExport> getExports(String userId);
 
+    /**
+     * Obtiene el archivo de un reporte completado para su descarga.
+     *
+     * @param jobId ID del job
+     * @param userId ID del usuario (UUID normalizado) - para validación de acceso
+     * @return descarga con su estado, o null si el job no existe para el usuario
+     */
+    ReportDownload getDownload(String jobId, String userId);
+
     /**
      * Obtiene agregados anonimizados para análisis estadístico.
      * 
-     * @param period Período del agregado (ej: "2025-01")
+     * @param period Período del agregado (ej: "2025-01"); null para los últimos 12 meses
      * @param category Categoría a agregar (opcional)
+     * @param scope Nivel de agregación: GLOBAL (por defecto), INSTITUTION o CAMPUS
      * @return Lista de agregados anonimizados
      */
-    List<ReportsDtos.AnonymizedAggregate> getAnonymizedAggregates(String period, String category);
+    List<ReportsDtos.AnonymizedAggregate> getAnonymizedAggregates(String period, String category, String scope);
 }
 
 
@@ -1,36 +1,42 @@
 package com.ecoestudiante.reports.service;
 
 import com.ecoestudiante.reports.dto.ReportsDtos;
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import com.ecoestudiante.reports.repository.AnonymizedAggregateRepository;
+import com.ecoestudiante.reports.repository.ReportJobRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.Collections;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.UUID;
 
 /**
  * Implementación del servicio de Reportes.
  * 
- * IMPLEMENTACIÓN INICIAL: STUB
- * 
- * Esta implementación retorna datos vacíos o mock para mantener la estructura
- * del bounded context lista para futura implementación completa.
- * 
- * La implementación real deberá:
- * - Crear jobs asíncronos en tabla report_job
- * - Procesar reportes en background (usando @Async o cola de mensajes)
- * - Generar PDFs usando librerías como iText o Apache PDFBox
- * - Generar CSVs y Excel usando Apache POI o similar
- * - Almacenar archivos generados (S3, sistema de archivos, etc.)
- * - Proporcionar URLs de descarga con expiración
- * - Generar agregados anonimizados para análisis estadístico
+ * Los reportes se generan de forma asíncrona:
+ * - generateReport solo valida, resuelve el rango de fechas y persiste el job
+ *   (PENDING) en report_job; responde de inmediato.
+ * - {@link ReportJobWorker} reclama los jobs con FOR UPDATE SKIP LOCKED y los
+ *   genera en un pool acotado, fuera de los threads de petición.
+ * - El archivo (PDF o CSV) queda en {@link ReportFileStorage} y se descarga por
+ *   /api/v1/reports/jobs/{jobId}/download hasta su expiración.
+ * - Los agregados anonimizados salen de una tabla materializada con caché en
+ *   memoria ({@link AnonymizedAggregateService}).
  * 
  * Alineado con la arquitectura de microservicios descrita en la tesis.
  * 
  * @author EcoEstudiante Team
- * @version 0.1.0-SNAPSHOT
+ * @version 0.2.0
  * @since 2025-01-27
  */
 @Service
@@ -38,129 +44,224 @@ public class ReportsServiceImpl implements ReportsService {
 
     private static final Logger logger = LoggerFactory.getLogger(ReportsServiceImpl.class);
 
-    public ReportsServiceImpl() {
-        logger.info("ReportsService inicializado (implementación stub)");
+    private static final Set<String> REPORT_TYPES = Set.of("MONTHLY", "YEARLY", "CUSTOM");
+    private static final Set<String> FORMATS = Set.of("PDF", "CSV");
+    private static final long MAX_CUSTOM_RANGE_DAYS = 731;
+    private static final Set<String> AGGREGATE_SCOPES = Set.of(
+            AnonymizedAggregateRepository.GLOBAL,
+            AnonymizedAggregateRepository.INSTITUTION,
+            AnonymizedAggregateRepository.CAMPUS);
+
+    private final ReportJobRepository repository;
+    private final ReportFileStorage storage;
+    private final AnonymizedAggregateService aggregateService;
+
+    public ReportsServiceImpl(ReportJobRepository repository, ReportFileStorage storage,
+                              AnonymizedAggregateService aggregateService) {
+        this.repository = repository;
+        this.storage = storage;
+        this.aggregateService = aggregateService;
     }
 
     /**
      * {@inheritDoc}
      * 
-     * IMPLEMENTACIÓN STUB: Retorna job con estado PENDING.
-     * 
-     * Implementación futura deberá:
-     * - Insertar registro en tabla report_job con status 'PENDING'
-     * - Enviar job a cola de procesamiento asíncrono
-     * - Retornar job con ID generado
+     * Persiste el job como PENDING; el worker lo procesa en segundo plano.
      */
     @Override
     public ReportsDtos.ReportJob generateReport(String userId, ReportsDtos.ReportRequest request) {
-        logger.info("generateReport llamado para usuario: {}, tipo: {}, formato: {} (stub - retornando job mock)",
-                userId, request.reportType(), request.exportFormat());
-        
-        // TODO: Implementar generación real de reporte
-        // 1. INSERT INTO report_job (id, user_id, status, params, created_at) VALUES (?, ?, 'PENDING', ?, NOW())
-        // 2. Enviar a cola de procesamiento: @Async o RabbitMQ/Kafka
-        // 3. Procesar en background: consultar cálculos, generar PDF/CSV/Excel, almacenar archivo
-        
-        String jobId = UUID.randomUUID().toString();
-        return new ReportsDtos.ReportJob(
-                jobId,
-                "PENDING",
-                request.reportType(),
-                request.exportFormat(),
-                LocalDateTime.now(),
-                null,
-                null,
-                null,
-                0
-        );
+        String reportType = normalize(request.reportType(), "MONTHLY");
+        String format = normalize(request.exportFormat(), "PDF");
+        if (!REPORT_TYPES.contains(reportType)) {
+            throw new IllegalArgumentException("Tipo de reporte no soportado: " + request.reportType()
+                    + " (MONTHLY, YEARLY, CUSTOM)");
+        }
+        if (!FORMATS.contains(format)) {
+            throw new IllegalArgumentException("Formato de exportación no soportado: " + request.exportFormat()
+                    + " (PDF, CSV)");
+        }
+
+        LocalDate start = parseDate(request.startDate(), "startDate");
+        LocalDate end = parseDate(request.endDate(), "endDate");
+        LocalDate today = LocalDate.now();
+        switch (reportType) {
+            case "MONTHLY" -> {
+                YearMonth month = YearMonth.from(start != null ? start : today);
+                start = month.atDay(1);
+                end = month.atEndOfMonth();
+            }
+            case "YEARLY" -> {
+                int year = (start != null ? start : today).getYear();
+                start = LocalDate.of(year, 1, 1);
+                end = LocalDate.of(year, 12, 31);
+            }
+            default -> {
+                if (start == null || end == null) {
+                    throw new IllegalArgumentException("Los reportes CUSTOM requieren startDate y endDate");
+                }
+                if (end.isBefore(start)) {
+                    throw new IllegalArgumentException("endDate no puede ser anterior a startDate");
+                }
+                if (ChronoUnit.DAYS.between(start, end) > MAX_CUSTOM_RANGE_DAYS) {
+                    throw new IllegalArgumentException("El rango de un reporte CUSTOM no puede superar 2 años");
+                }
+            }
+        }
+
+        ReportJobRecord job = new ReportJobRecord();
+        job.setId(UUID.randomUUID());
+        job.setUserId(UUID.fromString(userId));
+        job.setStatus(ReportJobRecord.PENDING);
+        job.setReportType(reportType);
+        job.setExportFormat(format);
+        job.setRangeStart(start);
+        job.setRangeEnd(end);
+        job.setCategories(request.categories() != null
+                ? request.categories().stream().filter(c -> c != null && !c.isBlank()).distinct().toList()
+                : List.of());
+        job.setProgress(0);
+        job.setCreatedAt(LocalDateTime.now());
+        repository.insert(job);
+
+        logger.info("Job de reporte {} encolado - usuario: {}, tipo: {}, formato: {}, rango: {} a {}",
+                job.getId(), userId, reportType, format, start, end);
+        return toDto(job);
     }
 
     /**
      * {@inheritDoc}
-     * 
-     * IMPLEMENTACIÓN STUB: Retorna job mock con estado COMPLETED.
-     * 
-     * Implementación futura deberá:
-     * - Consultar job desde tabla report_job
-     * - Validar que el job pertenece al usuario
-     * - Retornar estado actual (PENDING, PROCESSING, COMPLETED, FAILED)
-     * - Si está COMPLETED, incluir downloadUrl
      */
     @Override
     public ReportsDtos.ReportJob getReportJob(String jobId, String userId) {
-        logger.debug("getReportJob llamado para jobId: {}, userId: {} (stub - retornando job mock)",
-                jobId, userId);
-        
-        // TODO: Implementar consulta real
-        // SELECT * FROM report_job WHERE id = ?::uuid AND user_id = ?::uuid
-        
-        return new ReportsDtos.ReportJob(
-                jobId,
-                "COMPLETED",
-                "MONTHLY",
-                "PDF",
-                LocalDateTime.now().minusHours(1),
-                LocalDateTime.now(),
-                "https://example.com/reports/download/" + jobId, // Mock URL
-                null,
-                100
-        );
+        UUID id = parseJobId(jobId);
+        if (id == null) {
+            return null;
+        }
+        return repository.findByIdAndUser(id, UUID.fromString(userId))
+                .map(this::toDto)
+                .orElse(null);
     }
 
     /**
      * {@inheritDoc}
      * 
-     * IMPLEMENTACIÓN STUB: Retorna lista vacía.
-     * 
-     * Implementación futura deberá:
-     * - Consultar exports desde tabla report_exports
-     * - Filtrar por usuario
-     * - Incluir información de archivos y URLs de descarga
-     * - Filtrar exports expirados
+     * Solo reportes completados cuyo enlace no ha expirado.
      */
     @Override
     public List<ReportsDtos.ReportExport> getExports(String userId) {
-        logger.debug("getExports llamado para usuario: {} (stub - retornando lista vacía)", userId);
-        
-        // TODO: Implementar consulta real
-        // SELECT * FROM report_exports WHERE user_id = ?::uuid AND expires_at > NOW() ORDER BY generated_at DESC
-        
-        return Collections.emptyList();
+        return repository.findDownloadable(UUID.fromString(userId)).stream()
+                .map(job -> new ReportsDtos.ReportExport(
+                        job.getId().toString(),
+                        job.getFileName(),
+                        job.getReportType(),
+                        job.getExportFormat(),
+                        job.getFileSize(),
+                        downloadUrl(job),
+                        job.getCompletedAt(),
+                        job.getExpiresAt()))
+                .toList();
     }
 
     /**
      * {@inheritDoc}
-     * 
-     * IMPLEMENTACIÓN STUB: Retorna lista vacía.
-     * 
-     * Implementación futura deberá:
-     * - Consultar cálculos agregados desde tabla calculation
-     * - Agrupar por período y categoría
-     * - Anonimizar datos (remover user_id, agregar por región si aplica)
-     * - Calcular promedios y totales
-     * - Retornar agregados para análisis estadístico
      */
     @Override
-    public List<ReportsDtos.AnonymizedAggregate> getAnonymizedAggregates(String period, String category) {
-        logger.debug("getAnonymizedAggregates llamado para period: {}, category: {} (stub - retornando lista vacía)",
-                period, category);
-        
-        // TODO: Implementar agregación real
-        // SELECT 
-        //   DATE_TRUNC('month', created_at) as period,
-        //   category,
-        //   AVG(result_kg_co2e) as avg_emissions,
-        //   COUNT(*) as record_count
-        // FROM calculation
-        // WHERE DATE_TRUNC('month', created_at) = ?
-        //   AND (category = ? OR ? IS NULL)
-        // GROUP BY period, category
-        
-        return Collections.emptyList();
+    public ReportDownload getDownload(String jobId, String userId) {
+        UUID id = parseJobId(jobId);
+        if (id == null) {
+            return null;
+        }
+        ReportJobRecord job = repository.findByIdAndUser(id, UUID.fromString(userId)).orElse(null);
+        if (job == null) {
+            return null;
+        }
+        if (!ReportJobRecord.COMPLETED.equals(job.getStatus())) {
+            return ReportDownload.of(ReportDownload.Status.NOT_READY);
+        }
+        if (job.getFilePath() == null || job.getExpiresAt() == null || !job.getExpiresAt().isAfter(LocalDateTime.now())) {
+            return ReportDownload.of(ReportDownload.Status.EXPIRED);
+        }
+        Path path = storage.resolve(job.getFilePath());
+        if (!Files.exists(path)) {
+            logger.warn("Archivo del reporte {} no encontrado en almacenamiento: {}", job.getId(), path);
+            return ReportDownload.of(ReportDownload.Status.EXPIRED);
+        }
+        String contentType = "PDF".equals(job.getExportFormat()) ? "application/pdf" : "text/csv";
+        return new ReportDownload(ReportDownload.Status.READY, path, job.getFileName(), contentType,
+                job.getFileSize() != null ? job.getFileSize() : 0L);
     }
-}
 
+    private ReportsDtos.ReportJob toDto(ReportJobRecord job) {
+        boolean downloadable = ReportJobRecord.COMPLETED.equals(job.getStatus())
+                && job.getFilePath() != null
+                && job.getExpiresAt() != null
+                && job.getExpiresAt().isAfter(LocalDateTime.now());
+        return new ReportsDtos.ReportJob(
+                job.getId().toString(),
+                job.getStatus(),
+                job.getReportType(),
+                job.getExportFormat(),
+                job.getCreatedAt(),
+                job.getCompletedAt(),
+                downloadable ? downloadUrl(job) : null,
+                ReportJobRecord.FAILED.equals(job.getStatus()) ? job.getErrorMessage() : null,
+                job.getProgress()
+        );
+    }
 
+    private static String downloadUrl(ReportJobRecord job) {
+        return "/api/v1/reports/jobs/" + job.getId() + "/download";
+    }
 
+    private static String normalize(String value, String defaultValue) {
+        return value == null || value.isBlank() ? defaultValue : value.trim().toUpperCase(Locale.ROOT);
+    }
+
+    private static LocalDate parseDate(String value, String field) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Fecha inválida en " + field + " (se espera yyyy-MM-dd): " + value);
+        }
+    }
 
+    private static UUID parseJobId(String jobId) {
+        try {
+            return UUID.fromString(jobId);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * Se sirve desde anonymized_aggregate (materializada y con supresión k-anónima
+     * por {@link AnonymizedAggregateService}); nunca lee filas de calculation.
+     */
+    @Override
+    public List<ReportsDtos.AnonymizedAggregate> getAnonymizedAggregates(String period, String category, String scope) {
+        String level = normalize(scope, AnonymizedAggregateRepository.GLOBAL);
+        if (!AGGREGATE_SCOPES.contains(level)) {
+            throw new IllegalArgumentException("Nivel de agregación no soportado: " + scope
+                    + " (GLOBAL, INSTITUTION, CAMPUS)");
+        }
+        YearMonth from;
+        YearMonth to;
+        if (period == null || period.isBlank()) {
+            to = YearMonth.now();
+            from = to.minusMonths(11);
+        } else {
+            try {
+                from = to = YearMonth.parse(period.trim());
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Período inválido (se espera yyyy-MM): " + period);
+            }
+        }
+        String cat = category == null || category.isBlank() ? null : category.trim().toLowerCase(Locale.ROOT);
+        return aggregateService.find(level, from, to, cat);
+    }
+}
@@ -0,0 +1,42 @@
+-- V22: Clave de idempotencia como columna propia para todas las categorías
+-- Fecha: 2026-01-12
+-- Descripción: Reemplaza las búsquedas por input_json->>'idempotencyKey' (y el índice
+-- parcial solo para electricidad de V3) por una columna indexada común a
+-- electricidad, transporte y residuos.
+
+-- 1) Nueva columna
+ALTER TABLE calculation
+ADD COLUMN IF NOT EXISTS idempotency_key TEXT;
+
+-- 2) Backfill desde el JSON de entrada
+UPDATE calculation
+SET idempotency_key = input_json->>'idempotencyKey'
+WHERE idempotency_key IS NULL
+  AND input_json->>'idempotencyKey' IS NOT NULL;
+
+-- 3) Transporte y residuos no tenían índice único: conservar solo el primer
+--    cálculo de cada (usuario, categoría, clave) como dueño de la clave
+WITH ranked AS (
+  SELECT id,
+         row_number() OVER (
+           PARTITION BY user_id, category, idempotency_key
+           ORDER BY created_at, id
+         ) AS rn
+  FROM calculation
+  WHERE idempotency_key IS NOT NULL
+)
+UPDATE calculation c
+SET idempotency_key = NULL
+FROM ranked r
+WHERE c.id = r.id
+  AND r.rn > 1;
+
+-- 4) Índice único para todas las categorías
+CREATE UNIQUE INDEX IF NOT EXISTS uq_calc_idempotency_key
+ON calculation (user_id, category, idempotency_key)
+WHERE idempotency_key IS NOT NULL;
+
+-- 5) El índice parcial de V3 queda cubierto por el nuevo
+DROP INDEX IF EXISTS uq_calc_idem_electricidad;
+
+COMMENT ON COLUMN calculation.idempotency_key IS 'Clave de idempotencia del cliente (única por usuario y categoría)';
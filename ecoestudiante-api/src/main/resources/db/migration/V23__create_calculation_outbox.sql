@@ -0,0 +1,29 @@
+-- V23: Outbox de efectos secundarios de cálculos
+-- Fecha: 2026-01-14
+-- Descripción: Cada cálculo nuevo registra en la misma transacción una fila en
+-- calculation_outbox. Un worker la drena por lotes y aplica, agrupado por usuario,
+-- el XP, la racha, el progreso de misiones y la actualización del leaderboard.
+-- Categoría, emisiones y datos de entrada se leen de calculation al procesar.
+
+CREATE TABLE IF NOT EXISTS calculation_outbox (
+    id BIGSERIAL PRIMARY KEY,
+    calculation_id UUID NOT NULL REFERENCES calculation(id) ON DELETE CASCADE,
+    user_id UUID NOT NULL,
+    xp_amount INTEGER NOT NULL DEFAULT 0,
+    created_at TIMESTAMP NOT NULL DEFAULT now(),
+    claimed_until TIMESTAMP,
+    attempts INTEGER NOT NULL DEFAULT 0,
+    last_error TEXT,
+    processed_at TIMESTAMP
+);
+
+-- Índice parcial: el worker solo recorre filas pendientes
+CREATE INDEX IF NOT EXISTS idx_calculation_outbox_pending
+ON calculation_outbox (id)
+WHERE processed_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_calculation_outbox_user
+ON calculation_outbox (user_id);
+
+COMMENT ON TABLE calculation_outbox IS 'Efectos secundarios pendientes de cálculos (XP, racha, misiones, leaderboard)';
+COMMENT ON COLUMN calculation_outbox.claimed_until IS 'Lease del worker que tomó la fila; vencido el plazo puede reintentarse';
@@ -0,0 +1,127 @@
+-- =============================================================================
+-- Migración V24: Rollup diario de emisiones por usuario
+-- =============================================================================
+-- Fecha: 2026-01-16
+-- Descripción: Tabla pre-agregada (usuario, día, categoría, subcategoría, ...)
+--              → suma de kgCO2e y cantidad de cálculos, mantenida de forma
+--              incremental por trigger al insertar/eliminar en calculation.
+--              Las estadísticas del dashboard leen de aquí en lugar de
+--              re-escanear todos los cálculos del usuario.
+--
+-- Dimensiones:
+--   subcategory : transportMode (transporte), disposalMethod (residuos), '' (resto)
+--   fuel_type   : fuelType (solo transporte), '' si no aplica
+--   career      : input_json->>'career', '' si no aplica
+--   schedule    : input_json->>'schedule', '' si no aplica
+-- Se usa '' en lugar de NULL para que formen parte de la clave primaria.
+-- =============================================================================
+
+-- -----------------------------------------------------------------------------
+-- 1. Tabla
+-- -----------------------------------------------------------------------------
+
+CREATE TABLE IF NOT EXISTS calculation_daily_rollup (
+    user_id UUID NOT NULL,
+    day DATE NOT NULL,
+    category TEXT NOT NULL,
+    subcategory TEXT NOT NULL DEFAULT '',
+    fuel_type TEXT NOT NULL DEFAULT '',
+    career TEXT NOT NULL DEFAULT '',
+    schedule TEXT NOT NULL DEFAULT '',
+    kg_co2e NUMERIC(18,6) NOT NULL DEFAULT 0,
+    calc_count BIGINT NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, day, category, subcategory, fuel_type, career, schedule)
+);
+
+COMMENT ON TABLE calculation_daily_rollup IS 'Emisiones pre-agregadas por usuario y día, mantenidas por trigger sobre calculation';
+
+-- -----------------------------------------------------------------------------
+-- 2. Función + trigger de mantenimiento incremental
+-- -----------------------------------------------------------------------------
+
+CREATE OR REPLACE FUNCTION apply_calculation_to_rollup()
+RETURNS TRIGGER AS $$
+DECLARE
+    r RECORD;
+    v_day DATE;
+    v_subcategory TEXT;
+    v_fuel_type TEXT;
+    v_career TEXT;
+    v_schedule TEXT;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        r := OLD;
+    ELSE
+        r := NEW;
+    END IF;
+
+    v_day := COALESCE(r.created_at, now())::date;
+    v_subcategory := CASE r.category
+        WHEN 'transporte' THEN COALESCE(r.input_json->>'transportMode', '')
+        WHEN 'residuos' THEN COALESCE(r.input_json->>'disposalMethod', '')
+        ELSE ''
+    END;
+    v_fuel_type := CASE WHEN r.category = 'transporte' THEN COALESCE(r.input_json->>'fuelType', '') ELSE '' END;
+    v_career := COALESCE(r.input_json->>'career', '');
+    v_schedule := COALESCE(r.input_json->>'schedule', '');
+
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO calculation_daily_rollup (
+            user_id, day, category, subcategory, fuel_type, career, schedule, kg_co2e, calc_count
+        )
+        VALUES (r.user_id, v_day, r.category, v_subcategory, v_fuel_type, v_career, v_schedule, r.result_kg_co2e, 1)
+        ON CONFLICT (user_id, day, category, subcategory, fuel_type, career, schedule)
+        DO UPDATE SET
+            kg_co2e = calculation_daily_rollup.kg_co2e + EXCLUDED.kg_co2e,
+            calc_count = calculation_daily_rollup.calc_count + 1;
+    ELSE
+        UPDATE calculation_daily_rollup
+        SET kg_co2e = kg_co2e - r.result_kg_co2e,
+            calc_count = calc_count - 1
+        WHERE user_id = r.user_id AND day = v_day AND category = r.category
+          AND subcategory = v_subcategory AND fuel_type = v_fuel_type
+          AND career = v_career AND schedule = v_schedule;
+
+        -- No dejar grupos vacíos: el rollup debe contener los mismos grupos que calculation
+        DELETE FROM calculation_daily_rollup
+        WHERE user_id = r.user_id AND day = v_day AND category = r.category
+          AND subcategory = v_subcategory AND fuel_type = v_fuel_type
+          AND career = v_career AND schedule = v_schedule
+          AND calc_count <= 0;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON FUNCTION apply_calculation_to_rollup() IS 'Suma/resta un cálculo en calculation_daily_rollup';
+
+CREATE TRIGGER trg_calculation_rollup
+    AFTER INSERT OR DELETE ON calculation
+    FOR EACH ROW
+    EXECUTE FUNCTION apply_calculation_to_rollup();
+
+-- -----------------------------------------------------------------------------
+-- 3. Backfill con los cálculos existentes
+-- -----------------------------------------------------------------------------
+
+INSERT INTO calculation_daily_rollup (
+    user_id, day, category, subcategory, fuel_type, career, schedule, kg_co2e, calc_count
+)
+SELECT
+    user_id,
+    COALESCE(created_at, now())::date,
+    category,
+    CASE category
+        WHEN 'transporte' THEN COALESCE(input_json->>'transportMode', '')
+        WHEN 'residuos' THEN COALESCE(input_json->>'disposalMethod', '')
+        ELSE ''
+    END,
+    CASE WHEN category = 'transporte' THEN COALESCE(input_json->>'fuelType', '') ELSE '' END,
+    COALESCE(input_json->>'career', ''),
+    COALESCE(input_json->>'schedule', ''),
+    SUM(result_kg_co2e),
+    COUNT(*)
+FROM calculation
+GROUP BY 1, 2, 3, 4, 5, 6, 7
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,92 @@
+-- V25: Historial de cálculos con paginación por cursor (keyset)
+-- Fecha: 2026-01-16
+-- Descripción: El historial se recorre por (created_at, id) descendente en lugar de
+-- LIMIT/OFFSET, filtra subcategorías en SQL y obtiene el snapshot del factor con un
+-- join sobre los ids de la página.
+--   1. created_at NOT NULL (el cursor no admite nulos)
+--   2. Índice (user_id, created_at DESC, id DESC) para el recorrido por cursor
+--   3. Índice calculation_audit (calculation_id, created_at DESC) para el join de auditoría
+--   4. Columna generada subcategory_label: la misma etiqueta que muestra el historial
+--      ("Auto - Gasolina", "laptop, celular", "Orgánico, Plástico"), filtrable por índice
+
+-- 1. created_at obligatorio
+UPDATE calculation SET created_at = now() WHERE created_at IS NULL;
+ALTER TABLE calculation ALTER COLUMN created_at SET NOT NULL;
+
+-- 2. Recorrido por cursor
+CREATE INDEX IF NOT EXISTS idx_calculation_user_created_id
+ON calculation (user_id, created_at DESC, id DESC);
+
+-- 3. Último snapshot de auditoría por cálculo
+CREATE INDEX IF NOT EXISTS idx_calculation_audit_calc_created
+ON calculation_audit (calculation_id, created_at DESC);
+
+-- 4. Etiqueta de subcategoría
+CREATE OR REPLACE FUNCTION calc_subcategory_label(p_category TEXT, p_input JSONB)
+RETURNS TEXT AS $$
+    SELECT CASE
+        WHEN p_category IS NULL OR p_input IS NULL THEN ''
+
+        WHEN p_category = 'transporte' THEN
+            CASE
+                WHEN p_input->>'transportMode' IS NULL THEN ''
+                ELSE
+                    CASE p_input->>'transportMode'
+                        WHEN 'car' THEN 'Auto'
+                        WHEN 'bus' THEN 'Bus/Transporte Público'
+                        WHEN 'metro' THEN 'Metro/Tren'
+                        WHEN 'bicycle' THEN 'Bicicleta'
+                        WHEN 'walking' THEN 'Caminando'
+                        WHEN 'plane' THEN 'Avión'
+                        WHEN 'motorcycle' THEN 'Motocicleta'
+                        ELSE p_input->>'transportMode'
+                    END
+                    || CASE
+                        WHEN COALESCE(btrim(p_input->>'fuelType'), '') = '' THEN ''
+                        ELSE ' - ' || CASE lower(p_input->>'fuelType')
+                            WHEN 'gasoline' THEN 'Gasolina'
+                            WHEN 'diesel' THEN 'Diesel'
+                            WHEN 'electric' THEN 'Eléctrico'
+                            WHEN 'hybrid' THEN 'Híbrido'
+                            ELSE p_input->>'fuelType'
+                        END
+                    END
+            END
+
+        WHEN p_category = 'electricidad' THEN
+            COALESCE(
+                CASE WHEN jsonb_typeof(p_input->'selectedAppliances') = 'array' THEN
+                    (SELECT string_agg(a.value, ', ' ORDER BY a.ord)
+                     FROM jsonb_array_elements_text(p_input->'selectedAppliances') WITH ORDINALITY AS a(value, ord))
+                END,
+                'Electricidad')
+
+        WHEN p_category = 'residuos' THEN
+            COALESCE(
+                CASE WHEN jsonb_typeof(p_input->'wasteItems') = 'array' THEN
+                    (SELECT string_agg(
+                                CASE w.item->>'wasteType'
+                                    WHEN 'organic' THEN 'Orgánico'
+                                    WHEN 'paper' THEN 'Papel/Cartón'
+                                    WHEN 'plastic' THEN 'Plástico'
+                                    WHEN 'glass' THEN 'Vidrio'
+                                    WHEN 'metal' THEN 'Metal'
+                                    WHEN 'other' THEN 'Otros'
+                                    ELSE w.item->>'wasteType'
+                                END, ', ' ORDER BY w.ord)
+                     FROM jsonb_array_elements(p_input->'wasteItems') WITH ORDINALITY AS w(item, ord))
+                END,
+                'Residuos')
+
+        ELSE p_category
+    END
+$$ LANGUAGE sql IMMUTABLE;
+
+COMMENT ON FUNCTION calc_subcategory_label(TEXT, JSONB) IS 'Etiqueta de subcategoría mostrada en el historial de cálculos';
+
+ALTER TABLE calculation
+    ADD COLUMN IF NOT EXISTS subcategory_label TEXT
+    GENERATED ALWAYS AS (calc_subcategory_label(category, input_json)) STORED;
+
+CREATE INDEX IF NOT EXISTS idx_calculation_user_subcategory_label
+ON calculation (user_id, subcategory_label);
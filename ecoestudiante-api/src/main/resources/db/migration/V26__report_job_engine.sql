@@ -0,0 +1,45 @@
+-- V26: Motor de generación asíncrona de reportes
+-- Fecha: 2026-01-16
+-- Descripción: Completa la tabla report_job (V1) para que actúe como cola persistente.
+-- Un pool acotado de workers reclama jobs PENDING con FOR UPDATE SKIP LOCKED, genera el
+-- archivo (PDF/CSV) en el almacenamiento local y registra progreso, resultado y expiración
+-- del enlace de descarga.
+--
+-- Estados: PENDING → PROCESSING → COMPLETED | FAILED
+
+ALTER TABLE report_job
+    ADD COLUMN IF NOT EXISTS report_type TEXT,
+    ADD COLUMN IF NOT EXISTS export_format TEXT,
+    ADD COLUMN IF NOT EXISTS range_start DATE,
+    ADD COLUMN IF NOT EXISTS range_end DATE,
+    ADD COLUMN IF NOT EXISTS progress INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS attempts INTEGER NOT NULL DEFAULT 0,
+    ADD COLUMN IF NOT EXISTS claimed_until TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS started_at TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS completed_at TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS error_message TEXT,
+    ADD COLUMN IF NOT EXISTS file_path TEXT,
+    ADD COLUMN IF NOT EXISTS file_name TEXT,
+    ADD COLUMN IF NOT EXISTS file_size BIGINT,
+    ADD COLUMN IF NOT EXISTS expires_at TIMESTAMP;
+
+-- Jobs antiguos del stub no tienen parámetros completos: se cierran
+UPDATE report_job
+SET status = 'FAILED', error_message = 'Job creado antes del motor de reportes'
+WHERE status NOT IN ('COMPLETED', 'FAILED') AND report_type IS NULL;
+
+-- Cola: solo se recorren los jobs pendientes o en proceso
+CREATE INDEX IF NOT EXISTS idx_report_job_queue
+ON report_job (created_at)
+WHERE status IN ('PENDING', 'PROCESSING');
+
+CREATE INDEX IF NOT EXISTS idx_report_job_user_created
+ON report_job (user_id, created_at DESC);
+
+-- Limpieza de archivos vencidos
+CREATE INDEX IF NOT EXISTS idx_report_job_expires
+ON report_job (expires_at)
+WHERE file_path IS NOT NULL;
+
+COMMENT ON COLUMN report_job.claimed_until IS 'Lease del worker; se renueva con cada avance de progreso';
+COMMENT ON COLUMN report_job.expires_at IS 'Fin de la ventana de descarga; luego se elimina el archivo';
@@ -0,0 +1,36 @@
+-- =============================================================================
+-- Migración V27: Agregados anonimizados materializados
+-- =============================================================================
+-- Fecha: 2026-01-16
+-- Descripción: Tabla compacta con agregados por mes y categoría, a nivel global,
+--              por institución y por campus. La mantiene AnonymizedAggregateService
+--              a partir de calculation_daily_rollup (refresco programado de los
+--              meses recientes + reconstrucción completa nocturna), de modo que
+--              /api/v1/reports/aggregates nunca lee filas de calculation.
+--
+-- k-anonimato: solo se materializan grupos con al menos k usuarios distintos
+-- (app.reports.aggregates.k-anonymity). Además se suprime el hermano más pequeño
+-- cuando el resto "padre - hijos publicados" quedaría entre 1 y k-1 usuarios,
+-- para que el grupo suprimido no pueda deducirse por diferencia.
+--
+-- scope    : GLOBAL | INSTITUTION | CAMPUS
+-- scope_id : institución o campus; UUID nulo (ceros) para GLOBAL
+-- parent_id: institución del campus; UUID nulo para INSTITUTION; NULL para GLOBAL
+-- =============================================================================
+
+CREATE TABLE IF NOT EXISTS anonymized_aggregate (
+    period CHAR(7) NOT NULL,                -- 'YYYY-MM'
+    category TEXT NOT NULL,
+    scope VARCHAR(12) NOT NULL,
+    scope_id UUID NOT NULL,
+    parent_id UUID,
+    user_count INTEGER NOT NULL,
+    record_count BIGINT NOT NULL,
+    total_kg_co2e NUMERIC(18, 6) NOT NULL,
+    refreshed_at TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (scope, period, category, scope_id),
+    CONSTRAINT chk_anonymized_aggregate_scope CHECK (scope IN ('GLOBAL', 'INSTITUTION', 'CAMPUS'))
+);
+
+COMMENT ON TABLE anonymized_aggregate IS 'Agregados mensuales por categoría con supresión k-anónima; fuente de /api/v1/reports/aggregates';
+COMMENT ON COLUMN anonymized_aggregate.user_count IS 'Usuarios distintos del grupo (siempre >= k al materializar)';
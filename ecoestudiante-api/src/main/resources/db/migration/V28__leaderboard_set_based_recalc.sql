@@ -0,0 +1,19 @@
+-- V28: Recálculo del leaderboard por conjuntos
+-- Fecha: 2026-01-16
+-- Descripción: recalculateWeekLeaderboard calcula CO2, misiones completadas y XP de
+-- todos los usuarios de la semana en una sola pasada agrupada y hace upsert +
+-- ranking en leaderboard_cache con una sola sentencia. Estos índices permiten
+-- leer cada fuente por rango de fechas en lugar de recorrer la tabla completa.
+
+-- CO2 de la semana desde el rollup diario (su PK empieza por user_id)
+CREATE INDEX IF NOT EXISTS idx_calculation_daily_rollup_day
+ON calculation_daily_rollup (day);
+
+-- Misiones completadas en un rango
+CREATE INDEX IF NOT EXISTS idx_mission_progress_completed_at
+ON mission_progress (completed_at)
+WHERE status = 'COMPLETED';
+
+-- Misiones iniciadas en un rango (usuarios activos sin otras métricas)
+CREATE INDEX IF NOT EXISTS idx_mission_progress_started_at
+ON mission_progress (started_at);
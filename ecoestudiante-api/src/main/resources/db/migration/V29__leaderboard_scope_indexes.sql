@@ -0,0 +1,10 @@
+-- V29: Rankings por institución, campus y carrera
+-- Fecha: 2026-01-16
+-- Descripción: el ranking de una partición se carga partiendo de sus miembros en
+-- app_user (idx_user_institution_id / idx_user_campus_id de V21) y buscando su
+-- entrada de la semana por uk_leaderboard_cache_user_week, sin recorrer la
+-- semana global. La carrera no tenía índice.
+
+CREATE INDEX IF NOT EXISTS idx_user_carrera
+ON app_user (carrera)
+WHERE carrera IS NOT NULL;
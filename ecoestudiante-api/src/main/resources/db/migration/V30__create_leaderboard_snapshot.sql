@@ -0,0 +1,31 @@
+-- V30: Archivo histórico del leaderboard
+-- Fecha: 2026-01-16
+-- Descripción: al cerrar una semana su ranking se congela en un snapshot inmutable
+-- (arreglo binario ordenado de user_id, co2, misiones y XP), que se lee con una
+-- sola búsqueda por clave aunque leaderboard_cache se vuelva a recalcular. La
+-- misma escritura guarda la posición de cada usuario en leaderboard_rank_history
+-- para consultar su historial de posiciones sin recorrer snapshots.
+
+CREATE TABLE IF NOT EXISTS leaderboard_snapshot (
+    year        INTEGER NOT NULL,
+    week_number VARCHAR(10) NOT NULL, -- '2025-W01'
+    user_count  INTEGER NOT NULL,
+    payload     BYTEA NOT NULL,       -- Entradas en orden de ranking (formato en LeaderboardSnapshot)
+    frozen_at   TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (year, week_number)
+);
+
+CREATE TABLE IF NOT EXISTS leaderboard_rank_history (
+    user_id            UUID NOT NULL REFERENCES app_user(id) ON DELETE CASCADE,
+    year               INTEGER NOT NULL,
+    week_number        VARCHAR(10) NOT NULL,
+    rank_position      INTEGER NOT NULL,
+    total_users        INTEGER NOT NULL,
+    co2_avoided_kg     DECIMAL(10, 2) NOT NULL,
+    missions_completed INTEGER NOT NULL,
+    total_xp_week      INTEGER NOT NULL,
+    PRIMARY KEY (user_id, year, week_number)
+);
+
+COMMENT ON TABLE leaderboard_snapshot IS 'Ranking congelado de semanas cerradas (inmutable)';
+COMMENT ON TABLE leaderboard_rank_history IS 'Posición de cada usuario en cada semana archivada';
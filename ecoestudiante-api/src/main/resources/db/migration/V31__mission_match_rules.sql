@@ -0,0 +1,40 @@
+-- V31: Reglas de correlación estructuradas para misiones
+-- Fecha: 2026-01-16
+-- Descripción: qué cálculos cuentan para una misión ya no se deduce de su título
+-- (subcadenas como 'público' o 'bicicleta'): cada misión declara predicados sobre
+-- el cálculo, además de su categoría. Un predicado NULL no restringe. Las
+-- instancias semanales copian los predicados de su template.
+-- Las misiones existentes se completan con la misma correlación que aplicaba el
+-- título, para no cambiar qué cálculos cuentan.
+
+ALTER TABLE missions
+    ADD COLUMN IF NOT EXISTS match_transport_modes TEXT[],
+    ADD COLUMN IF NOT EXISTS match_fuel_types      TEXT[],
+    ADD COLUMN IF NOT EXISTS match_appliances      TEXT[],
+    ADD COLUMN IF NOT EXISTS match_waste_types     TEXT[],
+    ADD COLUMN IF NOT EXISTS match_min_kg          DECIMAL(12, 3),
+    ADD COLUMN IF NOT EXISTS match_max_kg          DECIMAL(12, 3);
+
+COMMENT ON COLUMN missions.match_transport_modes IS 'Modos de transporte que cuentan (transportMode del cálculo); NULL = cualquiera';
+COMMENT ON COLUMN missions.match_fuel_types IS 'Tipos de combustible que cuentan (fuelType del cálculo); NULL = cualquiera';
+COMMENT ON COLUMN missions.match_appliances IS 'Cuenta si el cálculo incluye alguno de estos artefactos (selectedAppliances); NULL = cualquiera';
+COMMENT ON COLUMN missions.match_waste_types IS 'Cuenta si el cálculo incluye alguno de estos tipos de residuo (wasteItems[].wasteType); NULL = cualquiera';
+COMMENT ON COLUMN missions.match_min_kg IS 'Emisiones mínimas del cálculo en kg CO2e (inclusive); NULL = sin mínimo';
+COMMENT ON COLUMN missions.match_max_kg IS 'Emisiones máximas del cálculo en kg CO2e (inclusive); NULL = sin máximo';
+
+-- Correlación equivalente a la que hacía el título (mismo orden de prioridad)
+UPDATE missions SET match_transport_modes = ARRAY['bus', 'metro']
+WHERE category = 'TRANSPORT' AND type = 'FREQUENCY'
+  AND (lower(title) LIKE '%público%' OR lower(title) LIKE '%bus%' OR lower(title) LIKE '%metro%');
+
+UPDATE missions SET match_transport_modes = ARRAY['bicycle']
+WHERE category = 'TRANSPORT' AND type = 'FREQUENCY' AND match_transport_modes IS NULL
+  AND (lower(title) LIKE '%bicicleta%' OR lower(title) LIKE '%bicycle%');
+
+UPDATE missions SET match_transport_modes = ARRAY['walking']
+WHERE category = 'TRANSPORT' AND type = 'FREQUENCY' AND match_transport_modes IS NULL
+  AND (lower(title) LIKE '%camina%' OR lower(title) LIKE '%walking%');
+
+UPDATE missions SET match_fuel_types = ARRAY['electric']
+WHERE category = 'TRANSPORT' AND type = 'DISCOVERY'
+  AND (lower(title) LIKE '%eléctrico%' OR lower(title) LIKE '%electric%');
@@ -0,0 +1,18 @@
+-- V32: Lock distribuido de tareas programadas
+-- Fecha: 2026-01-16
+-- Descripción: con varias réplicas de la API, cada tarea programada corre en
+-- todas. Una tarea que debe ejecutarse una sola vez (cambio de semana de las
+-- misiones) toma su fila con un upsert condicional: solo lo consigue si el lock
+-- venció (locked_until) y la ejecución pedida (run_key, p. ej. la semana) aún
+-- no se completó. Al terminar guarda completed_key y libera el lock.
+
+CREATE TABLE IF NOT EXISTS scheduled_job_lock (
+    job_name      VARCHAR(100) PRIMARY KEY,
+    locked_until  TIMESTAMP NOT NULL,
+    locked_by     VARCHAR(255),
+    locked_at     TIMESTAMP,
+    completed_key VARCHAR(100),            -- Última ejecución completada ('2026-W03')
+    completed_at  TIMESTAMP
+);
+
+COMMENT ON TABLE scheduled_job_lock IS 'Lock por tarea programada para que una sola réplica ejecute cada corrida';
@@ -0,0 +1,30 @@
+-- V33: Estados finales del outbox de cálculos
+-- Fecha: 2026-01-17
+-- Descripción: el delta del leaderboard de cada cálculo deja de vivir solo en
+-- memoria. Una fila procesada (XP, racha y misiones en una misma transacción)
+-- queda pendiente para el leaderboard hasta que el coalescer suma su delta y
+-- marca leaderboard_applied_at en la misma transacción. Las filas que agotan
+-- sus reintentos pasan a FAILED (failed_at) en lugar de quedar sin reclamar.
+
+ALTER TABLE calculation_outbox
+    ADD COLUMN IF NOT EXISTS failed_at TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS leaderboard_applied_at TIMESTAMP;
+
+-- Filas ya procesadas: su delta se aplicó con el coalescer en memoria
+UPDATE calculation_outbox
+SET leaderboard_applied_at = processed_at
+WHERE processed_at IS NOT NULL AND leaderboard_applied_at IS NULL;
+
+-- El worker solo recorre filas pendientes que no hayan fallado
+DROP INDEX IF EXISTS idx_calculation_outbox_pending;
+CREATE INDEX IF NOT EXISTS idx_calculation_outbox_pending
+ON calculation_outbox (id)
+WHERE processed_at IS NULL AND failed_at IS NULL;
+
+-- Filas procesadas cuyo delta aún no llega a leaderboard_cache
+CREATE INDEX IF NOT EXISTS idx_calculation_outbox_leaderboard_pending
+ON calculation_outbox (id)
+WHERE processed_at IS NOT NULL AND leaderboard_applied_at IS NULL;
+
+COMMENT ON COLUMN calculation_outbox.failed_at IS 'FAILED: agotó app.outbox.max-attempts; no se vuelve a reclamar';
+COMMENT ON COLUMN calculation_outbox.leaderboard_applied_at IS 'Delta (kg + XP) ya sumado a leaderboard_cache';
@@ -0,0 +1,10 @@
+-- V34: Deltas del outbox pendientes por semana
+-- Fecha: 2026-01-17
+-- Descripción: el recálculo del leaderboard descuenta los cálculos cuyo delta
+-- aún no se suma a leaderboard_cache (el flush lo sumará después), y el cierre
+-- de una semana espera a que no quede ninguno anterior a su fin. Ambos leen las
+-- filas no aplicadas por rango de fecha del cálculo.
+
+CREATE INDEX IF NOT EXISTS idx_calculation_outbox_leaderboard_unapplied
+ON calculation_outbox (created_at)
+WHERE leaderboard_applied_at IS NULL AND failed_at IS NULL;
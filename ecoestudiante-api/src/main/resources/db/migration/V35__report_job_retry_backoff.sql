@@ -0,0 +1,11 @@
+-- V35: Reintentos de reportes con espera
+-- Fecha: 2026-01-17
+-- Descripción: un job que falla vuelve a PENDING pero no se reclama antes de
+-- next_attempt_at (espera creciente con cada intento). Las escrituras del worker
+-- van condicionadas al intento que las reclamó (attempts), de modo que un worker
+-- cuyo lease venció ya no puede cambiar un job retomado por otro.
+
+ALTER TABLE report_job
+    ADD COLUMN IF NOT EXISTS next_attempt_at TIMESTAMP;
+
+COMMENT ON COLUMN report_job.next_attempt_at IS 'Un job PENDING no se reclama antes de esta fecha (reintento tras un fallo)';
@@ -0,0 +1,27 @@
+-- V36: Versión por semana del leaderboard
+-- Fecha: 2026-01-17
+-- Descripción: señal compartida de cambios para los índices en memoria de las
+-- réplicas de la API. Cada transacción que escribe leaderboard_cache incrementa
+-- la versión de la semana (el lock de la fila la serializa hasta el commit) y
+-- marca las filas que toca con esa versión en change_version. Una réplica que
+-- vio la versión V lee solo las filas con change_version > V; un recálculo
+-- completo (que también elimina filas) registra reloaded_version y las réplicas
+-- recargan la semana entera.
+
+CREATE TABLE IF NOT EXISTS leaderboard_week_version (
+    year              INTEGER NOT NULL,
+    week_number       VARCHAR(10) NOT NULL,
+    version           BIGINT NOT NULL DEFAULT 0,
+    reloaded_version  BIGINT NOT NULL DEFAULT 0,  -- Versión del último recálculo completo
+    updated_at        TIMESTAMP NOT NULL DEFAULT now(),
+    PRIMARY KEY (year, week_number)
+);
+
+ALTER TABLE leaderboard_cache
+    ADD COLUMN IF NOT EXISTS change_version BIGINT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS idx_leaderboard_cache_week_change
+ON leaderboard_cache (year, week_number, change_version);
+
+COMMENT ON TABLE leaderboard_week_version IS 'Versión de cada semana de leaderboard_cache; los índices en memoria la sondean';
+COMMENT ON COLUMN leaderboard_cache.change_version IS 'Versión de la semana (leaderboard_week_version) en que cambió la fila';
@@ -0,0 +1,29 @@
+-- V37: Outbox de deltas de misiones para el leaderboard
+-- Fecha: 2026-01-17
+-- Descripción: los deltas de misiones completadas y asignadas dejan de vivir
+-- solo en memoria. Se insertan en la misma transacción que la misión y el
+-- coalescer los suma a leaderboard_cache y marca applied_at en la misma
+-- transacción, como los cálculos de calculation_outbox. El recálculo de una
+-- semana descuenta las filas aún no aplicadas, así que nada se cuenta dos veces.
+
+CREATE TABLE IF NOT EXISTS leaderboard_delta_outbox (
+    id           BIGSERIAL PRIMARY KEY,
+    user_id      UUID NOT NULL,
+    occurred_at  TIMESTAMP NOT NULL,            -- completedAt / assignedAt: define la semana
+    missions     INTEGER NOT NULL DEFAULT 0,
+    xp           INTEGER NOT NULL DEFAULT 0,
+    created_at   TIMESTAMP NOT NULL DEFAULT now(),
+    applied_at   TIMESTAMP
+);
+
+-- Filas cuyo delta aún no llega a leaderboard_cache
+CREATE INDEX IF NOT EXISTS idx_leaderboard_delta_outbox_pending
+ON leaderboard_delta_outbox (id)
+WHERE applied_at IS NULL;
+
+CREATE INDEX IF NOT EXISTS idx_leaderboard_delta_outbox_pending_occurred
+ON leaderboard_delta_outbox (occurred_at)
+WHERE applied_at IS NULL;
+
+COMMENT ON TABLE leaderboard_delta_outbox IS 'Deltas de misiones (completadas y asignadas) pendientes de sumar a leaderboard_cache';
+COMMENT ON COLUMN leaderboard_delta_outbox.applied_at IS 'Delta (misiones + XP) ya sumado a leaderboard_cache';
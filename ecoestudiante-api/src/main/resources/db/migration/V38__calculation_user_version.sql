@@ -0,0 +1,42 @@
+-- V38: Versión de los cálculos de cada usuario
+-- Fecha: 2026-01-17
+-- Descripción: contador por usuario que cambia con cada cálculo insertado o
+-- eliminado, en la misma transacción (trigger sobre calculation). Las cachés en
+-- memoria de cada réplica (resumen de estadísticas) comparan esta versión en
+-- cada lectura, así que un cálculo registrado en otra réplica se ve de inmediato
+-- y no al vencer el TTL. Un usuario sin fila tiene versión 0.
+
+CREATE TABLE IF NOT EXISTS calculation_user_version (
+    user_id  UUID PRIMARY KEY,
+    version  BIGINT NOT NULL DEFAULT 0
+);
+
+CREATE OR REPLACE FUNCTION bump_calculation_user_version()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_user_id UUID;
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        v_user_id := OLD.user_id;
+    ELSE
+        v_user_id := NEW.user_id;
+    END IF;
+
+    INSERT INTO calculation_user_version (user_id, version)
+    VALUES (v_user_id, 1)
+    ON CONFLICT (user_id)
+    DO UPDATE SET version = calculation_user_version.version + 1;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+COMMENT ON FUNCTION bump_calculation_user_version() IS 'Incrementa calculation_user_version del usuario del cálculo';
+
+DROP TRIGGER IF EXISTS trg_calculation_user_version ON calculation;
+CREATE TRIGGER trg_calculation_user_version
+    AFTER INSERT OR DELETE ON calculation
+    FOR EACH ROW
+    EXECUTE FUNCTION bump_calculation_user_version();
+
+COMMENT ON TABLE calculation_user_version IS 'Versión de los cálculos por usuario; invalida las cachés de todas las réplicas';
@@ -0,0 +1,165 @@
+package com.ecoestudiante.calc.controller;
+
+import com.ecoestudiante.SecurityConfig;
+import com.ecoestudiante.auth.JwtAuthenticationFilter;
+import com.ecoestudiante.auth.JwtUtil;
+import com.ecoestudiante.auth.TokenUtil;
+import com.ecoestudiante.auth.UserContext;
+import com.ecoestudiante.auth.UserContextResolver;
+import com.ecoestudiante.calc.service.CalcExportService;
+import com.ecoestudiante.calc.service.CalcService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(CalcController.class)
+@Import({SecurityConfig.class, JwtAuthenticationFilter.class, JwtUtil.class, CalcExportControllerTest.ExportConfig.class})
+class CalcExportControllerTest {
+
+  private static final UUID USER = UUID.fromString("11111111-1111-1111-1111-111111111111");
+  private static final UUID CALC = UUID.fromString("22222222-2222-2222-2222-222222222222");
+  /** Filas que devuelve el cursor de la exportación */
+  private static final ResultSet ROWS = mock(ResultSet.class);
+
+  @TestConfiguration
+  static class ExportConfig {
+    @Bean
+    CalcExportService calcExportService() throws SQLException {
+      DataSource dataSource = mock(DataSource.class);
+      Connection connection = mock(Connection.class);
+      PreparedStatement statement = mock(PreparedStatement.class);
+      when(dataSource.getConnection()).thenReturn(connection);
+      when(connection.prepareStatement(anyString())).thenReturn(statement);
+      when(statement.executeQuery()).thenReturn(ROWS);
+      return new CalcExportService(dataSource, mock(PlatformTransactionManager.class), 100);
+    }
+  }
+
+  @Autowired
+  MockMvc mvc;
+
+  @Autowired
+  JwtUtil jwtUtil;
+
+  @MockBean
+  CalcService calcService;
+
+  @MockBean
+  TokenUtil tokenUtil;
+
+  @MockBean
+  UserContextResolver userContextResolver;
+
+  @BeforeEach
+  void setUp() throws SQLException {
+    reset(ROWS);
+    when(ROWS.next()).thenReturn(true, false);
+    when(ROWS.getString("id")).thenReturn(CALC.toString());
+    when(ROWS.getString("user_id")).thenReturn(USER.toString());
+    when(ROWS.getTimestamp("created_at")).thenReturn(Timestamp.valueOf(LocalDateTime.of(2026, 1, 14, 10, 30)));
+    when(ROWS.getString("category")).thenReturn("transporte");
+    when(ROWS.getString("subcategory_label")).thenReturn("Bus \"urbano\"");
+    when(ROWS.getBigDecimal("result_kg_co2e")).thenReturn(new BigDecimal("1.250"));
+    when(ROWS.getString("factor_hash")).thenReturn("abc");
+    when(ROWS.getString("input_json")).thenReturn("{\"km\":5}");
+    when(userContextResolver.resolve(any())).thenReturn(new UserContext("token", USER.toString(), USER));
+  }
+
+  private String bearer(String role) {
+    return "Bearer " + jwtUtil.generateToken("user@eco.cl", USER.toString(), role);
+  }
+
+  private MvcResult startExport(String url, String role) throws Exception {
+    return mvc.perform(get(url).header("Authorization", bearer(role)))
+      .andExpect(request().asyncStarted())
+      .andReturn();
+  }
+
+  @Test
+  void export_withoutToken_isUnauthorized() throws Exception {
+    mvc.perform(get("/api/v1/calc/export"))
+      .andExpect(status().isUnauthorized());
+  }
+
+  @Test
+  void export_streamsCsvByDefault() throws Exception {
+    MvcResult started = startExport("/api/v1/calc/export", "ESTUDIANTE");
+
+    mvc.perform(asyncDispatch(started))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("text/csv;charset=UTF-8"))
+      .andExpect(header().string("Content-Disposition", org.hamcrest.Matchers.endsWith(".csv\"")))
+      .andExpect(content().string(
+        "calc_id,user_id,created_at,category,subcategory,kg_co2e,factor_hash,input_json\n"
+          + CALC + "," + USER + ",2026-01-14T10:30,\"transporte\",\"Bus \"\"urbano\"\"\",1.250,\"abc\","
+          + "\"{\"\"km\"\":5}\"\n"));
+  }
+
+  @Test
+  void export_streamsNdjson() throws Exception {
+    MvcResult started = startExport("/api/v1/calc/export?format=ndjson", "ESTUDIANTE");
+
+    mvc.perform(asyncDispatch(started))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+      .andExpect(header().string("Content-Disposition", org.hamcrest.Matchers.endsWith(".ndjson\"")))
+      .andExpect(content().string(
+        "{\"calcId\":\"" + CALC + "\",\"userId\":\"" + USER + "\",\"createdAt\":\"2026-01-14T10:30\","
+          + "\"category\":\"transporte\",\"subcategory\":\"Bus \\\"urbano\\\"\",\"kgCO2e\":1.250,"
+          + "\"factorHash\":\"abc\",\"input\":{\"km\":5}}\n"));
+  }
+
+  @Test
+  void export_rejectsUnknownFormat() throws Exception {
+    mvc.perform(get("/api/v1/calc/export?format=xml").header("Authorization", bearer("ESTUDIANTE")))
+      .andExpect(status().isBadRequest());
+  }
+
+  @Test
+  void institutionExport_isForbiddenForStudents() throws Exception {
+    mvc.perform(get("/api/v1/calc/export/institution/" + UUID.randomUUID())
+        .header("Authorization", bearer("ESTUDIANTE")))
+      .andExpect(status().isForbidden());
+  }
+
+  @Test
+  void institutionExport_streamsForProfessors() throws Exception {
+    MvcResult started = startExport(
+      "/api/v1/calc/export/institution/" + UUID.randomUUID() + "?format=ndjson", "PROFESOR");
+
+    mvc.perform(asyncDispatch(started))
+      .andExpect(status().isOk())
+      .andExpect(content().contentType("application/x-ndjson;charset=UTF-8"))
+      .andExpect(header().string("Content-Disposition", org.hamcrest.Matchers.containsString("huella-institucion-")));
+  }
+}
@@ -0,0 +1,223 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.auth.TokenUtil;
+import com.ecoestudiante.calc.dto.CalcDtos;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CalcServiceImplTest {
+
+  private static final UUID USER = UUID.fromString("11111111-1111-1111-1111-111111111111");
+
+  private JdbcTemplate jdbc;
+  private EmissionFactorEngine factorEngine;
+  private CalcIdempotencyStore idempotencyStore;
+  private CalcServiceImpl service;
+
+  @BeforeEach
+  void setUp() {
+    jdbc = mock(JdbcTemplate.class);
+    TokenUtil tokenUtil = mock(TokenUtil.class);
+    when(tokenUtil.normalizeUserIdToUuid(USER.toString())).thenReturn(USER);
+    factorEngine = mock(EmissionFactorEngine.class);
+    when(factorEngine.resolve(eq("electricidad"), any(), eq("CL"), any())).thenReturn(Optional.of(
+        new FactorIndex.ResolvedFactor(new BigDecimal("0.5"), "kgCO2e/kWh", "hash-cl", null, "CL",
+            LocalDate.of(2025, 1, 1), null)));
+    idempotencyStore = mock(CalcIdempotencyStore.class);
+    when(idempotencyStore.findAll(eq(USER), any())).thenReturn(Map.of());
+    service = new CalcServiceImpl(jdbc, tokenUtil, factorEngine, idempotencyStore, mock(StatsSummaryCache.class),
+        new ObjectMapper());
+  }
+
+  private static CalcDtos.BatchItem electricity(double kwh, String idempotencyKey) {
+    return new CalcDtos.BatchItem("electricity",
+        new CalcDtos.ElectricityInput(kwh, "CL", "2025-09", idempotencyKey, null, null, null, null), null, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  void batchInsertsNewItemsInOneJdbcBatch() {
+    when(jdbc.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+        .thenReturn(new int[][] {{1, 1}});
+
+    CalcDtos.BatchResult result = service.computeBatch(USER.toString(), List.of(
+        electricity(10, "k1"), electricity(20, "k2"), electricity(10, "k1")));
+
+    ArgumentCaptor<Collection<Integer>> rows = ArgumentCaptor.forClass(Collection.class);
+    verify(jdbc).batchUpdate(contains("insert into calculation "), rows.capture(), anyInt(),
+        any(ParameterizedPreparedStatementSetter.class));
+    // El duplicado dentro del lote no se inserta
+    assertThat(rows.getValue()).containsExactly(0, 1);
+    verify(jdbc).batchUpdate(contains("insert into calculation_outbox"), any(Collection.class), anyInt(),
+        any(ParameterizedPreparedStatementSetter.class));
+    verify(jdbc, times(2)).batchUpdate(anyString(), any(Collection.class), anyInt(),
+        any(ParameterizedPreparedStatementSetter.class));
+    // Mismo país y período: el factor se resuelve una vez para todo el lote
+    verify(factorEngine, times(1)).resolve(eq("electricidad"), any(), eq("CL"), any());
+
+    assertThat(result.created()).isEqualTo(2);
+    assertThat(result.idempotent()).isEqualTo(1);
+    assertThat(result.totalKgCO2e()).isEqualTo(15.0);
+    assertThat(result.items()).extracting(CalcDtos.BatchItemResult::status)
+        .containsExactly("CREATED", "CREATED", "IDEMPOTENT");
+    assertThat(result.items().get(2).result()).isEqualTo(result.items().get(0).result());
+  }
+
+  @Test
+  void replayedKeyReturnsTheStoredCalculationWithoutInserting() {
+    CalcDtos.CalcResult stored = new CalcDtos.CalcResult(UUID.randomUUID().toString(), 5.0, "hash-cl");
+    when(idempotencyStore.find(USER, "electricidad", "k1")).thenReturn(stored);
+
+    CalcDtos.CalcResult replayed = service.computeElectricity(
+        new CalcDtos.ElectricityInput(10, "CL", "2025-09", "k1", USER.toString(), null, null, null));
+
+    assertThat(replayed).isEqualTo(stored);
+    verify(jdbc, never()).update(anyString(), any(Object[].class));
+    verify(factorEngine, never()).resolve(any(), any(), any(), any());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  void replayedKeyInsideABatchIsReportedAsIdempotent() {
+    CalcDtos.CalcResult stored = new CalcDtos.CalcResult(UUID.randomUUID().toString(), 5.0, "hash-cl");
+    when(idempotencyStore.findAll(eq(USER), any()))
+        .thenReturn(Map.of(CalcIdempotencyStore.keyOf("electricidad", "k1"), stored));
+    when(jdbc.batchUpdate(anyString(), any(Collection.class), anyInt(), any(ParameterizedPreparedStatementSetter.class)))
+        .thenReturn(new int[][] {{1}});
+
+    CalcDtos.BatchResult result = service.computeBatch(USER.toString(), List.of(
+        electricity(10, "k1"), electricity(20, "k2")));
+
+    ArgumentCaptor<Collection<Integer>> rows = ArgumentCaptor.forClass(Collection.class);
+    verify(jdbc).batchUpdate(contains("insert into calculation "), rows.capture(), anyInt(),
+        any(ParameterizedPreparedStatementSetter.class));
+    assertThat(rows.getValue()).containsExactly(1);
+    assertThat(result.items().get(0).status()).isEqualTo("IDEMPOTENT");
+    assertThat(result.items().get(0).result()).isEqualTo(stored);
+    assertThat(result.created()).isEqualTo(1);
+  }
+
+  /**
+   * Historial simulado: devuelve las filas que cumplen el cursor de la consulta,
+   * en orden (created_at, id) descendente y hasta el LIMIT pedido
+   */
+  private List<String> stubHistory(List<Object[]> rows) throws SQLException {
+    List<String> sqls = new ArrayList<>();
+    ResultSet rs = mock(ResultSet.class);
+    Object[][] current = new Object[1][];
+    when(rs.getObject("id", UUID.class)).thenAnswer(inv -> current[0][0]);
+    when(rs.getTimestamp("created_at")).thenAnswer(inv -> Timestamp.valueOf((LocalDateTime) current[0][1]));
+    when(rs.getString("category")).thenReturn("electricidad");
+    when(rs.getString("input_json")).thenReturn("{\"kwh\":10}");
+    when(rs.getBigDecimal("result_kg_co2e")).thenReturn(new BigDecimal("5.0"));
+    when(rs.getString("factor_snapshot")).thenReturn("{\"value\":0.5,\"unit\":\"kgCO2e/kWh\"}");
+
+    doAnswer(inv -> {
+      String sql = inv.getArgument(0);
+      RowMapper<?> mapper = inv.getArgument(1);
+      Object[] args = inv.getArguments();
+      sqls.add(sql);
+      int limit = (Integer) args[args.length - (sql.contains("OFFSET") ? 2 : 1)];
+      List<Object> page = new ArrayList<>();
+      for (Object[] row : rows) {
+        if (sql.contains("(c.created_at, c.id) < (?, ?::uuid)")) {
+          LocalDateTime afterAt = ((Timestamp) args[args.length - 3]).toLocalDateTime();
+          UUID afterId = (UUID) args[args.length - 2];
+          int cmp = ((LocalDateTime) row[1]).compareTo(afterAt);
+          if (cmp > 0 || (cmp == 0 && ((UUID) row[0]).compareTo(afterId) >= 0)) {
+            continue;
+          }
+        }
+        if (page.size() == limit) {
+          break;
+        }
+        current[0] = row;
+        page.add(mapper.mapRow(rs, page.size()));
+      }
+      return page;
+    }).when(jdbc).query(anyString(), any(RowMapper.class), any(Object[].class));
+    return sqls;
+  }
+
+  @Test
+  void historyCursorKeepsRowsThatShareTheBoundaryTimestamp() throws SQLException {
+    LocalDateTime t1 = LocalDateTime.of(2026, 1, 14, 12, 0);
+    LocalDateTime t0 = t1.minusHours(1);
+    UUID a = UUID.fromString("00000000-0000-0000-0000-00000000000c");
+    UUID b = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    UUID c = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    UUID d = UUID.fromString("00000000-0000-0000-0000-000000000009");
+    // b y c comparten created_at justo en el corte de la primera página
+    List<String> sqls = stubHistory(List.of(
+        new Object[] {a, t1}, new Object[] {b, t0}, new Object[] {c, t0}, new Object[] {d, t0.minusHours(1)}));
+
+    CalcDtos.CalcHistoryResponse first = service.getHistory(
+        USER.toString(), null, 0, 2, null, null, null, null, null, null, false);
+
+    assertThat(first.items()).extracting(CalcDtos.CalcHistoryItem::calcId).containsExactly(a.toString(), b.toString());
+    assertThat(first.hasMore()).isTrue();
+    assertThat(first.items().get(0).factorInfo().value()).isEqualTo(0.5);
+
+    CalcDtos.CalcHistoryResponse second = service.getHistory(
+        USER.toString(), null, 0, 2, null, null, null, null, null, first.nextCursor(), false);
+
+    // El desempate por id retoma en c: nada se repite ni se salta
+    assertThat(second.items()).extracting(CalcDtos.CalcHistoryItem::calcId).containsExactly(c.toString(), d.toString());
+    assertThat(second.hasMore()).isFalse();
+    assertThat(second.nextCursor()).isNull();
+    assertThat(sqls.get(1)).contains("(c.created_at, c.id) < (?, ?::uuid)").doesNotContain("OFFSET");
+  }
+
+  @Test
+  void historyWithoutFurtherRowsHasNoCursor() throws SQLException {
+    LocalDateTime t = LocalDateTime.of(2026, 1, 14, 12, 0);
+    stubHistory(List.of(new Object[] {UUID.randomUUID(), t}, new Object[] {UUID.randomUUID(), t.minusHours(1)}));
+
+    // Página exactamente llena: el registro extra no existe, no hay siguiente
+    CalcDtos.CalcHistoryResponse page = service.getHistory(
+        USER.toString(), null, 0, 2, null, null, null, null, null, null, false);
+
+    assertThat(page.items()).hasSize(2);
+    assertThat(page.hasMore()).isFalse();
+    assertThat(page.nextCursor()).isNull();
+  }
+
+  @Test
+  void malformedHistoryCursorIsRejected() {
+    assertThatThrownBy(() -> service.getHistory(
+        USER.toString(), null, 0, 2, null, null, null, null, null, "no-es-un-cursor", false))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
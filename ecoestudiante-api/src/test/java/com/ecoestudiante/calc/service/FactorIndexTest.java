@@ -0,0 +1,64 @@
+package com.ecoestudiante.calc.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FactorIndexTest {
+
+  private static FactorIndex.FactorRow row(String cat, String sub, String country, String value,
+                                           String hash, String from, String to) {
+    return new FactorIndex.FactorRow(cat, sub, country, new BigDecimal(value), "kgCO2e/u", hash,
+        LocalDate.parse(from), to != null ? LocalDate.parse(to) : null);
+  }
+
+  private final FactorIndex index = FactorIndex.build(List.of(
+      row("electricidad", null, null, "0.40", "nat-2024", "2024-01-01", "2024-12-31"),
+      row("electricidad", null, null, "0.35", "nat-2025", "2025-01-01", null),
+      row("electricidad", null, "CL", "0.30", "cl-2025", "2025-01-01", "2025-12-31"),
+      row("transporte", "bus", null, "0.10", "bus-2024", "2024-01-01", null),
+      row("transporte", "bus", "CL", "0.09", "bus-cl-2025", "2025-03-01", null),
+      row("transporte", "metro", null, "0.05", "metro-2024", "2024-01-01", "2024-06-30")
+  ));
+
+  @Test
+  void resolve_prefersExactCountryThenNational() {
+    LocalDate at = LocalDate.parse("2025-06-01");
+    assertThat(index.resolve("electricidad", null, "CL", at)).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("cl-2025");
+    assertThat(index.resolve("electricidad", null, "AR", at)).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("nat-2025");
+    assertThat(index.resolve("electricidad", null, null, at)).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("nat-2025");
+  }
+
+  @Test
+  void resolve_respectsValidityWindow() {
+    assertThat(index.resolve("electricidad", null, "CL", LocalDate.parse("2024-05-01"))).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("nat-2024");
+    assertThat(index.resolve("electricidad", null, "CL", LocalDate.parse("2026-01-01"))).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("nat-2025");
+    assertThat(index.resolve("electricidad", null, null, LocalDate.parse("2023-01-01"))).isEmpty();
+  }
+
+  @Test
+  void resolveAnyCountry_returnsLatestValid() {
+    assertThat(index.resolveAnyCountry("transporte", "bus", LocalDate.parse("2025-04-01"))).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("bus-cl-2025");
+    assertThat(index.resolveAnyCountry("transporte", "bus", LocalDate.parse("2025-01-01"))).get()
+        .extracting(FactorIndex.ResolvedFactor::hash).isEqualTo("bus-2024");
+    assertThat(index.resolveAnyCountry("transporte", "avion", LocalDate.parse("2025-01-01"))).isEmpty();
+  }
+
+  @Test
+  void subcategoriesValidAt_listsOnlyCurrentOnes() {
+    assertThat(index.subcategoriesValidAt("transporte", LocalDate.parse("2025-01-01")))
+        .containsExactly("bus");
+    assertThat(index.subcategoriesValidAt("transporte", LocalDate.parse("2024-03-01")))
+        .containsExactly("bus", "metro");
+  }
+}
@@ -0,0 +1,117 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.calc.dto.StatsDtos;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+class StatsRollupIT {
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>("postgres:16")
+          .withDatabaseName("ecoestudiante")
+          .withUsername("eco")
+          .withPassword("eco");
+
+  @DynamicPropertySource
+  static void bindProps(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+    r.add("spring.datasource.username", POSTGRES::getUsername);
+    r.add("spring.datasource.password", POSTGRES::getPassword);
+    r.add("spring.flyway.enabled", () -> "true");
+    r.add("spring.security.user.name", () -> "user");
+    r.add("spring.security.user.password", () -> "password");
+  }
+
+  @Autowired
+  JdbcTemplate jdbc;
+
+  @Autowired
+  StatsService statsService;
+
+  UUID user;
+
+  @BeforeEach
+  void newUser() {
+    user = UUID.randomUUID();
+  }
+
+  UUID insertCalculation(String category, String inputJson, double kg) {
+    UUID id = UUID.randomUUID();
+    jdbc.update("""
+        INSERT INTO calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash)
+        VALUES (?, ?, ?, cast(? as jsonb), ?, 'hash')
+        """, id, user, category, inputJson, kg);
+    return id;
+  }
+
+  Long groupCount(String category, String subcategory) {
+    return jdbc.query("""
+        SELECT calc_count FROM calculation_daily_rollup
+        WHERE user_id = ? AND category = ? AND subcategory = ?
+        """, rs -> rs.next() ? rs.getLong(1) : null, user, category, subcategory);
+  }
+
+  void assertRollupMatchesCalculations() {
+    Double fromCalculations = jdbc.queryForObject(
+        "SELECT COALESCE(SUM(result_kg_co2e), 0) FROM calculation WHERE user_id = ?", Double.class, user);
+    Long records = jdbc.queryForObject("SELECT COUNT(*) FROM calculation WHERE user_id = ?", Long.class, user);
+
+    StatsDtos.StatsSummary summary = statsService.getSummary(user.toString());
+    assertEquals(fromCalculations, summary.totalKgCO2e(), 1e-9);
+    assertEquals(records, summary.totalRecords());
+    assertEquals(fromCalculations, summary.thisMonthKgCO2e(), 1e-9);
+  }
+
+  @Test
+  void rollupFollowsInsertsAndDeletes() {
+    UUID bus1 = insertCalculation("transporte", "{\"transportMode\":\"bus\",\"fuelType\":\"diesel\"}", 1.5);
+    UUID bus2 = insertCalculation("transporte", "{\"transportMode\":\"bus\",\"fuelType\":\"diesel\"}", 2.5);
+    insertCalculation("electricidad", "{\"kwh\":10,\"career\":\"Ingeniería\"}", 4.7);
+
+    // Mismo día y dimensiones: una sola fila con ambos cálculos
+    assertEquals(2L, groupCount("transporte", "bus"));
+    assertEquals(1L, groupCount("electricidad", ""));
+    assertRollupMatchesCalculations();
+
+    jdbc.update("DELETE FROM calculation WHERE id = ?", bus1);
+    assertEquals(1L, groupCount("transporte", "bus"));
+    assertRollupMatchesCalculations();
+
+    // El último cálculo del grupo elimina la fila: el rollup no guarda grupos vacíos
+    jdbc.update("DELETE FROM calculation WHERE id = ?", bus2);
+    assertNull(groupCount("transporte", "bus"));
+    assertRollupMatchesCalculations();
+  }
+
+  @Test
+  void categoryStatsComeFromTheRollup() {
+    insertCalculation("transporte", "{\"transportMode\":\"car\",\"fuelType\":\"gasoline\"}", 3.0);
+    insertCalculation("transporte", "{\"transportMode\":\"bus\",\"fuelType\":\"diesel\"}", 1.0);
+    insertCalculation("residuos", "{\"disposalMethod\":\"recycling\"}", 0.5);
+
+    StatsDtos.StatsByCategoryResponse byCategory = statsService.getByCategory(user.toString(), null);
+
+    assertEquals(4.5, byCategory.totalKgCO2e(), 1e-9);
+    StatsDtos.CategoryStats transport = byCategory.categories().stream()
+        .filter(c -> c.category().equals("transporte"))
+        .findFirst()
+        .orElseThrow();
+    assertEquals(4.0, transport.totalKgCO2e(), 1e-9);
+    assertEquals(2L, transport.recordCount());
+  }
+}
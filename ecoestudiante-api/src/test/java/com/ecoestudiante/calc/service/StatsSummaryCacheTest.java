@@ -0,0 +1,75 @@
+package com.ecoestudiante.calc.service;
+
+import com.ecoestudiante.calc.dto.StatsDtos;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatsSummaryCacheTest {
+
+  private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+  private final StatsSummaryCache cache = new StatsSummaryCache(registry, 300, 100);
+  private final UUID user = UUID.randomUUID();
+  /** calculation_user_version del usuario, compartida por todas las réplicas */
+  private final AtomicLong version = new AtomicLong();
+
+  private static StatsDtos.StatsSummary summary(double total) {
+    return new StatsDtos.StatsSummary(total, 1, total, 0, total, LocalDateTime.now());
+  }
+
+  private double count(String result) {
+    return registry.get("stats.summary.cache").tag("result", result).counter().count();
+  }
+
+  @Test
+  void getOrLoad_servesSecondReadFromCache() {
+    AtomicInteger loads = new AtomicInteger();
+    cache.getOrLoad(user, version::get, () -> summary(loads.incrementAndGet()));
+    StatsDtos.StatsSummary second = cache.getOrLoad(user, version::get, () -> summary(loads.incrementAndGet()));
+
+    assertThat(loads.get()).isEqualTo(1);
+    assertThat(second.totalKgCO2e()).isEqualTo(1.0);
+    assertThat(count("hit")).isEqualTo(1.0);
+    assertThat(count("miss")).isEqualTo(1.0);
+  }
+
+  @Test
+  void invalidate_forcesReload() {
+    cache.getOrLoad(user, version::get, () -> summary(1));
+    cache.invalidateAfterCommit(user);
+
+    assertThat(cache.getOrLoad(user, version::get, () -> summary(2)).totalKgCO2e()).isEqualTo(2.0);
+    assertThat(registry.get("stats.summary.cache.invalidations").counter().count()).isEqualTo(1.0);
+  }
+
+  @Test
+  void getOrLoad_doesNotCacheValueComputedDuringInvalidation() {
+    cache.getOrLoad(user, version::get, () -> {
+      cache.invalidate(user);
+      return summary(1);
+    });
+
+    assertThat(cache.getOrLoad(user, version::get, () -> summary(2)).totalKgCO2e()).isEqualTo(2.0);
+  }
+
+  @Test
+  void getOrLoad_reloadsWhenAnotherReplicaChangedTheUsersCalculations() {
+    StatsSummaryCache otherReplica = new StatsSummaryCache(new SimpleMeterRegistry(), 300, 100);
+    cache.getOrLoad(user, version::get, () -> summary(1));
+    otherReplica.getOrLoad(user, version::get, () -> summary(1));
+
+    // Cálculo registrado en la otra réplica: solo ella invalida en memoria, el trigger sube la versión
+    version.incrementAndGet();
+    otherReplica.invalidateAfterCommit(user);
+
+    assertThat(cache.getOrLoad(user, version::get, () -> summary(2)).totalKgCO2e()).isEqualTo(2.0);
+    assertThat(cache.getOrLoad(user, version::get, () -> summary(3)).totalKgCO2e()).isEqualTo(2.0);
+    assertThat(count("miss")).isEqualTo(2.0);
+  }
+}
@@ -0,0 +1,40 @@
+package com.ecoestudiante.gamification.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.IsoFields;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class IsoWeekTest {
+
+    @Test
+    void matchesJavaTimeIsoFieldsAroundNewYear() {
+        for (LocalDate date = LocalDate.of(1995, 12, 1); date.isBefore(LocalDate.of(2105, 2, 1)); date = date.plusDays(1)) {
+            int key = IsoWeek.of(date);
+            assertThat(IsoWeek.year(key)).isEqualTo(date.get(IsoFields.WEEK_BASED_YEAR));
+            assertThat(IsoWeek.week(key)).isEqualTo(date.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            assertThat(IsoWeek.start(key)).isBeforeOrEqualTo(date.atStartOfDay());
+            assertThat(IsoWeek.end(key)).isAfter(date.atStartOfDay());
+        }
+    }
+
+    @Test
+    void labelsRoundTripAndNavigateAcrossYears() {
+        int key = IsoWeek.of(LocalDate.of(2027, 1, 1));
+        assertThat(IsoWeek.label(key)).isEqualTo("2026-W53");
+        assertThat(IsoWeek.parse("2026-W53")).isEqualTo(key);
+        assertThat(IsoWeek.next(key)).isEqualTo(IsoWeek.parse("2027-W01"));
+        assertThat(IsoWeek.previous(IsoWeek.parse("2027-W01"))).isEqualTo(key);
+        assertThat(IsoWeek.previous(IsoWeek.parse("2026-W01"))).isEqualTo(IsoWeek.parse("2025-W52"));
+        assertThat(IsoWeek.start(key)).isEqualTo(LocalDateTime.of(2026, 12, 28, 0, 0));
+        assertThat(IsoWeek.parse("2025-W52")).isLessThan(key);
+
+        assertThatThrownBy(() -> IsoWeek.parse("2025-W53")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> IsoWeek.parse("2025-01")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> IsoWeek.parse("2026-W01", 2025)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
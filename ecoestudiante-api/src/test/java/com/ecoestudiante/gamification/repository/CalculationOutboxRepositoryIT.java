@@ -0,0 +1,120 @@
+package com.ecoestudiante.gamification.repository;
+
+import com.ecoestudiante.gamification.model.CalculationOutboxEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+class CalculationOutboxRepositoryIT {
+
+  private static final int LEASE_SECONDS = 60;
+  private static final int MAX_ATTEMPTS = 5;
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>("postgres:16")
+          .withDatabaseName("ecoestudiante")
+          .withUsername("eco")
+          .withPassword("eco");
+
+  @DynamicPropertySource
+  static void bindProps(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+    r.add("spring.datasource.username", POSTGRES::getUsername);
+    r.add("spring.datasource.password", POSTGRES::getPassword);
+    r.add("spring.flyway.enabled", () -> "true");
+    r.add("spring.security.user.name", () -> "user");
+    r.add("spring.security.user.password", () -> "password");
+    // El CalculationOutboxProcessor de la aplicación corre una vez al iniciar y no vuelve a reclamar
+    r.add("app.outbox.poll-interval-ms", () -> "3600000");
+  }
+
+  @Autowired
+  JdbcTemplate jdbc;
+
+  @Autowired
+  CalculationOutboxRepository repository;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @BeforeEach
+  void clean() {
+    jdbc.update("DELETE FROM calculation_outbox");
+  }
+
+  void insertPending(int count) {
+    UUID userId = UUID.randomUUID();
+    for (int i = 0; i < count; i++) {
+      UUID calcId = UUID.randomUUID();
+      jdbc.update("""
+          INSERT INTO calculation (id, user_id, category, input_json, result_kg_co2e, factor_hash)
+          VALUES (?, ?, 'electricidad', '{}'::jsonb, 1.0, 'hash')
+          """, calcId, userId);
+      jdbc.update("INSERT INTO calculation_outbox (calculation_id, user_id, xp_amount) VALUES (?, ?, 10)",
+          calcId, userId);
+    }
+  }
+
+  static Set<Long> ids(List<CalculationOutboxEntry> entries) {
+    Set<Long> ids = new HashSet<>();
+    entries.forEach(e -> ids.add(e.getId()));
+    return ids;
+  }
+
+  @Test
+  void concurrentClaimsSkipRowsLockedByAnotherWorker() throws Exception {
+    insertPending(10);
+    TransactionTemplate tx = new TransactionTemplate(transactionManager);
+    CountDownLatch firstClaimed = new CountDownLatch(1);
+    CountDownLatch secondDone = new CountDownLatch(1);
+
+    // El primer worker reclama 4 filas y mantiene la transacción abierta
+    CompletableFuture<List<CalculationOutboxEntry>> first = CompletableFuture.supplyAsync(() ->
+        tx.execute(status -> {
+          List<CalculationOutboxEntry> claimed = repository.claimPending(4, LEASE_SECONDS, MAX_ATTEMPTS);
+          firstClaimed.countDown();
+          try {
+            assertTrue(secondDone.await(10, TimeUnit.SECONDS), "el segundo worker no debe esperar el lock");
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return claimed;
+        }));
+
+    assertTrue(firstClaimed.await(10, TimeUnit.SECONDS));
+    List<CalculationOutboxEntry> second = tx.execute(status ->
+        repository.claimPending(10, LEASE_SECONDS, MAX_ATTEMPTS));
+    secondDone.countDown();
+
+    Set<Long> firstIds = ids(first.get(10, TimeUnit.SECONDS));
+    Set<Long> secondIds = ids(second);
+    assertEquals(4, firstIds.size());
+    assertEquals(6, secondIds.size(), "el segundo worker toma las filas que el primero no bloqueó");
+    assertTrue(secondIds.stream().noneMatch(firstIds::contains), "ninguna fila se reclama dos veces");
+
+    // Con ambos leases vigentes no queda nada por reclamar
+    assertTrue(repository.claimPending(10, LEASE_SECONDS, MAX_ATTEMPTS).isEmpty());
+  }
+}
@@ -0,0 +1,99 @@
+package com.ecoestudiante.gamification.repository;
+
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+class MissionProgressRepositoryIT {
+
+  private static final BigDecimal TARGET = new BigDecimal("5");
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>("postgres:16")
+          .withDatabaseName("ecoestudiante")
+          .withUsername("eco")
+          .withPassword("eco");
+
+  @DynamicPropertySource
+  static void bindProps(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+    r.add("spring.datasource.username", POSTGRES::getUsername);
+    r.add("spring.datasource.password", POSTGRES::getPassword);
+    r.add("spring.flyway.enabled", () -> "true");
+    r.add("spring.security.user.name", () -> "user");
+    r.add("spring.security.user.password", () -> "password");
+  }
+
+  @Autowired
+  JdbcTemplate jdbc;
+
+  @Autowired
+  MissionProgressRepository repository;
+
+  String career;
+  Long missionId;
+
+  @BeforeEach
+  void setUp() {
+    career = "Carrera-" + UUID.randomUUID();
+    missionId = jdbc.queryForObject("""
+        INSERT INTO missions (title, description, category, type, target_value, target_unit, xp_reward,
+                              week_number, year)
+        VALUES ('Cohorte', 'Misión de prueba', 'TRANSPORT', 'FREQUENCY', 5, 'times', 50, '2026-W03', 2026)
+        RETURNING id
+        """, Long.class);
+  }
+
+  UUID insertUser(String role, boolean enabled) {
+    UUID id = UUID.randomUUID();
+    jdbc.update("""
+        INSERT INTO app_user (id, username, email, password_hash, enabled, role, carrera)
+        VALUES (?, ?, ?, 'x', ?, ?, ?)
+        """, id, "u-" + id, id + "@eco.cl", enabled, role, career);
+    return id;
+  }
+
+  List<UUID> assignToCareer() {
+    return repository.insertForCohort(missionId, TARGET, LeaderboardScope.CAREER, career,
+        null, LocalDate.now().minusDays(28), BigDecimal.ZERO);
+  }
+
+  @Test
+  void reassigningACohortSkipsStudentsThatAlreadyHaveTheMission() {
+    UUID first = insertUser("ESTUDIANTE", true);
+    UUID second = insertUser("ESTUDIANTE", true);
+    insertUser("PROFESOR", true);
+    insertUser("ESTUDIANTE", false);
+
+    List<UUID> assigned = assignToCareer();
+    assertEquals(2, assigned.size());
+    assertTrue(assigned.containsAll(List.of(first, second)), "solo estudiantes habilitados de la carrera");
+
+    // Un estudiante nuevo en la cohorte: la reasignación solo lo incluye a él
+    UUID late = insertUser("ESTUDIANTE", true);
+    assertEquals(List.of(late), assignToCareer());
+
+    assertTrue(assignToCareer().isEmpty(), "una reasignación sin estudiantes nuevos no crea filas");
+    Integer rows = jdbc.queryForObject(
+        "SELECT COUNT(*) FROM mission_progress WHERE mission_id = ?", Integer.class, missionId);
+    assertEquals(3, rows);
+  }
+}
@@ -0,0 +1,164 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.auth.UserProfileUpdatedEvent;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeaderboardRankIndexTest {
+
+    private static final String WEEK = "2026-W03";
+
+    private static LeaderboardCache entry(UUID userId, String co2) {
+        LeaderboardCache entry = new LeaderboardCache();
+        entry.setUserId(userId);
+        entry.setWeekNumber(WEEK);
+        entry.setYear(2026);
+        entry.setCo2AvoidedKg(new BigDecimal(co2));
+        entry.setMissionsCompleted(0);
+        return entry;
+    }
+
+    private static LeaderboardCacheRepository repository() {
+        LeaderboardCacheRepository repository = mock(LeaderboardCacheRepository.class);
+        when(repository.findWeekVersion(WEEK, 2026)).thenReturn(new LeaderboardCacheRepository.WeekVersion(0, 0));
+        return repository;
+    }
+
+    private static LeaderboardRankIndex index(LeaderboardCacheRepository repository, LeaderboardNameCache nameCache) {
+        return new LeaderboardRankIndex(repository, nameCache, new IsoWeekCalendar(ZoneId.of("America/Santiago")), 4, 16);
+    }
+
+    @Test
+    void scopedBoardRanksOnlyMembersAndFollowsUpdates() {
+        UUID campus = UUID.randomUUID();
+        UUID otherCampus = UUID.randomUUID();
+        UUID leader = UUID.randomUUID();
+        UUID student = UUID.randomUUID();
+        UUID classmate = UUID.randomUUID();
+
+        LeaderboardCacheRepository repository = repository();
+        LeaderboardNameCache nameCache = mock(LeaderboardNameCache.class);
+        when(repository.findByWeek(WEEK, 2026)).thenReturn(List.of(
+                entry(leader, "50"), entry(student, "10"), entry(classmate, "5")));
+        when(repository.findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, campus.toString()))
+                .thenReturn(List.of(entry(student, "10"), entry(classmate, "5")));
+        when(nameCache.memberships(anyCollection())).thenReturn(Map.of(
+                classmate, new LeaderboardNameCache.Membership(null, campus, null),
+                leader, new LeaderboardNameCache.Membership(null, otherCampus, null)));
+
+        LeaderboardRankIndex index = index(repository, nameCache);
+        String scope = campus.toString();
+
+        assertThat(index.position(student, WEEK, 2026).orElseThrow().getRankPosition()).isEqualTo(2);
+        assertThat(index.position(student, WEEK, 2026, LeaderboardScope.CAMPUS, scope)
+                .orElseThrow().getRankPosition()).isEqualTo(1);
+        assertThat(index.count(WEEK, 2026, LeaderboardScope.CAMPUS, scope)).isEqualTo(2);
+
+        // Sin transacción activa se aplica de inmediato; el líder de otro campus no entra
+        index.upsertAfterCommit(List.of(entry(classmate, "20"), entry(leader, "60")));
+
+        assertThat(index.top(WEEK, 2026, LeaderboardScope.CAMPUS, scope, 10))
+                .extracting(LeaderboardCache::getUserId)
+                .containsExactly(classmate, student);
+        assertThat(index.position(classmate, WEEK, 2026).orElseThrow().getRankPosition()).isEqualTo(2);
+        assertThat(index.position(leader, WEEK, 2026, LeaderboardScope.CAMPUS, scope)).isEmpty();
+    }
+
+    @Test
+    void syncAppliesOnlyRowsChangedByOtherInstances() {
+        UUID leader = UUID.randomUUID();
+        UUID student = UUID.randomUUID();
+        LeaderboardCacheRepository repository = repository();
+        when(repository.findByWeek(WEEK, 2026)).thenReturn(List.of(entry(leader, "50"), entry(student, "10")));
+        LeaderboardRankIndex index = index(repository, mock(LeaderboardNameCache.class));
+        assertThat(index.position(student, WEEK, 2026).orElseThrow().getRankPosition()).isEqualTo(2);
+        long before = index.version(WEEK, 2026, LeaderboardScope.GLOBAL, null);
+
+        // Otra instancia sumó un delta al estudiante (versión 3 de la semana)
+        when(repository.findWeekVersion(WEEK, 2026)).thenReturn(new LeaderboardCacheRepository.WeekVersion(3, 0));
+        when(repository.findChangedSince(WEEK, 2026, 0)).thenReturn(List.of(entry(student, "80")));
+        index.sync();
+
+        assertThat(index.position(student, WEEK, 2026).orElseThrow().getRankPosition()).isEqualTo(1);
+        assertThat(index.version(WEEK, 2026, LeaderboardScope.GLOBAL, null)).isGreaterThan(before);
+
+        // Sin versión nueva no se vuelve a leer
+        index.sync();
+        verify(repository, times(1)).findChangedSince(anyString(), anyInt(), anyLong());
+        verify(repository, times(1)).findByWeek(WEEK, 2026);
+    }
+
+    @Test
+    void syncReloadsTheWeekAfterAFullRecalculationElsewhere() {
+        UUID leader = UUID.randomUUID();
+        UUID student = UUID.randomUUID();
+        LeaderboardCacheRepository repository = repository();
+        when(repository.findByWeek(WEEK, 2026)).thenReturn(List.of(entry(leader, "50"), entry(student, "10")));
+        LeaderboardRankIndex index = index(repository, mock(LeaderboardNameCache.class));
+        assertThat(index.count(WEEK, 2026)).isEqualTo(2);
+
+        // El recálculo eliminó al líder: no se ve como fila cambiada, solo recargando
+        when(repository.findWeekVersion(WEEK, 2026)).thenReturn(new LeaderboardCacheRepository.WeekVersion(5, 5));
+        when(repository.findByWeek(WEEK, 2026)).thenReturn(List.of(entry(student, "10")));
+        index.sync();
+
+        assertThat(index.count(WEEK, 2026)).isEqualTo(1);
+        assertThat(index.position(student, WEEK, 2026).orElseThrow().getRankPosition()).isEqualTo(1);
+        verify(repository, never()).findChangedSince(anyString(), anyInt(), anyLong());
+    }
+
+    @Test
+    void profileUpdateDropsOnlyTheUsersOldAndNewPartitions() {
+        UUID student = UUID.randomUUID();
+        UUID classmate = UUID.randomUUID();
+        String oldCampus = UUID.randomUUID().toString();
+        String newCampus = UUID.randomUUID().toString();
+        String otherCampus = UUID.randomUUID().toString();
+
+        LeaderboardCacheRepository repository = repository();
+        LeaderboardNameCache nameCache = mock(LeaderboardNameCache.class);
+        when(repository.findByWeek(WEEK, 2026)).thenReturn(List.of(entry(student, "10"), entry(classmate, "5")));
+        when(repository.findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, oldCampus))
+                .thenReturn(List.of(entry(student, "10")));
+        when(repository.findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, newCampus))
+                .thenReturn(List.of());
+        when(repository.findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, otherCampus))
+                .thenReturn(List.of(entry(classmate, "5")));
+        LeaderboardRankIndex index = index(repository, nameCache);
+        index.count(WEEK, 2026);
+        for (String campus : List.of(oldCampus, newCampus, otherCampus)) {
+            index.count(WEEK, 2026, LeaderboardScope.CAMPUS, campus);
+        }
+
+        when(nameCache.refreshMembership(student)).thenReturn(
+                new LeaderboardNameCache.Membership(null, UUID.fromString(newCampus), null));
+        index.onProfileUpdated(new UserProfileUpdatedEvent(this, student));
+        for (String campus : List.of(oldCampus, newCampus, otherCampus)) {
+            index.count(WEEK, 2026, LeaderboardScope.CAMPUS, campus);
+        }
+
+        verify(repository, times(2)).findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, oldCampus);
+        verify(repository, times(2)).findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, newCampus);
+        verify(repository, times(1)).findByWeekInScope(WEEK, 2026, LeaderboardScope.CAMPUS, otherCampus);
+        verify(repository, times(1)).findByWeek(WEEK, 2026);
+    }
+}
@@ -0,0 +1,52 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaderboardReplicaFileTest {
+
+    private static LeaderboardCache entry(UUID userId, String co2, int missions, int xp) {
+        LeaderboardCache entry = new LeaderboardCache();
+        entry.setUserId(userId);
+        entry.setCo2AvoidedKg(new BigDecimal(co2));
+        entry.setMissionsCompleted(missions);
+        entry.setTotalXpWeek(xp);
+        return entry;
+    }
+
+    @Test
+    void publishedFileIsReplacedAndReadBackWithNames(@TempDir Path dir) throws Exception {
+        Path path = dir.resolve("replica/leaderboard.bin");
+        int week = IsoWeek.of(2026, 3);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        assertThat(LeaderboardReplicaFile.readEpoch(path)).isEmpty();
+
+        LeaderboardReplicaFile.write(path, 1000L, week, LeaderboardSnapshot.of("2026-W03", 2026,
+                List.of(entry(first, "3.00", 1, 10)), LeaderboardReplicaFile.publishedAt(1000L)), List.of("ana"));
+        LeaderboardReplicaFile.write(path, 2000L, week, LeaderboardSnapshot.of("2026-W03", 2026, List.of(
+                entry(second, "9.50", 2, 80),
+                entry(first, "3.00", 1, 10)), LeaderboardReplicaFile.publishedAt(2000L)), List.of("estudiante_ñandú", "ana"));
+
+        assertThat(LeaderboardReplicaFile.readEpoch(path)).hasValue(2000L);
+        LeaderboardReplicaFile.Contents contents = LeaderboardReplicaFile.read(path);
+        assertThat(contents.epoch()).isEqualTo(2000L);
+        assertThat(contents.weekNumber()).isEqualTo("2026-W03");
+        assertThat(contents.year()).isEqualTo(2026);
+        assertThat(contents.snapshot().top(10)).extracting(LeaderboardCache::getUserId).containsExactly(second, first);
+        assertThat(contents.snapshot().position(first).orElseThrow().getRankPosition()).isEqualTo(2);
+        assertThat(contents.names().get(second).username()).isEqualTo("estudiante_ñandú");
+        assertThat(contents.names().get(first).anonymized()).isEqualTo("eco_***");
+        assertThat(dir.resolve("replica").toFile().list()).containsExactly("leaderboard.bin");
+    }
+}
@@ -0,0 +1,47 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LeaderboardSnapshotTest {
+
+    private static LeaderboardCache entry(UUID userId, String co2, int missions, int xp) {
+        LeaderboardCache entry = new LeaderboardCache();
+        entry.setUserId(userId);
+        entry.setCo2AvoidedKg(new BigDecimal(co2));
+        entry.setMissionsCompleted(missions);
+        entry.setTotalXpWeek(xp);
+        return entry;
+    }
+
+    @Test
+    void encodedSnapshotDecodesToSameRanking() {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+        LocalDateTime frozenAt = LocalDateTime.of(2026, 1, 19, 0, 15);
+        LeaderboardSnapshot snapshot = LeaderboardSnapshot.of("2026-W03", 2026, List.of(
+                entry(first, "12345678.90", 4, 900),
+                entry(second, "7.05", 2, 120),
+                entry(third, "-1.50", 0, 0)), frozenAt);
+
+        LeaderboardSnapshot decoded = LeaderboardSnapshot.decode("2026-W03", 2026, snapshot.encode(), frozenAt);
+
+        assertThat(decoded.size()).isEqualTo(3);
+        assertThat(decoded.top(2)).extracting(LeaderboardCache::getUserId).containsExactly(first, second);
+        LeaderboardCache last = decoded.position(third).orElseThrow();
+        assertThat(last.getRankPosition()).isEqualTo(3);
+        assertThat(last.getCo2AvoidedKg()).isEqualByComparingTo("-1.50");
+        assertThat(decoded.position(first).orElseThrow().getCo2AvoidedKg()).isEqualByComparingTo("12345678.90");
+        assertThat(decoded.position(second).orElseThrow().getTotalXpWeek()).isEqualTo(120);
+        assertThat(decoded.position(UUID.randomUUID())).isEmpty();
+        assertThat(decoded.frozenAt()).isEqualTo(frozenAt);
+    }
+}
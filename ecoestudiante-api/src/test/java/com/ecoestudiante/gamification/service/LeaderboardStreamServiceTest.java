@@ -0,0 +1,81 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeaderboardStreamServiceTest {
+
+    private final IsoWeekCalendar calendar = new IsoWeekCalendar(ZoneId.of("America/Santiago"));
+    private final UUID userId = UUID.randomUUID();
+
+    private LeaderboardService leaderboardService;
+    private LeaderboardRankIndex rankIndex;
+    private LeaderboardStreamService stream;
+
+    @BeforeEach
+    void setUp() {
+        leaderboardService = mock(LeaderboardService.class);
+        rankIndex = mock(LeaderboardRankIndex.class);
+        LeaderboardReplica replica = mock(LeaderboardReplica.class);
+        when(replica.find(anyString(), any())).thenReturn(Optional.empty());
+        LeaderboardNameCache nameCache = mock(LeaderboardNameCache.class);
+        when(nameCache.memberships(any())).thenReturn(
+                Map.of(userId, new LeaderboardNameCache.Membership(null, null, null)));
+        when(leaderboardService.getCurrentWeekLeaderboard(anyInt(), any(), any())).thenReturn(top(1));
+
+        stream = new LeaderboardStreamService(leaderboardService, rankIndex, replica, nameCache,
+                new ObjectMapper(), calendar, 60000, 10, 100, 1, 16, 5000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.shutdown();
+    }
+
+    private static MissionDtos.LeaderboardResponse top(int totalUsers) {
+        return new MissionDtos.LeaderboardResponse("2026-W03", 2026, List.of(), null, totalUsers, null);
+    }
+
+    @Test
+    void groupVersionIsKeptUntilTheTopIsComputed() {
+        int week = calendar.currentWeek();
+        String weekNumber = IsoWeek.label(week);
+        when(rankIndex.version(weekNumber, IsoWeek.year(week), LeaderboardScope.GLOBAL, null)).thenReturn(7L);
+        when(leaderboardService.getWeekLeaderboard(eq(weekNumber), eq(IsoWeek.year(week)), eq(10),
+                eq(LeaderboardScope.GLOBAL), eq(userId)))
+                .thenThrow(new IllegalStateException("db down"))
+                .thenReturn(top(2));
+
+        assertThat(stream.subscribe(userId, LeaderboardScope.GLOBAL, 10, mock(HttpServletRequest.class))).isPresent();
+        stream.push();
+        // La versión 7 no se dio por enviada: el siguiente ciclo la reintenta
+        stream.push();
+        // Ya enviada: sin cambios no se vuelve a calcular
+        stream.push();
+
+        verify(leaderboardService, times(2)).getWeekLeaderboard(weekNumber, IsoWeek.year(week), 10,
+                LeaderboardScope.GLOBAL, userId);
+    }
+}
@@ -0,0 +1,262 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.CalculationOutboxEntry;
+import com.ecoestudiante.gamification.model.IsoWeek;
+import com.ecoestudiante.gamification.repository.CalculationOutboxRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardCacheRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardDeltaOutboxRepository;
+import com.ecoestudiante.gamification.repository.LeaderboardDeltaOutboxRepository.PendingDelta;
+import com.ecoestudiante.gamification.repository.ScheduledJobLockRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeaderboardUpdateCoalescerTest {
+
+    private static final int WEEK = IsoWeek.of(2026, 3);
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void missionDeltasAreMergedWithCalculationsIntoOneDeltaPerUser() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        when(service.applyLeaderboardDeltas(anyString(), eq(2026), anyList()))
+                .thenAnswer(inv -> ((List<?>) inv.getArgument(2)).size());
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        LeaderboardDeltaOutboxRepository deltaOutbox = mock(LeaderboardDeltaOutboxRepository.class);
+        UUID student = UUID.randomUUID();
+        UUID other = UUID.randomUUID();
+        LocalDateTime wednesday = LocalDateTime.of(2026, 1, 14, 12, 0);
+        when(outbox.claimLeaderboardPending(500)).thenReturn(List.of(outboxRow(1L, student, "1.5", 10)));
+        when(deltaOutbox.claimPending(500)).thenReturn(List.of(
+                new PendingDelta(7L, student, wednesday, 1, 50),
+                new PendingDelta(8L, other, wednesday, 0, 0)));
+
+        assertThat(coalescer(service, outbox, deltaOutbox, mock(LeaderboardArchive.class)).flush()).isEqualTo(2);
+        ArgumentCaptor<List<LeaderboardDelta>> batch = ArgumentCaptor.forClass(List.class);
+        verify(service, times(1)).applyLeaderboardDeltas(eq("2026-W03"), eq(2026), batch.capture());
+        assertThat(batch.getValue()).containsExactlyInAnyOrder(
+                new LeaderboardDelta(student, new BigDecimal("1.5"), 1, 60),
+                LeaderboardDelta.none(other));
+        verify(outbox).markLeaderboardApplied(List.of(1L));
+        verify(deltaOutbox).markApplied(List.of(7L, 8L));
+    }
+
+    @Test
+    void missionEventsAreRecordedInTheDurableOutbox() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        LeaderboardDeltaOutboxRepository deltaOutbox = mock(LeaderboardDeltaOutboxRepository.class);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, mock(CalculationOutboxRepository.class), deltaOutbox,
+                mock(LeaderboardArchive.class));
+        UUID student = UUID.randomUUID();
+        LocalDateTime at = LocalDateTime.of(2026, 1, 14, 12, 0);
+
+        coalescer.recordMissionCompleted(student, at, 50);
+        coalescer.markDirty(List.of(student), at);
+
+        verify(deltaOutbox).insert(student, at, 1, 50);
+        verify(deltaOutbox).insertEmpty(List.of(student), at);
+        // Nada se aplica fuera del flush
+        verify(service, never()).applyLeaderboardDeltas(anyString(), anyInt(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void outboxRowsAreMergedPerUserAndMarkedApplied() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        when(service.applyLeaderboardDeltas(anyString(), eq(2026), anyList()))
+                .thenAnswer(inv -> ((List<?>) inv.getArgument(2)).size());
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        UUID student = UUID.randomUUID();
+        when(outbox.claimLeaderboardPending(500)).thenReturn(List.of(
+                outboxRow(1L, student, "2.5", 10),
+                outboxRow(2L, student, "1.5", 10)));
+
+        assertThat(coalescer(service, outbox, mock(LeaderboardDeltaOutboxRepository.class),
+                mock(LeaderboardArchive.class)).flush()).isEqualTo(1);
+        ArgumentCaptor<List<LeaderboardDelta>> batch = ArgumentCaptor.forClass(List.class);
+        verify(service).applyLeaderboardDeltas(eq("2026-W03"), eq(2026), batch.capture());
+        assertThat(batch.getValue()).containsExactly(new LeaderboardDelta(student, new BigDecimal("4.0"), 0, 20));
+        verify(outbox).markLeaderboardApplied(List.of(1L, 2L));
+    }
+
+    @Test
+    void xpAwardedAfterWeekEndGoesToTheWeekItWasAwarded() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        UUID student = UUID.randomUUID();
+        CalculationOutboxEntry sundayNight = outboxRow(1L, student, "3", 10);
+        sundayNight.setCreatedAt(LocalDateTime.of(2026, 1, 18, 23, 59));
+        sundayNight.setProcessedAt(LocalDateTime.of(2026, 1, 19, 0, 1));
+        when(outbox.claimLeaderboardPending(500)).thenReturn(List.of(sundayNight));
+
+        coalescer(service, outbox, mock(LeaderboardDeltaOutboxRepository.class), mock(LeaderboardArchive.class)).flush();
+
+        verify(service).applyLeaderboardDeltas("2026-W03", 2026,
+                List.of(new LeaderboardDelta(student, new BigDecimal("3"), 0, 0)));
+        verify(service).applyLeaderboardDeltas("2026-W04", 2026,
+                List.of(new LeaderboardDelta(student, BigDecimal.ZERO, 0, 10)));
+    }
+
+    @Test
+    void deltasWaitWhileARecalculationHoldsTheLock() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        LeaderboardDeltaOutboxRepository deltaOutbox = mock(LeaderboardDeltaOutboxRepository.class);
+        when(deltaOutbox.claimPending(500)).thenReturn(
+                List.of(new PendingDelta(1L, UUID.randomUUID(), LocalDateTime.of(2026, 1, 14, 12, 0), 1, 5)));
+        LeaderboardCacheRepository cache = mock(LeaderboardCacheRepository.class);
+        when(cache.tryLockForDeltas()).thenReturn(false);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, outbox, deltaOutbox, mock(LeaderboardArchive.class),
+                cache, mock(ScheduledJobLockRepository.class), mock(PlatformTransactionManager.class));
+
+        assertThat(coalescer.flush()).isZero();
+
+        verify(outbox, never()).claimLeaderboardPending(anyInt());
+        verify(deltaOutbox, never()).claimPending(anyInt());
+        verify(service, never()).applyLeaderboardDeltas(anyString(), anyInt(), anyList());
+        when(cache.tryLockForDeltas()).thenReturn(true);
+        when(service.applyLeaderboardDeltas(anyString(), eq(2026), anyList())).thenReturn(1);
+        assertThat(coalescer.flush()).isEqualTo(1);
+    }
+
+    @Test
+    void closedWeeksWithoutSnapshotAreFinalizedOnceTheOutboxIsSettled() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        LeaderboardDeltaOutboxRepository deltaOutbox = mock(LeaderboardDeltaOutboxRepository.class);
+        LeaderboardArchive archive = mock(LeaderboardArchive.class);
+        // W52 y W01 ya archivadas; W02 y W03 no (la instancia estuvo caída en el cambio de semana)
+        when(archive.isFrozen("2025-W52", 2025)).thenReturn(true);
+        when(archive.isFrozen("2026-W01", 2026)).thenReturn(true);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, outbox, deltaOutbox, archive);
+
+        when(outbox.countUnsettledBefore(IsoWeek.end(IsoWeek.of(2026, 2)))).thenReturn(3L);
+        coalescer.finalizeClosedWeeks(IsoWeek.of(2026, 4));
+        verify(archive, never()).freeze(anyString(), anyInt());
+
+        // Una misión completada sin aplicar también retiene el cierre
+        when(outbox.countUnsettledBefore(IsoWeek.end(IsoWeek.of(2026, 2)))).thenReturn(0L);
+        when(deltaOutbox.countUnappliedBefore(IsoWeek.end(IsoWeek.of(2026, 2)))).thenReturn(1L);
+        coalescer.finalizeClosedWeeks(IsoWeek.of(2026, 4));
+        verify(archive, never()).freeze(anyString(), anyInt());
+
+        when(deltaOutbox.countUnappliedBefore(IsoWeek.end(IsoWeek.of(2026, 2)))).thenReturn(0L);
+        coalescer.finalizeClosedWeeks(IsoWeek.of(2026, 4));
+        InOrder order = inOrder(service, archive);
+        order.verify(service).recalculateWeekLeaderboard("2026-W02", 2026);
+        order.verify(archive).freeze("2026-W02", 2026);
+        order.verify(service).recalculateWeekLeaderboard("2026-W03", 2026);
+        order.verify(archive).freeze("2026-W03", 2026);
+        verify(service, never()).recalculateWeekLeaderboard("2026-W01", 2026);
+        verify(service, never()).recalculateWeekLeaderboard("2026-W04", 2026);
+    }
+
+    @Test
+    void outboxBatchIsRolledBackWhenApplyFails() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        when(service.applyLeaderboardDeltas(anyString(), eq(2026), anyList()))
+                .thenThrow(new IllegalStateException("db down"));
+        CalculationOutboxRepository outbox = mock(CalculationOutboxRepository.class);
+        when(outbox.claimLeaderboardPending(500)).thenReturn(List.of(outboxRow(1L, UUID.randomUUID(), "1", 5)));
+        LeaderboardCacheRepository cache = mock(LeaderboardCacheRepository.class);
+        when(cache.tryLockForDeltas()).thenReturn(true);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, outbox, mock(LeaderboardDeltaOutboxRepository.class),
+                mock(LeaderboardArchive.class), cache, mock(ScheduledJobLockRepository.class), transactionManager);
+
+        assertThat(coalescer.flush()).isZero();
+        // La marca de aplicadas se deshace con la transacción: las filas siguen pendientes
+        verify(transactionManager).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void reconcileRunsOnlyInTheReplicaHoldingTheLock() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        ScheduledJobLockRepository lock = mock(ScheduledJobLockRepository.class);
+        LeaderboardCacheRepository cache = mock(LeaderboardCacheRepository.class);
+        when(cache.tryLockForDeltas()).thenReturn(true);
+        LeaderboardArchive archive = mock(LeaderboardArchive.class);
+        when(archive.isFrozen(anyString(), anyInt())).thenReturn(true);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, mock(CalculationOutboxRepository.class),
+                mock(LeaderboardDeltaOutboxRepository.class), archive, cache, lock,
+                mock(PlatformTransactionManager.class));
+
+        when(lock.tryAcquire(eq("leaderboard-reconcile"), anyString(), anyString(), anyLong())).thenReturn(false);
+        coalescer.reconcile();
+        verify(service, never()).recalculateWeekLeaderboard(anyString(), anyInt());
+
+        when(lock.tryAcquire(eq("leaderboard-reconcile"), anyString(), anyString(), anyLong())).thenReturn(true);
+        coalescer.reconcile();
+        verify(service).recalculateWeekLeaderboard(anyString(), anyInt());
+        verify(lock).complete(eq("leaderboard-reconcile"), anyString(), anyString());
+    }
+
+    @Test
+    void failedReconcileReleasesTheLock() {
+        LeaderboardService service = mock(LeaderboardService.class);
+        when(service.recalculateWeekLeaderboard(anyString(), anyInt())).thenThrow(new IllegalStateException("db down"));
+        ScheduledJobLockRepository lock = mock(ScheduledJobLockRepository.class);
+        when(lock.tryAcquire(eq("leaderboard-reconcile"), anyString(), anyString(), anyLong())).thenReturn(true);
+        LeaderboardCacheRepository cache = mock(LeaderboardCacheRepository.class);
+        when(cache.tryLockForDeltas()).thenReturn(true);
+        LeaderboardUpdateCoalescer coalescer = coalescer(service, mock(CalculationOutboxRepository.class),
+                mock(LeaderboardDeltaOutboxRepository.class), mock(LeaderboardArchive.class), cache, lock,
+                mock(PlatformTransactionManager.class));
+
+        coalescer.reconcile();
+
+        verify(lock).release(eq("leaderboard-reconcile"), anyString());
+        verify(lock, never()).complete(anyString(), anyString(), anyString());
+    }
+
+    private static LeaderboardUpdateCoalescer coalescer(LeaderboardService service, CalculationOutboxRepository outbox,
+                                                        LeaderboardDeltaOutboxRepository deltaOutbox,
+                                                        LeaderboardArchive archive) {
+        LeaderboardCacheRepository cache = mock(LeaderboardCacheRepository.class);
+        when(cache.tryLockForDeltas()).thenReturn(true);
+        return coalescer(service, outbox, deltaOutbox, archive, cache, mock(ScheduledJobLockRepository.class),
+                mock(PlatformTransactionManager.class));
+    }
+
+    private static LeaderboardUpdateCoalescer coalescer(LeaderboardService service, CalculationOutboxRepository outbox,
+                                                        LeaderboardDeltaOutboxRepository deltaOutbox,
+                                                        LeaderboardArchive archive, LeaderboardCacheRepository cache,
+                                                        ScheduledJobLockRepository lock,
+                                                        PlatformTransactionManager transactionManager) {
+        return new LeaderboardUpdateCoalescer(service, archive, new IsoWeekCalendar(ZoneId.of("America/Santiago")), outbox, deltaOutbox,
+                cache, lock, transactionManager, 500, 4, 900000, 600);
+    }
+
+    private static CalculationOutboxEntry outboxRow(long id, UUID userId, String kg, int xp) {
+        CalculationOutboxEntry row = new CalculationOutboxEntry();
+        row.setId(id);
+        row.setUserId(userId);
+        row.setKgCo2e(new BigDecimal(kg));
+        row.setXpAmount(xp);
+        row.setCreatedAt(LocalDateTime.of(2026, 1, 14, 10, 0));
+        row.setProcessedAt(LocalDateTime.of(2026, 1, 14, 10, 0));
+        return row;
+    }
+}
@@ -0,0 +1,73 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.Mission;
+import com.ecoestudiante.gamification.repository.MissionRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MissionCatalogTest {
+
+    private static Mission mission(long id) {
+        Mission mission = new Mission();
+        mission.setId(id);
+        mission.setCategory(Mission.MissionCategory.TRANSPORT);
+        mission.setWeekNumber("2026-W03");
+        mission.setYear(2026);
+        return mission;
+    }
+
+    @Test
+    void weekIsServedFromMemoryUntilEvicted() {
+        MissionRepository repository = mock(MissionRepository.class);
+        MissionCatalog catalog = new MissionCatalog(repository, 8, 100);
+        // Semana aún sin generar: no se guarda vacía
+        when(repository.findByWeek("2026-W03", 2026)).thenReturn(List.of(), List.of(mission(1), mission(2)));
+
+        assertThat(catalog.week("2026-W03", 2026)).isEmpty();
+        assertThat(catalog.week("2026-W03", 2026)).extracting(Mission::getId).containsExactly(1L, 2L);
+        assertThat(catalog.week("2026-W03", 2026)).hasSize(2);
+        assertThat(catalog.find(2L)).isPresent();
+        verify(repository, times(2)).findByWeek("2026-W03", 2026);
+        verify(repository, never()).findById(2L);
+
+        catalog.evictWeek("2026-W03", 2026);
+        catalog.week("2026-W03", 2026);
+        verify(repository, times(3)).findByWeek("2026-W03", 2026);
+    }
+
+    @Test
+    void generatedWeekIsCachedWithoutReading() {
+        MissionRepository repository = mock(MissionRepository.class);
+        MissionCatalog catalog = new MissionCatalog(repository, 8, 100);
+
+        catalog.cacheGeneratedWeek("2026-W03", 2026, List.of(mission(7)));
+
+        assertThat(catalog.week("2026-W03", 2026)).extracting(Mission::getId).containsExactly(7L);
+        assertThat(catalog.findAll(List.of(7L))).containsOnlyKeys(7L);
+        verify(repository, never()).findByWeek("2026-W03", 2026);
+    }
+
+    @Test
+    void historyLookupsDoNotEvictCachedWeeks() {
+        MissionRepository repository = mock(MissionRepository.class);
+        MissionCatalog catalog = new MissionCatalog(repository, 8, 2);
+        catalog.cacheGeneratedWeek("2026-W03", 2026, List.of(mission(1), mission(2), mission(3)));
+        when(repository.findByIds(List.of(10L, 11L, 12L))).thenReturn(List.of(mission(10), mission(11), mission(12)));
+
+        // El historial llena (y desborda) su propio índice
+        assertThat(catalog.findAll(List.of(10L, 11L, 12L))).hasSize(3);
+
+        assertThat(catalog.findAll(List.of(1L, 2L, 3L))).containsOnlyKeys(1L, 2L, 3L);
+        assertThat(catalog.find(12L)).isPresent();
+        verify(repository, never()).findByIds(List.of(1L, 2L, 3L));
+        verify(repository, never()).findById(12L);
+    }
+}
@@ -0,0 +1,60 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.event.CalculationCompletedEvent;
+import com.ecoestudiante.gamification.model.Mission;
+import com.ecoestudiante.gamification.model.MissionMatchRule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MissionRuleSetTest {
+
+    private static Mission mission(long id, Mission.MissionCategory category, String title, MissionMatchRule rule) {
+        Mission mission = new Mission();
+        mission.setId(id);
+        mission.setCategory(category);
+        mission.setTitle(title);
+        mission.setMatchRule(rule);
+        return mission;
+    }
+
+    private static MissionRuleSet.Facts facts(String category, String kg, Map<String, Object> input) {
+        return MissionRuleSet.Facts.of(new CalculationCompletedEvent(new Object(), UUID.randomUUID(), "calc",
+                category, new BigDecimal(kg), input, LocalDateTime.of(2026, 1, 14, 10, 0)));
+    }
+
+    @Test
+    void calculationsMatchOnPredicatesRegardlessOfTitle() {
+        MissionRuleSet rules = MissionRuleSet.compile(List.of(
+                // Título sin pistas: solo cuenta la regla
+                mission(1, Mission.MissionCategory.TRANSPORT, "Ride Together",
+                        new MissionMatchRule(List.of("Bus", "metro"), null, null, null, null, null)),
+                mission(2, Mission.MissionCategory.TRANSPORT, "Usa Transporte Público", MissionMatchRule.ANY),
+                mission(3, Mission.MissionCategory.TRANSPORT, "Prueba un auto",
+                        new MissionMatchRule(null, List.of("electric"), null, null, null, new BigDecimal("2.0"))),
+                mission(4, Mission.MissionCategory.WASTE, "Recicla",
+                        new MissionMatchRule(null, null, null, List.of("plastic", "glass"), null, null)),
+                mission(5, Mission.MissionCategory.ELECTRICITY, "Desconecta",
+                        new MissionMatchRule(null, null, List.of("laptop"), null, new BigDecimal("1"), null)),
+                mission(6, Mission.MissionCategory.BONUS, "Racha", MissionMatchRule.ANY)));
+
+        assertThat(rules.match(facts("transporte", "1.2", Map.of("transportMode", "BUS")))).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(rules.match(facts("Transporte", "1.2", Map.of("transportMode", "car", "fuelType", "electric"))))
+                .containsExactlyInAnyOrder(2L, 3L);
+        assertThat(rules.match(facts("transporte", "9.5", Map.of("transportMode", "car", "fuelType", "electric"))))
+                .containsExactly(2L);
+        assertThat(rules.match(facts("residuos", "3", Map.of("wasteItems", List.of(
+                Map.of("wasteType", "organic"), Map.of("wasteType", "glass")))))).containsExactly(4L);
+        assertThat(rules.match(facts("residuos", "3", Map.of("wasteItems", List.of(Map.of("wasteType", "paper")))))).isEmpty();
+        assertThat(rules.match(facts("electricidad", "0.5", Map.of("selectedAppliances", List.of("laptop"))))).isEmpty();
+        assertThat(rules.match(facts("electricidad", "4", Map.of("selectedAppliances", List.of("celular", "laptop")))))
+                .containsExactly(5L);
+        assertThat(rules.match(facts("otra", "4", Map.of()))).isEmpty();
+    }
+}
@@ -0,0 +1,84 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.dto.MissionDtos;
+import com.ecoestudiante.gamification.event.MissionCohortAssignedEvent;
+import com.ecoestudiante.gamification.model.LeaderboardScope;
+import com.ecoestudiante.gamification.model.Mission;
+import com.ecoestudiante.gamification.repository.MissionProgressRepository;
+import com.ecoestudiante.gamification.repository.MissionRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MissionServiceImplTest {
+
+    private static final String CAREER = "Ingeniería Informática";
+
+    private MissionProgressRepository progressRepository;
+    private ApplicationEventPublisher eventPublisher;
+    private MissionServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        Mission mission = new Mission();
+        mission.setId(7L);
+        mission.setCategory(Mission.MissionCategory.TRANSPORT);
+        mission.setType(Mission.MissionType.FREQUENCY);
+        mission.setTargetValue(new BigDecimal("5"));
+        mission.setWeekNumber("2026-W03");
+        mission.setYear(2026);
+        MissionCatalog catalog = mock(MissionCatalog.class);
+        when(catalog.find(7L)).thenReturn(Optional.of(mission));
+
+        progressRepository = mock(MissionProgressRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        service = new MissionServiceImpl(mock(MissionRepository.class), progressRepository, eventPublisher, catalog, 28);
+    }
+
+    private MissionDtos.CohortAssignResponse assign() {
+        return service.assignMissionToCohort(7L, new MissionDtos.CohortAssignRequest("career", CAREER, null));
+    }
+
+    private void insertReturns(List<UUID> assigned) {
+        when(progressRepository.insertForCohort(eq(7L), any(), eq(LeaderboardScope.CAREER), eq(CAREER),
+                isNull(), any(), isNull())).thenReturn(assigned);
+    }
+
+    @Test
+    void cohortReassignmentWithEveryStudentSkippedPublishesNothing() {
+        insertReturns(List.of());
+
+        MissionDtos.CohortAssignResponse response = assign();
+
+        assertThat(response.assignedCount()).isZero();
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+    }
+
+    @Test
+    void cohortEventCarriesOnlyNewlyAssignedStudents() {
+        UUID late = UUID.randomUUID();
+        insertReturns(List.of(late));
+
+        MissionDtos.CohortAssignResponse response = assign();
+
+        assertThat(response.assignedCount()).isEqualTo(1);
+        ArgumentCaptor<MissionCohortAssignedEvent> event = ArgumentCaptor.forClass(MissionCohortAssignedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getUserIds()).containsExactly(late);
+    }
+}
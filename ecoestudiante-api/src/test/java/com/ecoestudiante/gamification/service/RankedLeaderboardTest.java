@@ -0,0 +1,71 @@
+package com.ecoestudiante.gamification.service;
+
+import com.ecoestudiante.gamification.model.LeaderboardCache;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RankedLeaderboardTest {
+
+    private static LeaderboardCache entry(UUID userId, String co2, int missions) {
+        LeaderboardCache entry = new LeaderboardCache();
+        entry.setUserId(userId);
+        entry.setCo2AvoidedKg(new BigDecimal(co2));
+        entry.setMissionsCompleted(missions);
+        return entry;
+    }
+
+    @Test
+    void ranksMatchSortedOrderAfterRandomUpdates() {
+        Random random = new Random(42);
+        RankedLeaderboard ranking = new RankedLeaderboard();
+        Map<UUID, LeaderboardCache> expected = new HashMap<>();
+        List<UUID> users = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            users.add(UUID.randomUUID());
+        }
+
+        for (int i = 0; i < 5_000; i++) {
+            UUID user = users.get(random.nextInt(users.size()));
+            if (random.nextInt(10) == 0) {
+                ranking.remove(user);
+                expected.remove(user);
+            } else {
+                LeaderboardCache e = entry(user, random.nextInt(50) + ".5", random.nextInt(3));
+                ranking.upsert(e);
+                expected.put(user, e);
+            }
+        }
+
+        List<LeaderboardCache> sorted = new ArrayList<>(expected.values());
+        sorted.sort(RankedLeaderboard.ORDER);
+
+        assertThat(ranking.size()).isEqualTo(sorted.size());
+        assertThat(ranking.top(sorted.size() + 10)).containsExactlyElementsOf(sorted);
+        for (int i = 0; i < sorted.size(); i++) {
+            assertThat(ranking.rankOf(sorted.get(i).getUserId())).isEqualTo(i + 1);
+        }
+    }
+
+    @Test
+    void tiesAreBrokenByMissionsThenUnsignedUserId() {
+        UUID low = UUID.fromString("00000000-0000-0000-0000-000000000001");
+        UUID high = UUID.fromString("ffffffff-0000-0000-0000-000000000000"); // negativo como long
+        RankedLeaderboard ranking = new RankedLeaderboard();
+        ranking.upsert(entry(high, "10.00", 1));
+        ranking.upsert(entry(low, "10.0", 1));
+        ranking.upsert(entry(UUID.randomUUID(), "10.00", 2));
+
+        assertThat(ranking.rankOf(low)).isEqualTo(2);
+        assertThat(ranking.rankOf(high)).isEqualTo(3);
+        assertThat(ranking.rankOf(UUID.randomUUID())).isZero();
+    }
+}
@@ -0,0 +1,110 @@
+package com.ecoestudiante.reports.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+class AnonymizedAggregateRepositoryIT {
+
+  private static final int K = 5;
+  private static final YearMonth PERIOD = YearMonth.of(2026, 1);
+  private static final String NIL_UUID = "00000000-0000-0000-0000-000000000000";
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>("postgres:16")
+          .withDatabaseName("ecoestudiante")
+          .withUsername("eco")
+          .withPassword("eco");
+
+  @DynamicPropertySource
+  static void bindProps(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+    r.add("spring.datasource.username", POSTGRES::getUsername);
+    r.add("spring.datasource.password", POSTGRES::getPassword);
+    r.add("spring.flyway.enabled", () -> "true");
+    r.add("spring.security.user.name", () -> "user");
+    r.add("spring.security.user.password", () -> "password");
+  }
+
+  @Autowired
+  JdbcTemplate jdbc;
+
+  @Autowired
+  AnonymizedAggregateRepository repository;
+
+  @BeforeEach
+  void clean() {
+    jdbc.update("DELETE FROM anonymized_aggregate");
+  }
+
+  void insert(String scope, UUID scopeId, String parentId, int users, double kg) {
+    jdbc.update("""
+        INSERT INTO anonymized_aggregate (period, category, scope, scope_id, parent_id,
+                                          user_count, record_count, total_kg_co2e)
+        VALUES (?, 'electricidad', ?, ?, ?::uuid, ?, ?, ?)
+        """, PERIOD.toString(), scope, scopeId, parentId, users, users, kg);
+  }
+
+  List<UUID> published(String scope) {
+    return jdbc.queryForList(
+        "SELECT scope_id FROM anonymized_aggregate WHERE scope = ? ORDER BY scope_id", UUID.class, scope);
+  }
+
+  int suppressAll() {
+    // Mismo orden que AnonymizedAggregateService.refresh
+    return repository.suppressComplementary(
+        AnonymizedAggregateRepository.CAMPUS, AnonymizedAggregateRepository.INSTITUTION, PERIOD, PERIOD, K)
+        + repository.suppressComplementary(
+        AnonymizedAggregateRepository.INSTITUTION, AnonymizedAggregateRepository.GLOBAL, PERIOD, PERIOD, K);
+  }
+
+  @Test
+  void suppressed_institution_takes_its_campuses_with_it() {
+    UUID small = UUID.randomUUID();
+    UUID smallCampus = UUID.randomUUID();
+    UUID large = UUID.randomUUID();
+    UUID largeCampus = UUID.randomUUID();
+
+    // 30 usuarios: 12 en la institución pequeña (todos en su único campus),
+    // 15 en la grande y 3 sin institución
+    insert("GLOBAL", UUID.fromString(NIL_UUID), null, 30, 300.0);
+    insert("INSTITUTION", small, NIL_UUID, 12, 120.0);
+    insert("CAMPUS", smallCampus, small.toString(), 12, 120.0);
+    insert("INSTITUTION", large, NIL_UUID, 15, 150.0);
+    insert("CAMPUS", largeCampus, large.toString(), 15, 150.0);
+
+    assertEquals(2, suppressAll(), "institución pequeña + su campus");
+
+    assertEquals(List.of(large), published("INSTITUTION"));
+    // Con el campus publicado, GLOBAL - grande - campus pequeño = los 3 usuarios sin institución
+    assertEquals(List.of(largeCampus), published("CAMPUS"));
+  }
+
+  @Test
+  void nothing_is_suppressed_when_residual_is_large_enough() {
+    UUID inst = UUID.randomUUID();
+    insert("GLOBAL", UUID.fromString(NIL_UUID), null, 30, 300.0);
+    insert("INSTITUTION", inst, NIL_UUID, 20, 200.0);
+    insert("CAMPUS", UUID.randomUUID(), inst.toString(), 20, 200.0);
+
+    assertEquals(0, suppressAll());
+    assertEquals(List.of(inst), published("INSTITUTION"));
+    assertEquals(1, published("CAMPUS").size());
+  }
+}
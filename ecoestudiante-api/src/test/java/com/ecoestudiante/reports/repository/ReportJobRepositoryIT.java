@@ -0,0 +1,158 @@
+package com.ecoestudiante.reports.repository;
+
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+@SpringBootTest
+class ReportJobRepositoryIT {
+
+  private static final int LEASE_SECONDS = 120;
+  private static final int MAX_ATTEMPTS = 2;
+  private static final int RETRY_DELAY_SECONDS = 60;
+
+  @Container
+  static final PostgreSQLContainer<?> POSTGRES =
+      new PostgreSQLContainer<>("postgres:16")
+          .withDatabaseName("ecoestudiante")
+          .withUsername("eco")
+          .withPassword("eco");
+
+  @DynamicPropertySource
+  static void bindProps(DynamicPropertyRegistry r) {
+    r.add("spring.datasource.url", POSTGRES::getJdbcUrl);
+    r.add("spring.datasource.username", POSTGRES::getUsername);
+    r.add("spring.datasource.password", POSTGRES::getPassword);
+    r.add("spring.flyway.enabled", () -> "true");
+    r.add("spring.security.user.name", () -> "user");
+    r.add("spring.security.user.password", () -> "password");
+    // El ReportJobWorker de la aplicación no debe reclamar los jobs del test
+    r.add("app.reports.max-attempts", () -> "0");
+    r.add("app.reports.cleanup-interval-ms", () -> "3600000");
+  }
+
+  @Autowired
+  JdbcTemplate jdbc;
+
+  @Autowired
+  ReportJobRepository repository;
+
+  @BeforeEach
+  void clean() {
+    jdbc.update("DELETE FROM report_job");
+  }
+
+  UUID insertJob() {
+    ReportJobRecord job = new ReportJobRecord();
+    job.setId(UUID.randomUUID());
+    job.setUserId(UUID.randomUUID());
+    job.setStatus(ReportJobRecord.PENDING);
+    job.setReportType("MONTHLY");
+    job.setExportFormat("CSV");
+    job.setRangeStart(LocalDate.of(2026, 1, 1));
+    job.setRangeEnd(LocalDate.of(2026, 1, 31));
+    job.setCategories(List.of());
+    job.setCreatedAt(LocalDateTime.now());
+    repository.insert(job);
+    return job.getId();
+  }
+
+  ReportJobRecord claimOne() {
+    List<ReportJobRecord> claimed = repository.claim(10, LEASE_SECONDS, MAX_ATTEMPTS);
+    assertEquals(1, claimed.size());
+    return claimed.get(0);
+  }
+
+  void expireLease(UUID id) {
+    jdbc.update("UPDATE report_job SET claimed_until = now() - INTERVAL '1 second' WHERE id = ?", id);
+  }
+
+  void skipRetryDelay(UUID id) {
+    jdbc.update("UPDATE report_job SET next_attempt_at = now() - INTERVAL '1 second' WHERE id = ?", id);
+  }
+
+  String status(UUID id) {
+    return jdbc.queryForObject("SELECT status FROM report_job WHERE id = ?", String.class, id);
+  }
+
+  @Test
+  void job_with_live_lease_is_not_reclaimed() {
+    insertJob();
+    claimOne();
+
+    assertTrue(repository.claim(10, LEASE_SECONDS, MAX_ATTEMPTS).isEmpty());
+  }
+
+  @Test
+  void stale_worker_cannot_write_after_its_lease_is_reclaimed() {
+    UUID id = insertJob();
+    ReportJobRecord first = claimOne();
+    assertEquals(1, first.getAttempts());
+
+    expireLease(id);
+    ReportJobRecord second = claimOne();
+    assertEquals(2, second.getAttempts());
+
+    assertFalse(repository.updateProgress(id, 1, 50, LEASE_SECONDS));
+    assertFalse(repository.markCompleted(id, 1, "stale.csv", "stale.csv", 1, LocalDateTime.now().plusHours(1)));
+    assertFalse(repository.markFailed(id, 1, "stale", MAX_ATTEMPTS, RETRY_DELAY_SECONDS));
+    assertEquals(ReportJobRecord.PROCESSING, status(id));
+
+    assertTrue(repository.updateProgress(id, 2, 50, LEASE_SECONDS));
+    assertTrue(repository.markCompleted(id, 2, "fresh.csv", "fresh.csv", 1, LocalDateTime.now().plusHours(1)));
+
+    // Un fallo tardío del primer worker no reabre el job completado
+    assertFalse(repository.markFailed(id, 1, "stale", MAX_ATTEMPTS, RETRY_DELAY_SECONDS));
+    assertEquals(ReportJobRecord.COMPLETED, status(id));
+    assertEquals("fresh.csv",
+        jdbc.queryForObject("SELECT file_path FROM report_job WHERE id = ?", String.class, id));
+  }
+
+  @Test
+  void failed_job_waits_for_its_retry_delay_and_fails_after_max_attempts() {
+    UUID id = insertJob();
+    claimOne();
+
+    assertTrue(repository.markFailed(id, 1, "boom", MAX_ATTEMPTS, RETRY_DELAY_SECONDS));
+    assertEquals(ReportJobRecord.PENDING, status(id));
+    assertTrue(repository.claim(10, LEASE_SECONDS, MAX_ATTEMPTS).isEmpty(), "en espera de reintento");
+
+    skipRetryDelay(id);
+    ReportJobRecord retry = claimOne();
+    assertEquals(2, retry.getAttempts());
+
+    assertTrue(repository.markFailed(id, 2, "boom", MAX_ATTEMPTS, RETRY_DELAY_SECONDS));
+    assertEquals(ReportJobRecord.FAILED, status(id));
+    skipRetryDelay(id);
+    assertTrue(repository.claim(10, LEASE_SECONDS, MAX_ATTEMPTS).isEmpty());
+  }
+
+  @Test
+  void abandoned_job_without_attempts_left_is_failed() {
+    UUID id = insertJob();
+    claimOne();
+    expireLease(id);
+    claimOne();
+    expireLease(id);
+
+    assertTrue(repository.claim(10, LEASE_SECONDS, MAX_ATTEMPTS).isEmpty());
+    assertEquals(1, repository.failAbandoned(MAX_ATTEMPTS));
+    assertEquals(ReportJobRecord.FAILED, status(id));
+  }
+}
@@ -0,0 +1,53 @@
+package com.ecoestudiante.reports.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PdfReportWriterTest {
+
+    private static String render(int rows) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PdfReportWriter pdf = new PdfReportWriter(out)) {
+            pdf.title("Reporte de huella de carbono");
+            pdf.tableHeader(new float[] {0f, 95f, 180f, 420f}, "Fecha", "Categoría", "Subcategoría", "kg CO2e");
+            for (int i = 0; i < rows; i++) {
+                pdf.row("2026-01-16 10:00", "transporte", "Auto (Gasolina) \\ test", "1.234");
+            }
+            pdf.endTable();
+        }
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    @Test
+    void xrefOffsetsPointToObjects() throws Exception {
+        String pdf = render(150);
+
+        int xref = Integer.parseInt(pdf.substring(pdf.lastIndexOf("startxref\n") + 10, pdf.lastIndexOf("\n%%EOF")).trim());
+        assertThat(pdf.substring(xref)).startsWith("xref\n");
+
+        Matcher entry = Pattern.compile("(\\d{10}) 00000 n ").matcher(pdf.substring(xref));
+        int objNumber = 1;
+        while (entry.find()) {
+            int offset = Integer.parseInt(entry.group(1));
+            assertThat(pdf.substring(offset)).startsWith(objNumber + " 0 obj\n");
+            objNumber++;
+        }
+        assertThat(objNumber).isGreaterThan(5);
+    }
+
+    @Test
+    void splitsPagesAndEscapesText() throws Exception {
+        String pdf = render(150);
+
+        Matcher count = Pattern.compile("/Type /Pages /Kids \\[[^]]*] /Count (\\d+)").matcher(pdf);
+        assertThat(count.find()).isTrue();
+        assertThat(Integer.parseInt(count.group(1))).isGreaterThan(1);
+        assertThat(pdf).contains("(Auto \\(Gasolina\\) \\\\ test)");
+    }
+}
@@ -0,0 +1,154 @@
+package com.ecoestudiante.reports.service;
+
+import com.ecoestudiante.gamification.repository.ScheduledJobLockRepository;
+import com.ecoestudiante.reports.model.ReportJobRecord;
+import com.ecoestudiante.reports.repository.ReportJobRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReportJobWorkerTest {
+
+    @TempDir
+    Path dir;
+
+    private ReportJobRepository repository;
+    private ReportRenderer renderer;
+    private ScheduledJobLockRepository lockRepository;
+    private ReportJobWorker worker;
+    private ReportJobRecord job;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        repository = mock(ReportJobRepository.class);
+        renderer = mock(ReportRenderer.class);
+        lockRepository = mock(ScheduledJobLockRepository.class);
+        worker = new ReportJobWorker(repository, renderer, new ReportFileStorage(dir.toString()), lockRepository,
+                mock(PlatformTransactionManager.class), 1, 120, 3, 60, 24, 600000, 300);
+
+        job = new ReportJobRecord();
+        job.setId(UUID.randomUUID());
+        job.setUserId(UUID.randomUUID());
+        job.setReportType("MONTHLY");
+        job.setExportFormat("CSV");
+        job.setRangeStart(LocalDate.of(2026, 1, 1));
+        job.setRangeEnd(LocalDate.of(2026, 1, 31));
+        job.setAttempts(2);
+
+        doAnswer(invocation -> {
+            OutputStream out = invocation.getArgument(1);
+            IntConsumer progress = invocation.getArgument(2);
+            progress.accept(0);
+            out.write("created_at,category\n".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(renderer).render(any(), any(), any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        worker.shutdown();
+    }
+
+    private List<Path> files() throws Exception {
+        try (var stream = Files.list(dir)) {
+            return stream.toList();
+        }
+    }
+
+    @Test
+    void completesWithTheClaimedAttempt() throws Exception {
+        when(repository.updateProgress(job.getId(), 2, 0, 120)).thenReturn(true);
+        when(repository.markCompleted(eq(job.getId()), eq(2), anyString(), anyString(), anyLong(), any()))
+                .thenReturn(true);
+
+        worker.process(job);
+
+        assertThat(files()).extracting(p -> p.getFileName().toString())
+                .containsExactly(job.getId() + ".2.csv");
+        verify(repository, never()).markFailed(any(), anyInt(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void abandonsWithoutRecordingFailureWhenLeaseIsLostDuringRender() throws Exception {
+        when(repository.updateProgress(job.getId(), 2, 0, 120)).thenReturn(false);
+
+        worker.process(job);
+
+        assertThat(files()).isEmpty();
+        verify(repository, never()).markCompleted(any(), anyInt(), any(), any(), anyLong(), any());
+        verify(repository, never()).markFailed(any(), anyInt(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void removesItsOwnFileWhenLeaseIsLostOnCompletion() throws Exception {
+        // Archivo del worker que retomó el job: no se toca
+        Path other = Files.writeString(dir.resolve(job.getId() + ".3.part"), "otro intento");
+        when(repository.updateProgress(job.getId(), 2, 0, 120)).thenReturn(true);
+        when(repository.markCompleted(eq(job.getId()), eq(2), anyString(), anyString(), anyLong(), any()))
+                .thenReturn(false);
+
+        worker.process(job);
+
+        assertThat(files()).containsExactly(other);
+        verify(repository, never()).markFailed(any(), anyInt(), any(), anyInt(), anyInt());
+    }
+
+    @Test
+    void recordsFailureForTheClaimedAttempt() throws Exception {
+        doAnswer(invocation -> {
+            throw new IllegalStateException("boom");
+        }).when(renderer).render(any(), any(), any());
+        when(repository.markFailed(job.getId(), 2, "boom", 3, 60)).thenReturn(true);
+
+        worker.process(job);
+
+        assertThat(files()).isEmpty();
+        verify(repository).markFailed(job.getId(), 2, "boom", 3, 60);
+    }
+
+    @Test
+    void cleanupRunsOnlyInTheReplicaHoldingTheLock() {
+        when(lockRepository.tryAcquire(eq("report-cleanup"), anyString(), anyString(), anyLong())).thenReturn(false);
+
+        worker.cleanup();
+
+        verify(repository, never()).failAbandoned(anyInt());
+        verify(repository, never()).findExpiredFiles(anyInt());
+    }
+
+    @Test
+    void cleanupCompletesTheRunOrReleasesTheLockOnFailure() {
+        when(lockRepository.tryAcquire(eq("report-cleanup"), anyString(), anyString(), anyLong())).thenReturn(true);
+        when(repository.findExpiredFiles(anyInt())).thenReturn(List.of());
+
+        worker.cleanup();
+        verify(lockRepository).complete(eq("report-cleanup"), anyString(), anyString());
+
+        when(repository.failAbandoned(anyInt())).thenThrow(new IllegalStateException("db down"));
+        worker.cleanup();
+        verify(lockRepository).release(eq("report-cleanup"), anyString());
+    }
+}